@@ -14,6 +14,7 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
@@ -23,27 +24,43 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.apache.commons.lang3.mutable.MutableInt;
 import org.lwes.serializer.Deserializer;
 import org.lwes.serializer.DeserializerState;
 import org.lwes.serializer.Serializer;
 import org.lwes.util.EncodedString;
+import org.lwes.util.IPAddress;
+import org.lwes.util.NumberCodec;
+import org.lwes.util.StringView;
 
 public final class ArrayEvent extends DefaultEvent {
 
     private static final int SERIALIZED_ENCODING_LENGTH;
+    /* buffers start this small and double as fields are added */
+    private static final int INITIAL_CAPACITY = 256;
     private byte[] bytes;
     private final DeserializerState tempState = new DeserializerState();
     private int length = 3;
     private short encoding = DEFAULT_ENCODING;
-    private static Map<ArrayEventStats, MutableInt> STATS =
-            new EnumMap<ArrayEventStats, MutableInt>(ArrayEventStats.class);
+    /* true if bytes belongs to the caller, so the event must not be pooled */
+    private boolean wrapper;
+    /* true if bytes may be shared with a copy, so it must be copied before writing */
+    private boolean shared;
+    /* when set, the event is read in place from this big-endian slice of the
+       caller's buffer, and bytes is unused until the event is written */
+    private ByteBuffer buffer;
+    /* the content hash, kept until the event is modified */
+    private long contentHash;
+    private boolean contentHashed;
+    /* pool bookkeeping, see ArrayEventPool */
+    final AtomicBoolean pooled = new AtomicBoolean();
+    boolean acquired;
+    ArrayEventPool.AcquiredReference acquiredReference;
 
     static {
         byte[] temp = new byte[256];
         SERIALIZED_ENCODING_LENGTH = Serializer.serializeATTRIBUTEWORD(ENCODING, temp, 0);
-        resetStats();
     }
 
     //  * EVENTWORD,<UINT16 number of elements>,ATTRIBUTEWORD,TYPETOKEN,
@@ -52,10 +69,11 @@ public final class ArrayEvent extends DefaultEvent {
     //  * UINT64|INT64|BOOLEAN|STRING)
 
     /**
-     * Makes a new event, allocating a new buffer of size MAX_MESSAGE_SIZE
+     * Makes a new event with a small buffer, which grows as needed up to
+     * MAX_MESSAGE_SIZE.
      */
     public ArrayEvent() {
-        bytes = new byte[MAX_MESSAGE_SIZE];
+        bytes = new byte[INITIAL_CAPACITY];
         length = getValueListIndex();
         setEncoding(DEFAULT_ENCODING);
         updateCreationStats();
@@ -65,11 +83,7 @@ public final class ArrayEvent extends DefaultEvent {
      * All constructors call this aux function once
      */
     private static void updateCreationStats() {
-        final MutableInt creations = STATS.get(ArrayEventStats.CREATIONS);
-        final MutableInt deletions = STATS.get(ArrayEventStats.DELETIONS);
-        final MutableInt highwater = STATS.get(ArrayEventStats.HIGHWATER);
-        creations.increment();
-        highwater.setValue(Math.max(highwater.intValue(), creations.intValue() - deletions.intValue()));
+        ArrayEventInstrumentation.created();
     }
 
     public ArrayEvent(String name) throws EventSystemException {
@@ -89,14 +103,15 @@ public final class ArrayEvent extends DefaultEvent {
         assert len <= bytes.length;
         if (copy) {
             assert len <= MAX_MESSAGE_SIZE;
-            this.bytes = new byte[MAX_MESSAGE_SIZE];
+            this.bytes = new byte[Math.max(INITIAL_CAPACITY, len)];
             this.length = len;
             System.arraycopy(bytes, 0, this.bytes, 0, this.length);
         }
         else {
             this.bytes = bytes;
             this.length = len;
-            STATS.get(ArrayEventStats.WRAPS).increment();
+            this.wrapper = true;
+            ArrayEventInstrumentation.count(ArrayEventStats.WRAPS);
         }
         updateCreationStats();
         resetCaches();
@@ -114,34 +129,189 @@ public final class ArrayEvent extends DefaultEvent {
         this(bytes, bytes.length, copy);
     }
     
-    private ArrayEvent(byte[] bytes, int offset, int length, int excess) {
-        this.bytes = Arrays.copyOfRange(bytes, offset, offset + length + excess);
-        this.length = length;
+    /**
+     * Creates an event backed by the bytes between the position and the limit
+     * of <tt>buffer</tt>, without copying them; see {@link #wrap(ByteBuffer)}.
+     */
+    public ArrayEvent(final ByteBuffer buffer) {
+        this.bytes = new byte[INITIAL_CAPACITY];
+        wrap(buffer);
         updateCreationStats();
-        resetCaches();
     }
 
-    private ArrayEvent(byte[] bytes, int length, short encoding) {
-        this();
-        assert length <= bytes.length;
-        assert length <= this.bytes.length;
-        System.arraycopy(bytes, 0, this.bytes, 0, length);
+    /**
+     * Makes an event with its own buffer of <tt>capacity</tt> bytes, which
+     * the caller fills with <tt>length</tt> bytes of content.
+     */
+    private ArrayEvent(int capacity, int length, short encoding) {
+        this.bytes = new byte[capacity];
         this.length = length;
         this.encoding = encoding;
+        updateCreationStats();
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-        STATS.get(ArrayEventStats.DELETIONS).increment();
+    /**
+     * Makes a copy that shares the buffer of <tt>event</tt> until either of
+     * them is modified.
+     */
+    private ArrayEvent(ArrayEvent event) {
+        this.bytes = event.bytes;
+        this.length = event.length;
+        this.encoding = event.encoding;
+        this.contentHash = event.contentHash;
+        this.contentHashed = event.contentHashed;
+        this.shared = true;
+        event.shared = true;
+        updateCreationStats();
+    }
+
+    /**
+     * @return true if this event uses a byte array owned by someone else
+     */
+    boolean isWrapper() {
+        return wrapper;
+    }
+
+    /**
+     * <p>Backs this event by the bytes between the position and the limit of
+     * <tt>buffer</tt>, heap or direct, without copying them, so an event can
+     * be read straight out of a receive buffer or a mapped journal segment.
+     * The buffer's position, limit and byte order are left alone.</p>
+     * <p>The event never writes to the buffer: the first change to the event
+     * copies the bytes into its own array, once.  Until then the caller must
+     * not change those bytes.  Deserializing or resetting the event, or
+     * releasing it to a pool, lets go of the buffer.</p>
+     *
+     * @throws EventSystemException if the event is longer than MAX_MESSAGE_SIZE
+     */
+    public void wrap(ByteBuffer buffer) {
+        final int length = buffer.remaining();
+        if (length > MAX_MESSAGE_SIZE) {
+            throw new EventSystemException("Event size limit is " + MAX_MESSAGE_SIZE + " bytes.");
+        }
+        this.buffer = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        this.length = length;
+        tempState.reset();
+        ArrayEventInstrumentation.count(ArrayEventStats.WRAPS);
+        ArrayEventInstrumentation.sized(length);
+        resetCaches();
+    }
+
+    /**
+     * @return true if this event is read from a wrapped ByteBuffer
+     */
+    public boolean isBufferBacked() {
+        return buffer != null;
+    }
+
+    /**
+     * Lets go of a wrapped buffer, leaving the event empty, so that an idle
+     * pooled event does not keep the buffer reachable.
+     */
+    void releaseBuffer() {
+        if (buffer != null) {
+            reset();
+        }
+    }
+
+    /**
+     * Copies a wrapped buffer into the event's own array before the event is
+     * written, taking a new array if the current one is shared, belongs to
+     * the caller or is too small.
+     */
+    private void detach() {
+        if (buffer == null) {
+            return;
+        }
+        if (wrapper || shared || bytes.length < length) {
+            bytes = new byte[Math.max(INITIAL_CAPACITY, length)];
+            wrapper = false;
+            shared = false;
+        }
+        copyContent(bytes, 0);
+        buffer = null;
+    }
+
+    /**
+     * Copies the serialized event into <tt>dest</tt> at <tt>offset</tt>.
+     */
+    private void copyContent(byte[] dest, int offset) {
+        if (buffer == null) {
+            System.arraycopy(bytes, 0, dest, offset, length);
+        }
+        else {
+            buffer.duplicate().get(dest, offset, length);
+        }
+    }
+
+    /**
+     * Grows the buffer, if need be, to hold <tt>needed</tt> bytes.  The
+     * capacity at least doubles each time, up to MAX_MESSAGE_SIZE.  A
+     * wrapped byte array is left as it was and the event gets its own copy.
+     *
+     * @return false if the event may not be that long
+     */
+    private boolean ensureCapacity(int needed) {
+        detach();
+        if (needed <= bytes.length) {
+            return true;
+        }
+        if (needed > MAX_MESSAGE_SIZE) {
+            return false;
+        }
+        final byte[] grown = new byte[Math.min(MAX_MESSAGE_SIZE, Math.max(needed, 2 * bytes.length))];
+        System.arraycopy(bytes, 0, grown, 0, length);
+        bytes = grown;
+        wrapper = false;
+        shared = false;
+        return true;
+    }
+
+    /**
+     * Called before the buffer is written.  A buffer shared with a copy of the
+     * event is copied first, so that the copy does not see the change.
+     */
+    private void beforeWrite() {
+        contentHashed = false;
+        if (buffer != null) {
+            detach();
+        }
+        else if (shared) {
+            bytes = Arrays.copyOf(bytes, Math.max(INITIAL_CAPACITY, length));
+            shared = false;
+        }
+    }
+
+    /**
+     * Shrinks the buffer to the length of the event, to save memory while
+     * the event is held.  It grows again if fields are added later.
+     */
+    public void trimToSize() {
+        detach();
+        if (bytes.length > length) {
+            final byte[] trimmed = new byte[length];
+            System.arraycopy(bytes, 0, trimmed, 0, length);
+            bytes = trimmed;
+            wrapper = false;
+            shared = false;
+        }
     }
 
     @Override
     public void reset() {
-        Arrays.fill(bytes, (byte) 0);
+        // An empty name and no fields; the rest of the buffer is never read.
+        buffer = null;
+        if (shared) {
+            bytes = new byte[INITIAL_CAPACITY];
+            shared = false;
+        }
+        bytes[0] = 0;
+        bytes[1] = 0;
+        bytes[2] = 0;
         length = getValueListIndex();
         tempState.reset();
         encoding = DEFAULT_ENCODING;
+        contentHashed = false;
     }
 
     @Override
@@ -151,7 +321,7 @@ public final class ArrayEvent extends DefaultEvent {
             return;
         }
         final int tokenIndex = getTokenIndexFromFieldIndex(fieldIndex);
-        final FieldType type = FieldType.byToken(bytes[tokenIndex]);
+        final FieldType type = FieldType.byToken(byteAt(tokenIndex));
         final int valueIndex = tokenIndex + 1;
         final int nextIndex = valueIndex + getValueByteSize(type, valueIndex);
         shiftTail(nextIndex, fieldIndex);
@@ -170,8 +340,8 @@ public final class ArrayEvent extends DefaultEvent {
                 final int numFields = getNumEventAttributes();
                 final int oldValueListIndex = getValueListIndex();
                 final int newValueListIndex = oldValueListIndex + newBytes.length - oldBytes.length;
-                Serializer.serializeUBYTE((short) newBytes.length, bytes, 0);
                 shiftTail(oldValueListIndex, newValueListIndex);
+                Serializer.serializeUBYTE((short) newBytes.length, bytes, 0);
                 int offset = Serializer.serializeEVENTWORD(name, bytes, 0);
                 Serializer.serializeUINT16(numFields, bytes, offset);
             }
@@ -182,8 +352,11 @@ public final class ArrayEvent extends DefaultEvent {
     }
 
     /**
-     * For now, no in-place set() operations occur. set() places the field at the
-     * end of the datagram, with the exception of ENCODING, which must be first.
+     * set() replaces the value of an existing field where it is, moving only
+     * the fields after it if the new value has a different size, so a value of
+     * the same type and size costs no shifts at all.  New fields are placed at
+     * the end of the datagram, with the exception of ENCODING, which must be
+     * first.
      */
     @Override
     public void set(String key, FieldType type, Object value) {
@@ -208,12 +381,17 @@ public final class ArrayEvent extends DefaultEvent {
             if (fieldIndex >= 0) {
                 // Found the field.  Can we modify it in place?
                 final int tokenIndex = getTokenIndexFromFieldIndex(fieldIndex);
-                final FieldType oldType = FieldType.byToken(bytes[tokenIndex]);
+                final FieldType oldType = FieldType.byToken(byteAt(tokenIndex));
                 if (oldType == type && type.isConstantSize()) {
                     // Modify the value in place, requiring no shifts.
+                    beforeWrite();
                     Serializer.serializeValue(type, value, encoding, bytes, tokenIndex + 1);
                     return;
                 }
+                if (value != null) {
+                    replaceValue(tokenIndex, oldType, type, value);
+                    return;
+                }
                 clear(key);
             }
             if (value != null) {
@@ -222,31 +400,327 @@ public final class ArrayEvent extends DefaultEvent {
         }
     }
 
+    // The primitive setters overwrite an existing value of the same type in
+    // place, without boxing it.
+
+    @Override
+    public void setInt16(String attributeName, short value) {
+        final int valueIndex = findInPlace(attributeName, FieldType.INT16);
+        if (valueIndex < 0) {
+            super.setInt16(attributeName, value);
+        }
+        else {
+            NumberCodec.encodeShortUnchecked(value, bytes, valueIndex);
+        }
+    }
+
+    @Override
+    public void setUInt16(String attributeName, int value) {
+        final int valueIndex = findInPlace(attributeName, FieldType.UINT16);
+        if (valueIndex < 0) {
+            super.setUInt16(attributeName, value);
+        }
+        else {
+            Serializer.serializeUINT16(value, bytes, valueIndex);
+        }
+    }
+
+    @Override
+    public void setInt32(String attributeName, int value) {
+        final int valueIndex = findInPlace(attributeName, FieldType.INT32);
+        if (valueIndex < 0) {
+            super.setInt32(attributeName, value);
+        }
+        else {
+            NumberCodec.encodeIntUnchecked(value, bytes, valueIndex);
+        }
+    }
+
+    @Override
+    public void setUInt32(String attributeName, long value) {
+        final int valueIndex = findInPlace(attributeName, FieldType.UINT32);
+        if (valueIndex < 0) {
+            super.setUInt32(attributeName, value);
+        }
+        else {
+            Serializer.serializeUINT32(value, bytes, valueIndex);
+        }
+    }
+
+    @Override
+    public void setInt64(String attributeName, long value) {
+        final int valueIndex = findInPlace(attributeName, FieldType.INT64);
+        if (valueIndex < 0) {
+            super.setInt64(attributeName, value);
+        }
+        else {
+            NumberCodec.encodeLongUnchecked(value, bytes, valueIndex);
+        }
+    }
+
+    @Override
+    public void setUInt64(String attributeName, long value) {
+        final int valueIndex = findInPlace(attributeName, FieldType.UINT64);
+        if (valueIndex < 0) {
+            super.setUInt64(attributeName, value);
+        }
+        else {
+            NumberCodec.encodeLongUnchecked(value, bytes, valueIndex);
+        }
+    }
+
+    @Override
+    public void setBoolean(String attributeName, boolean value) {
+        final int valueIndex = findInPlace(attributeName, FieldType.BOOLEAN);
+        if (valueIndex < 0) {
+            super.setBoolean(attributeName, value);
+        }
+        else {
+            Serializer.serializeBOOLEAN(value, bytes, valueIndex);
+        }
+    }
+
+    @Override
+    public void setByte(String attributeName, byte value) {
+        final int valueIndex = findInPlace(attributeName, FieldType.BYTE);
+        if (valueIndex < 0) {
+            super.setByte(attributeName, value);
+        }
+        else {
+            bytes[valueIndex] = value;
+        }
+    }
+
+    @Override
+    public void setFloat(String attributeName, float value) {
+        final int valueIndex = findInPlace(attributeName, FieldType.FLOAT);
+        if (valueIndex < 0) {
+            super.setFloat(attributeName, value);
+        }
+        else {
+            NumberCodec.encodeIntUnchecked(Float.floatToIntBits(value), bytes, valueIndex);
+        }
+    }
+
+    @Override
+    public void setDouble(String attributeName, double value) {
+        final int valueIndex = findInPlace(attributeName, FieldType.DOUBLE);
+        if (valueIndex < 0) {
+            super.setDouble(attributeName, value);
+        }
+        else {
+            NumberCodec.encodeLongUnchecked(Double.doubleToLongBits(value), bytes, valueIndex);
+        }
+    }
+
     /**
-     * Sets this field at the end of the datagram, updating cached values. The
-     * field must not exist in the event beforehand.
+     * @return the index of the value of the attribute if it is set with the
+     *         given type, so that it can be overwritten; otherwise -1
+     */
+    private int findInPlace(String attributeName, FieldType type) {
+        if (ENCODING.equals(attributeName)) {
+            // Must go through setEncoding()
+            return -1;
+        }
+        final int fieldIndex = find(attributeName);
+        if (fieldIndex < 0) {
+            return -1;
+        }
+        final int tokenIndex = getTokenIndexFromFieldIndex(fieldIndex);
+        if (byteAt(tokenIndex) != type.token) {
+            return -1;
+        }
+        // The caller writes the value.
+        beforeWrite();
+        return tokenIndex + 1;
+    }
+
+    /**
+     * Overwrites the type and value of an existing field, moving the fields
+     * after it only if the size of the value changes.
+     */
+    private void replaceValue(int tokenIndex, FieldType oldType, FieldType type, Object value) {
+        final int valueIndex = tokenIndex + 1;
+        final int oldSize = getValueByteSize(oldType, valueIndex);
+        final int newSize = type.isConstantSize()
+                            ? type.getConstantSize() : new BaseType(type, value).getByteSize(encoding);
+        if (!ensureCapacity(length + newSize - oldSize)) {
+            throw new EventSystemException(
+                    "Attempted to write " + type + " field [" + value + "] on an event of length " + length +
+                    ", causing an overrun");
+        }
+        if (newSize != oldSize) {
+            shiftTail(valueIndex + oldSize, valueIndex + newSize);
+        }
+        beforeWrite();
+        bytes[tokenIndex] = type.token;
+        final int written = Serializer.serializeValue(type, value, encoding, bytes, valueIndex);
+        assert written == newSize : type + " value was " + written + " bytes rather than " + newSize;
+    }
+
+    /**
+     * <p>Makes room for a fixed-width field that will be set later through
+     * its slot, for instance by <tt>setInt64At(slot, value)</tt>, which costs
+     * no search.  A field already set with this type keeps its value; any
+     * other field of the name is replaced by a zero value.</p>
+     * <p>The slot is the index of the value, so it stays valid until a field
+     * before it is cleared or changes size, or the event name or encoding
+     * changes, or the event is reset or deserialized.</p>
      *
-     * @param key   the attribute name, but must not be the ENCODING field
-     * @param type  the type of this value
-     * @param value the value to store
+     * @return the slot of the field
+     * @throws IllegalArgumentException if the type is not fixed-width, or the
+     *                                  field is ENCODING
      */
-    private void appendField(String key, FieldType type, Object value) {
+    public int reserve(String key, FieldType type) {
+        if (!type.isConstantSize()) {
+            throw new IllegalArgumentException("Only fixed-width fields can be reserved, not " + type);
+        }
+        if (ENCODING.equals(key)) {
+            throw new IllegalArgumentException(ENCODING + " cannot be reserved; use setEncoding()");
+        }
+        final int valueIndex = findInPlace(key, type);
+        if (valueIndex >= 0) {
+            return valueIndex;
+        }
+        checkShortStringLength(key, encoding, MAX_FIELD_NAME_SIZE);
+        clear(key);
+        beforeWrite();
         final int length0 = length;
         try {
+            if (!ensureCapacity(length + getFieldSize(key, type, null))) {
+                throw new ArrayIndexOutOfBoundsException(length);
+            }
             length += Serializer.serializeATTRIBUTEWORD(key, bytes, length);
-            length += Serializer.serializeBYTE(type.token, bytes, length);
-            length += Serializer.serializeValue(type, value, encoding, bytes, length);
+            bytes[length++] = type.token;
+            final int slot = length;
+            Arrays.fill(bytes, slot, slot + type.getConstantSize(), (byte) 0);
+            length += type.getConstantSize();
             setNumEventAttributes(getNumEventAttributes() + 1);
+            return slot;
         }
         catch (ArrayIndexOutOfBoundsException e) {
-            // Overran the end of the serialized array, so this field does not fit.  Reset and alert.
             length = length0;
             throw new EventSystemException(
-                    "Attempted to write " + type + " field [" + value + "] on an event of length " + length0 +
+                    "Attempted to reserve " + type + " field " + key + " on an event of length " + length0 +
                     ", causing an overrun");
         }
     }
 
+    public void setInt16At(int slot, short value) {
+        final int index = checkSlot(slot, FieldType.INT16);
+        NumberCodec.encodeShortUnchecked(value, bytes, index);
+    }
+
+    public void setUInt16At(int slot, int value) {
+        final int index = checkSlot(slot, FieldType.UINT16);
+        Serializer.serializeUINT16(value, bytes, index);
+    }
+
+    public void setInt32At(int slot, int value) {
+        final int index = checkSlot(slot, FieldType.INT32);
+        NumberCodec.encodeIntUnchecked(value, bytes, index);
+    }
+
+    public void setUInt32At(int slot, long value) {
+        final int index = checkSlot(slot, FieldType.UINT32);
+        Serializer.serializeUINT32(value, bytes, index);
+    }
+
+    public void setInt64At(int slot, long value) {
+        final int index = checkSlot(slot, FieldType.INT64);
+        NumberCodec.encodeLongUnchecked(value, bytes, index);
+    }
+
+    /**
+     * @param value the unsigned value as the bits of a long
+     */
+    public void setUInt64At(int slot, long value) {
+        final int index = checkSlot(slot, FieldType.UINT64);
+        NumberCodec.encodeLongUnchecked(value, bytes, index);
+    }
+
+    public void setBooleanAt(int slot, boolean value) {
+        final int index = checkSlot(slot, FieldType.BOOLEAN);
+        Serializer.serializeBOOLEAN(value, bytes, index);
+    }
+
+    public void setByteAt(int slot, byte value) {
+        final int index = checkSlot(slot, FieldType.BYTE);
+        bytes[index] = value;
+    }
+
+    public void setFloatAt(int slot, float value) {
+        final int index = checkSlot(slot, FieldType.FLOAT);
+        NumberCodec.encodeIntUnchecked(Float.floatToIntBits(value), bytes, index);
+    }
+
+    public void setDoubleAt(int slot, double value) {
+        final int index = checkSlot(slot, FieldType.DOUBLE);
+        NumberCodec.encodeLongUnchecked(Double.doubleToLongBits(value), bytes, index);
+    }
+
+    public void setIPAddressAt(int slot, IPAddress value) {
+        final int index = checkSlot(slot, FieldType.IPADDR);
+        // IPADDR fields are written in reverse network order.
+        final byte[] address = value.getInetAddressAsBytes();
+        bytes[index] = address[3];
+        bytes[index + 1] = address[2];
+        bytes[index + 2] = address[1];
+        bytes[index + 3] = address[0];
+    }
+
+    /**
+     * Catches most stale slots: the slot must lie within the event and follow
+     * a token of the right type.
+     */
+    private int checkSlot(int slot, FieldType type) {
+        if (slot < 1 || slot + type.getConstantSize() > length || byteAt(slot - 1) != type.token) {
+            throw new IllegalArgumentException("Index " + slot + " is not the slot of a " + type + " field");
+        }
+        beforeWrite();
+        return slot;
+    }
+
+    /**
+     * Sets this field at the end of the datagram, updating cached values. The
+     * field must not exist in the event beforehand.
+     *
+     * @param key   the attribute name, but must not be the ENCODING field
+     * @param type  the type of this value
+     * @param value the value to store
+     */
+    private void appendField(String key, FieldType type, Object value) {
+        beforeWrite();
+        final int length0 = length;
+        for (boolean retry = true; ; retry = false) {
+            try {
+                length += Serializer.serializeATTRIBUTEWORD(key, bytes, length);
+                length += Serializer.serializeBYTE(type.token, bytes, length);
+                length += Serializer.serializeValue(type, value, encoding, bytes, length);
+                setNumEventAttributes(getNumEventAttributes() + 1);
+                return;
+            }
+            catch (ArrayIndexOutOfBoundsException e) {
+                // Overran the end of the buffer.  Grow it once to fit the field, or reset and alert.
+                length = length0;
+                if (!retry || !ensureCapacity(length0 + getFieldSize(key, type, value))) {
+                    throw new EventSystemException(
+                            "Attempted to write " + type + " field [" + value + "] on an event of length " +
+                            length0 + ", causing an overrun");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the serialized size of a field, with its name and type token
+     */
+    private int getFieldSize(String key, FieldType type, Object value) {
+        final int valueSize = type.isConstantSize()
+                              ? type.getConstantSize() : new BaseType(type, value).getByteSize(encoding);
+        return 2 + EncodedString.getByteLength(key, ENCODING_STRINGS[DEFAULT_ENCODING]) + valueSize;
+    }
+
     @Override
     public void setEncoding(short encoding) {
         if (encoding < 0 || encoding >= ENCODING_STRINGS.length) {
@@ -256,6 +730,7 @@ public final class ArrayEvent extends DefaultEvent {
         }
 
         this.encoding = encoding;
+        beforeWrite();
         final int fieldCountIndex = getFieldCountIndex();
         final int numFields = deserializeUINT16(fieldCountIndex);
 
@@ -299,7 +774,7 @@ public final class ArrayEvent extends DefaultEvent {
     @Override
     public String getEventName() {
         tempState.set(0);
-        return Deserializer.deserializeEVENTWORD(tempState, bytes);
+        return readWord(tempState);
     }
 
     @Override
@@ -308,6 +783,7 @@ public final class ArrayEvent extends DefaultEvent {
     }
 
     private void setNumEventAttributes(int count) {
+        beforeWrite();
         Serializer.serializeUINT16(count, bytes, getFieldCountIndex());
     }
 
@@ -320,8 +796,8 @@ public final class ArrayEvent extends DefaultEvent {
     public SortedSet<String> getEventAttributes() {
         final SortedSet<String> fields = new TreeSet<String>();
         for (tempState.set(getValueListIndex()); tempState.currentIndex() < length; ) {
-            fields.add(Deserializer.deserializeATTRIBUTEWORD(tempState, bytes));
-            final FieldType type = FieldType.byToken(Deserializer.deserializeBYTE(tempState, bytes));
+            fields.add(readWord(tempState));
+            final FieldType type = FieldType.byToken(readByte(tempState));
             tempState.incr(getValueByteSize(type, tempState.currentIndex()));
         }
         if (tempState.currentIndex() > length) {
@@ -338,7 +814,7 @@ public final class ArrayEvent extends DefaultEvent {
         }
 
         final int tokenIndex = getTokenIndexFromFieldIndex(fieldIndex);
-        return FieldType.byToken(bytes[tokenIndex]);
+        return FieldType.byToken(byteAt(tokenIndex));
     }
 
     @Override
@@ -349,17 +825,138 @@ public final class ArrayEvent extends DefaultEvent {
         }
 
         final int tokenIndex = getTokenIndexFromFieldIndex(fieldIndex);
-        final FieldType type = FieldType.byToken(bytes[tokenIndex]);
+        final FieldType type = FieldType.byToken(byteAt(tokenIndex));
         return get(type, tokenIndex + 1);
     }
 
+    @Override
+    public short getInt16(String attributeName, short defaultValue) {
+        final int valueIndex = findValue(attributeName, FieldType.INT16);
+        return valueIndex < 0 ? defaultValue : shortAt(valueIndex);
+    }
+
+    @Override
+    public int getUInt16(String attributeName, int defaultValue) {
+        final int valueIndex = findValue(attributeName, FieldType.UINT16);
+        return valueIndex < 0 ? defaultValue : deserializeUINT16(valueIndex);
+    }
+
+    @Override
+    public int getInt32(String attributeName, int defaultValue) {
+        final int valueIndex = findValue(attributeName, FieldType.INT32);
+        return valueIndex < 0 ? defaultValue : intAt(valueIndex);
+    }
+
+    @Override
+    public long getUInt32(String attributeName, long defaultValue) {
+        final int valueIndex = findValue(attributeName, FieldType.UINT32);
+        return valueIndex < 0 ? defaultValue : (intAt(valueIndex) & 0xffffffffL);
+    }
+
+    @Override
+    public long getInt64(String attributeName, long defaultValue) {
+        final int valueIndex = findValue(attributeName, FieldType.INT64);
+        return valueIndex < 0 ? defaultValue : longAt(valueIndex);
+    }
+
+    @Override
+    public long getUInt64(String attributeName, long defaultValue) {
+        final int valueIndex = findValue(attributeName, FieldType.UINT64);
+        return valueIndex < 0 ? defaultValue : longAt(valueIndex);
+    }
+
+    @Override
+    public boolean getBoolean(String attributeName, boolean defaultValue) {
+        final int valueIndex = findValue(attributeName, FieldType.BOOLEAN);
+        return valueIndex < 0 ? defaultValue : byteAt(valueIndex) != 0;
+    }
+
+    @Override
+    public byte getByte(String attributeName, byte defaultValue) {
+        final int valueIndex = findValue(attributeName, FieldType.BYTE);
+        return valueIndex < 0 ? defaultValue : byteAt(valueIndex);
+    }
+
+    @Override
+    public float getFloat(String attributeName, float defaultValue) {
+        final int valueIndex = findValue(attributeName, FieldType.FLOAT);
+        return valueIndex < 0 ? defaultValue : Float.intBitsToFloat(intAt(valueIndex));
+    }
+
+    @Override
+    public double getDouble(String attributeName, double defaultValue) {
+        final int valueIndex = findValue(attributeName, FieldType.DOUBLE);
+        return valueIndex < 0
+               ? defaultValue : Double.longBitsToDouble(longAt(valueIndex));
+    }
+
+    /**
+     * Returns a string attribute without decoding it.  The view reads the
+     * bytes of this event, so it is only valid until the event changes.  For
+     * an event wrapping a buffer without a backing array, the view gets a
+     * copy of the value's bytes.
+     *
+     * @return the value, or null if it is not set
+     * @throws NoSuchAttributeTypeException if the attribute is not a string
+     */
+    public StringView getStringView(String attributeName) {
+        return getStringView(attributeName, new StringView());
+    }
+
+    /**
+     * Like {@link #getStringView(String)}, but points <tt>view</tt> at the
+     * value instead of creating a view.
+     */
+    public StringView getStringView(String attributeName, StringView view) {
+        final int valueIndex = findValue(attributeName, FieldType.STRING);
+        if (valueIndex < 0) {
+            return null;
+        }
+        final int valueLength = deserializeUINT16(valueIndex);
+        if (buffer == null) {
+            return view.set(bytes, valueIndex + 2, valueLength, encoding);
+        }
+        if (buffer.hasArray()) {
+            return view.set(buffer.array(), buffer.arrayOffset() + valueIndex + 2, valueLength, encoding);
+        }
+        final byte[] value = new byte[valueLength];
+        final ByteBuffer source = buffer.duplicate();
+        source.position(valueIndex + 2);
+        source.get(value);
+        return view.set(value, 0, valueLength, encoding);
+    }
+
+    @Override
+    protected Object get(String attributeName, FieldType type) {
+        final int valueIndex = findValue(attributeName, type);
+        return valueIndex < 0 ? null : get(type, valueIndex);
+    }
+
+    /**
+     * @return the index of the value of the attribute, or -1 if it is not set
+     * @throws NoSuchAttributeTypeException if the attribute has another type
+     */
+    private int findValue(String attributeName, FieldType type) {
+        final int fieldIndex = find(attributeName);
+        if (fieldIndex < 0) {
+            return -1;
+        }
+        final int tokenIndex = getTokenIndexFromFieldIndex(fieldIndex);
+        if (byteAt(tokenIndex) != type.token) {
+            throw wrongType(attributeName, FieldType.byToken(byteAt(tokenIndex)), type);
+        }
+        return tokenIndex + 1;
+    }
+
     private Object get(FieldType type, int valueIndex) {
         tempState.set(valueIndex);
         return get(type, tempState);
     }
 
     private Object get(FieldType type, DeserializerState state) {
-        return Deserializer.deserializeValue(state, bytes, type, encoding);
+        return buffer == null
+               ? Deserializer.deserializeValue(state, bytes, type, encoding)
+               : Deserializer.deserializeValue(state, buffer, type, encoding);
     }
 
     @Override
@@ -378,39 +975,84 @@ public final class ArrayEvent extends DefaultEvent {
 
     @Override
     public int serialize(byte[] bytes, int offset) {
-        System.arraycopy(this.bytes, 0, bytes, offset, length);
+        copyContent(bytes, offset);
+        ArrayEventInstrumentation.sized(length);
         return length;
     }
 
     @Override
     public int serialize(DataOutput output) throws IOException {
-        output.write(this.bytes, 0, length);
+        output.write(getSerializedBytes(), 0, length);
+        ArrayEventInstrumentation.sized(length);
         return length;
     }
 
     @Override
     public void deserialize(byte[] bytes, int offset, int length) {
-        this.length = length;
-        Arrays.fill(this.bytes, length, MAX_MESSAGE_SIZE, (byte) 0);
+        makeRoom(length);
         System.arraycopy(bytes, offset, this.bytes, 0, length);
+        this.length = length;
+        ArrayEventInstrumentation.sized(length);
         resetCaches();
     }
 
     @Override
     public void deserialize(DataInput stream, int length) throws IOException {
+        makeRoom(length);
         this.length = length;
         stream.readFully(bytes, 0, length);
+        ArrayEventInstrumentation.sized(length);
         resetCaches();
     }
 
+    @Override
+    public int serialize(ByteBuffer buffer) {
+        if (this.buffer == null) {
+            buffer.put(this.bytes, 0, length);
+        }
+        else {
+            buffer.put(this.buffer.duplicate());
+        }
+        ArrayEventInstrumentation.sized(length);
+        return length;
+    }
+
+    /**
+     * Copies the event out of the buffer, which the caller may then reuse;
+     * {@link #wrap(ByteBuffer)} reads it in place instead.
+     */
+    @Override
     public void deserialize(ByteBuffer buffer, int length) {
-        this.length = length;
+        makeRoom(length);
         buffer.get(bytes, 0, length);
+        this.length = length;
+        ArrayEventInstrumentation.sized(length);
         resetCaches();
     }
 
+    /**
+     * Makes room to read an event of <tt>length</tt> bytes over this one.
+     */
+    private void makeRoom(int length) {
+        buffer = null;
+        if (shared) {
+            // The old contents are not needed, and a copy may still be using them.
+            bytes = new byte[Math.max(INITIAL_CAPACITY, length)];
+            shared = false;
+        }
+        if (length > bytes.length) {
+            if (length > MAX_MESSAGE_SIZE) {
+                throw new EventSystemException("Event size limit is " + MAX_MESSAGE_SIZE + " bytes.");
+            }
+            // The old contents are not needed.
+            this.length = 0;
+            ensureCapacity(length);
+        }
+    }
+
     private void resetCaches() {
         this.encoding = readEncoding();
+        this.contentHashed = false;
     }
 
     @Override
@@ -419,30 +1061,78 @@ public final class ArrayEvent extends DefaultEvent {
     }
     
     public int getCapacity() {
-        return bytes.length;
+        return buffer == null ? bytes.length : length;
     }
 
+    /**
+     * The copy shares this event's buffer until either event is modified; the
+     * one being modified then copies the buffer, so a copy that is only read
+     * allocates no buffer at all.  An event wrapping the caller's array or
+     * buffer is copied at once, since the caller may change it.
+     */
     @Override
     public Event copy() {
-        STATS.get(ArrayEventStats.COPIES).increment();
-        return new ArrayEvent(bytes, length, encoding);
+        ArrayEventInstrumentation.count(ArrayEventStats.COPIES);
+        if (wrapper || buffer != null) {
+            final ArrayEvent copy = new ArrayEvent(Math.max(INITIAL_CAPACITY, length), length, encoding);
+            copyContent(copy.bytes, 0);
+            return copy;
+        }
+        return new ArrayEvent(this);
+    }
+
+    @Override
+    byte[] getSerializedBytes() {
+        if (buffer == null) {
+            return bytes;
+        }
+        if (buffer.hasArray() && buffer.arrayOffset() == 0) {
+            return buffer.array();
+        }
+        return serialize();
+    }
+
+    /**
+     * The hash is computed over the serialized bytes and kept until the event
+     * is modified, so deduplicating an unchanged event hashes it only once.
+     * An event wrapping the caller's array or buffer is hashed on every call,
+     * since the caller may change it.
+     */
+    @Override
+    public long contentHash() {
+        if (wrapper || buffer != null) {
+            return super.contentHash();
+        }
+        if (!contentHashed) {
+            contentHash = super.contentHash();
+            contentHashed = true;
+        }
+        return contentHash;
     }
 
     private int find(String key) {
         int count = 0;
         try {
-            final byte[] keyBytes = EncodedString.getBytes(key, ENCODING_STRINGS[DEFAULT_ENCODING]);
+            // ASCII names, the usual case, are compared without encoding them.
+            final byte[] keyBytes =
+                    isAscii(key) ? null : EncodedString.getBytes(key, ENCODING_STRINGS[DEFAULT_ENCODING]);
             for (tempState.set(getValueListIndex()); tempState.currentIndex() < length; ) {
                 ++count;
                 final int keyIndex = tempState.currentIndex();
-                final int keyLength = bytes[keyIndex] & 0xff;
-                if (arrayEquals(bytes, keyIndex + 1, keyLength, keyBytes, 0, keyBytes.length)) {
+                final int keyLength = byteAt(keyIndex) & 0xff;
+                if (buffer == null
+                    ? (keyBytes == null
+                       ? asciiEquals(bytes, keyIndex + 1, keyLength, key)
+                       : arrayEquals(bytes, keyIndex + 1, keyLength, keyBytes, 0, keyBytes.length))
+                    : (keyBytes == null
+                       ? asciiEquals(buffer, keyIndex + 1, keyLength, key)
+                       : arrayEquals(buffer, keyIndex + 1, keyLength, keyBytes))) {
                     return keyIndex;
                 }
                 else {
                     // Wrong field.  Skip it, the type token, and the value.
                     tempState.incr(1 + keyLength); // field name
-                    final FieldType type = FieldType.byToken(bytes[tempState.currentIndex()]);
+                    final FieldType type = FieldType.byToken(byteAt(tempState.currentIndex()));
                     tempState.incr(1); // type token
                     // Skip the value without deserializing it
                     tempState.incr(getValueByteSize(type, tempState.currentIndex()));
@@ -455,8 +1145,7 @@ public final class ArrayEvent extends DefaultEvent {
             return -1;
         }
         finally {
-            STATS.get(ArrayEventStats.FINDS).increment();
-            STATS.get(ArrayEventStats.PARSES).add(count);
+            ArrayEventInstrumentation.found(count);
         }
     }
 
@@ -465,53 +1154,50 @@ public final class ArrayEvent extends DefaultEvent {
     }
 
     private int deserializeUBYTE(int index) {
-        return (bytes[index] & 0xff);
+        return (byteAt(index) & 0xff);
     }
 
     private int deserializeUINT16(int index) {
-        return (((bytes[index] & 0xff) << 8) | (bytes[index + 1] & 0xff));
+        return shortAt(index) & 0xffff;
     }
 
     public int getValueByteSize(FieldType type, int valueIndex) {
-        if (type.isConstantSize()) {
-            return type.getConstantSize();
-        }
-        if (type == FieldType.STRING) {
-            return 2 + deserializeUINT16(valueIndex);
-        }
-        if (type.isArray()) {
-            final FieldType componentType = type.getComponentType();
-            
-            if (type.isNullableArray()) {
-                // array_len + bitset_len + bitset + array
-                DeserializerState ds = new DeserializerState();
-                ds.incr(valueIndex+2); // array length
-                final int count = Deserializer.deserializeBitSetCount(ds, bytes);
-                if (componentType.isConstantSize()) {
-                    ds.incr(componentType.getConstantSize() * count);
-                } else {
-                    // If the field is not constant-width, we must walk it.  If there are N
-                    // bits set in the BitSet, consume N objects of the component type.
-                    for (int i=0; i<count; i++) {
-                        ds.incr(getValueByteSize(componentType, ds.currentIndex()));
-                    }
-                }
-                return ds.currentIndex() - valueIndex;
-            }
-            
-            if (componentType.isConstantSize()) {
-                return 2 + deserializeUINT16(valueIndex) * componentType.getConstantSize();
-            } else {
-                DeserializerState ds = new DeserializerState();
-                ds.incr(valueIndex); // array length
-                final int count = Deserializer.deserializeUINT16(ds, bytes);
-                for (int i=0; i<count; i++) {
-                  ds.incr(getValueByteSize(componentType, ds.currentIndex()));
-                }
-                return ds.currentIndex() - valueIndex;
-            }
-        }
-        throw new IllegalStateException("Unrecognized type: " + type);
+        return buffer == null
+               ? Deserializer.getValueByteSize(type, bytes, valueIndex)
+               : Deserializer.getValueByteSize(type, buffer, valueIndex);
+    }
+
+    // Reads go to the wrapped buffer if there is one, otherwise to bytes.
+
+    private byte byteAt(int index) {
+        return buffer == null ? bytes[index] : buffer.get(index);
+    }
+
+    private short shortAt(int index) {
+        return buffer == null ? NumberCodec.decodeShortUnchecked(bytes, index) : buffer.getShort(index);
+    }
+
+    private int intAt(int index) {
+        return buffer == null ? NumberCodec.decodeIntUnchecked(bytes, index) : buffer.getInt(index);
+    }
+
+    private long longAt(int index) {
+        return buffer == null ? NumberCodec.decodeLongUnchecked(bytes, index) : buffer.getLong(index);
+    }
+
+    private byte readByte(DeserializerState state) {
+        final byte b = byteAt(state.currentIndex());
+        state.incr(1);
+        return b;
+    }
+
+    /**
+     * Reads an event or attribute name, which are both in the default encoding.
+     */
+    private String readWord(DeserializerState state) {
+        return buffer == null
+               ? Deserializer.deserializeATTRIBUTEWORD(state, bytes)
+               : Deserializer.deserializeATTRIBUTEWORD(state, buffer);
     }
 
     /**
@@ -521,11 +1207,15 @@ public final class ArrayEvent extends DefaultEvent {
      * the first byte of a field or at the end of the serialized event.
      */
     private void shiftTail(int from, int to) {
-        STATS.get(ArrayEventStats.SHIFTS).increment();
+        ArrayEventInstrumentation.count(ArrayEventStats.SHIFTS);
+        beforeWrite();
         final int move = to - from;
         if (move == 0) {
             return;
         }
+        if (!ensureCapacity(length + move)) {
+            throw new EventSystemException("Event size limit is " + MAX_MESSAGE_SIZE + " bytes.");
+        }
         System.arraycopy(bytes, from, bytes, to, length - from);
         length += move;
     }
@@ -536,11 +1226,12 @@ public final class ArrayEvent extends DefaultEvent {
 
     @Override
     public void copyFrom(Event event) {
-        STATS.get(ArrayEventStats.COPIES).increment();
+        ArrayEventInstrumentation.count(ArrayEventStats.COPIES);
         reset();
         if (event instanceof ArrayEvent) {
             final ArrayEvent ae = (ArrayEvent) event;
-            System.arraycopy(ae.bytes, 0, bytes, 0, ae.length);
+            ensureCapacity(ae.length);
+            ae.copyContent(bytes, 0);
             length = ae.length;
             tempState.reset();
             encoding = ae.encoding;
@@ -550,23 +1241,25 @@ public final class ArrayEvent extends DefaultEvent {
         }
     }
 
-    public static Map<ArrayEventStats, MutableInt> getStats() {
-        return STATS;
+    /**
+     * @return the current statistics; see {@link ArrayEventInstrumentation}
+     *         for histograms and JMX
+     */
+    public static Map<ArrayEventStats, Long> getStats() {
+        return ArrayEventInstrumentation.getInstance().getSnapshot();
     }
 
     public static Map<ArrayEventStats, Integer> getStatsSnapshot() {
         final Map<ArrayEventStats, Integer> statsCopy =
             new EnumMap<ArrayEventStats, Integer>(ArrayEventStats.class);
-        for (Entry<ArrayEventStats, MutableInt> entry : STATS.entrySet()) {
+        for (Entry<ArrayEventStats, Long> entry : getStats().entrySet()) {
           statsCopy.put(entry.getKey(), entry.getValue().intValue());
         }
         return statsCopy;
     }
 
     public static void resetStats() {
-        for (ArrayEventStats counter : ArrayEventStats.values()) {
-            STATS.put(counter, new MutableInt());
-        }
+        ArrayEventInstrumentation.getInstance().reset();
     }
 
     /**
@@ -589,28 +1282,50 @@ public final class ArrayEvent extends DefaultEvent {
         final byte[] tempBytes = bytes;
         final int tempLength = length;
         final short tempEncoding = encoding;
+        final boolean tempWrapper = wrapper;
+        final boolean tempShared = shared;
+        final ByteBuffer tempBuffer = buffer;
+        final long tempContentHash = contentHash;
+        final boolean tempContentHashed = contentHashed;
         this.bytes = event.bytes;
         this.length = event.length;
         this.encoding = event.encoding;
+        this.wrapper = event.wrapper;
+        this.shared = event.shared;
+        this.buffer = event.buffer;
+        this.contentHash = event.contentHash;
+        this.contentHashed = event.contentHashed;
         event.bytes = tempBytes;
         event.length = tempLength;
         event.encoding = tempEncoding;
-        STATS.get(ArrayEventStats.SWAPS).increment();
+        event.wrapper = tempWrapper;
+        event.shared = tempShared;
+        event.buffer = tempBuffer;
+        event.contentHash = tempContentHash;
+        event.contentHashed = tempContentHashed;
+        ArrayEventInstrumentation.count(ArrayEventStats.SWAPS);
     }
 
+    /**
+     * Event lifecycle and work counters.  DELETIONS counts events released
+     * to an {@link ArrayEventPool} and REUSES counts events acquired from
+     * one; neither depends on garbage collection.  HIGHWATER is the most
+     * events acquired from pools and not yet released at any one time, so
+     * it stays zero without a pool.
+     */
     public static enum ArrayEventStats {
-        CREATIONS, DELETIONS, HIGHWATER, SHIFTS, FINDS, PARSES, COPIES, SWAPS, WRAPS
+        CREATIONS, DELETIONS, HIGHWATER, SHIFTS, FINDS, PARSES, COPIES, SWAPS, WRAPS, REUSES
     }
 
     /**
-     * <p>Return a new ArrayEvent with an unusually small buffer. The maximum length
-     * for this trimmed ArrayEvent is its initial length plus the number
-     * of bytes passed in. This should only be used
-     * for testing operations, when we might want to store a large number of
-     * events in memory at once.
+     * <p>Return a new ArrayEvent with a buffer just large enough for this
+     * event plus the number of bytes passed in.  The trimmed event grows like
+     * any other if more is written to it; {@link #trimToSize()} trims an
+     * event in place.
      * </p>
      *
-     * @param excess the number of bytes the returned event can grow.
+     * @param excess the number of bytes the returned event can grow without
+     *               reallocating.
      *
      * @return the new ArrayEvent.
      */
@@ -619,10 +1334,57 @@ public final class ArrayEvent extends DefaultEvent {
         if (overrun > 0) {
             throw new IllegalArgumentException("Attempted to create an event " + overrun + " bytes too long");
         }
-        return new ArrayEvent(bytes, 0, length, excess);
+        final ArrayEvent trimmed = new ArrayEvent(length + excess, length, encoding);
+        copyContent(trimmed.bytes, 0);
+        return trimmed;
     }
 
     
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); ++i) {
+            if (s.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean asciiEquals(byte[] bytes, int offset, int length, String s) {
+        if (length != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (bytes[offset + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean asciiEquals(ByteBuffer buffer, int offset, int length, String s) {
+        if (length != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (buffer.get(offset + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean arrayEquals(ByteBuffer buffer, int offset, int length, byte[] key) {
+        if (length != key.length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (buffer.get(offset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static boolean arrayEquals(final byte[] b1, int o1, final int l1, final byte[] b2, final int o2, final int l2) {
         if (l1 != l2) {
             return false;
@@ -665,19 +1427,19 @@ public final class ArrayEvent extends DefaultEvent {
                 FieldType type;
                 Object value;
                 try {
-                    field = Deserializer.deserializeATTRIBUTEWORD(ds, bytes);
+                    field = readWord(ds);
                 }
                 catch (Exception e) {
                     throw new Exception("Error when reading field name: " + e.getMessage());
                 }
                 try {
-                    type = FieldType.byToken(Deserializer.deserializeBYTE(ds, bytes));
+                    type = FieldType.byToken(readByte(ds));
                 }
                 catch (Exception e) {
                     throw new Exception("Error when reading field name: " + e.getMessage());
                 }
                 try {
-                    value = Deserializer.deserializeValue(ds, bytes, type, encoding);
+                    value = get(type, ds);
                 }
                 catch (Exception e) {
                     throw new Exception("Error when reading field name: " + e.getMessage());
@@ -724,8 +1486,8 @@ public final class ArrayEvent extends DefaultEvent {
             // Deserialize name,type eagerly; deserialize value lazily. 
             currentFieldIndex = nextFieldIndex;
             accessorTempState.set(currentFieldIndex);
-            setName(Deserializer.deserializeATTRIBUTEWORD(accessorTempState, bytes));
-            setType(FieldType.byToken(Deserializer.deserializeBYTE(accessorTempState, bytes)));
+            setName(readWord(accessorTempState));
+            setType(FieldType.byToken(readByte(accessorTempState)));
             // Clear any existing value, to indicate that we have not cached it yet.
             setValue(null);
             // Remember where the current value starts.
@@ -0,0 +1,231 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.lwes.ArrayEvent.ArrayEventStats;
+import org.lwes.util.Histogram;
+import org.lwes.util.StripedCounter;
+
+/**
+ * <p>Collects the {@link ArrayEventStats} of all ArrayEvents, along with
+ * histograms of the fields scanned per lookup and of event sizes, and
+ * exports them as the MBean <tt>org.lwes:type=ArrayEvent</tt>.  Counters are
+ * striped, so updating them from many threads is cheap and exact.</p>
+ * <p>Setting the <tt>org.lwes.ArrayEventInstrumentation.disable</tt> system
+ * property turns all of this off.  The switch is a static final field, so
+ * the JIT compiler drops the instrumentation from ArrayEvent entirely, and
+ * every statistic reads as zero.</p>
+ */
+public final class ArrayEventInstrumentation implements ArrayEventInstrumentationMBean {
+    private static transient Log log = LogFactory.getLog(ArrayEventInstrumentation.class);
+
+    public static final String OBJECT_NAME = "org.lwes:type=ArrayEvent";
+
+    public static final boolean ENABLED =
+            !Boolean.getBoolean(ArrayEventInstrumentation.class.getName() + ".disable");
+
+    /* buckets up to MAX_MESSAGE_SIZE, with room for a larger last bucket */
+    private static final int HISTOGRAM_BUCKETS = 18;
+
+    private static final ArrayEventInstrumentation INSTANCE = new ArrayEventInstrumentation();
+
+    private final StripedCounter[] counters = new StripedCounter[ArrayEventStats.values().length];
+    /* events acquired from pools and not yet released, which change seldom
+       enough not to need striping */
+    private final AtomicLong live = new AtomicLong();
+    private final AtomicLong highwater = new AtomicLong();
+    private final Histogram fieldsScanned = new Histogram(HISTOGRAM_BUCKETS);
+    private final Histogram eventSizes = new Histogram(HISTOGRAM_BUCKETS);
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+            }
+            catch (Exception e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Unable to register " + OBJECT_NAME, e);
+                }
+            }
+        }
+    }
+
+    private ArrayEventInstrumentation() {
+        for (int i = 0; i < counters.length; ++i) {
+            counters[i] = new StripedCounter();
+        }
+    }
+
+    public static ArrayEventInstrumentation getInstance() {
+        return INSTANCE;
+    }
+
+    static void count(ArrayEventStats stat) {
+        if (ENABLED) {
+            INSTANCE.counters[stat.ordinal()].increment();
+        }
+    }
+
+    static void count(ArrayEventStats stat, int n) {
+        if (ENABLED) {
+            INSTANCE.counters[stat.ordinal()].add(n);
+        }
+    }
+
+    static void created() {
+        if (ENABLED) {
+            INSTANCE.counters[ArrayEventStats.CREATIONS.ordinal()].increment();
+        }
+    }
+
+    static void reused() {
+        if (ENABLED) {
+            INSTANCE.counters[ArrayEventStats.REUSES.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Records an event acquired from a pool, new or reused.
+     */
+    static void acquired() {
+        if (ENABLED) {
+            final long inUse = INSTANCE.live.incrementAndGet();
+            long max;
+            while (inUse > (max = INSTANCE.highwater.get()) && !INSTANCE.highwater.compareAndSet(max, inUse)) {
+                // Another thread raised the mark; try again.
+            }
+        }
+    }
+
+    /**
+     * Records an event released to a pool.
+     *
+     * @param acquired whether the event was acquired from a pool, rather
+     *                 than created directly
+     */
+    static void released(boolean acquired) {
+        if (ENABLED) {
+            INSTANCE.counters[ArrayEventStats.DELETIONS.ordinal()].increment();
+            if (acquired) {
+                INSTANCE.live.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Records a lookup that scanned <tt>fields</tt> fields.
+     */
+    static void found(int fields) {
+        if (ENABLED) {
+            INSTANCE.counters[ArrayEventStats.FINDS.ordinal()].increment();
+            INSTANCE.counters[ArrayEventStats.PARSES.ordinal()].add(fields);
+            INSTANCE.fieldsScanned.record(fields);
+        }
+    }
+
+    /**
+     * Records an event of <tt>length</tt> bytes being read or written.
+     */
+    static void sized(int length) {
+        if (ENABLED) {
+            INSTANCE.eventSizes.record(length);
+        }
+    }
+
+    public long get(ArrayEventStats stat) {
+        return stat == ArrayEventStats.HIGHWATER ? highwater.get() : counters[stat.ordinal()].sum();
+    }
+
+    public Map<ArrayEventStats, Long> getSnapshot() {
+        final Map<ArrayEventStats, Long> snapshot = new EnumMap<ArrayEventStats, Long>(ArrayEventStats.class);
+        for (ArrayEventStats stat : ArrayEventStats.values()) {
+            snapshot.put(stat, get(stat));
+        }
+        return snapshot;
+    }
+
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public long getCreations() {
+        return get(ArrayEventStats.CREATIONS);
+    }
+
+    public long getDeletions() {
+        return get(ArrayEventStats.DELETIONS);
+    }
+
+    public long getReuses() {
+        return get(ArrayEventStats.REUSES);
+    }
+
+    public long getHighwater() {
+        return get(ArrayEventStats.HIGHWATER);
+    }
+
+    public long getShifts() {
+        return get(ArrayEventStats.SHIFTS);
+    }
+
+    public long getFinds() {
+        return get(ArrayEventStats.FINDS);
+    }
+
+    public long getParses() {
+        return get(ArrayEventStats.PARSES);
+    }
+
+    public long getCopies() {
+        return get(ArrayEventStats.COPIES);
+    }
+
+    public long getSwaps() {
+        return get(ArrayEventStats.SWAPS);
+    }
+
+    public long getWraps() {
+        return get(ArrayEventStats.WRAPS);
+    }
+
+    public long[] getFieldsScannedHistogram() {
+        return fieldsScanned.getCounts();
+    }
+
+    public long[] getEventSizeHistogram() {
+        return eventSizes.getCounts();
+    }
+
+    public long[] getHistogramLowerBounds() {
+        return eventSizes.getLowerBounds();
+    }
+
+    /**
+     * Zeroes every statistic, including the count of events in use.
+     */
+    public void reset() {
+        for (StripedCounter counter : counters) {
+            counter.reset();
+        }
+        live.set(0);
+        highwater.set(0);
+        fieldsScanned.reset();
+        eventSizes.reset();
+    }
+}
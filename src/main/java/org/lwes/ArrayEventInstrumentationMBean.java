@@ -0,0 +1,58 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes;
+
+/**
+ * The JMX view of {@link ArrayEvent} statistics, registered as
+ * <tt>org.lwes:type=ArrayEvent</tt>.
+ */
+public interface ArrayEventInstrumentationMBean {
+
+    boolean isEnabled();
+
+    long getCreations();
+
+    long getDeletions();
+
+    long getReuses();
+
+    long getHighwater();
+
+    long getShifts();
+
+    long getFinds();
+
+    long getParses();
+
+    long getCopies();
+
+    long getSwaps();
+
+    long getWraps();
+
+    /**
+     * @return how many lookups scanned each number of fields, bucketed as
+     *         given by {@link #getHistogramLowerBounds()}
+     */
+    long[] getFieldsScannedHistogram();
+
+    /**
+     * @return how many events of each size were serialized or deserialized,
+     *         bucketed as given by {@link #getHistogramLowerBounds()}
+     */
+    long[] getEventSizeHistogram();
+
+    /**
+     * @return the smallest value counted by each bucket of the histograms
+     */
+    long[] getHistogramLowerBounds();
+
+    void reset();
+}
@@ -0,0 +1,195 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * <p>A bounded pool of {@link ArrayEvent}s, so that busy code can reuse
+ * events and their buffers, which keep the size they have grown to, instead
+ * of allocating new ones.  {@link #acquire()} returns an empty event;
+ * {@link #release(ArrayEvent)} hands it back when the caller is done with it.
+ * Once released, an event must not be used again.  Pools are thread safe.</p>
+ * <p>Events that wrap a caller's byte array are never pooled, since the pool
+ * would otherwise write into a buffer it does not own, and events beyond the
+ * maximum size of the pool are left to the garbage collector.  An event
+ * reading a ByteBuffer through {@link ArrayEvent#wrap(java.nio.ByteBuffer)} never
+ * writes to it, so it is pooled; releasing it lets go of the buffer.</p>
+ * <p>In debug mode, set with the constructor or the
+ * <tt>org.lwes.ArrayEventPool.debug</tt> system property, the pool records
+ * where each event was acquired and logs a warning, with that stack trace,
+ * for every event that is garbage collected without being released.</p>
+ */
+public class ArrayEventPool {
+    private static transient Log log = LogFactory.getLog(ArrayEventPool.class);
+
+    public static final int DEFAULT_MAX_SIZE = 64;
+
+    private final BlockingQueue<ArrayEvent> idle;
+    private final int maxSize;
+    private final boolean debug;
+
+    /* acquired events that have not been released yet, in debug mode */
+    private final Set<AcquiredReference> acquired;
+    private final ReferenceQueue<ArrayEvent> collected;
+    private final AtomicInteger leaks = new AtomicInteger();
+
+    public ArrayEventPool() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize the maximum number of idle events to keep
+     */
+    public ArrayEventPool(int maxSize) {
+        this(maxSize, Boolean.getBoolean(ArrayEventPool.class.getName() + ".debug"));
+    }
+
+    /**
+     * @param maxSize the maximum number of idle events to keep
+     * @param debug   whether to track unreleased events
+     */
+    public ArrayEventPool(int maxSize, boolean debug) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive");
+        }
+        this.idle = new ArrayBlockingQueue<ArrayEvent>(maxSize);
+        this.maxSize = maxSize;
+        this.debug = debug;
+        this.acquired = debug ? Collections.synchronizedSet(new HashSet<AcquiredReference>()) : null;
+        this.collected = debug ? new ReferenceQueue<ArrayEvent>() : null;
+    }
+
+    /**
+     * @return an empty event, reused from the pool if one is idle
+     */
+    public ArrayEvent acquire() {
+        ArrayEvent event = idle.poll();
+        if (event == null) {
+            event = new ArrayEvent();
+        }
+        else {
+            event.reset();
+            event.pooled.set(false);
+            ArrayEventInstrumentation.reused();
+        }
+        event.acquired = true;
+        ArrayEventInstrumentation.acquired();
+        if (debug) {
+            checkLeaks();
+            event.acquiredReference = new AcquiredReference(event, collected);
+            acquired.add(event.acquiredReference);
+        }
+        return event;
+    }
+
+    /**
+     * Returns an event to the pool.  The event need not have come from this
+     * pool, but the caller must not use it afterwards.
+     *
+     * @param event the event to recycle
+     * @throws IllegalStateException if the event was already released
+     */
+    public void release(ArrayEvent event) {
+        if (!event.pooled.compareAndSet(false, true)) {
+            throw new IllegalStateException("Event was released twice");
+        }
+        ArrayEventInstrumentation.released(event.acquired);
+        event.acquired = false;
+        if (event.acquiredReference != null) {
+            event.acquiredReference.release();
+            event.acquiredReference = null;
+        }
+        if (debug) {
+            checkLeaks();
+        }
+        if (event.isWrapper()) {
+            return;
+        }
+        event.releaseBuffer();
+        if (!idle.offer(event)) {
+            event.pooled.set(false);
+        }
+    }
+
+    /**
+     * @return the number of idle events in the pool
+     */
+    public int size() {
+        return idle.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    /**
+     * @return the number of acquired events that were garbage collected
+     *         without being released, as seen so far in debug mode
+     */
+    public int getLeakCount() {
+        if (debug) {
+            checkLeaks();
+        }
+        return leaks.get();
+    }
+
+    /**
+     * @return the number of acquired events not yet released, in debug mode
+     */
+    public int getAcquiredCount() {
+        if (!debug) {
+            throw new IllegalStateException("Acquired events are only tracked in debug mode");
+        }
+        checkLeaks();
+        return acquired.size();
+    }
+
+    private void checkLeaks() {
+        AcquiredReference reference;
+        while ((reference = (AcquiredReference) collected.poll()) != null) {
+            if (acquired.remove(reference)) {
+                leaks.incrementAndGet();
+                log.warn("An ArrayEvent was garbage collected without being released", reference.acquisition);
+            }
+        }
+    }
+
+    /**
+     * Remembers where an event was acquired, without keeping it reachable.
+     */
+    final class AcquiredReference extends WeakReference<ArrayEvent> {
+        private final Throwable acquisition;
+
+        AcquiredReference(ArrayEvent event, ReferenceQueue<ArrayEvent> queue) {
+            super(event, queue);
+            this.acquisition = new Throwable("Acquired by " + Thread.currentThread().getName());
+        }
+
+        void release() {
+            acquired.remove(this);
+            clear();
+        }
+    }
+}
@@ -227,7 +227,7 @@ public class BaseType {
                 switch (type.getComponentType()) {
                     case STRING:
                         // length of each string in bytes + 2 for the length number
-                        count += EncodedString.getBytes((String) o, Event.ENCODING_STRINGS[encoding]).length + 2;
+                        count += EncodedString.getByteLength((String) o, Event.ENCODING_STRINGS[encoding]) + 2;
                         break;
                     default:
                         count += type.getComponentType().getConstantSize();
@@ -250,14 +250,14 @@ public class BaseType {
             switch (type) {
                 case STRING:
                 /* add size of string plus two bytes for the length */
-                    return EncodedString.getBytes((String) typeObject,
-                                                  Event.ENCODING_STRINGS[encoding]).length + 2;
+                    return EncodedString.getByteLength((String) typeObject,
+                                                       Event.ENCODING_STRINGS[encoding]) + 2;
                 case STRING_ARRAY: {
                     int count = 2; // start with the length of the array
                     String[] anArray = (String[]) typeObject;
                     for (String s : anArray) {
                         if (s != null) {
-                            count += EncodedString.getBytes(s, Event.ENCODING_STRINGS[encoding]).length + 2;
+                            count += EncodedString.getByteLength(s, Event.ENCODING_STRINGS[encoding]) + 2;
                         }
                     }
                     return count;
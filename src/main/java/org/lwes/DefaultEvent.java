@@ -14,18 +14,27 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.net.InetAddress;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.TreeSet;
 
+import org.lwes.serializer.Deserializer;
+import org.lwes.serializer.DeserializerState;
 import org.lwes.util.EncodedString;
 import org.lwes.util.IPAddress;
 
 public abstract class DefaultEvent implements Event {
     private static final BigInteger UINT64_MASK = new BigInteger("ffffffffffffffff", 16);
 
+    /* per-thread space for serializing into buffers without a backing array */
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>();
+
     public void setInt16Array(String attributeName, short[] value) throws EventSystemException {
         set(attributeName, FieldType.INT16_ARRAY, value);
     }
@@ -346,6 +355,80 @@ public abstract class DefaultEvent implements Event {
         return (IPAddress) get(attributeName);
     }
 
+    public short getInt16(String attributeName, short defaultValue) {
+        final Object value = get(attributeName, FieldType.INT16);
+        return value == null ? defaultValue : (Short) value;
+    }
+
+    public int getUInt16(String attributeName, int defaultValue) {
+        final Object value = get(attributeName, FieldType.UINT16);
+        return value == null ? defaultValue : (Integer) value;
+    }
+
+    public int getInt32(String attributeName, int defaultValue) {
+        final Object value = get(attributeName, FieldType.INT32);
+        return value == null ? defaultValue : (Integer) value;
+    }
+
+    public long getUInt32(String attributeName, long defaultValue) {
+        final Object value = get(attributeName, FieldType.UINT32);
+        return value == null ? defaultValue : (Long) value;
+    }
+
+    public long getInt64(String attributeName, long defaultValue) {
+        final Object value = get(attributeName, FieldType.INT64);
+        return value == null ? defaultValue : (Long) value;
+    }
+
+    public long getUInt64(String attributeName, long defaultValue) {
+        final Object value = get(attributeName, FieldType.UINT64);
+        return value == null ? defaultValue : ((BigInteger) value).longValue();
+    }
+
+    public boolean getBoolean(String attributeName, boolean defaultValue) {
+        final Object value = get(attributeName, FieldType.BOOLEAN);
+        return value == null ? defaultValue : (Boolean) value;
+    }
+
+    public byte getByte(String attributeName, byte defaultValue) {
+        final Object value = get(attributeName, FieldType.BYTE);
+        return value == null ? defaultValue : (Byte) value;
+    }
+
+    public float getFloat(String attributeName, float defaultValue) {
+        final Object value = get(attributeName, FieldType.FLOAT);
+        return value == null ? defaultValue : (Float) value;
+    }
+
+    public double getDouble(String attributeName, double defaultValue) {
+        final Object value = get(attributeName, FieldType.DOUBLE);
+        return value == null ? defaultValue : (Double) value;
+    }
+
+    /**
+     * Returns the value of an attribute after checking its type.  Please
+     * override this in subclasses to avoid looking the attribute up twice.
+     *
+     * @return the value, or null if the attribute is not set
+     * @throws NoSuchAttributeTypeException if the attribute has another type
+     */
+    protected Object get(String attributeName, FieldType type) {
+        final FieldType actualType = getType(attributeName);
+        if (actualType == null) {
+            return null;
+        }
+        if (actualType != type) {
+            throw wrongType(attributeName, actualType, type);
+        }
+        return get(attributeName);
+    }
+
+    protected static NoSuchAttributeTypeException wrongType(String attributeName, FieldType actualType,
+                                                            FieldType expectedType) {
+        return new NoSuchAttributeTypeException("Attribute " + attributeName + " has type " + actualType +
+                                                ", not " + expectedType);
+    }
+
     public final byte[] serialize() {
         final byte[] bytes = new byte[getBytesSize()];
         final int length = serialize(bytes, 0);
@@ -363,14 +446,45 @@ public abstract class DefaultEvent implements Event {
         return toString().replaceAll("\n", " ");
     }
 
+    /**
+     * @return the serialized event, at least {@link #getBytesSize()} bytes
+     *         long, which callers must not modify.  Subclasses that already
+     *         hold their serialized form return it without copying.
+     */
+    byte[] getSerializedBytes() {
+        return serialize();
+    }
+
+    public long contentHash() {
+        return EventContent.hash(getSerializedBytes(), getBytesSize());
+    }
+
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        final long hash = contentHash();
+        return (int) (hash ^ (hash >>> 32));
     }
 
+    /**
+     * Events are equal when they have the same name and the same fields, with
+     * the same types and serialized values, in any order.
+     */
     @Override
     public boolean equals(Object o) {
-        return o instanceof Event && toString().equals(o.toString());
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Event)) {
+            return false;
+        }
+        final Event event = (Event) o;
+        final int length = getBytesSize();
+        if (event.getBytesSize() != length) {
+            return false;
+        }
+        final byte[] bytes = event instanceof DefaultEvent
+                             ? ((DefaultEvent) event).getSerializedBytes() : event.serialize();
+        return EventContent.equals(getSerializedBytes(), bytes, length);
     }
 
     // These are here mainly for @Override to work properly
@@ -406,10 +520,83 @@ public abstract class DefaultEvent implements Event {
 
     public abstract void deserialize(DataInput stream, int length) throws IOException;
 
+    public int serialize(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            if (buffer.remaining() < getBytesSize()) {
+                throw new BufferOverflowException();
+            }
+            final int length = serialize(buffer.array(), buffer.arrayOffset() + buffer.position());
+            buffer.position(buffer.position() + length);
+            return length;
+        }
+        final int size = getBytesSize();
+        if (buffer.remaining() < size) {
+            throw new BufferOverflowException();
+        }
+        byte[] scratch = SCRATCH.get();
+        if (scratch == null || scratch.length < size) {
+            scratch = new byte[size];
+            SCRATCH.set(scratch);
+        }
+        final int length = serialize(scratch, 0);
+        buffer.put(scratch, 0, length);
+        return length;
+    }
+
+    /**
+     * Reads an event from the buffer's position.  A heap buffer is read
+     * through its backing array; any other buffer, such as a direct one, is
+     * decoded in place by {@link #deserializeFields(ByteBuffer, int, int)}.
+     * Neither copies the event into a byte array.
+     */
+    public void deserialize(ByteBuffer buffer, int length) {
+        if (buffer.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        if (buffer.hasArray()) {
+            deserialize(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+        }
+        else {
+            final ByteBuffer bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN
+                                         ? buffer : buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+            deserializeFields(bigEndian, buffer.position(), length);
+        }
+        buffer.position(buffer.position() + length);
+    }
+
+    /**
+     * Decodes the event at <tt>offset</tt> in a big-endian buffer field by
+     * field, with the ByteBuffer methods of {@link Deserializer}.  This
+     * resets the event and sets each field; subclasses whose byte array
+     * deserialization does more override it to match.
+     *
+     * @throws EventSystemException if the event is not <tt>length</tt> bytes
+     */
+    protected void deserializeFields(ByteBuffer buffer, int offset, int length) {
+        reset();
+        final DeserializerState state = new DeserializerState(offset);
+        setEventName(Deserializer.deserializeEVENTWORD(state, buffer));
+        final int count = Deserializer.deserializeUINT16(state, buffer);
+        for (int i = 0; i < count; ++i) {
+            final String attribute = Deserializer.deserializeATTRIBUTEWORD(state, buffer);
+            final FieldType type = FieldType.byToken(Deserializer.deserializeBYTE(state, buffer));
+            set(attribute, type, Deserializer.deserializeValue(state, buffer, type, getEncoding()));
+        }
+        if (state.currentIndex() - offset != length) {
+            throw new EventSystemException(
+                    "Expected to deserialize " + length + " bytes, but actually read " +
+                    (state.currentIndex() - offset));
+        }
+    }
+
     public abstract int getBytesSize();
 
     public abstract Event copy();
 
+    public FrozenEvent freeze() {
+        return new FrozenEvent(this);
+    }
+
     public void copyFrom(Event event) {
         reset();
         setEventName(event.getEventName());
@@ -455,7 +642,11 @@ public abstract class DefaultEvent implements Event {
 
     protected static void checkShortStringLength(String string, short encoding, int maxLength)
             throws EventSystemException {
-        final int serializedLength = EncodedString.getBytes(string, Event.ENCODING_STRINGS[encoding]).length;
+        // A char takes at most three bytes, so short strings need no measuring.
+        if (string.length() * 3 <= maxLength) {
+            return;
+        }
+        final int serializedLength = EncodedString.getByteLength(string, Event.ENCODING_STRINGS[encoding]);
         if (serializedLength > maxLength) {
             throw new EventSystemException(
                     "String " + string + " was longer than maximum length: " + serializedLength + " > " + maxLength);
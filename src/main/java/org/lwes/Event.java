@@ -17,6 +17,7 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.Set;
@@ -209,6 +210,33 @@ public interface Event extends Iterable<FieldAccessor> {
 
     IPAddress getIPAddressObj(String attributeName);
 
+    // PRIMITIVE GETTERS
+    // These return defaultValue if the attribute is not set, and throw
+    // NoSuchAttributeTypeException if it has another type.
+
+    short getInt16(String attributeName, short defaultValue);
+
+    int getUInt16(String attributeName, int defaultValue);
+
+    int getInt32(String attributeName, int defaultValue);
+
+    long getUInt32(String attributeName, long defaultValue);
+
+    long getInt64(String attributeName, long defaultValue);
+
+    /**
+     * @return the unsigned value as the bits of a long
+     */
+    long getUInt64(String attributeName, long defaultValue);
+
+    boolean getBoolean(String attributeName, boolean defaultValue);
+
+    byte getByte(String attributeName, byte defaultValue);
+
+    float getFloat(String attributeName, float defaultValue);
+
+    double getDouble(String attributeName, double defaultValue);
+
     short getEncoding();
 
     // SERIALIZATION
@@ -219,18 +247,53 @@ public interface Event extends Iterable<FieldAccessor> {
 
     int serialize(DataOutput output) throws IOException;
 
+    /**
+     * Writes the event at the position of a heap or direct buffer, and moves
+     * the position past it.
+     *
+     * @return the number of bytes written
+     * @throws java.nio.BufferOverflowException if the event does not fit
+     */
+    int serialize(ByteBuffer buffer);
+
     void deserialize(byte[] bytes);
 
     void deserialize(byte[] bytes, int offset, int length);
 
     void deserialize(DataInput stream, int length) throws IOException;
 
+    /**
+     * Reads an event of <tt>length</tt> bytes from the position of a heap or
+     * direct buffer, and moves the position past it.
+     *
+     * @throws java.nio.BufferUnderflowException if the buffer holds fewer bytes
+     */
+    void deserialize(ByteBuffer buffer, int length);
+
     int getBytesSize();
 
     // MISCELLANEOUS
 
     Event copy();
 
+    /**
+     * Returns an immutable snapshot of this event, which can be shared
+     * between threads without locking.  Later changes to this event do not
+     * affect the snapshot.
+     *
+     * @return a {@link FrozenEvent}
+     */
+    FrozenEvent freeze();
+
+    /**
+     * Returns a 64-bit hash of the event name and fields, which does not
+     * depend on the order of the fields.  Equal events have the same hash,
+     * so it can stand in for the event when removing duplicates.
+     *
+     * @return the hash of the content of the event
+     */
+    long contentHash();
+
     void copyFrom(Event event);
 
     String toOneLineString();
@@ -0,0 +1,126 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes;
+
+import org.lwes.serializer.Deserializer;
+
+/**
+ * <p>Hashing and equality over serialized events, for
+ * {@link DefaultEvent#hashCode()} and {@link DefaultEvent#equals(Object)}.</p>
+ * <p>Two events are equal when they have the same name and the same fields,
+ * each with the same name, type token and value bytes, in any order.  The
+ * hash is the sum of a hash of each field, so it does not depend on the
+ * order either.</p>
+ */
+final class EventContent {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private EventContent() {
+    }
+
+    /**
+     * @param bytes  a serialized event, starting at index 0
+     * @param length the length of the event
+     * @return a 64-bit hash of the event name and fields
+     */
+    static long hash(byte[] bytes, int length) {
+        final int valueListIndex = 3 + (bytes[0] & 0xff);
+        long hash = mix(hash(bytes, 0, valueListIndex));
+        for (int index = valueListIndex; index < length; ) {
+            final int end = getFieldEnd(bytes, index);
+            hash += mix(hash(bytes, index, end));
+            index = end;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Compares two serialized events, each starting at index 0 and
+     * <tt>length</tt> bytes long.  Fields in the same position are compared
+     * directly; once the orders differ, each remaining field is looked up by
+     * name.
+     */
+    static boolean equals(byte[] bytes1, byte[] bytes2, int length) {
+        final int valueListIndex = 3 + (bytes1[0] & 0xff);
+        if (valueListIndex > length || !regionEquals(bytes1, 0, bytes2, 0, valueListIndex)) {
+            return false;
+        }
+        int index = valueListIndex;
+        while (index < length) {
+            final int end = getFieldEnd(bytes1, index);
+            if (!regionEquals(bytes1, index, bytes2, index, end - index) || getFieldEnd(bytes2, index) != end) {
+                break;
+            }
+            index = end;
+        }
+        // The rest of the fields are out of order, if there are any.
+        for (int index1 = index; index1 < length; ) {
+            final int end1 = getFieldEnd(bytes1, index1);
+            final int nameLength = 1 + (bytes1[index1] & 0xff);
+            boolean found = false;
+            for (int index2 = index; index2 < length && !found; ) {
+                final int end2 = getFieldEnd(bytes2, index2);
+                if (regionEquals(bytes1, index1, bytes2, index2, nameLength)) {
+                    if (end2 - index2 != end1 - index1 ||
+                        !regionEquals(bytes1, index1, bytes2, index2, end1 - index1)) {
+                        return false;
+                    }
+                    found = true;
+                }
+                index2 = end2;
+            }
+            if (!found) {
+                return false;
+            }
+            index1 = end1;
+        }
+        return true;
+    }
+
+    /**
+     * @return the index after the field starting at <tt>index</tt>
+     */
+    private static int getFieldEnd(byte[] bytes, int index) {
+        final int tokenIndex = index + 1 + (bytes[index] & 0xff);
+        final FieldType type = FieldType.byToken(bytes[tokenIndex]);
+        return tokenIndex + 1 + Deserializer.getValueByteSize(type, bytes, tokenIndex + 1);
+    }
+
+    private static boolean regionEquals(byte[] bytes1, int offset1, byte[] bytes2, int offset2, int length) {
+        for (int i = 0; i < length; ++i) {
+            if (bytes1[offset1 + i] != bytes2[offset2 + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** FNV-1a over a range of bytes */
+    private static long hash(byte[] bytes, int start, int end) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = start; i < end; ++i) {
+            hash ^= bytes[i] & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /** The MurmurHash3 finalizer, so that the sum of field hashes stays well mixed */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb3f99e6e6dd3L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -29,6 +29,19 @@ public class EventFactory {
 
     boolean eventTemplateDBInit = false;
 
+    /* the kind of event to create */
+    private EventImplementation implementation = EventImplementation.MAP;
+
+    /**
+     * The Event classes an EventFactory can create.
+     */
+    public enum EventImplementation {
+        /** {@link MapEvent}, which keeps each field in a map */
+        MAP,
+        /** {@link SchemaEvent}, which keeps known fields in slots laid out by the EventTemplateDB */
+        SCHEMA
+    }
+
     /**
      * EventFactory constructor.  Creates an empty event template database.
      */
@@ -90,6 +103,25 @@ public class EventFactory {
         this.esfInputStream = input;
     }
 
+    /**
+     * Gets the kind of event the factory creates.
+     *
+     * @return the event implementation
+     */
+    public EventImplementation getEventImplementation() {
+        return implementation;
+    }
+
+    /**
+     * Sets the kind of event the factory creates.  The default is
+     * {@link EventImplementation#MAP}.
+     *
+     * @param implementation the event implementation
+     */
+    public void setEventImplementation(EventImplementation implementation) {
+        this.implementation = implementation;
+    }
+
     /**
      * Initializes the EventFactory along with pointers to the ESF file
      *
@@ -159,6 +191,9 @@ public class EventFactory {
         if (validate && !eventTemplateDBInit) {
             throw new EventSystemException("Event template db not initialized");
         }
+        if (implementation == EventImplementation.SCHEMA) {
+            return new SchemaEvent(eventName, validate, eventTemplateDB, encoding);
+        }
         return new MapEvent(eventName, validate, eventTemplateDB, encoding);
     }
 
@@ -170,6 +205,9 @@ public class EventFactory {
      * @throws EventSystemException if there is a problem creating the event
      */
     public Event createEvent(byte[] bytes) throws EventSystemException {
+        if (implementation == EventImplementation.SCHEMA) {
+            return new SchemaEvent(bytes, eventTemplateDB);
+        }
         Event e = null;
         e = new MapEvent(bytes, eventTemplateDB);
         return e;
@@ -187,6 +225,9 @@ public class EventFactory {
         if (validate && !eventTemplateDBInit) {
             throw new EventSystemException("Event template db not initialized");
         }
+        if (implementation == EventImplementation.SCHEMA) {
+            return new SchemaEvent(bytes, validate, eventTemplateDB);
+        }
         return new MapEvent(bytes, validate, eventTemplateDB);
     }
 
@@ -0,0 +1,395 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lwes.serializer.Deserializer;
+import org.lwes.serializer.DeserializerState;
+import org.lwes.util.EncodedString;
+import org.lwes.util.NumberCodec;
+import org.lwes.util.StringView;
+
+/**
+ * <p>Reads a fixed set of fields from serialized events in one pass.  Each
+ * {@link ArrayEvent#get(String)} scans the event from its first field, so
+ * reading several fields scans it several times; a projection instead walks
+ * the event once, matching each field name against a hash table of the
+ * encoded names it was built with, and records where the value of each
+ * wanted field is.  Values are decoded when they are read from the
+ * {@link Record}, primitives without boxing.</p>
+ * <p>A projection is immutable and can be shared between threads; a record
+ * belongs to one thread and can be reused for every event.  A record refers
+ * to the bytes of the event it was filled from, so it is only valid until
+ * those bytes change.</p>
+ * <pre>
+ * EventProjection projection = new EventProjection("url", "status", "bytes");
+ * EventProjection.Record record = projection.newRecord();
+ * projection.project(event, record);
+ * int status = record.getUInt16(1, 0);
+ * </pre>
+ */
+public class EventProjection {
+
+    private final String[] names;
+    private final byte[][] encodedNames;
+    /* open addressing; each slot holds a field index plus one, or zero */
+    private final int[] table;
+    private final int mask;
+    private final byte[] encodingName;
+
+    public EventProjection(String... names) {
+        if (names.length == 0) {
+            throw new IllegalArgumentException("A projection needs at least one field");
+        }
+        this.names = names.clone();
+        this.encodedNames = new byte[names.length][];
+        int capacity = 4;
+        while (capacity < 2 * names.length) {
+            capacity <<= 1;
+        }
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        final Map<String, Integer> seen = new HashMap<String, Integer>();
+        for (int i = 0; i < names.length; ++i) {
+            if (seen.put(names[i], i) != null) {
+                throw new IllegalArgumentException("Field " + names[i] + " is projected twice");
+            }
+            final byte[] encoded = encode(names[i]);
+            if (encoded.length > Event.MAX_FIELD_NAME_SIZE) {
+                throw new IllegalArgumentException("Field name " + names[i] + " is too long");
+            }
+            encodedNames[i] = encoded;
+            int slot = hash(encoded, 0, encoded.length) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+        this.encodingName = encode(Event.ENCODING);
+    }
+
+    public EventProjection(List<String> names) {
+        this(names.toArray(new String[names.size()]));
+    }
+
+    private static byte[] encode(String name) {
+        return EncodedString.getBytes(name, Event.ENCODING_STRINGS[Event.DEFAULT_ENCODING]);
+    }
+
+    /**
+     * @return the number of projected fields
+     */
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int field) {
+        return names[field];
+    }
+
+    /**
+     * @return the position of the field in this projection, or -1
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < names.length; ++i) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a record to fill with {@link #project}
+     */
+    public Record newRecord() {
+        return new Record(this);
+    }
+
+    /**
+     * Fills <tt>record</tt> from an ArrayEvent, without copying its bytes.
+     *
+     * @return the number of projected fields that are set
+     */
+    public int project(ArrayEvent event, Record record) {
+        return project(event.getSerializedBytes(), 0, event.getBytesSize(), record);
+    }
+
+    /**
+     * Fills <tt>record</tt> from a serialized event.  The scan stops once
+     * every projected field has been found.
+     *
+     * @param bytes  the buffer holding the event
+     * @param offset the start of the event
+     * @param length the length of the event
+     * @param record a record from {@link #newRecord()}
+     * @return the number of projected fields that are set
+     */
+    public int project(byte[] bytes, int offset, int length, Record record) {
+        if (record.projection != this) {
+            throw new IllegalArgumentException("The record belongs to another projection");
+        }
+        record.clear();
+        record.bytes = bytes;
+        final int end = offset + length;
+        int index = offset + 1 + (bytes[offset] & 0xff);
+        final int count = NumberCodec.decodeShortUnchecked(bytes, index) & 0xffff;
+        index += 2;
+        int found = 0;
+        for (int i = 0; i < count && index < end; ++i) {
+            final int nameLength = bytes[index] & 0xff;
+            final int nameIndex = index + 1;
+            final int tokenIndex = nameIndex + nameLength;
+            final FieldType type = FieldType.byToken(bytes[tokenIndex]);
+            final int valueIndex = tokenIndex + 1;
+            if (type == FieldType.INT16 && regionEquals(bytes, nameIndex, nameLength, encodingName)) {
+                record.encoding = NumberCodec.decodeShortUnchecked(bytes, valueIndex);
+            }
+            final int field = lookup(bytes, nameIndex, nameLength);
+            if (field >= 0 && record.types[field] == null) {
+                record.types[field] = type;
+                record.offsets[field] = valueIndex;
+                if (++found == names.length) {
+                    break;
+                }
+            }
+            index = valueIndex + Deserializer.getValueByteSize(type, bytes, valueIndex);
+        }
+        if (index > end) {
+            throw new EventSystemException("Overran the end of the event: " + index + " > " + end);
+        }
+        return found;
+    }
+
+    private int lookup(byte[] bytes, int offset, int length) {
+        for (int slot = hash(bytes, offset, length) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            final int field = table[slot] - 1;
+            if (regionEquals(bytes, offset, length, encodedNames[field])) {
+                return field;
+            }
+        }
+        return -1;
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = length;
+        for (int i = offset; i < offset + length; ++i) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean regionEquals(byte[] bytes, int offset, int length, byte[] name) {
+        if (length != name.length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (bytes[offset + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * <p>The projected fields of one event: the type of each field, or null
+     * if it is not set, and the offset of its value in the event's bytes.
+     * Fields are addressed by their position in the projection.</p>
+     * <p>The typed getters return the default value for a field that is not
+     * set, and throw {@link NoSuchAttributeTypeException} for a field of
+     * another type.</p>
+     */
+    public static final class Record {
+        private final EventProjection projection;
+        private final FieldType[] types;
+        private final int[] offsets;
+        private byte[] bytes;
+        private short encoding = Event.DEFAULT_ENCODING;
+        private DeserializerState state;
+
+        private Record(EventProjection projection) {
+            this.projection = projection;
+            this.types = new FieldType[projection.size()];
+            this.offsets = new int[projection.size()];
+            Arrays.fill(offsets, -1);
+        }
+
+        public void clear() {
+            Arrays.fill(types, null);
+            Arrays.fill(offsets, -1);
+            bytes = null;
+            encoding = Event.DEFAULT_ENCODING;
+        }
+
+        public EventProjection getProjection() {
+            return projection;
+        }
+
+        /**
+         * @return the bytes of the event the record was filled from
+         */
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public short getEncoding() {
+            return encoding;
+        }
+
+        public boolean isSet(int field) {
+            return types[field] != null;
+        }
+
+        /**
+         * @return the type of the field, or null if it is not set
+         */
+        public FieldType getType(int field) {
+            return types[field];
+        }
+
+        /**
+         * @return the offset of the value in {@link #getBytes()}, or -1 if the
+         *         field is not set
+         */
+        public int getValueOffset(int field) {
+            return offsets[field];
+        }
+
+        /**
+         * @return the number of bytes in the value, or -1 if the field is not set
+         */
+        public int getValueLength(int field) {
+            return types[field] == null
+                   ? -1 : Deserializer.getValueByteSize(types[field], bytes, offsets[field]);
+        }
+
+        /**
+         * @return the offset of a value of the expected type, or -1 if the
+         *         field is not set
+         */
+        private int offset(int field, FieldType type) {
+            final FieldType actualType = types[field];
+            if (actualType == null) {
+                return -1;
+            }
+            if (actualType != type) {
+                throw DefaultEvent.wrongType(projection.names[field], actualType, type);
+            }
+            return offsets[field];
+        }
+
+        /**
+         * @return the value, decoded as {@link Event#get(String)} would, or null
+         */
+        public Object get(int field) {
+            if (types[field] == null) {
+                return null;
+            }
+            if (state == null) {
+                state = new DeserializerState();
+            }
+            state.set(offsets[field]);
+            return Deserializer.deserializeValue(state, bytes, types[field], encoding);
+        }
+
+        public boolean getBoolean(int field, boolean defaultValue) {
+            final int offset = offset(field, FieldType.BOOLEAN);
+            return offset < 0 ? defaultValue : bytes[offset] != 0;
+        }
+
+        public byte getByte(int field, byte defaultValue) {
+            final int offset = offset(field, FieldType.BYTE);
+            return offset < 0 ? defaultValue : bytes[offset];
+        }
+
+        public short getInt16(int field, short defaultValue) {
+            final int offset = offset(field, FieldType.INT16);
+            return offset < 0 ? defaultValue : NumberCodec.decodeShortUnchecked(bytes, offset);
+        }
+
+        public int getUInt16(int field, int defaultValue) {
+            final int offset = offset(field, FieldType.UINT16);
+            return offset < 0 ? defaultValue : NumberCodec.decodeShortUnchecked(bytes, offset) & 0xffff;
+        }
+
+        public int getInt32(int field, int defaultValue) {
+            final int offset = offset(field, FieldType.INT32);
+            return offset < 0 ? defaultValue : NumberCodec.decodeIntUnchecked(bytes, offset);
+        }
+
+        public long getUInt32(int field, long defaultValue) {
+            final int offset = offset(field, FieldType.UINT32);
+            return offset < 0 ? defaultValue : NumberCodec.decodeIntUnchecked(bytes, offset) & 0xffffffffL;
+        }
+
+        public long getInt64(int field, long defaultValue) {
+            final int offset = offset(field, FieldType.INT64);
+            return offset < 0 ? defaultValue : NumberCodec.decodeLongUnchecked(bytes, offset);
+        }
+
+        /**
+         * @return the bits of the value, which is negative above Long.MAX_VALUE
+         */
+        public long getUInt64(int field, long defaultValue) {
+            final int offset = offset(field, FieldType.UINT64);
+            return offset < 0 ? defaultValue : NumberCodec.decodeLongUnchecked(bytes, offset);
+        }
+
+        public BigInteger getUInt64(int field) {
+            return (BigInteger) get(field, FieldType.UINT64);
+        }
+
+        public float getFloat(int field, float defaultValue) {
+            final int offset = offset(field, FieldType.FLOAT);
+            return offset < 0 ? defaultValue : Float.intBitsToFloat(NumberCodec.decodeIntUnchecked(bytes, offset));
+        }
+
+        public double getDouble(int field, double defaultValue) {
+            final int offset = offset(field, FieldType.DOUBLE);
+            return offset < 0
+                   ? defaultValue : Double.longBitsToDouble(NumberCodec.decodeLongUnchecked(bytes, offset));
+        }
+
+        /**
+         * @return the string, or null if it is not set
+         */
+        public String getString(int field) {
+            final int offset = offset(field, FieldType.STRING);
+            if (offset < 0) {
+                return null;
+            }
+            return EncodedString.bytesToString(bytes, offset + 2, stringLength(offset),
+                                               Event.ENCODING_STRINGS[encoding]);
+        }
+
+        /**
+         * Points <tt>view</tt> at a string value without decoding it.
+         *
+         * @return the view, or null if the field is not set
+         */
+        public StringView getStringView(int field, StringView view) {
+            final int offset = offset(field, FieldType.STRING);
+            return offset < 0 ? null : view.set(bytes, offset + 2, stringLength(offset), encoding);
+        }
+
+        private int stringLength(int offset) {
+            return NumberCodec.decodeShortUnchecked(bytes, offset) & 0xffff;
+        }
+
+        private Object get(int field, FieldType type) {
+            return offset(field, type) < 0 ? null : get(field);
+        }
+    }
+}
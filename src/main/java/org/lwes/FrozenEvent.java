@@ -0,0 +1,301 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.lwes.serializer.Deserializer;
+import org.lwes.serializer.DeserializerState;
+
+/**
+ * <p>An immutable event, made by {@link Event#freeze()}.  The fields are
+ * decoded once, into arrays sorted by name, and the serialized bytes are
+ * kept for {@link #serialize(byte[], int)}.  Nothing changes after
+ * construction, so one frozen event can be read by any number of threads
+ * without locks.</p>
+ * <p>Every mutator throws UnsupportedOperationException.  Code that needs to
+ * change the event should {@link #copy()} it, which returns a mutable
+ * {@link ArrayEvent}.  Array values are copied when they are read, so that
+ * callers cannot change them either.</p>
+ */
+public final class FrozenEvent extends DefaultEvent {
+
+    private final byte[] bytes;
+    private final String name;
+    private final short encoding;
+    private final String[] names;
+    private final FieldType[] types;
+    private final Object[] values;
+
+    /* computed when first needed; 0 until then */
+    private volatile long contentHash = 0;
+
+    /**
+     * Freezes a copy of <tt>event</tt>.
+     */
+    public FrozenEvent(Event event) {
+        this(event.serialize());
+    }
+
+    /**
+     * Freezes a serialized event.  The bytes are copied.
+     */
+    public FrozenEvent(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Freezes a serialized event.  The bytes are copied.
+     *
+     * @param bytes  the buffer holding the event
+     * @param offset the start of the event
+     * @param length the length of the event
+     */
+    public FrozenEvent(byte[] bytes, int offset, int length) {
+        this.bytes = Arrays.copyOfRange(bytes, offset, offset + length);
+
+        final DeserializerState state = new DeserializerState();
+        this.name = Deserializer.deserializeEVENTWORD(state, this.bytes);
+        final int count = Deserializer.deserializeUINT16(state, this.bytes);
+        final String[] names = new String[count];
+        final FieldType[] types = new FieldType[count];
+        final Object[] values = new Object[count];
+        short encoding = DEFAULT_ENCODING;
+        for (int i = 0; i < count; ++i) {
+            final String attribute = Deserializer.deserializeATTRIBUTEWORD(state, this.bytes);
+            final FieldType type = FieldType.byToken(Deserializer.deserializeBYTE(state, this.bytes));
+            final Object value = Deserializer.deserializeValue(state, this.bytes, type, encoding);
+            if (ENCODING.equals(attribute) && type == FieldType.INT16) {
+                encoding = (Short) value;
+            }
+            // Insertion sort by name; events have few enough fields.
+            int j = i;
+            while (j > 0 && names[j - 1].compareTo(attribute) > 0) {
+                names[j] = names[j - 1];
+                types[j] = types[j - 1];
+                values[j] = values[j - 1];
+                --j;
+            }
+            names[j] = attribute;
+            types[j] = type;
+            values[j] = value;
+        }
+        if (state.currentIndex() != length) {
+            throw new EventSystemException("Expected to deserialize " + length +
+                                           " bytes, but actually read " + state.currentIndex());
+        }
+        this.encoding = encoding;
+        this.names = names;
+        this.types = types;
+        this.values = values;
+    }
+
+    /**
+     * @return this event, which is already frozen
+     */
+    @Override
+    public FrozenEvent freeze() {
+        return this;
+    }
+
+    /**
+     * @return a mutable copy of this event
+     */
+    @Override
+    public ArrayEvent copy() {
+        return new ArrayEvent(bytes, true);
+    }
+
+    @Override
+    byte[] getSerializedBytes() {
+        return bytes;
+    }
+
+    /**
+     * The hash is computed once, since the event cannot change.
+     */
+    @Override
+    public long contentHash() {
+        long hash = contentHash;
+        if (hash == 0) {
+            hash = super.contentHash();
+            contentHash = hash;
+        }
+        return hash;
+    }
+
+    private int indexOf(String attributeName) {
+        return Arrays.binarySearch(names, attributeName);
+    }
+
+    @Override
+    public String getEventName() {
+        return name;
+    }
+
+    @Override
+    public short getEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public int getNumEventAttributes() {
+        return names.length;
+    }
+
+    @Override
+    public Enumeration<String> getEventAttributeNames() {
+        return Collections.enumeration(Arrays.asList(names));
+    }
+
+    @Override
+    public Set<String> getEventAttributes() {
+        return Collections.unmodifiableSet(new TreeSet<String>(Arrays.asList(names)));
+    }
+
+    @Override
+    public FieldType getType(String attributeName) {
+        final int index = indexOf(attributeName);
+        return index < 0 ? null : types[index];
+    }
+
+    @Override
+    public Object get(String attributeName) {
+        final int index = indexOf(attributeName);
+        return index < 0 ? null : value(index);
+    }
+
+    @Override
+    protected Object get(String attributeName, FieldType type) {
+        final int index = indexOf(attributeName);
+        if (index < 0) {
+            return null;
+        }
+        if (types[index] != type) {
+            throw wrongType(attributeName, types[index], type);
+        }
+        return value(index);
+    }
+
+    private Object value(int index) {
+        final Object value = values[index];
+        if (value == null || !value.getClass().isArray()) {
+            return value;
+        }
+        final int length = Array.getLength(value);
+        final Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+        System.arraycopy(value, 0, copy, 0, length);
+        return copy;
+    }
+
+    @Override
+    public int getBytesSize() {
+        return bytes.length;
+    }
+
+    @Override
+    public int serialize(byte[] bytes, int offset) {
+        System.arraycopy(this.bytes, 0, bytes, offset, this.bytes.length);
+        return this.bytes.length;
+    }
+
+    @Override
+    public int serialize(DataOutput output) throws IOException {
+        output.write(bytes);
+        return bytes.length;
+    }
+
+    @Override
+    public int serialize(ByteBuffer buffer) {
+        buffer.put(bytes);
+        return bytes.length;
+    }
+
+    @Override
+    public Iterator<FieldAccessor> iterator() {
+        return new Iterator<FieldAccessor>() {
+            private int index = 0;
+
+            public boolean hasNext() {
+                return index < names.length;
+            }
+
+            public FieldAccessor next() {
+                if (index >= names.length) {
+                    throw new NoSuchElementException();
+                }
+                final FieldAccessor field = new DefaultFieldAccessor(names[index], types[index], value(index));
+                ++index;
+                return field;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    // Frozen events cannot be changed.
+
+    private static UnsupportedOperationException frozen() {
+        return new UnsupportedOperationException("Frozen events cannot be modified; modify a copy()");
+    }
+
+    @Override
+    public void set(String key, FieldType type, Object value) {
+        throw frozen();
+    }
+
+    @Override
+    public void clear(String key) {
+        throw frozen();
+    }
+
+    @Override
+    public void reset() {
+        throw frozen();
+    }
+
+    @Override
+    public void setEventName(String name) {
+        throw frozen();
+    }
+
+    @Override
+    public void setEncoding(short encoding) {
+        throw frozen();
+    }
+
+    @Override
+    public void copyFrom(Event event) {
+        throw frozen();
+    }
+
+    @Override
+    public void deserialize(byte[] bytes, int offset, int length) {
+        throw frozen();
+    }
+
+    @Override
+    public void deserialize(DataInput stream, int length) {
+        throw frozen();
+    }
+}
@@ -12,11 +12,13 @@ package org.lwes;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Enumeration;
 import java.util.Map.Entry;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -31,7 +33,16 @@ public class MapEvent extends DefaultEvent {
     /**
      * Event data
      */
-    private final ConcurrentHashMap<String, BaseType> attributes = new ConcurrentHashMap<String, BaseType>();
+    private volatile ConcurrentHashMap<String, BaseType> attributes = new ConcurrentHashMap<String, BaseType>();
+
+    /**
+     * True if the attributes may be shared with a copy of this event, in which
+     * case the map is copied before it is changed.  Values are never changed
+     * in place, so they are shared for as long as they are set.  Copying and
+     * changing the attributes both lock the event, so a copy never sees a
+     * change made after it was taken.
+     */
+    private volatile boolean shared = false;
     private String name = null;
     private EventTemplateDB eventTemplateDB = null;
     private short encoding = DEFAULT_ENCODING;
@@ -51,6 +62,20 @@ public class MapEvent extends DefaultEvent {
      */
     private int bytesStoreSize = 0;
 
+    /**
+     * The serialized event, kept until the event is next modified.  Arrays
+     * passed to or returned from the setters and getters are not copied, so
+     * changing their contents afterwards is not noticed; set the field again
+     * to have it serialized anew.
+     */
+    private volatile byte[] serialized = null;
+
+    /**
+     * Counts changes, so that a serialization that races with a change is not
+     * kept as the serialized form.
+     */
+    private final AtomicInteger modifications = new AtomicInteger();
+
     /**
      * Create an event with no name and no validation
      */
@@ -156,17 +181,36 @@ public class MapEvent extends DefaultEvent {
         copyFrom(event);
     }
 
+    /**
+     * Makes a copy of <tt>event</tt> that shares its attributes, matching the
+     * type-checking of the original event.  The caller holds the lock on
+     * <tt>event</tt>.
+     */
+    private MapEvent(MapEvent event) {
+        this.attributes = event.attributes;
+        this.name = event.name;
+        this.eventTemplateDB = event.eventTemplateDB;
+        this.encoding = event.encoding;
+        this.validating = event.validating;
+        this.bytesStoreSize = event.bytesStoreSize;
+        // The serialized form is never modified, so it can be shared too.
+        this.serialized = event.serialized;
+        this.shared = true;
+        event.shared = true;
+    }
+
     @Override
     public void reset() {
         name = "";
         validating = false;
         eventTemplateDB = null;
-        attributes.clear();
+        clearAttributes();
         encoding = DEFAULT_ENCODING;
         if (state != null) {
             state.reset();
         }
         bytesStoreSize = 3;
+        invalidate();
     }
 
     protected void setDefaultValues(EventTemplateDB template) throws EventSystemException {
@@ -278,6 +322,7 @@ public class MapEvent extends DefaultEvent {
         bytesStoreSize += (name.length() + 1 + 2);
 
         this.name = name;
+        invalidate();
     }
 
     /**
@@ -322,9 +367,15 @@ public class MapEvent extends DefaultEvent {
 
     @Override
     public void clear(String attributeName) {
-        final BaseType bt = attributes.remove(attributeName);
-        if (bt != null) {
-            bytesStoreSize -= (attributeName.length() + 1) + bt.bytesStoreSize(encoding);
+        if (!attributes.containsKey(attributeName)) {
+            return;
+        }
+        synchronized (this) {
+            final BaseType bt = writableAttributes().remove(attributeName);
+            if (bt != null) {
+                bytesStoreSize -= (attributeName.length() + 1) + bt.bytesStoreSize(encoding);
+                invalidate();
+            }
         }
     }
 
@@ -375,31 +426,103 @@ public class MapEvent extends DefaultEvent {
             getEventTemplateDB().checkForSize(name, attribute, bt);
         }
 
-        // Remove the existing value, and record the reduction in the serialized size.
-        final BaseType oldObject = attributes.remove(attribute);
-        if (oldObject != null) {
-            bytesStoreSize -= (attribute.length() + 1) + oldObject.bytesStoreSize(encoding);
-        }
+        synchronized (this) {
+            try {
+                // Remove the existing value, and record the reduction in the serialized size.
+                final ConcurrentHashMap<String, BaseType> attributes = writableAttributes();
+                final BaseType oldObject = attributes.remove(attribute);
+                if (oldObject != null) {
+                    bytesStoreSize -= (attribute.length() + 1) + oldObject.bytesStoreSize(encoding);
+                }
+
+                if (bt.getTypeObject() != null) {
+                    int newSize = bytesStoreSize + ((attribute.length() + 1) + bt.bytesStoreSize(encoding));
+                    if (newSize > MAX_MESSAGE_SIZE) {
+                        throw new EventSystemException("Event size limit is " + MAX_MESSAGE_SIZE + " bytes.");
+                    }
 
-        if (bt.getTypeObject() != null) {
-            int newSize = bytesStoreSize + ((attribute.length() + 1) + bt.bytesStoreSize(encoding));
-            if (newSize > MAX_MESSAGE_SIZE) {
-                throw new EventSystemException("Event size limit is " + MAX_MESSAGE_SIZE + " bytes.");
+                    bytesStoreSize += (attribute.length() + 1) + bt.bytesStoreSize(encoding);
+                    attributes.put(attribute, bt);
+                }
+            }
+            finally {
+                invalidate();
             }
+        }
+    }
+
+    /**
+     * Drops the serialized form.  Called after each change has been made, so
+     * that a serialization that started before the change sees the count move.
+     */
+    private void invalidate() {
+        modifications.incrementAndGet();
+        serialized = null;
+    }
+
+    /**
+     * The caller must hold the lock on this event until it has finished
+     * changing the attributes, so that {@link #copy()} cannot share them
+     * part way through.
+     *
+     * @return the attributes, copied first if they are shared with a copy of
+     *         this event
+     */
+    private ConcurrentHashMap<String, BaseType> writableAttributes() {
+        if (shared) {
+            attributes = new ConcurrentHashMap<String, BaseType>(attributes);
+            shared = false;
+        }
+        return attributes;
+    }
 
-            bytesStoreSize += (attribute.length() + 1) + bt.bytesStoreSize(encoding);
-            attributes.put(attribute, bt);
+    private synchronized void clearAttributes() {
+        if (shared) {
+            attributes = new ConcurrentHashMap<String, BaseType>();
+            shared = false;
+        }
+        else {
+            attributes.clear();
         }
     }
 
     /**
-     * Serializes the Event into a byte array
+     * Serializes the Event into a byte array.  The serialized form is kept
+     * until the event is modified, so serializing an unchanged event again
+     * only copies it.
      *
-     * @return the serialized byte array
+     * @return the number of bytes written
      * @throws EventSystemException if there is a bug in predicting the serialized size
      */
     @Override
     public int serialize(byte[] bytes, int offset) {
+        final byte[] cached = getSerialized();
+        System.arraycopy(cached, 0, bytes, offset, cached.length);
+        return cached.length;
+    }
+
+    @Override
+    byte[] getSerializedBytes() {
+        return getSerialized();
+    }
+
+    private byte[] getSerialized() {
+        byte[] cached = serialized;
+        if (cached == null) {
+            final int before = modifications.get();
+            cached = new byte[bytesStoreSize];
+            serializeAttributes(cached);
+            serialized = cached;
+            // A change made while serializing may have dropped the cache
+            // before it was set; drop it again rather than keep stale bytes.
+            if (modifications.get() != before) {
+                serialized = null;
+            }
+        }
+        return cached;
+    }
+
+    private void serializeAttributes(byte[] bytes) {
         /*
            * Serialization uses the following protocol
            * EVENTWORD,<number of elements>,ATTRIBUTEWORD,TYPETOKEN,
@@ -469,7 +592,7 @@ public class MapEvent extends DefaultEvent {
             }
         } // while(e.hasMoreElements())
 
-        final int bytesWritten = pos - offset;
+        final int bytesWritten = pos;
         if (bytesStoreSize != bytesWritten) {
             String formatted = null;
             try {
@@ -481,17 +604,22 @@ public class MapEvent extends DefaultEvent {
                                             " bytes, but actually wrote " + bytesWritten
                                             +" for "+formatted);
         }
-
-        return bytesWritten;
     }
 
     @Override
     public int serialize(DataOutput output) throws IOException {
-        final byte[] bytes = serialize();
+        final byte[] bytes = getSerialized();
         output.write(bytes);
         return bytes.length;
     }
 
+    @Override
+    public int serialize(ByteBuffer buffer) {
+        final byte[] bytes = getSerialized();
+        buffer.put(bytes);
+        return bytes.length;
+    }
+
     /**
      * Deserialize the Event from byte array
      *
@@ -516,7 +644,7 @@ public class MapEvent extends DefaultEvent {
             log.trace("Event name = " + getEventName());
             log.trace("Number of attribute: " + num);
         }
-        attributes.clear();
+        clearAttributes();
         bytesStoreSize = state.currentIndex() - offset;
         for (int i = 0; i < num; ++i) {
             String attribute = Deserializer.deserializeATTRIBUTEWORD(state, bytes);
@@ -559,8 +687,47 @@ public class MapEvent extends DefaultEvent {
         deserialize(bytes);
     }
 
+    @Override
+    protected void deserializeFields(ByteBuffer buffer, int offset, int length) {
+        if (state == null) {
+            state = new DeserializerState();
+        }
+
+        state.set(offset);
+        setEventName(Deserializer.deserializeEVENTWORD(state, buffer));
+        final int num = Deserializer.deserializeUINT16(state, buffer);
+        clearAttributes();
+        bytesStoreSize = state.currentIndex() - offset;
+        for (int i = 0; i < num; ++i) {
+            final String attribute = Deserializer.deserializeATTRIBUTEWORD(state, buffer);
+            final FieldType type = FieldType.byToken(Deserializer.deserializeBYTE(state, buffer));
+            if (i == 0 && attribute.equals(ENCODING)) {
+                if (type == FieldType.INT16) {
+                    setEncoding(Deserializer.deserializeINT16(state, buffer));
+                    continue;
+                }
+                else {
+                    log.warn("Found encoding, but type was not int16 while deserializing");
+                }
+            }
+            set(attribute, type, Deserializer.deserializeValue(state, buffer, type, encoding));
+            if (bytesStoreSize != state.currentIndex() - offset) {
+                throw new EventSystemException("Deserializing " + type + " field " + attribute +
+                                               " resulted in incorrect cache of serialized size");
+            }
+        }
+
+        if (bytesStoreSize != length) {
+            throw new EventSystemException(
+                    "Expected to deserialize " + length + " bytes, but actually read " + bytesStoreSize);
+        }
+    }
+
     /**
-     * Returns a mutable copy of the event.  This is a SLOW operation.
+     * Returns a mutable copy of the event.  The copy shares this event's
+     * attributes and serialized form until either event is modified; the one
+     * being modified then copies the attribute map, but not the values, so a
+     * copy that is only read costs no more than the object.
      *
      * @return Event the Event object
      * @throws NoSuchEventException         if the Event does not exist in the EventTemplateDB
@@ -568,15 +735,8 @@ public class MapEvent extends DefaultEvent {
      * @throws NoSuchAttributeTypeException if there is an attribute that does not match a type in the EventTemplateDB
      */
     @Override
-    public Event copy() throws EventSystemException {
-        /* match the type-checking of the original event */
-        MapEvent evt = new MapEvent(name, isValidating(), getEventTemplateDB());
-        for (Enumeration<String> e = attributes.keys(); e.hasMoreElements(); ) {
-            String key = e.nextElement();
-            BaseType value = attributes.get(key);
-            evt.set(key, value.cloneBaseType());
-        }
-        return evt;
+    public synchronized Event copy() throws EventSystemException {
+        return new MapEvent(this);
     }
 
     /**
@@ -597,6 +757,18 @@ public class MapEvent extends DefaultEvent {
         templ.validate(this);
     }
 
+    @Override
+    protected Object get(String attributeName, FieldType type) {
+        final BaseType bt = attributes.get(attributeName);
+        if (bt == null) {
+            return null;
+        }
+        if (bt.getType() != type) {
+            throw wrongType(attributeName, bt.getType(), type);
+        }
+        return bt.getTypeObject();
+    }
+
     @Override
     public FieldType getType(String field) {
         final BaseType bt = attributes.get(field);
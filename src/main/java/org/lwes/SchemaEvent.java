@@ -0,0 +1,1064 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.lwes.db.EventSchema;
+import org.lwes.db.EventTemplateDB;
+import org.lwes.serializer.Deserializer;
+import org.lwes.serializer.DeserializerState;
+import org.lwes.serializer.Serializer;
+import org.lwes.util.EncodedString;
+import org.lwes.util.NumberCodec;
+
+/**
+ * <p>An event that keeps the fields its {@link EventTemplateDB} knows about
+ * in arrays indexed by the field ordinals of the event's {@link EventSchema}.
+ * Numbers and booleans are stored unboxed in a <tt>long</tt> per field, and
+ * the primitive setters and getters neither box nor allocate.  Fields the
+ * schema does not have, and every field of an unknown event, go into an
+ * overflow map, as in {@link MapEvent}.</p>
+ * <p>Unlike MapEvent, a SchemaEvent is not thread safe.</p>
+ */
+public class SchemaEvent extends DefaultEvent {
+
+    private static final BigInteger UINT64_MASK = new BigInteger("ffffffffffffffff", 16);
+    private static final FieldType[] NO_TYPES = new FieldType[0];
+    private static final long[] NO_PRIMITIVES = new long[0];
+    private static final Object[] NO_OBJECTS = new Object[0];
+    private static final int[] NO_SIZES = new int[0];
+
+    private EventTemplateDB eventTemplateDB;
+    private boolean validating;
+    private EventSchema schema = null;
+    private String name = "";
+    private short encoding = DEFAULT_ENCODING;
+
+    /* per ordinal: the type set, or null if unset, and the value */
+    private FieldType[] types = NO_TYPES;
+    private long[] primitives = NO_PRIMITIVES;
+    private Object[] objects = NO_OBJECTS;
+    /* per ordinal: the serialized size of the field, with its name */
+    private int[] sizes = NO_SIZES;
+    private int slotCount = 0;
+
+    /* fields outside the schema, created when first needed */
+    private Map<String, BaseType> overflow = null;
+
+    private int bytesStoreSize = 3;
+    private final DeserializerState state = new DeserializerState();
+
+    /**
+     * Creates an event with no name, whose fields will be laid out by
+     * <tt>eventTemplateDB</tt> once it is named.
+     */
+    public SchemaEvent(EventTemplateDB eventTemplateDB) {
+        this.eventTemplateDB = eventTemplateDB;
+        setEncoding(DEFAULT_ENCODING);
+    }
+
+    /**
+     * Create a validating event called <tt>eventName</tt>
+     *
+     * @param eventName       the name of the event
+     * @param eventTemplateDB the EventTemplateDB for the field layout and validation
+     */
+    public SchemaEvent(String eventName, EventTemplateDB eventTemplateDB) throws EventSystemException {
+        this(eventName, true, eventTemplateDB, DEFAULT_ENCODING);
+    }
+
+    /**
+     * Create an event called <tt>eventName</tt>
+     *
+     * @param eventName       the name of the event
+     * @param validate        true if the EventTemplateDB should be checked for types before all mutations
+     * @param eventTemplateDB the EventTemplateDB for the field layout and validation
+     * @param encoding        the character encoding used by the event
+     */
+    public SchemaEvent(String eventName, boolean validate, EventTemplateDB eventTemplateDB, short encoding)
+            throws EventSystemException {
+        checkShortStringLength(eventName, encoding, MAX_EVENT_NAME_SIZE);
+        this.eventTemplateDB = eventTemplateDB;
+        this.validating = validate;
+        setEventName(eventName);
+        setEncoding(encoding);
+        setDefaultValues();
+    }
+
+    /**
+     * Creates a validating event by deserializing a raw byte array.
+     *
+     * @param bytes           the raw bytes to convert
+     * @param eventTemplateDB the EventTemplateDB for the field layout and validation
+     */
+    public SchemaEvent(byte[] bytes, EventTemplateDB eventTemplateDB) throws EventSystemException {
+        this(bytes, true, eventTemplateDB);
+    }
+
+    /**
+     * Creates an event by deserializing a raw byte array.
+     *
+     * @param bytes           the raw bytes to convert
+     * @param validate        whether or not to validate the event
+     * @param eventTemplateDB the EventTemplateDB for the field layout and validation
+     */
+    public SchemaEvent(byte[] bytes, boolean validate, EventTemplateDB eventTemplateDB)
+            throws EventSystemException {
+        this.eventTemplateDB = eventTemplateDB;
+        this.validating = validate;
+        deserialize(bytes);
+        setDefaultValues();
+    }
+
+    private void setDefaultValues() {
+        if (schema == null) {
+            return;
+        }
+        for (int ordinal = 0; ordinal < schema.size(); ++ordinal) {
+            final Object defaultValue = schema.getDefaultValue(ordinal);
+            if (defaultValue != null) {
+                set(schema.getName(ordinal), schema.getType(ordinal), defaultValue);
+            }
+        }
+    }
+
+    public EventTemplateDB getEventTemplateDB() {
+        return eventTemplateDB;
+    }
+
+    /**
+     * @return the field layout, or null if the event is not in the EventTemplateDB
+     */
+    public EventSchema getSchema() {
+        return schema;
+    }
+
+    public boolean isValidating() {
+        return validating;
+    }
+
+    public void setValidating(boolean validate) {
+        this.validating = validate;
+    }
+
+    /**
+     * Empties the event, keeping its EventTemplateDB.
+     */
+    @Override
+    public void reset() {
+        name = "";
+        encoding = DEFAULT_ENCODING;
+        useSchema(null);
+        bytesStoreSize = 3;
+    }
+
+    @Override
+    public String getEventName() {
+        return name;
+    }
+
+    /**
+     * Renames the event.  If the new name has a different schema, the fields
+     * that are set move to the new layout.
+     */
+    @Override
+    public void setEventName(String name) {
+        checkShortStringLength(name, encoding, MAX_EVENT_NAME_SIZE);
+        final EventSchema newSchema = eventTemplateDB == null ? null : eventTemplateDB.getSchema(name);
+        bytesStoreSize += getNameByteLength(name) - getNameByteLength(this.name);
+        this.name = name;
+        if (newSchema != schema) {
+            if (getNumEventAttributes() == 0) {
+                useSchema(newSchema);
+            }
+            else {
+                final List<FieldAccessor> fields = new ArrayList<FieldAccessor>();
+                for (FieldAccessor field : this) {
+                    fields.add(new DefaultFieldAccessor(field.getName(), field.getType(), field.getValue()));
+                }
+                useSchema(newSchema);
+                bytesStoreSize = 3 + getNameByteLength(name);
+                for (FieldAccessor field : fields) {
+                    set(field.getName(), field.getType(), field.getValue());
+                }
+            }
+        }
+    }
+
+    private void useSchema(EventSchema newSchema) {
+        schema = newSchema;
+        final int size = newSchema == null ? 0 : newSchema.size();
+        if (size == 0) {
+            types = NO_TYPES;
+            primitives = NO_PRIMITIVES;
+            objects = NO_OBJECTS;
+            sizes = NO_SIZES;
+        }
+        else {
+            types = new FieldType[size];
+            primitives = new long[size];
+            objects = new Object[size];
+            sizes = new int[size];
+        }
+        slotCount = 0;
+        overflow = null;
+    }
+
+    private static int getNameByteLength(String name) {
+        return EncodedString.getByteLength(name, ENCODING_STRINGS[DEFAULT_ENCODING]);
+    }
+
+    @Override
+    public short getEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public void setEncoding(short encoding) {
+        setInt16(ENCODING, encoding);
+    }
+
+    private int ordinal(String attributeName) {
+        return schema == null ? -1 : schema.getOrdinal(attributeName);
+    }
+
+    @Override
+    public int getNumEventAttributes() {
+        return slotCount + (overflow == null ? 0 : overflow.size());
+    }
+
+    @Override
+    public Enumeration<String> getEventAttributeNames() {
+        return Collections.enumeration(getEventAttributes());
+    }
+
+    @Override
+    public SortedSet<String> getEventAttributes() {
+        final SortedSet<String> fields = new TreeSet<String>();
+        for (int ordinal = 0; ordinal < types.length; ++ordinal) {
+            if (types[ordinal] != null) {
+                fields.add(schema.getName(ordinal));
+            }
+        }
+        if (overflow != null) {
+            fields.addAll(overflow.keySet());
+        }
+        return fields;
+    }
+
+    @Override
+    public FieldType getType(String attributeName) {
+        final int ordinal = ordinal(attributeName);
+        if (ordinal >= 0) {
+            return types[ordinal];
+        }
+        final BaseType bt = overflow == null ? null : overflow.get(attributeName);
+        return bt == null ? null : bt.getType();
+    }
+
+    @Override
+    public Object get(String attributeName) {
+        final int ordinal = ordinal(attributeName);
+        if (ordinal >= 0) {
+            return getSlot(ordinal);
+        }
+        final BaseType bt = overflow == null ? null : overflow.get(attributeName);
+        return bt == null ? null : bt.getTypeObject();
+    }
+
+    @Override
+    protected Object get(String attributeName, FieldType type) {
+        final int ordinal = ordinal(attributeName);
+        if (ordinal < 0) {
+            return super.get(attributeName, type);
+        }
+        if (types[ordinal] == null) {
+            return null;
+        }
+        if (types[ordinal] != type) {
+            throw wrongType(attributeName, types[ordinal], type);
+        }
+        return getSlot(ordinal);
+    }
+
+    private Object getSlot(int ordinal) {
+        final FieldType type = types[ordinal];
+        if (type == null) {
+            return null;
+        }
+        return isPrimitive(type) ? box(type, primitives[ordinal]) : objects[ordinal];
+    }
+
+    @Override
+    public void clear(String attributeName) {
+        final int ordinal = ordinal(attributeName);
+        if (ordinal >= 0) {
+            clearSlot(ordinal);
+        }
+        else if (overflow != null) {
+            final BaseType bt = overflow.remove(attributeName);
+            if (bt != null) {
+                bytesStoreSize -= getFieldSize(attributeName, bt.getType(), bt.getTypeObject());
+            }
+        }
+    }
+
+    private void clearSlot(int ordinal) {
+        if (types[ordinal] != null) {
+            types[ordinal] = null;
+            objects[ordinal] = null;
+            bytesStoreSize -= sizes[ordinal];
+            sizes[ordinal] = 0;
+            --slotCount;
+        }
+    }
+
+    @Override
+    public void set(String attributeName, FieldType type, Object value) {
+        checkShortStringLength(attributeName, encoding, MAX_FIELD_NAME_SIZE);
+        type.checkCompatibilityWith(value);
+        if (validating && eventTemplateDB != null) {
+            validate(attributeName, type, value);
+        }
+        if (ENCODING.equals(attributeName) && type == FieldType.INT16 && value != null) {
+            changeEncoding((Short) value);
+        }
+        final int ordinal = ordinal(attributeName);
+        if (ordinal < 0) {
+            setOverflow(attributeName, type, value);
+        }
+        else if (value == null) {
+            clearSlot(ordinal);
+        }
+        else if (isPrimitive(type)) {
+            setPrimitive(ordinal, type, unbox(type, value));
+        }
+        else {
+            final int size = schema.getSerializedNameLength(ordinal) + 1 + getValueSize(type, value);
+            fill(ordinal, type, size);
+            objects[ordinal] = value;
+        }
+    }
+
+    private void validate(String attributeName, FieldType type, Object value) {
+        if (!eventTemplateDB.checkForAttribute(name, attributeName)) {
+            throw new EventSystemException("Attribute " + attributeName + " does not exist for event " + name);
+        }
+        final BaseType bt = new BaseType(type, value);
+        if (!eventTemplateDB.checkTypeForAttribute(name, attributeName, bt)) {
+            throw new EventSystemException("Wrong type '" + type + "' for " + name + "." + attributeName);
+        }
+        eventTemplateDB.checkForSize(name, attributeName, bt);
+    }
+
+    private void setPrimitive(int ordinal, FieldType type, long bits) {
+        fill(ordinal, type, schema.getSerializedNameLength(ordinal) + 1 + type.getConstantSize());
+        primitives[ordinal] = bits;
+        objects[ordinal] = null;
+    }
+
+    /**
+     * Marks a slot as holding a value of <tt>type</tt> that serializes to
+     * <tt>size</tt> bytes, checking the size of the event.
+     */
+    private void fill(int ordinal, FieldType type, int size) {
+        final int newSize = bytesStoreSize - sizes[ordinal] + size;
+        if (newSize > MAX_MESSAGE_SIZE) {
+            throw new EventSystemException("Event size limit is " + MAX_MESSAGE_SIZE + " bytes.");
+        }
+        if (types[ordinal] == null) {
+            ++slotCount;
+        }
+        types[ordinal] = type;
+        sizes[ordinal] = size;
+        bytesStoreSize = newSize;
+    }
+
+    private void setOverflow(String attributeName, FieldType type, Object value) {
+        if (overflow == null) {
+            if (value == null) {
+                return;
+            }
+            overflow = new LinkedHashMap<String, BaseType>();
+        }
+        final BaseType old = overflow.get(attributeName);
+        final int oldSize = old == null ? 0 : getFieldSize(attributeName, old.getType(), old.getTypeObject());
+        if (value == null) {
+            overflow.remove(attributeName);
+            bytesStoreSize -= oldSize;
+            return;
+        }
+        final int newSize = bytesStoreSize - oldSize + getFieldSize(attributeName, type, value);
+        if (newSize > MAX_MESSAGE_SIZE) {
+            throw new EventSystemException("Event size limit is " + MAX_MESSAGE_SIZE + " bytes.");
+        }
+        overflow.put(attributeName, new BaseType(type, value));
+        bytesStoreSize = newSize;
+    }
+
+    /**
+     * Strings are measured in the encoding, so a new encoding changes the
+     * size of the event.
+     */
+    private void changeEncoding(short newEncoding) {
+        if (newEncoding == encoding) {
+            return;
+        }
+        encoding = newEncoding;
+        for (int ordinal = 0; ordinal < types.length; ++ordinal) {
+            if (types[ordinal] != null && !isPrimitive(types[ordinal])) {
+                final int size = schema.getSerializedNameLength(ordinal) + 1 +
+                                 getValueSize(types[ordinal], objects[ordinal]);
+                bytesStoreSize += size - sizes[ordinal];
+                sizes[ordinal] = size;
+            }
+        }
+        if (overflow != null) {
+            bytesStoreSize = 3 + getNameByteLength(name);
+            for (int size : sizes) {
+                bytesStoreSize += size;
+            }
+            for (Entry<String, BaseType> field : overflow.entrySet()) {
+                bytesStoreSize += getFieldSize(field.getKey(), field.getValue().getType(),
+                                               field.getValue().getTypeObject());
+            }
+        }
+    }
+
+    private int getFieldSize(String attributeName, FieldType type, Object value) {
+        return 2 + getNameByteLength(attributeName) + getValueSize(type, value);
+    }
+
+    private int getValueSize(FieldType type, Object value) {
+        if (type.isConstantSize()) {
+            return type.getConstantSize();
+        }
+        if (type == FieldType.STRING) {
+            return 2 + EncodedString.getByteLength((String) value, ENCODING_STRINGS[encoding]);
+        }
+        return new BaseType(type, value).getByteSize(encoding);
+    }
+
+    // The primitive setters and getters skip boxing for fields in the schema.
+
+    /**
+     * @return the ordinal of a field that may hold a <tt>type</tt> value
+     *         without boxing it, or -1
+     */
+    private int primitiveOrdinal(String attributeName, FieldType type) {
+        final int ordinal = ordinal(attributeName);
+        if (ordinal < 0 || (validating && eventTemplateDB != null && schema.getType(ordinal) != type)) {
+            return -1;
+        }
+        return ordinal;
+    }
+
+    @Override
+    public void setInt16(String attributeName, short value) {
+        final int ordinal = primitiveOrdinal(attributeName, FieldType.INT16);
+        if (ordinal < 0 || ENCODING.equals(attributeName)) {
+            super.setInt16(attributeName, value);
+        }
+        else {
+            setPrimitive(ordinal, FieldType.INT16, value);
+        }
+    }
+
+    @Override
+    public void setUInt16(String attributeName, int value) {
+        final int ordinal = primitiveOrdinal(attributeName, FieldType.UINT16);
+        if (ordinal < 0) {
+            super.setUInt16(attributeName, value);
+        }
+        else {
+            setPrimitive(ordinal, FieldType.UINT16, value & 0xffff);
+        }
+    }
+
+    @Override
+    public void setInt32(String attributeName, int value) {
+        final int ordinal = primitiveOrdinal(attributeName, FieldType.INT32);
+        if (ordinal < 0) {
+            super.setInt32(attributeName, value);
+        }
+        else {
+            setPrimitive(ordinal, FieldType.INT32, value);
+        }
+    }
+
+    @Override
+    public void setUInt32(String attributeName, long value) {
+        final int ordinal = primitiveOrdinal(attributeName, FieldType.UINT32);
+        if (ordinal < 0) {
+            super.setUInt32(attributeName, value);
+        }
+        else {
+            setPrimitive(ordinal, FieldType.UINT32, value & 0xffffffffL);
+        }
+    }
+
+    @Override
+    public void setInt64(String attributeName, long value) {
+        final int ordinal = primitiveOrdinal(attributeName, FieldType.INT64);
+        if (ordinal < 0) {
+            super.setInt64(attributeName, value);
+        }
+        else {
+            setPrimitive(ordinal, FieldType.INT64, value);
+        }
+    }
+
+    @Override
+    public void setUInt64(String attributeName, long value) {
+        final int ordinal = primitiveOrdinal(attributeName, FieldType.UINT64);
+        if (ordinal < 0) {
+            super.setUInt64(attributeName, value);
+        }
+        else {
+            setPrimitive(ordinal, FieldType.UINT64, value);
+        }
+    }
+
+    @Override
+    public void setBoolean(String attributeName, boolean value) {
+        final int ordinal = primitiveOrdinal(attributeName, FieldType.BOOLEAN);
+        if (ordinal < 0) {
+            super.setBoolean(attributeName, value);
+        }
+        else {
+            setPrimitive(ordinal, FieldType.BOOLEAN, value ? 1 : 0);
+        }
+    }
+
+    @Override
+    public void setByte(String attributeName, byte value) {
+        final int ordinal = primitiveOrdinal(attributeName, FieldType.BYTE);
+        if (ordinal < 0) {
+            super.setByte(attributeName, value);
+        }
+        else {
+            setPrimitive(ordinal, FieldType.BYTE, value);
+        }
+    }
+
+    @Override
+    public void setFloat(String attributeName, float value) {
+        final int ordinal = primitiveOrdinal(attributeName, FieldType.FLOAT);
+        if (ordinal < 0) {
+            super.setFloat(attributeName, value);
+        }
+        else {
+            setPrimitive(ordinal, FieldType.FLOAT, Float.floatToIntBits(value));
+        }
+    }
+
+    @Override
+    public void setDouble(String attributeName, double value) {
+        final int ordinal = primitiveOrdinal(attributeName, FieldType.DOUBLE);
+        if (ordinal < 0) {
+            super.setDouble(attributeName, value);
+        }
+        else {
+            setPrimitive(ordinal, FieldType.DOUBLE, Double.doubleToLongBits(value));
+        }
+    }
+
+    /**
+     * @return the ordinal of a set field of <tt>type</tt>, -1 if the field is
+     *         not in the schema, or -2 if it is in the schema but not set
+     * @throws NoSuchAttributeTypeException if the field has another type
+     */
+    private int setOrdinal(String attributeName, FieldType type) {
+        final int ordinal = ordinal(attributeName);
+        if (ordinal < 0 || types[ordinal] == null) {
+            return ordinal < 0 ? -1 : -2;
+        }
+        if (types[ordinal] != type) {
+            throw wrongType(attributeName, types[ordinal], type);
+        }
+        return ordinal;
+    }
+
+    @Override
+    public short getInt16(String attributeName, short defaultValue) {
+        final int ordinal = setOrdinal(attributeName, FieldType.INT16);
+        return ordinal >= 0 ? (short) primitives[ordinal]
+                            : ordinal == -1 ? super.getInt16(attributeName, defaultValue) : defaultValue;
+    }
+
+    @Override
+    public int getUInt16(String attributeName, int defaultValue) {
+        final int ordinal = setOrdinal(attributeName, FieldType.UINT16);
+        return ordinal >= 0 ? (int) primitives[ordinal]
+                            : ordinal == -1 ? super.getUInt16(attributeName, defaultValue) : defaultValue;
+    }
+
+    @Override
+    public int getInt32(String attributeName, int defaultValue) {
+        final int ordinal = setOrdinal(attributeName, FieldType.INT32);
+        return ordinal >= 0 ? (int) primitives[ordinal]
+                            : ordinal == -1 ? super.getInt32(attributeName, defaultValue) : defaultValue;
+    }
+
+    @Override
+    public long getUInt32(String attributeName, long defaultValue) {
+        final int ordinal = setOrdinal(attributeName, FieldType.UINT32);
+        return ordinal >= 0 ? primitives[ordinal]
+                            : ordinal == -1 ? super.getUInt32(attributeName, defaultValue) : defaultValue;
+    }
+
+    @Override
+    public long getInt64(String attributeName, long defaultValue) {
+        final int ordinal = setOrdinal(attributeName, FieldType.INT64);
+        return ordinal >= 0 ? primitives[ordinal]
+                            : ordinal == -1 ? super.getInt64(attributeName, defaultValue) : defaultValue;
+    }
+
+    @Override
+    public long getUInt64(String attributeName, long defaultValue) {
+        final int ordinal = setOrdinal(attributeName, FieldType.UINT64);
+        return ordinal >= 0 ? primitives[ordinal]
+                            : ordinal == -1 ? super.getUInt64(attributeName, defaultValue) : defaultValue;
+    }
+
+    @Override
+    public boolean getBoolean(String attributeName, boolean defaultValue) {
+        final int ordinal = setOrdinal(attributeName, FieldType.BOOLEAN);
+        return ordinal >= 0 ? primitives[ordinal] != 0
+                            : ordinal == -1 ? super.getBoolean(attributeName, defaultValue) : defaultValue;
+    }
+
+    @Override
+    public byte getByte(String attributeName, byte defaultValue) {
+        final int ordinal = setOrdinal(attributeName, FieldType.BYTE);
+        return ordinal >= 0 ? (byte) primitives[ordinal]
+                            : ordinal == -1 ? super.getByte(attributeName, defaultValue) : defaultValue;
+    }
+
+    @Override
+    public float getFloat(String attributeName, float defaultValue) {
+        final int ordinal = setOrdinal(attributeName, FieldType.FLOAT);
+        return ordinal >= 0 ? Float.intBitsToFloat((int) primitives[ordinal])
+                            : ordinal == -1 ? super.getFloat(attributeName, defaultValue) : defaultValue;
+    }
+
+    @Override
+    public double getDouble(String attributeName, double defaultValue) {
+        final int ordinal = setOrdinal(attributeName, FieldType.DOUBLE);
+        return ordinal >= 0 ? Double.longBitsToDouble(primitives[ordinal])
+                            : ordinal == -1 ? super.getDouble(attributeName, defaultValue) : defaultValue;
+    }
+
+    private static boolean isPrimitive(FieldType type) {
+        switch (type) {
+            case BOOLEAN:
+            case BYTE:
+            case INT16:
+            case UINT16:
+            case INT32:
+            case UINT32:
+            case INT64:
+            case UINT64:
+            case FLOAT:
+            case DOUBLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static long unbox(FieldType type, Object value) {
+        switch (type) {
+            case BOOLEAN:
+                return ((Boolean) value) ? 1 : 0;
+            case UINT64:
+                return ((BigInteger) value).longValue();
+            case FLOAT:
+                return Float.floatToIntBits((Float) value);
+            case DOUBLE:
+                return Double.doubleToLongBits((Double) value);
+            default:
+                return ((Number) value).longValue();
+        }
+    }
+
+    private static Object box(FieldType type, long bits) {
+        switch (type) {
+            case BOOLEAN:
+                return bits != 0;
+            case BYTE:
+                return (byte) bits;
+            case INT16:
+                return (short) bits;
+            case UINT16:
+            case INT32:
+                return (int) bits;
+            case UINT32:
+            case INT64:
+                return bits;
+            case UINT64:
+                return BigInteger.valueOf(bits).and(UINT64_MASK);
+            case FLOAT:
+                return Float.intBitsToFloat((int) bits);
+            case DOUBLE:
+                return Double.longBitsToDouble(bits);
+            default:
+                throw new IllegalStateException("Unsupported type: " + type);
+        }
+    }
+
+    private static int serializePrimitive(FieldType type, long bits, byte[] bytes, int offset) {
+        switch (type) {
+            case BOOLEAN:
+            case BYTE:
+                bytes[offset] = (byte) bits;
+                return 1;
+            case INT16:
+            case UINT16:
+                NumberCodec.encodeShortUnchecked((short) bits, bytes, offset);
+                return 2;
+            case INT32:
+            case UINT32:
+            case FLOAT:
+                NumberCodec.encodeIntUnchecked((int) bits, bytes, offset);
+                return 4;
+            default:
+                NumberCodec.encodeLongUnchecked(bits, bytes, offset);
+                return 8;
+        }
+    }
+
+    private static int serializePrimitive(FieldType type, long bits, ByteBuffer buffer, int offset) {
+        switch (type) {
+            case BOOLEAN:
+            case BYTE:
+                buffer.put(offset, (byte) bits);
+                return 1;
+            case INT16:
+            case UINT16:
+                buffer.putShort(offset, (short) bits);
+                return 2;
+            case INT32:
+            case UINT32:
+            case FLOAT:
+                buffer.putInt(offset, (int) bits);
+                return 4;
+            default:
+                buffer.putLong(offset, bits);
+                return 8;
+        }
+    }
+
+    private static long deserializePrimitive(FieldType type, byte[] bytes, int offset) {
+        switch (type) {
+            case BOOLEAN:
+                return bytes[offset] == 0 ? 0 : 1;
+            case BYTE:
+                return bytes[offset];
+            case INT16:
+                return NumberCodec.decodeShortUnchecked(bytes, offset);
+            case UINT16:
+                return NumberCodec.decodeShortUnchecked(bytes, offset) & 0xffff;
+            case INT32:
+            case FLOAT:
+                return NumberCodec.decodeIntUnchecked(bytes, offset);
+            case UINT32:
+                return NumberCodec.decodeIntUnchecked(bytes, offset) & 0xffffffffL;
+            default:
+                return NumberCodec.decodeLongUnchecked(bytes, offset);
+        }
+    }
+
+    private static long deserializePrimitive(FieldType type, ByteBuffer buffer, int offset) {
+        switch (type) {
+            case BOOLEAN:
+                return buffer.get(offset) == 0 ? 0 : 1;
+            case BYTE:
+                return buffer.get(offset);
+            case INT16:
+                return buffer.getShort(offset);
+            case UINT16:
+                return buffer.getShort(offset) & 0xffff;
+            case INT32:
+            case FLOAT:
+                return buffer.getInt(offset);
+            case UINT32:
+                return buffer.getInt(offset) & 0xffffffffL;
+            default:
+                return buffer.getLong(offset);
+        }
+    }
+
+    @Override
+    public int getBytesSize() {
+        return bytesStoreSize;
+    }
+
+    /**
+     * Serializes the event, with ENCODING first, then the fields in the
+     * schema in ordinal order, then the others.
+     */
+    @Override
+    public int serialize(byte[] bytes, int offset) {
+        int pos = offset;
+        pos += Serializer.serializeEVENTWORD(name, bytes, pos);
+        pos += Serializer.serializeUINT16(getNumEventAttributes(), bytes, pos);
+
+        final int encodingOrdinal = ordinal(ENCODING);
+        if (encodingOrdinal >= 0) {
+            pos += serializeSlot(encodingOrdinal, bytes, pos);
+        }
+        else if (overflow != null && overflow.containsKey(ENCODING)) {
+            pos += serializeField(ENCODING, overflow.get(ENCODING), bytes, pos);
+        }
+        for (int ordinal = 0; ordinal < types.length; ++ordinal) {
+            if (ordinal != encodingOrdinal) {
+                pos += serializeSlot(ordinal, bytes, pos);
+            }
+        }
+        if (overflow != null) {
+            for (Entry<String, BaseType> field : overflow.entrySet()) {
+                if (!ENCODING.equals(field.getKey())) {
+                    pos += serializeField(field.getKey(), field.getValue(), bytes, pos);
+                }
+            }
+        }
+
+        if (pos - offset != bytesStoreSize) {
+            throw new IllegalStateException("Expected to write " + bytesStoreSize +
+                                            " bytes, but actually wrote " + (pos - offset));
+        }
+        return pos - offset;
+    }
+
+    private int serializeSlot(int ordinal, byte[] bytes, int offset) {
+        final FieldType type = types[ordinal];
+        if (type == null) {
+            return 0;
+        }
+        int pos = offset;
+        pos += schema.serializeName(ordinal, bytes, pos);
+        bytes[pos++] = type.token;
+        if (isPrimitive(type)) {
+            pos += serializePrimitive(type, primitives[ordinal], bytes, pos);
+        }
+        else {
+            pos += Serializer.serializeValue(type, objects[ordinal], encoding, bytes, pos);
+        }
+        return pos - offset;
+    }
+
+    private int serializeField(String attributeName, BaseType bt, byte[] bytes, int offset) {
+        int pos = offset;
+        pos += Serializer.serializeATTRIBUTEWORD(attributeName, bytes, pos);
+        pos += Serializer.serializeBYTE(bt.getType().token, bytes, pos);
+        pos += Serializer.serializeValue(bt.getType(), bt.getTypeObject(), encoding, bytes, pos);
+        return pos - offset;
+    }
+
+    /**
+     * Writes a buffer without a backing array, such as a direct one, field by
+     * field in the same order as {@link #serialize(byte[], int)}, so the event
+     * is not serialized into a byte array first.
+     */
+    @Override
+    public int serialize(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return super.serialize(buffer);
+        }
+        if (buffer.remaining() < bytesStoreSize) {
+            throw new BufferOverflowException();
+        }
+        final ByteBuffer bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN
+                                     ? buffer : buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        final int offset = buffer.position();
+        int pos = offset;
+        pos += Serializer.serializeEVENTWORD(name, bigEndian, pos);
+        pos += Serializer.serializeUINT16(getNumEventAttributes(), bigEndian, pos);
+
+        final int encodingOrdinal = ordinal(ENCODING);
+        if (encodingOrdinal >= 0) {
+            pos += serializeSlot(encodingOrdinal, bigEndian, pos);
+        }
+        else if (overflow != null && overflow.containsKey(ENCODING)) {
+            pos += serializeField(ENCODING, overflow.get(ENCODING), bigEndian, pos);
+        }
+        for (int ordinal = 0; ordinal < types.length; ++ordinal) {
+            if (ordinal != encodingOrdinal) {
+                pos += serializeSlot(ordinal, bigEndian, pos);
+            }
+        }
+        if (overflow != null) {
+            for (Entry<String, BaseType> field : overflow.entrySet()) {
+                if (!ENCODING.equals(field.getKey())) {
+                    pos += serializeField(field.getKey(), field.getValue(), bigEndian, pos);
+                }
+            }
+        }
+
+        if (pos - offset != bytesStoreSize) {
+            throw new IllegalStateException("Expected to write " + bytesStoreSize +
+                                            " bytes, but actually wrote " + (pos - offset));
+        }
+        buffer.position(pos);
+        return pos - offset;
+    }
+
+    private int serializeSlot(int ordinal, ByteBuffer buffer, int offset) {
+        final FieldType type = types[ordinal];
+        if (type == null) {
+            return 0;
+        }
+        int pos = offset;
+        pos += schema.serializeName(ordinal, buffer, pos);
+        buffer.put(pos++, type.token);
+        if (isPrimitive(type)) {
+            pos += serializePrimitive(type, primitives[ordinal], buffer, pos);
+        }
+        else {
+            pos += Serializer.serializeValue(type, objects[ordinal], encoding, buffer, pos);
+        }
+        return pos - offset;
+    }
+
+    private int serializeField(String attributeName, BaseType bt, ByteBuffer buffer, int offset) {
+        int pos = offset;
+        pos += Serializer.serializeATTRIBUTEWORD(attributeName, buffer, pos);
+        pos += Serializer.serializeBYTE(bt.getType().token, buffer, pos);
+        pos += Serializer.serializeValue(bt.getType(), bt.getTypeObject(), encoding, buffer, pos);
+        return pos - offset;
+    }
+
+    @Override
+    public int serialize(DataOutput output) throws IOException {
+        final byte[] bytes = serialize();
+        output.write(bytes);
+        return bytes.length;
+    }
+
+    @Override
+    public void deserialize(byte[] bytes, int offset, int length) throws EventSystemException {
+        if (bytes == null) {
+            return;
+        }
+        reset();
+        state.set(offset);
+        setEventName(Deserializer.deserializeEVENTWORD(state, bytes));
+        final int num = Deserializer.deserializeUINT16(state, bytes);
+        for (int i = 0; i < num; ++i) {
+            final String attribute = Deserializer.deserializeATTRIBUTEWORD(state, bytes);
+            final FieldType type = FieldType.byToken(Deserializer.deserializeBYTE(state, bytes));
+            final int ordinal = isPrimitive(type) && !ENCODING.equals(attribute)
+                                ? primitiveOrdinal(attribute, type) : -1;
+            if (ordinal >= 0) {
+                setPrimitive(ordinal, type, deserializePrimitive(type, bytes, state.currentIndex()));
+                state.incr(type.getConstantSize());
+            }
+            else {
+                set(attribute, type, Deserializer.deserializeValue(state, bytes, type, encoding));
+            }
+        }
+        if (state.currentIndex() - offset != length) {
+            throw new EventSystemException(
+                    "Expected to deserialize " + length + " bytes, but actually read " +
+                    (state.currentIndex() - offset));
+        }
+    }
+
+    @Override
+    public void deserialize(DataInput stream, int length) throws IOException, EventSystemException {
+        final byte[] bytes = new byte[length];
+        stream.readFully(bytes);
+        deserialize(bytes);
+    }
+
+    @Override
+    protected void deserializeFields(ByteBuffer buffer, int offset, int length) {
+        reset();
+        state.set(offset);
+        setEventName(Deserializer.deserializeEVENTWORD(state, buffer));
+        final int num = Deserializer.deserializeUINT16(state, buffer);
+        for (int i = 0; i < num; ++i) {
+            final String attribute = Deserializer.deserializeATTRIBUTEWORD(state, buffer);
+            final FieldType type = FieldType.byToken(Deserializer.deserializeBYTE(state, buffer));
+            final int ordinal = isPrimitive(type) && !ENCODING.equals(attribute)
+                                ? primitiveOrdinal(attribute, type) : -1;
+            if (ordinal >= 0) {
+                setPrimitive(ordinal, type, deserializePrimitive(type, buffer, state.currentIndex()));
+                state.incr(type.getConstantSize());
+            }
+            else {
+                set(attribute, type, Deserializer.deserializeValue(state, buffer, type, encoding));
+            }
+        }
+        if (state.currentIndex() - offset != length) {
+            throw new EventSystemException(
+                    "Expected to deserialize " + length + " bytes, but actually read " +
+                    (state.currentIndex() - offset));
+        }
+    }
+
+    @Override
+    public Event copy() {
+        final SchemaEvent copy = new SchemaEvent(eventTemplateDB);
+        copy.validating = validating;
+        copy.schema = schema;
+        copy.name = name;
+        copy.encoding = encoding;
+        copy.types = types.length == 0 ? NO_TYPES : types.clone();
+        copy.primitives = primitives.length == 0 ? NO_PRIMITIVES : primitives.clone();
+        copy.objects = objects.length == 0 ? NO_OBJECTS : objects.clone();
+        copy.sizes = sizes.length == 0 ? NO_SIZES : sizes.clone();
+        copy.slotCount = slotCount;
+        copy.overflow = null;
+        if (overflow != null) {
+            copy.overflow = new LinkedHashMap<String, BaseType>();
+            for (Entry<String, BaseType> field : overflow.entrySet()) {
+                copy.overflow.put(field.getKey(), field.getValue().cloneBaseType());
+            }
+        }
+        copy.bytesStoreSize = bytesStoreSize;
+        return copy;
+    }
+
+    @Override
+    public Iterator<FieldAccessor> iterator() {
+        final List<FieldAccessor> fields = new ArrayList<FieldAccessor>(getNumEventAttributes());
+        for (int ordinal = 0; ordinal < types.length; ++ordinal) {
+            if (types[ordinal] != null) {
+                fields.add(new DefaultFieldAccessor(schema.getName(ordinal), types[ordinal], getSlot(ordinal)));
+            }
+        }
+        if (overflow != null) {
+            for (Entry<String, BaseType> field : overflow.entrySet()) {
+                fields.add(new DefaultFieldAccessor(field.getKey(), field.getValue().getType(),
+                                                    field.getValue().getTypeObject()));
+            }
+        }
+        return Collections.unmodifiableList(fields).iterator();
+    }
+}
@@ -0,0 +1,774 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.db;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.lwes.BaseType;
+import org.lwes.Event;
+import org.lwes.FieldType;
+import org.lwes.listener.FilterListener;
+import org.lwes.util.EncodedString;
+import org.lwes.util.IPAddress;
+
+/**
+ * <p>Generates a typed Java class for each event of an ESF file.</p>
+ * <p>A generated class holds the attributes of its event in plain fields, with
+ * a getter, setter, <tt>has</tt> and <tt>clear</tt> method for each.  Its
+ * <tt>serialize</tt> and <tt>deserialize</tt> methods read and write the
+ * standard event format directly, using attribute names that were encoded
+ * when the class was generated, so no maps, boxing or validation against an
+ * {@link EventTemplateDB} are involved.  Required attributes are checked when
+ * serializing, and ESF default values are set by the constructor.</p>
+ * <p>When deserializing, attributes that are not in the ESF, or that have a
+ * different type, are skipped.  Size restrictions are not enforced.</p>
+ * <pre>
+ *   java org.lwes.db.EventClassGenerator -f events.esf -d src/main/java -p com.example.events
+ * </pre>
+ */
+public class EventClassGenerator {
+
+    private static transient Log log = LogFactory.getLog(EventClassGenerator.class);
+
+    private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList(
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+            "continue", "default", "do", "double", "else", "enum", "extends", "false", "final", "finally",
+            "float", "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long",
+            "native", "new", "null", "package", "private", "protected", "public", "return", "short",
+            "static", "strictfp", "super", "switch", "synchronized", "this", "throw", "throws", "transient",
+            "true", "try", "void", "volatile", "while",
+            // members of the generated classes
+            "encoding", "state"));
+
+    @Option(name = "-f", aliases = "--file", required = true, usage = "The ESF file to generate classes from")
+    protected String file;
+
+    @Option(name = "-d", aliases = "--directory", required = true,
+            usage = "The source directory to write the classes to")
+    protected String directory;
+
+    @Option(name = "-p", aliases = "--package", usage = "The package of the generated classes")
+    protected String packageName = "";
+
+    @Option(name = "-e", aliases = "--events", usage = "Comma separated list of events to generate (default: all)")
+    protected String eventNames;
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public void setPackageName(String packageName) {
+        this.packageName = packageName == null ? "" : packageName;
+    }
+
+    public void run(String[] args) {
+        CmdLineParser parser = new CmdLineParser(this);
+        try {
+            parser.parseArgument(args);
+        }
+        catch (CmdLineException e) {
+            System.err.println("Usage: ");
+            parser.printUsage(System.err);
+            System.exit(1);
+        }
+
+        final EventTemplateDB db = new EventTemplateDB();
+        db.setStoreComments(true);
+        db.setESFFile(new File(file));
+        if (!db.initialize()) {
+            System.err.println("Unable to parse " + file);
+            System.exit(1);
+        }
+        try {
+            final List<String> events = eventNames == null
+                                        ? new ArrayList<String>(db.getEvents().keySet())
+                                        : FilterListener.parseEventNames(eventNames);
+            for (String event : events) {
+                final File source = write(db, event, new File(directory));
+                if (log.isInfoEnabled()) {
+                    log.info("Generated " + source);
+                }
+            }
+        }
+        catch (IOException e) {
+            log.error(e.getMessage(), e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Generates the class for an event and writes it below a source directory.
+     *
+     * @param db        the event definitions
+     * @param eventName the event to generate a class for
+     * @param directory the root of the source tree
+     * @return the file written
+     * @throws IOException if the file cannot be written
+     */
+    public File write(EventTemplateDB db, String eventName, File directory) throws IOException {
+        final File dir = packageName.length() == 0
+                         ? directory : new File(directory, packageName.replace('.', File.separatorChar));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        final File source = new File(dir, getClassName(eventName) + ".java");
+        final Writer out = new OutputStreamWriter(new FileOutputStream(source), "UTF-8");
+        try {
+            out.write(generate(db, eventName));
+        }
+        finally {
+            out.close();
+        }
+        return source;
+    }
+
+    /**
+     * @param eventName an event name, e.g. <tt>Search::Result</tt>
+     * @return the name of the class generated for it, e.g. <tt>SearchResult</tt>
+     */
+    public static String getClassName(String eventName) {
+        final StringBuilder name = new StringBuilder();
+        boolean upper = true;
+        for (char c : eventName.toCharArray()) {
+            if (!Character.isJavaIdentifierPart(c) || c == '_') {
+                upper = true;
+            }
+            else {
+                name.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        if (name.length() == 0 || !Character.isJavaIdentifierStart(name.charAt(0))) {
+            name.insert(0, '_');
+        }
+        return name.toString();
+    }
+
+    /**
+     * Generates the source of the class for an event.
+     *
+     * @param db        the event definitions
+     * @param eventName the event to generate a class for
+     * @return the Java source
+     */
+    public String generate(EventTemplateDB db, String eventName) {
+        if (!db.checkForEvent(eventName)) {
+            throw new IllegalArgumentException("No event " + eventName + " in the ESF");
+        }
+        final String className = getClassName(eventName);
+        final List<Field> fields = getFields(db, eventName);
+        final StringBuilder out = new StringBuilder();
+
+        line(out, 0, "// Generated by " + getClass().getName() + "; do not edit.");
+        if (packageName.length() > 0) {
+            line(out, 0, "package " + packageName + ";");
+        }
+        line(out, 0, "");
+        line(out, 0, "import java.math.BigInteger;");
+        line(out, 0, "");
+        for (Class<?> c : new Class<?>[]{
+                org.lwes.ArrayEvent.class, org.lwes.AttributeRequiredException.class, BaseType.class,
+                Event.class, org.lwes.EventSystemException.class, FieldType.class,
+                org.lwes.serializer.Deserializer.class, org.lwes.serializer.DeserializerState.class,
+                org.lwes.serializer.Serializer.class, EncodedString.class, IPAddress.class}) {
+            line(out, 0, "import " + c.getName() + ";");
+        }
+        line(out, 0, "");
+        line(out, 0, "/**");
+        line(out, 0, " * The " + escapeComment(eventName) + " event.");
+        appendComment(out, 0, db.getEventComment(eventName));
+        line(out, 0, " */");
+        line(out, 0, "public class " + className + " {");
+        line(out, 1, "public static final String EVENT_NAME = " + quote(eventName) + ";");
+        line(out, 0, "");
+        line(out, 1, "private static final byte[] EVENT_WORD = " + word(eventName, null) + ";");
+        line(out, 1, "private static final byte[] ENC_WORD = " + word(Event.ENCODING, FieldType.INT16) + ";");
+        for (Field field : fields) {
+            line(out, 1, "private static final byte[] " + field.constant + " = " + word(field.name, field.type) + ";");
+        }
+        line(out, 0, "");
+        line(out, 1, "private final DeserializerState state = new DeserializerState();");
+        line(out, 1, "private short encoding;");
+        for (Field field : fields) {
+            line(out, 1, "private " + field.javaType + " " + field.id + ";");
+            if (field.primitive) {
+                line(out, 1, "private boolean " + field.flag + ";");
+            }
+        }
+
+        // Constructors
+        line(out, 0, "");
+        line(out, 1, "/**");
+        line(out, 1, " * Creates an event with the default values of the ESF set.");
+        line(out, 1, " */");
+        line(out, 1, "public " + className + "() {");
+        line(out, 2, "reset();");
+        line(out, 2, "setDefaultValues();");
+        line(out, 1, "}");
+        line(out, 0, "");
+        line(out, 1, "public " + className + "(byte[] bytes) {");
+        line(out, 2, "deserialize(bytes, 0, bytes.length);");
+        line(out, 1, "}");
+        line(out, 0, "");
+        line(out, 1, "public static " + className + " fromEvent(Event event) {");
+        line(out, 2, "return new " + className + "(event.serialize());");
+        line(out, 1, "}");
+        line(out, 0, "");
+        line(out, 1, "public ArrayEvent toEvent() {");
+        line(out, 2, "return new ArrayEvent(serialize());");
+        line(out, 1, "}");
+
+        // reset() and defaults
+        line(out, 0, "");
+        line(out, 1, "/**");
+        line(out, 1, " * Clears every attribute.");
+        line(out, 1, " */");
+        line(out, 1, "public void reset() {");
+        line(out, 2, "encoding = Event.DEFAULT_ENCODING;");
+        for (Field field : fields) {
+            if (field.primitive) {
+                line(out, 2, field.id + " = " + field.zero + ";");
+                line(out, 2, field.flag + " = false;");
+            }
+            else {
+                line(out, 2, field.id + " = null;");
+            }
+        }
+        line(out, 1, "}");
+        line(out, 0, "");
+        line(out, 1, "protected void setDefaultValues() {");
+        for (Field field : fields) {
+            final Object value = field.baseType.getDefaultValue();
+            if (value == null) {
+                continue;
+            }
+            final String literal = literal(field.type, value);
+            if (literal == null) {
+                log.warn("Ignoring default value of " + eventName + "." + field.name + ": unsupported type " +
+                         field.type);
+                continue;
+            }
+            line(out, 2, "set" + field.property + "(" + literal + ");");
+        }
+        line(out, 1, "}");
+
+        // Accessors
+        line(out, 0, "");
+        line(out, 1, "public short getEncoding() {");
+        line(out, 2, "return encoding;");
+        line(out, 1, "}");
+        line(out, 0, "");
+        line(out, 1, "public void setEncoding(short encoding) {");
+        line(out, 2, "this.encoding = encoding;");
+        line(out, 1, "}");
+        for (Field field : fields) {
+            final String comment = field.baseType.getComment();
+            line(out, 0, "");
+            if (comment != null && comment.trim().length() > 0) {
+                line(out, 1, "/**");
+                appendComment(out, 1, comment);
+                line(out, 1, " */");
+            }
+            line(out, 1, "public " + field.javaType + " get" + field.property + "() {");
+            line(out, 2, "return " + field.id + ";");
+            line(out, 1, "}");
+            line(out, 0, "");
+            line(out, 1, "public boolean has" + field.property + "() {");
+            line(out, 2, "return " + (field.primitive ? field.flag : field.id + " != null") + ";");
+            line(out, 1, "}");
+            line(out, 0, "");
+            line(out, 1, "public void set" + field.property + "(" + field.javaType + " value) {");
+            line(out, 2, "this." + field.id + " = value;");
+            if (field.primitive) {
+                line(out, 2, field.flag + " = true;");
+            }
+            line(out, 1, "}");
+            line(out, 0, "");
+            line(out, 1, "public void clear" + field.property + "() {");
+            if (field.primitive) {
+                line(out, 2, field.id + " = " + field.zero + ";");
+                line(out, 2, field.flag + " = false;");
+            }
+            else {
+                line(out, 2, field.id + " = null;");
+            }
+            line(out, 1, "}");
+        }
+
+        // Size
+        line(out, 0, "");
+        line(out, 1, "/**");
+        line(out, 1, " * @return the number of bytes in the serialized event");
+        line(out, 1, " */");
+        line(out, 1, "public int getBytesSize() {");
+        line(out, 2, "int size = EVENT_WORD.length + 2 + ENC_WORD.length + 2;");
+        for (Field field : fields) {
+            line(out, 2, "if (" + presence(field) + ") {");
+            line(out, 3, "size += " + field.constant + ".length + " + sizeOf(field) + ";");
+            line(out, 2, "}");
+        }
+        line(out, 2, "return size;");
+        line(out, 1, "}");
+
+        // Serialization
+        line(out, 0, "");
+        line(out, 1, "public byte[] serialize() {");
+        line(out, 2, "final int size = getBytesSize();");
+        line(out, 2, "if (size > Event.MAX_MESSAGE_SIZE) {");
+        line(out, 3, "throw new EventSystemException(\"Event size limit is \" + Event.MAX_MESSAGE_SIZE + \" bytes.\");");
+        line(out, 2, "}");
+        line(out, 2, "final byte[] bytes = new byte[size];");
+        line(out, 2, "serialize(bytes, 0);");
+        line(out, 2, "return bytes;");
+        line(out, 1, "}");
+        line(out, 0, "");
+        line(out, 1, "/**");
+        line(out, 1, " * Serializes the event into a byte array, which must have room for");
+        line(out, 1, " * {@link #getBytesSize()} bytes from <tt>offset</tt>.");
+        line(out, 1, " *");
+        line(out, 1, " * @return the number of bytes written");
+        line(out, 1, " * @throws AttributeRequiredException if a required attribute is not set");
+        line(out, 1, " */");
+        line(out, 1, "public int serialize(byte[] bytes, int offset) {");
+        for (Field field : fields) {
+            if (field.baseType.isRequired()) {
+                line(out, 2, "if (!(" + presence(field) + ")) {");
+                line(out, 3, "throw new AttributeRequiredException(" + quote(field.name) + ");");
+                line(out, 2, "}");
+            }
+        }
+        line(out, 2, "int pos = offset;");
+        line(out, 2, "System.arraycopy(EVENT_WORD, 0, bytes, pos, EVENT_WORD.length);");
+        line(out, 2, "pos += EVENT_WORD.length;");
+        line(out, 2, "final int countPosition = pos;");
+        line(out, 2, "pos += 2;");
+        line(out, 2, "int count = 1;");
+        line(out, 2, "System.arraycopy(ENC_WORD, 0, bytes, pos, ENC_WORD.length);");
+        line(out, 2, "pos += ENC_WORD.length;");
+        line(out, 2, "pos += Serializer.serializeINT16(encoding, bytes, pos);");
+        for (Field field : fields) {
+            line(out, 2, "if (" + presence(field) + ") {");
+            line(out, 3, "System.arraycopy(" + field.constant + ", 0, bytes, pos, " + field.constant + ".length);");
+            line(out, 3, "pos += " + field.constant + ".length;");
+            line(out, 3, "pos += " + serializer(field) + ";");
+            line(out, 3, "++count;");
+            line(out, 2, "}");
+        }
+        line(out, 2, "Serializer.serializeUINT16(count, bytes, countPosition);");
+        line(out, 2, "return pos - offset;");
+        line(out, 1, "}");
+
+        // Deserialization
+        line(out, 0, "");
+        line(out, 1, "public void deserialize(byte[] bytes) {");
+        line(out, 2, "deserialize(bytes, 0, bytes.length);");
+        line(out, 1, "}");
+        line(out, 0, "");
+        line(out, 1, "/**");
+        line(out, 1, " * Reads a serialized " + escapeComment(eventName) + " event.  Every attribute not in");
+        line(out, 1, " * the serialized event is cleared.");
+        line(out, 1, " *");
+        line(out, 1, " * @throws EventSystemException if the bytes hold another event");
+        line(out, 1, " */");
+        line(out, 1, "public void deserialize(byte[] bytes, int offset, int length) {");
+        line(out, 2, "if (!matches(bytes, offset, EVENT_WORD)) {");
+        line(out, 3, "throw new EventSystemException(\"Not a \" + EVENT_NAME + \" event\");");
+        line(out, 2, "}");
+        line(out, 2, "reset();");
+        line(out, 2, "state.set(offset + EVENT_WORD.length);");
+        line(out, 2, "final int count = Deserializer.deserializeUINT16(state, bytes);");
+        line(out, 2, "for (int i = 0; i < count; ++i) {");
+        line(out, 3, "final int pos = state.currentIndex();");
+        line(out, 3, "// Attribute name length, name and type token");
+        line(out, 3, "final int wordLength = (bytes[pos] & 0xff) + 2;");
+        line(out, 3, "state.incr(wordLength);");
+        line(out, 3, "switch (wordLength) {");
+        final Map<Integer, List<Field>> byLength = new TreeMap<Integer, List<Field>>();
+        byLength.put(wordLength(Event.ENCODING), new ArrayList<Field>());
+        for (Field field : fields) {
+            List<Field> group = byLength.get(wordLength(field.name));
+            if (group == null) {
+                group = new ArrayList<Field>();
+                byLength.put(wordLength(field.name), group);
+            }
+            group.add(field);
+        }
+        for (Map.Entry<Integer, List<Field>> group : byLength.entrySet()) {
+            line(out, 4, "case " + group.getKey() + ":");
+            if (group.getKey() == wordLength(Event.ENCODING)) {
+                line(out, 5, "if (matches(bytes, pos, ENC_WORD)) {");
+                line(out, 6, "encoding = Deserializer.deserializeINT16(state, bytes);");
+                line(out, 6, "continue;");
+                line(out, 5, "}");
+            }
+            for (Field field : group.getValue()) {
+                line(out, 5, "if (matches(bytes, pos, " + field.constant + ")) {");
+                line(out, 6, "this." + field.id + " = " + deserializer(field) + ";");
+                if (field.primitive) {
+                    line(out, 6, "this." + field.flag + " = true;");
+                }
+                line(out, 6, "continue;");
+                line(out, 5, "}");
+            }
+            line(out, 5, "break;");
+        }
+        line(out, 3, "}");
+        line(out, 3, "// Not in the ESF, or of another type");
+        line(out, 3, "Deserializer.deserializeValue(state, bytes, FieldType.byToken(bytes[pos + wordLength - 1]), encoding);");
+        line(out, 2, "}");
+        line(out, 2, "if (state.currentIndex() - offset != length) {");
+        line(out, 3, "throw new EventSystemException(\"Expected to deserialize \" + length + \" bytes, but actually read \" +");
+        line(out, 3, "                               (state.currentIndex() - offset));");
+        line(out, 2, "}");
+        line(out, 1, "}");
+        line(out, 0, "");
+        line(out, 1, "private static boolean matches(byte[] bytes, int offset, byte[] word) {");
+        line(out, 2, "for (int i = 0; i < word.length; ++i) {");
+        line(out, 3, "if (bytes[offset + i] != word[i]) {");
+        line(out, 4, "return false;");
+        line(out, 3, "}");
+        line(out, 2, "}");
+        line(out, 2, "return true;");
+        line(out, 1, "}");
+        line(out, 0, "}");
+        return out.toString();
+    }
+
+    private List<Field> getFields(EventTemplateDB db, String eventName) {
+        final Map<String, BaseType> types =
+                new TreeMap<String, BaseType>(db.getBaseTypesForEvent(eventName));
+        types.remove(Event.ENCODING);
+        // Names of the generated members that attributes must not take over
+        final Set<String> names = new HashSet<String>(Arrays.asList(
+                "EVENT_WORD", "ENC_WORD", "Encoding", "BytesSize", "DefaultValues"));
+        final List<Field> fields = new ArrayList<Field>();
+        for (Map.Entry<String, BaseType> entry : types.entrySet()) {
+            final Field field = new Field(entry.getKey(), entry.getValue());
+            for (String name : new String[]{field.id, field.property, field.constant}) {
+                if (!names.add(name)) {
+                    throw new IllegalArgumentException("Attribute " + eventName + "." + field.name +
+                                                       " clashes with another attribute as " + name);
+                }
+            }
+            fields.add(field);
+        }
+        return fields;
+    }
+
+    private static String presence(Field field) {
+        return field.primitive ? "this." + field.flag : "this." + field.id + " != null";
+    }
+
+    private static String sizeOf(Field field) {
+        final FieldType type = field.type;
+        if (type.isConstantSize()) {
+            return String.valueOf(type.getConstantSize());
+        }
+        if (type == FieldType.STRING) {
+            return "EncodedString.getByteLength(this." + field.id + ", Event.ENCODING_STRINGS[encoding]) + 2";
+        }
+        if (type.isArray() && !type.isNullableArray() && type.getComponentType().isConstantSize()) {
+            final int size = type.getComponentType().getConstantSize();
+            return "2 + this." + field.id + ".length" + (size == 1 ? "" : " * " + size);
+        }
+        return "new BaseType(FieldType." + type.name() + ", this." + field.id + ").getByteSize(encoding)";
+    }
+
+    private static String serializer(Field field) {
+        final String id = "this." + field.id;
+        switch (field.type) {
+            case UINT16:
+                return "Serializer.serializeUINT16(" + id + ", bytes, pos)";
+            case INT16:
+                return "Serializer.serializeINT16(" + id + ", bytes, pos)";
+            case UINT32:
+                return "Serializer.serializeUINT32(" + id + ", bytes, pos)";
+            case INT32:
+                return "Serializer.serializeINT32(" + id + ", bytes, pos)";
+            case INT64:
+                return "Serializer.serializeINT64(" + id + ", bytes, pos)";
+            case UINT64:
+                return "Serializer.serializeUINT64(" + id + ", bytes, pos)";
+            case BOOLEAN:
+                return "Serializer.serializeBOOLEAN(" + id + ", bytes, pos)";
+            case BYTE:
+                return "Serializer.serializeBYTE(" + id + ", bytes, pos)";
+            case FLOAT:
+                return "Serializer.serializeINT32(Float.floatToIntBits(" + id + "), bytes, pos)";
+            case DOUBLE:
+                return "Serializer.serializeINT64(Double.doubleToLongBits(" + id + "), bytes, pos)";
+            case STRING:
+                return "Serializer.serializeSTRING(" + id + ", bytes, pos, encoding)";
+            default:
+                // including IPADDR, whose direct serializer is deprecated
+                return "Serializer.serializeValue(FieldType." + field.type.name() + ", " + id +
+                       ", encoding, bytes, pos)";
+        }
+    }
+
+    private static String deserializer(Field field) {
+        switch (field.type) {
+            case UINT16:
+                return "Deserializer.deserializeUINT16(state, bytes)";
+            case INT16:
+                return "Deserializer.deserializeINT16(state, bytes)";
+            case UINT32:
+                return "Deserializer.deserializeUINT32(state, bytes)";
+            case INT32:
+                return "Deserializer.deserializeINT32(state, bytes)";
+            case INT64:
+                return "Deserializer.deserializeINT64(state, bytes)";
+            case UINT64:
+                return "Deserializer.deserializeUINT64(state, bytes)";
+            case BOOLEAN:
+                return "Deserializer.deserializeBOOLEAN(state, bytes)";
+            case BYTE:
+                return "Deserializer.deserializeBYTE(state, bytes)";
+            case FLOAT:
+                return "Float.intBitsToFloat(Deserializer.deserializeINT32(state, bytes))";
+            case DOUBLE:
+                return "Double.longBitsToDouble(Deserializer.deserializeINT64(state, bytes))";
+            case STRING:
+                return "Deserializer.deserializeSTRING(state, bytes, encoding)";
+            case IPADDR:
+                return "Deserializer.deserializeIPADDR(state, bytes)";
+            default:
+                return "(" + field.javaType + ") Deserializer.deserializeValue(state, bytes, FieldType." +
+                       field.type.name() + ", encoding)";
+        }
+    }
+
+    /**
+     * @return the Java literal for a default value, or null if the type has none
+     */
+    private static String literal(FieldType type, Object value) {
+        switch (type) {
+            case UINT16:
+            case INT32:
+            case BOOLEAN:
+                return value.toString();
+            case INT16:
+                return "(short) " + value;
+            case BYTE:
+                return "(byte) " + value;
+            case UINT32:
+            case INT64:
+                return value + "L";
+            case UINT64:
+                return ((BigInteger) value).longValue() + "L";
+            case FLOAT: {
+                final float f = (Float) value;
+                return Float.isNaN(f) || Float.isInfinite(f)
+                       ? "Float.intBitsToFloat(" + Float.floatToIntBits(f) + ")" : f + "f";
+            }
+            case DOUBLE: {
+                final double d = (Double) value;
+                return Double.isNaN(d) || Double.isInfinite(d)
+                       ? "Double.longBitsToDouble(" + Double.doubleToLongBits(d) + "L)" : d + "d";
+            }
+            case STRING:
+                return quote((String) value);
+            case IPADDR: {
+                final byte[] address = ((IPAddress) value).getInetAddressAsBytes();
+                return "new IPAddress(new byte[]" + bytes(address, 0, address.length) + ")";
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static int wordLength(String name) {
+        return EncodedString.getBytes(name, Event.ENCODING_STRINGS[Event.DEFAULT_ENCODING]).length + 2;
+    }
+
+    /**
+     * @return the array literal of a serialized name, followed by the type
+     *         token if one is given
+     */
+    private static String word(String name, FieldType type) {
+        final byte[] nameBytes = EncodedString.getBytes(name, Event.ENCODING_STRINGS[Event.DEFAULT_ENCODING]);
+        final byte[] word = new byte[nameBytes.length + (type == null ? 1 : 2)];
+        word[0] = (byte) nameBytes.length;
+        System.arraycopy(nameBytes, 0, word, 1, nameBytes.length);
+        if (type != null) {
+            word[word.length - 1] = type.token;
+        }
+        return bytes(word, 0, word.length);
+    }
+
+    private static String bytes(byte[] bytes, int offset, int length) {
+        final StringBuilder buf = new StringBuilder("{");
+        for (int i = offset; i < offset + length; ++i) {
+            if (i > offset) {
+                buf.append(", ");
+            }
+            buf.append(bytes[i]);
+        }
+        return buf.append('}').toString();
+    }
+
+    private static String quote(String s) {
+        final StringBuilder buf = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            switch (c) {
+                case '"':
+                    buf.append("\\\"");
+                    break;
+                case '\\':
+                    buf.append("\\\\");
+                    break;
+                case '\n':
+                    buf.append("\\n");
+                    break;
+                case '\r':
+                    buf.append("\\r");
+                    break;
+                case '\t':
+                    buf.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        buf.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        buf.append(c);
+                    }
+            }
+        }
+        return buf.append('"').toString();
+    }
+
+    private static String escapeComment(String s) {
+        return s.replace("*/", "*&#47;").replace("\\u", "\\\\u");
+    }
+
+    private static void appendComment(StringBuilder out, int indent, String comment) {
+        if (comment == null) {
+            return;
+        }
+        for (String text : comment.split("\n")) {
+            text = text.trim();
+            if (text.startsWith("#")) {
+                text = text.substring(1).trim();
+            }
+            if (text.length() > 0) {
+                line(out, indent, " * " + escapeComment(text));
+            }
+        }
+    }
+
+    private static void line(StringBuilder out, int indent, String text) {
+        if (text.length() > 0) {
+            for (int i = 0; i < indent; ++i) {
+                out.append("    ");
+            }
+            out.append(text);
+        }
+        out.append('\n');
+    }
+
+    /**
+     * An attribute of the generated event, with the names used for it in the
+     * generated code.
+     */
+    private static class Field {
+        final String name;
+        final BaseType baseType;
+        final FieldType type;
+        final String id;
+        final String property;
+        final String flag;
+        final String constant;
+        final String javaType;
+        final boolean primitive;
+        final String zero;
+
+        Field(String name, BaseType baseType) {
+            this.name = name;
+            this.baseType = baseType;
+            this.type = baseType.getType();
+
+            final StringBuilder buf = new StringBuilder();
+            for (char c : name.toCharArray()) {
+                buf.append(Character.isJavaIdentifierPart(c) ? c : '_');
+            }
+            if (!Character.isJavaIdentifierStart(buf.charAt(0))) {
+                buf.insert(0, '_');
+            }
+            final String identifier = buf.toString();
+            final String id = Character.toLowerCase(identifier.charAt(0)) + identifier.substring(1);
+            this.id = KEYWORDS.contains(id) ? id + "_" : id;
+            this.property = Character.toUpperCase(identifier.charAt(0)) + identifier.substring(1);
+            this.flag = "has" + property;
+
+            final StringBuilder constant = new StringBuilder();
+            for (int i = 0; i < identifier.length(); ++i) {
+                final char c = identifier.charAt(i);
+                if (i > 0 && Character.isUpperCase(c) && Character.isLowerCase(identifier.charAt(i - 1))) {
+                    constant.append('_');
+                }
+                constant.append(Character.toUpperCase(c));
+            }
+            this.constant = constant.append("_WORD").toString();
+
+            switch (type) {
+                case UINT16:
+                case INT32:
+                    javaType = "int";
+                    break;
+                case INT16:
+                    javaType = "short";
+                    break;
+                case UINT32:
+                case INT64:
+                case UINT64:
+                    javaType = "long";
+                    break;
+                case BOOLEAN:
+                    javaType = "boolean";
+                    break;
+                case BYTE:
+                    javaType = "byte";
+                    break;
+                case FLOAT:
+                    javaType = "float";
+                    break;
+                case DOUBLE:
+                    javaType = "double";
+                    break;
+                default:
+                    javaType = type.getDefaultValue().getClass().getSimpleName();
+            }
+            primitive = type.isConstantSize() && type != FieldType.IPADDR;
+            zero = type == FieldType.BOOLEAN ? "false" : "0";
+        }
+    }
+
+    public static void main(String[] args) {
+        new EventClassGenerator().run(args);
+    }
+}
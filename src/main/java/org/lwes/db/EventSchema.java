@@ -0,0 +1,125 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.db;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.lwes.BaseType;
+import org.lwes.FieldType;
+import org.lwes.serializer.Serializer;
+
+/**
+ * <p>The fields of one event in an {@link EventTemplateDB}, numbered from
+ * zero in name order, so that events can keep their values in arrays
+ * indexed by these ordinals.  Each name is also kept serialized, ready to be
+ * copied into an outgoing event.</p>
+ * <p>A schema is immutable.  Fields added to the event later are not in it;
+ * {@link EventTemplateDB#getSchema(String)} then builds a new one.</p>
+ */
+public final class EventSchema {
+
+    private final String eventName;
+    private final String[] names;
+    private final FieldType[] types;
+    private final Object[] defaultValues;
+    private final byte[][] serializedNames;
+    private final Map<String, Integer> ordinals;
+
+    EventSchema(String eventName, Map<String, BaseType> fields) {
+        final Map<String, BaseType> sorted = new TreeMap<String, BaseType>(fields);
+        this.eventName = eventName;
+        this.names = new String[sorted.size()];
+        this.types = new FieldType[names.length];
+        this.defaultValues = new Object[names.length];
+        this.serializedNames = new byte[names.length][];
+        this.ordinals = new HashMap<String, Integer>(2 * names.length);
+        int ordinal = 0;
+        final byte[] buffer = new byte[256];
+        for (Map.Entry<String, BaseType> field : sorted.entrySet()) {
+            names[ordinal] = field.getKey();
+            types[ordinal] = field.getValue().getType();
+            defaultValues[ordinal] = field.getValue().getDefaultValue();
+            final int length = Serializer.serializeATTRIBUTEWORD(field.getKey(), buffer, 0);
+            serializedNames[ordinal] = new byte[length];
+            System.arraycopy(buffer, 0, serializedNames[ordinal], 0, length);
+            ordinals.put(field.getKey(), ordinal);
+            ++ordinal;
+        }
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    /**
+     * @return the number of fields
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @return the ordinal of the field, or -1 if the event has no such field
+     */
+    public int getOrdinal(String name) {
+        final Integer ordinal = ordinals.get(name);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    public String getName(int ordinal) {
+        return names[ordinal];
+    }
+
+    public FieldType getType(int ordinal) {
+        return types[ordinal];
+    }
+
+    /**
+     * @return the default value of the field, or null if it has none
+     */
+    public Object getDefaultValue(int ordinal) {
+        return defaultValues[ordinal];
+    }
+
+    /**
+     * @return the number of bytes in the serialized name, with its length
+     */
+    public int getSerializedNameLength(int ordinal) {
+        return serializedNames[ordinal].length;
+    }
+
+    /**
+     * Copies the serialized name of a field into <tt>bytes</tt>.
+     *
+     * @return the number of bytes written
+     */
+    public int serializeName(int ordinal, byte[] bytes, int offset) {
+        final byte[] name = serializedNames[ordinal];
+        System.arraycopy(name, 0, bytes, offset, name.length);
+        return name.length;
+    }
+
+    /**
+     * Copies the serialized name of a field into <tt>buffer</tt> at
+     * <tt>offset</tt>, leaving the buffer's position alone.
+     *
+     * @return the number of bytes written
+     */
+    public int serializeName(int ordinal, ByteBuffer buffer, int offset) {
+        final byte[] name = serializedNames[ordinal];
+        final ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.put(name);
+        return name.length;
+    }
+}
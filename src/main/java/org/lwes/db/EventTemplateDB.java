@@ -41,6 +41,7 @@ import org.lwes.NoSuchAttributeTypeException;
 import org.lwes.NoSuchEventException;
 import org.lwes.ValidationExceptions;
 import org.lwes.util.IPAddress;
+import org.lwes.util.NameCache;
 
 /**
  * Provides type checking for the event system. Also provides a place for
@@ -71,6 +72,8 @@ public class EventTemplateDB {
     private Map<String, String> eventComments = null;
     private Map<FieldType, BaseType> knownTypes = null;
     private Map<String, BaseType> reservedWords = null;
+    /* field layouts of the events, built when first asked for */
+    private final Map<String, EventSchema> schemas = new ConcurrentHashMap<String, EventSchema>();
     private String metaInfoComments = null;
 
     // To reduce memory footprint, set to false
@@ -228,7 +231,8 @@ public class EventTemplateDB {
                 }
             }
 
-            events.put(anEventName, evtHash);
+            events.put(NameCache.getInstance().add(anEventName), evtHash);
+            invalidateSchema(anEventName);
             if (comment != null && storeComments) {
                 eventComments.put(anEventName, comment);
             }
@@ -309,7 +313,7 @@ public class EventTemplateDB {
                                                                     anAttributeType,
                                                                     defaultValue));
                     }
-                    reservedWords.put(anAttributeName, bt);
+                    reservedWords.put(NameCache.getInstance().add(anAttributeName), bt);
                     return true;
                 }
                 else {
@@ -342,7 +346,8 @@ public class EventTemplateDB {
                                                                     bt.getType(),
                                                                     defaultValue));
                     }
-                    evtHash.put(anAttributeName, bt);
+                    evtHash.put(NameCache.getInstance().add(anAttributeName), bt);
+                    invalidateSchema(anEventName);
                     return true;
                 }
                 else {
@@ -712,6 +717,44 @@ public class EventTemplateDB {
         return retBaseType;
     }
 
+    /**
+     * Returns the fields of an event numbered by ordinal, for events that
+     * keep their values in arrays.  The schema is built once and reused
+     * until attributes are added to the event.
+     *
+     * @param eventName the name of an event
+     * @return the schema, or null if there is no such event
+     */
+    public EventSchema getSchema(String eventName) {
+        if (eventName == null) {
+            return null;
+        }
+        EventSchema schema = schemas.get(eventName);
+        if (schema == null) {
+            synchronized (this) {
+                schema = schemas.get(eventName);
+                if (schema == null) {
+                    final Map<String, BaseType> fields = events.get(eventName);
+                    if (fields == null) {
+                        return null;
+                    }
+                    schema = new EventSchema(eventName, fields);
+                    schemas.put(eventName, schema);
+                }
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * Drops the cached schema of an event whose fields have changed.  This
+     * takes the lock {@link #getSchema(String)} builds under, so a schema
+     * built from the old fields cannot be cached after it is dropped.
+     */
+    private synchronized void invalidateSchema(String eventName) {
+        schemas.remove(eventName);
+    }
+
     /**
      * Returns the base types for this event
      *
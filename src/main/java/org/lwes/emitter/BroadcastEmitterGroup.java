@@ -47,7 +47,11 @@ public class BroadcastEmitterGroup extends EmitterGroup {
 
   @Override
   protected int emit(Event e) {
-    byte[] bytes = e.serialize();
+    return emit(e.serialize());
+  }
+
+  @Override
+  protected int emit(byte[] bytes) {
     int bytesEmitted = 0;
     for (int i = 0; i < emitters.length; i++) {
       try {
@@ -17,6 +17,7 @@ import org.apache.commons.logging.LogFactory;
 import org.lwes.Event;
 import org.lwes.EventFactory;
 import org.lwes.EventSystemException;
+import org.lwes.serializer.CompressedEnvelope;
 import org.lwes.util.NumberCodec;
 
 import java.io.IOException;
@@ -24,6 +25,9 @@ import java.io.InputStream;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * Abstract class for emitting events on a datagram socket.
@@ -53,6 +57,15 @@ public abstract class DatagramSocketEventEmitter<T extends DatagramSocket>
   /* a lock variable to synchronize events */
   protected Object lock = new Object();
 
+  /* events at least this long are compressed; 0 means never */
+  protected int compressionThreshold = 0;
+
+  /* the most bytes of events to pack into one bundle, before compression */
+  protected int bundleSize = Event.MAX_MESSAGE_SIZE - CompressedEnvelope.HEADER_SIZE;
+
+  /* compresses datagrams; guarded by lock */
+  private CompressedEnvelope envelope = null;
+
   /**
    * Default constructor.
    */
@@ -120,6 +133,55 @@ public abstract class DatagramSocketEventEmitter<T extends DatagramSocket>
     return this.iface;
   }
 
+  /**
+   * Sets the size at which events are compressed.  A compressed event is
+   * sent in a {@link CompressedEnvelope}, if that makes it smaller, and can
+   * only be read by listeners that understand envelopes.
+   *
+   * @param compressionThreshold the serialized size in bytes, or 0 to send
+   *                             every event as it is (the default)
+   */
+  public void setCompressionThreshold(int compressionThreshold) {
+    if (compressionThreshold < 0) {
+      throw new IllegalArgumentException("Invalid compression threshold " + compressionThreshold);
+    }
+    this.compressionThreshold = compressionThreshold;
+  }
+
+  /**
+   * Gets the size at which events are compressed.
+   *
+   * @return the serialized size in bytes, or 0 if events are not compressed
+   */
+  public int getCompressionThreshold() {
+    return this.compressionThreshold;
+  }
+
+  /**
+   * Sets how many bytes of events {@link #emit(Collection)} packs into one
+   * datagram, measured before compression.  A bundle that is still too big
+   * for a datagram once compressed is split, so with compressible events
+   * this can be several times MAX_MESSAGE_SIZE.
+   *
+   * @param bundleSize the size in bytes
+   */
+  public void setBundleSize(int bundleSize) {
+    if (bundleSize <= 0 || bundleSize > CompressedEnvelope.MAX_PAYLOAD_SIZE) {
+      throw new IllegalArgumentException("Bundle size must be from 1 to " +
+                                         CompressedEnvelope.MAX_PAYLOAD_SIZE + ", not " + bundleSize);
+    }
+    this.bundleSize = bundleSize;
+  }
+
+  /**
+   * Gets how many bytes of events are packed into one datagram.
+   *
+   * @return the size in bytes, before compression
+   */
+  public int getBundleSize() {
+    return this.bundleSize;
+  }
+
   /**
    * Sets the ESF file used for event validation.
    * @param esfFilePath the path of the ESF file
@@ -190,6 +252,12 @@ public abstract class DatagramSocketEventEmitter<T extends DatagramSocket>
     if (socket != null) {
       socket.close();
     }
+    synchronized (lock) {
+      if (envelope != null) {
+        envelope.end();
+        envelope = null;
+      }
+    }
   }
 
   /**
@@ -229,7 +297,7 @@ public abstract class DatagramSocketEventEmitter<T extends DatagramSocket>
     byte[] msg = event.serialize();
     int bytesEmitted = 0;
     synchronized (lock) {
-      bytesEmitted = emit(msg);
+      bytesEmitted = emit(compress(msg));
       try {
         collectStatistics();
       }
@@ -240,6 +308,87 @@ public abstract class DatagramSocketEventEmitter<T extends DatagramSocket>
     return bytesEmitted;
   }
 
+  /**
+   * Emits several events, packing as many as fit in bundleSize bytes into
+   * each datagram.  Each bundle is sent in a {@link CompressedEnvelope},
+   * compressed if that makes it smaller, so only listeners that understand
+   * envelopes can read them.
+   *
+   * @param events the events to emit
+   * @exception IOException throws an IOException is there is a network error.
+   * @throws EventSystemException if unable to serialize the events
+   * @return number of bytes emitted
+   */
+  public int emit(Collection<? extends Event> events) throws IOException, EventSystemException {
+    final List<byte[]> messages = new ArrayList<byte[]>(events.size());
+    for (Event event : events) {
+      messages.add(event.serialize());
+    }
+    int bytesEmitted = 0;
+    synchronized (lock) {
+      int start = 0;
+      int size = 0;
+      for (int i = 0; i < messages.size(); ++i) {
+        final int messageSize = 2 + messages.get(i).length;
+        if (i > start && size + messageSize > bundleSize) {
+          bytesEmitted += emitBundle(messages.subList(start, i));
+          start = i;
+          size = 0;
+        }
+        size += messageSize;
+      }
+      if (start < messages.size()) {
+        bytesEmitted += emitBundle(messages.subList(start, messages.size()));
+      }
+      try {
+        for (int i = 0; i < messages.size(); ++i) {
+          collectStatistics();
+        }
+      }
+      catch (EventSystemException e) {
+        log.error(e.getMessage(), e);
+      }
+    }
+    return bytesEmitted;
+  }
+
+  /**
+   * Emits serialized events in one datagram, or in several if they do not
+   * fit.  Call with the lock held.
+   */
+  private int emitBundle(List<byte[]> messages) throws IOException {
+    if (messages.size() == 1) {
+      return emit(compress(messages.get(0)));
+    }
+    final byte[] bundle = getEnvelope().bundle(messages);
+    if (bundle.length <= Event.MAX_MESSAGE_SIZE) {
+      return emit(bundle);
+    }
+    final int half = messages.size() / 2;
+    return emitBundle(messages.subList(0, half)) + emitBundle(messages.subList(half, messages.size()));
+  }
+
+  /**
+   * Compresses a serialized event if it is at least compressionThreshold
+   * bytes and compression makes it smaller.  Call with the lock held.
+   *
+   * @return the datagram to send
+   */
+  private byte[] compress(byte[] msg) {
+    if (compressionThreshold == 0 || msg.length < compressionThreshold) {
+      return msg;
+    }
+    final byte[] compressed = getEnvelope().compress(msg, 0, msg.length);
+    return compressed == null ? msg : compressed;
+  }
+
+  private CompressedEnvelope getEnvelope() {
+    if (envelope == null) {
+      envelope = new CompressedEnvelope();
+    }
+    return envelope;
+  }
+
   /**
    * Emits a byte array to the network.
    *
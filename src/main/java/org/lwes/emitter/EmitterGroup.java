@@ -14,9 +14,12 @@ package org.lwes.emitter;
 import java.io.IOException;
 import java.util.Random;
 
+import org.lwes.ArrayEvent;
 import org.lwes.Event;
 import org.lwes.EventFactory;
 import org.lwes.EventSystemException;
+import org.lwes.serializer.Deserializer;
+import org.lwes.serializer.DeserializerState;
 
 /**
  * @author Joel Meyer
@@ -83,6 +86,21 @@ public abstract class EmitterGroup {
     return 0;
   }
 
+  /**
+   * Emits an already serialized event, e.g. one relayed from a listener.
+   * Only the event name is read, and only when the group has a filter.
+   *
+   * @param bytes the serialized event; the whole array is emitted
+   * @return number of bytes emitted
+   */
+  public int emitToGroup(byte[] bytes) {
+    if (sampleRate == 1.0 || (sampleRate > 0.0 && random.nextDouble() <= sampleRate)) {
+      if (filter == null || filter.shouldEmit(Deserializer.deserializeEVENTWORD(new DeserializerState(), bytes)))
+        return emit(bytes);
+    }
+    return 0;
+  }
+
   protected EventFactory getFactory() {
     return factory;
   }
@@ -93,5 +111,17 @@ public abstract class EmitterGroup {
 
   protected abstract int emit(Event e);
 
+  /**
+   * Emits a serialized event.  Groups that send bytes should override this;
+   * the default wraps the bytes in an {@link ArrayEvent} and calls
+   * {@link #emit(Event)}.
+   *
+   * @param bytes the serialized event
+   * @return number of bytes emitted
+   */
+  protected int emit(byte[] bytes) {
+    return emit(new ArrayEvent(bytes, bytes.length, false));
+  }
+
   public abstract void shutdown() throws IOException;
 }
@@ -61,14 +61,17 @@ public class MOfNEmitterGroup extends BroadcastEmitterGroup {
    */
   @Override
   protected int emit(Event e) {
+    return emit(e.serialize());
+  }
+
+  @Override
+  protected int emit(byte[] bytes) {
     int bytesEmitted = 0;
     if (m == n) {
       // Just call parent if we're emitting to all listeners
-      bytesEmitted = super.emit(e);
+      bytesEmitted = super.emit(bytes);
     } else {
       // Choose M emitters to emit to
-      byte[] bytes = e.serialize();
-
       int start = i.getAndIncrement();
       int index = 0;
       for (int j = 0; j < m; j++) {
@@ -75,6 +75,24 @@ public class NestedEmitterGroup extends EmitterGroup {
     return bytesEmitted;
   }
 
+  /**
+   * Emits the serialized event to the network.
+   *
+   * @param bytes the serialized event
+   * @return number of bytes emitted
+   */
+  @Override
+  protected int emit(byte[] bytes) {
+    int start = i.getAndIncrement();
+    int index = 0;
+    int bytesEmitted = 0;
+    for (int j = 0; j < m; j++) {
+      index = Math.abs((start + j) % n);
+      bytesEmitted += emitterGroups[index].emit(bytes);
+    }
+    return bytesEmitted;
+  }
+
   @Override
   public void shutdown() throws IOException {
     for (EmitterGroup eg : emitterGroups) {
@@ -0,0 +1,87 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.journal;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.lwes.EventSystemException;
+import org.lwes.listener.DatagramDequeuer;
+import org.lwes.listener.DatagramQueueElement;
+import org.lwes.serializer.CompressedEnvelope;
+
+/**
+ * <p>A dequeuer that writes the raw datagrams it receives to a
+ * {@link JournalWriter}, without deserializing them.  The receipt time and
+ * sender go into the record header instead of being added as fields.
+ * Compressed datagrams and bundles are opened, and each event in them is
+ * written as a record of its own, so that the journal only holds events.</p>
+ * <p>If handlers are registered as well, each datagram is also deserialized
+ * and dispatched to them as usual.</p>
+ * <pre>
+ *   DatagramEventListener listener =
+ *       new DatagramEventListener(new DatagramEnqueuer(), new JournalDequeuer(writer));
+ * </pre>
+ */
+public class JournalDequeuer extends DatagramDequeuer {
+
+    private static transient Log log = LogFactory.getLog(JournalDequeuer.class);
+
+    private final JournalWriter writer;
+
+    public JournalDequeuer(JournalWriter writer) {
+        this.writer = writer;
+    }
+
+    public JournalWriter getWriter() {
+        return writer;
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        super.shutdown();
+        writer.destroy();
+    }
+
+    @Override
+    protected void handleElement(DatagramQueueElement element) {
+        if (element == null || element.getPacket() == null) {
+            return;
+        }
+
+        final DatagramPacket packet = element.getPacket();
+        final InetAddress address = packet.getAddress();
+        final byte[] senderAddress = address == null ? null : address.getAddress();
+        try {
+            if (CompressedEnvelope.isEnvelope(packet.getData(), packet.getOffset(), packet.getLength())) {
+                for (byte[] bytes : openEnvelope(packet.getData(), packet.getOffset(), packet.getLength())) {
+                    writer.append(element.getTimestamp(), senderAddress, packet.getPort(), bytes, 0, bytes.length);
+                }
+            }
+            else {
+                writer.append(element.getTimestamp(), senderAddress, packet.getPort(),
+                              packet.getData(), packet.getOffset(), packet.getLength());
+            }
+        }
+        catch (IOException e) {
+            log.error("Unable to journal datagram", e);
+        }
+        catch (EventSystemException e) {
+            log.warn("Unable to open compressed datagram", e);
+        }
+
+        if (hasHandlers()) {
+            super.handleElement(element);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.journal;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Constants and helpers describing the on-disk layout of an event journal.</p>
+ * <p>A journal is a directory of segment files named
+ * <tt>&lt;prefix&gt;-&lt;sequence&gt;.lwj</tt>.  Each segment starts with a
+ * fixed header followed by records, all big-endian:</p>
+ * <pre>
+ *   segment header: INT32 magic, INT16 version, INT16 record header size,
+ *                   INT64 creation time (ms)
+ *   record:         INT64 receipt time (ms), 4 bytes sender ip (network order),
+ *                   UINT16 sender port, UINT16 length, length bytes of the
+ *                   serialized event
+ * </pre>
+ * <p>A record length of zero marks the end of the written part of a segment,
+ * since no serialized event can be empty.</p>
+ */
+public final class JournalFormat {
+
+    /** "LWJ1" */
+    public static final int MAGIC = 0x4C574A31;
+    public static final short VERSION = 1;
+
+    public static final int SEGMENT_HEADER_SIZE = 16;
+    public static final int RECORD_HEADER_SIZE = 16;
+
+    public static final String SEGMENT_SUFFIX = ".lwj";
+    public static final String DEFAULT_PREFIX = "journal";
+
+    private static final Pattern SEGMENT_PATTERN = Pattern.compile("(.+)-(\\d+)\\" + SEGMENT_SUFFIX);
+
+    private JournalFormat() {
+    }
+
+    /**
+     * @param prefix   the journal prefix
+     * @param sequence the segment sequence number
+     * @return the file name of the given segment
+     */
+    public static String getSegmentName(String prefix, long sequence) {
+        return String.format("%s-%010d%s", prefix, sequence, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * @param file a segment file
+     * @return the sequence number encoded in the segment name, or -1 if the
+     *         file is not named like a segment
+     */
+    public static long getSegmentSequence(File file) {
+        final Matcher m = SEGMENT_PATTERN.matcher(file.getName());
+        return m.matches() ? Long.parseLong(m.group(2)) : -1;
+    }
+
+    /**
+     * Lists the segments of a journal in sequence order.
+     *
+     * @param directory the journal directory
+     * @param prefix    the journal prefix, or null to accept any prefix
+     * @return the segment files, oldest first; empty if there are none
+     */
+    public static File[] listSegments(File directory, final String prefix) {
+        final File[] files = directory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                final Matcher m = SEGMENT_PATTERN.matcher(file.getName());
+                return file.isFile() && m.matches() && (prefix == null || prefix.equals(m.group(1)));
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                final long s1 = getSegmentSequence(f1), s2 = getSegmentSequence(f2);
+                return s1 < s2 ? -1 : (s1 == s2 ? f1.getName().compareTo(f2.getName()) : 1);
+            }
+        });
+        return files;
+    }
+}
@@ -0,0 +1,331 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.lwes.Event;
+import org.lwes.util.EncodedString;
+
+/**
+ * <p>A sparse sidecar index for one journal segment, stored next to it as
+ * <tt>&lt;segment&gt;.idx</tt>.</p>
+ * <p>The index records the receipt time range of the segment, the offset of
+ * the first record of each time bucket, and a Bloom filter of the event names
+ * in the segment.  Readers use it to jump close to a point in time and to
+ * skip segments that cannot hold the events they look for.  Receipt times
+ * are assumed to increase through a segment, which holds for journals written
+ * from a listener.</p>
+ * <p>{@link JournalWriter} builds the index while appending and writes it when
+ * the segment is closed.  {@link #build(File, long)} recreates it from a
+ * segment.</p>
+ */
+public class JournalIndex {
+
+    /** "LWJI" */
+    public static final int MAGIC = 0x4C574A49;
+    public static final short VERSION = 1;
+    public static final String INDEX_SUFFIX = ".idx";
+
+    public static final long DEFAULT_BUCKET_MILLIS = 1000;
+    public static final int DEFAULT_BLOOM_BITS = 8192;
+    private static final int BLOOM_HASHES = 4;
+
+    private final long bucketMillis;
+    private final long[] bloom;
+    private long[] bucketTimes = new long[16];
+    private int[] bucketPositions = new int[16];
+    private int buckets = 0;
+    private long minTime = Long.MAX_VALUE;
+    private long maxTime = Long.MIN_VALUE;
+    private int records = 0;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param bucketMillis the width of a time bucket
+     * @param bloomBits    the size of the event name Bloom filter; rounded up to
+     *                     a multiple of 64
+     */
+    public JournalIndex(long bucketMillis, int bloomBits) {
+        if (bucketMillis <= 0 || bloomBits <= 0) {
+            throw new IllegalArgumentException("Bucket width and Bloom filter size must be positive");
+        }
+        this.bucketMillis = bucketMillis;
+        this.bloom = new long[(bloomBits + 63) >>> 6];
+    }
+
+    public JournalIndex(long bucketMillis) {
+        this(bucketMillis, DEFAULT_BLOOM_BITS);
+    }
+
+    /**
+     * Adds a record to the index.  Records must be added in segment order.
+     *
+     * @param receiptTime the receipt time of the record
+     * @param position    the offset of the record in the segment
+     * @param bytes       the buffer holding the serialized event
+     * @param offset      the start of the event in <tt>bytes</tt>
+     * @param length      the length of the event, or of its name with the
+     *                    length byte
+     */
+    public void add(long receiptTime, int position, byte[] bytes, int offset, int length) {
+        final long bucket = floorBucket(receiptTime);
+        if (buckets == 0 || bucket > bucketTimes[buckets - 1]) {
+            if (buckets == bucketTimes.length) {
+                bucketTimes = Arrays.copyOf(bucketTimes, buckets * 2);
+                bucketPositions = Arrays.copyOf(bucketPositions, buckets * 2);
+            }
+            bucketTimes[buckets] = bucket;
+            bucketPositions[buckets] = position;
+            ++buckets;
+        }
+        minTime = Math.min(minTime, receiptTime);
+        maxTime = Math.max(maxTime, receiptTime);
+        ++records;
+        addToBloom(hash(bytes, offset + 1, Math.min(bytes[offset] & 0xff, length - 1)));
+    }
+
+    private long floorBucket(long time) {
+        final long bucket = time - time % bucketMillis;
+        return bucket > time ? bucket - bucketMillis : bucket;
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    public int getRecordCount() {
+        return records;
+    }
+
+    /**
+     * @return the earliest receipt time in the segment, or Long.MAX_VALUE if
+     *         it is empty
+     */
+    public long getMinTime() {
+        return minTime;
+    }
+
+    /**
+     * @return the latest receipt time in the segment, or Long.MIN_VALUE if it
+     *         is empty
+     */
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    /**
+     * @param from the start of a time range
+     * @param to   the end of a time range, inclusive
+     * @return false if no record of the segment was received in the range
+     */
+    public boolean overlaps(long from, long to) {
+        return records > 0 && minTime <= to && maxTime >= from;
+    }
+
+    /**
+     * @param time a receipt time
+     * @return the offset of a record at or before the first record received
+     *         at or after <tt>time</tt>, or -1 if every record is earlier
+     */
+    public int getPosition(long time) {
+        if (records == 0 || time > maxTime) {
+            return -1;
+        }
+        if (time <= minTime) {
+            return bucketPositions[0];
+        }
+        int index = Arrays.binarySearch(bucketTimes, 0, buckets, floorBucket(time));
+        if (index < 0) {
+            // Start of the last bucket before the time, if any.
+            index = Math.max(-index - 2, 0);
+        }
+        return bucketPositions[index];
+    }
+
+    /**
+     * @return the offsets of the first record of each time bucket, in
+     *         increasing order
+     */
+    public int[] getBucketPositions() {
+        return Arrays.copyOf(bucketPositions, buckets);
+    }
+
+    /**
+     * @param eventName an event name
+     * @return false if the segment certainly does not contain the event
+     */
+    public boolean mightContain(String eventName) {
+        final byte[] name = EncodedString.getBytes(eventName, Event.ENCODING_STRINGS[Event.DEFAULT_ENCODING]);
+        return mightContain(hash(name, 0, name.length));
+    }
+
+    /**
+     * @param eventNames event names
+     * @return false if the segment certainly contains none of the events
+     */
+    public boolean mightContainAny(Iterable<String> eventNames) {
+        for (String eventName : eventNames) {
+            if (mightContain(eventName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addToBloom(long hash) {
+        final int h1 = (int) hash, h2 = (int) (hash >>> 32);
+        final int bits = bloom.length << 6;
+        for (int i = 0; i < BLOOM_HASHES; ++i) {
+            final int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+            bloom[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private boolean mightContain(long hash) {
+        final int h1 = (int) hash, h2 = (int) (hash >>> 32);
+        final int bits = bloom.length << 6;
+        for (int i = 0; i < BLOOM_HASHES; ++i) {
+            final int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+            if ((bloom[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 64 bit FNV-1a.
+     */
+    private static long hash(byte[] bytes, int offset, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = offset; i < offset + length; ++i) {
+            hash ^= bytes[i] & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @param segment a journal segment
+     * @return the index file belonging to the segment
+     */
+    public static File getIndexFile(File segment) {
+        return new File(segment.getParentFile(), segment.getName() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Writes the index to a file.
+     *
+     * @param file the index file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        final DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(bucketMillis);
+            out.writeInt(records);
+            out.writeLong(minTime);
+            out.writeLong(maxTime);
+            out.writeInt(bloom.length);
+            for (long word : bloom) {
+                out.writeLong(word);
+            }
+            out.writeInt(buckets);
+            for (int i = 0; i < buckets; ++i) {
+                out.writeLong(bucketTimes[i]);
+                out.writeInt(bucketPositions[i]);
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the index of a segment.
+     *
+     * @param segment a journal segment
+     * @return the index, or null if the segment has none
+     * @throws IOException if the index exists but cannot be read
+     */
+    public static JournalIndex load(File segment) throws IOException {
+        final File file = getIndexFile(segment);
+        if (!file.isFile()) {
+            return null;
+        }
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a journal index");
+            }
+            final short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported journal index version " + version + " in " + file);
+            }
+            final long bucketMillis = in.readLong();
+            final int records = in.readInt();
+            final long minTime = in.readLong();
+            final long maxTime = in.readLong();
+            final JournalIndex index = new JournalIndex(bucketMillis, in.readInt() << 6);
+            for (int i = 0; i < index.bloom.length; ++i) {
+                index.bloom[i] = in.readLong();
+            }
+            final int buckets = in.readInt();
+            index.bucketTimes = new long[Math.max(buckets, 1)];
+            index.bucketPositions = new int[Math.max(buckets, 1)];
+            for (int i = 0; i < buckets; ++i) {
+                index.bucketTimes[i] = in.readLong();
+                index.bucketPositions[i] = in.readInt();
+            }
+            index.buckets = buckets;
+            index.records = records;
+            index.minTime = minTime;
+            index.maxTime = maxTime;
+            return index;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Builds the index of a segment by reading it, e.g. for the segment still
+     * being written or one whose index was lost.
+     *
+     * @param segment      a journal segment
+     * @param bucketMillis the width of a time bucket
+     * @return the index
+     * @throws IOException if the segment cannot be read
+     */
+    public static JournalIndex build(File segment, long bucketMillis) throws IOException {
+        final JournalIndex index = new JournalIndex(bucketMillis);
+        final JournalReader reader = new JournalReader(new File[]{segment});
+        final byte[] name = new byte[1 + Event.MAX_EVENT_NAME_SIZE];
+        while (reader.next()) {
+            final int nameLength = reader.readEventName(name, 0);
+            index.add(reader.getReceiptTime(), reader.getRecordPosition(), name, 0, nameLength);
+        }
+        reader.close();
+        return index;
+    }
+}
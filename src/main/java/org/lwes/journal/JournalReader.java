@@ -0,0 +1,355 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.lwes.ArrayEvent;
+
+/**
+ * <p>Reads the records of a journal written by {@link JournalWriter}.</p>
+ * <p>The reader is a cursor: {@link #next()} moves to the following record,
+ * whose header fields are then available from the getters.  Segments are
+ * mapped read-only, one at a time, and the event bytes are only touched when
+ * the caller asks for them.  {@link #getEventBuffer()} is a view of the
+ * record in the mapping and copies nothing, and
+ * {@link ArrayEvent#wrap(ByteBuffer)} reads an event straight out of it;
+ * {@link #readEvent(ArrayEvent)} and {@link #readBytes(byte[], int)} copy
+ * the record once, for callers that keep or modify the event.</p>
+ * <pre>
+ *   JournalReader reader = new JournalReader(directory);
+ *   ArrayEvent event = new ArrayEvent();
+ *   while (reader.next()) {
+ *       event.wrap(reader.getEventBuffer());
+ *       ...
+ *   }
+ *   reader.close();
+ * </pre>
+ * <p>A segment that is still being written can be read; reading stops at the
+ * end of its written part.</p>
+ * <p>When segments have a {@link JournalIndex}, {@link #seek(long)} uses it to
+ * start close to a point in time, and {@link #setEventNames(Collection)} to
+ * skip segments that cannot contain the wanted events.</p>
+ */
+public class JournalReader {
+
+    private final File[] segments;
+    private int segmentIndex = -1;
+    private MappedByteBuffer segment;
+    private long segmentCreated;
+
+    private int recordPosition;
+    private long receiptTime;
+    private final byte[] senderAddress = new byte[4];
+    private int senderPort;
+    private int length;
+    private Collection<String> eventNames;
+
+    /**
+     * @param file a journal directory, in which case all of its segments are
+     *             read in order, or a single segment file
+     */
+    public JournalReader(File file) {
+        this(file.isDirectory() ? JournalFormat.listSegments(file, null) : new File[]{file});
+    }
+
+    /**
+     * @param directory the journal directory
+     * @param prefix    the prefix of the journal to read
+     */
+    public JournalReader(File directory, String prefix) {
+        this(JournalFormat.listSegments(directory, prefix));
+    }
+
+    /**
+     * @param segments the segment files to read, in order
+     */
+    public JournalReader(File[] segments) {
+        this.segments = segments.clone();
+    }
+
+    public File[] getSegments() {
+        return segments.clone();
+    }
+
+    /**
+     * @return the segment the current record is in, or null before the first
+     *         record and after the last one
+     */
+    public File getCurrentSegment() {
+        return segment == null ? null : segments[segmentIndex];
+    }
+
+    /**
+     * @return the creation time recorded in the header of the current segment
+     */
+    public long getSegmentCreationTime() {
+        return segmentCreated;
+    }
+
+    /**
+     * Moves to the next record, opening the following segments as needed.
+     *
+     * @return true if there is a current record, false at the end of the journal
+     * @throws IOException if a segment cannot be read or is not a journal segment
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (segment != null) {
+                segment.position(recordPosition + JournalFormat.RECORD_HEADER_SIZE + length);
+                if (readRecordHeader()) {
+                    return true;
+                }
+                segment = null;
+            }
+            if (segmentIndex + 1 >= segments.length) {
+                return false;
+            }
+            ++segmentIndex;
+            if (eventNames != null) {
+                final JournalIndex index = JournalIndex.load(segments[segmentIndex]);
+                if (index != null && !index.mightContainAny(eventNames)) {
+                    continue;
+                }
+            }
+            openSegment(segmentIndex, JournalFormat.SEGMENT_HEADER_SIZE);
+        }
+    }
+
+    /**
+     * Restricts reading to segments whose index shows they may contain one of
+     * the given events.  Segments without an index are always read, and records
+     * of other events in the segments read are still returned.
+     *
+     * @param eventNames the wanted event names, or null to read every segment
+     */
+    public void setEventNames(Collection<String> eventNames) {
+        this.eventNames = eventNames == null ? null : new ArrayList<String>(eventNames);
+    }
+
+    /**
+     * Positions the reader so that the next call to {@link #next()} returns the
+     * first record received at or after the given time.  Segment indexes are
+     * used to skip earlier segments and to start near the time; records are
+     * read from there on.
+     *
+     * @param time a receipt time
+     * @throws IOException if a segment or index cannot be read
+     */
+    public void seek(long time) throws IOException {
+        for (int i = 0; i < segments.length; ++i) {
+            int position = JournalFormat.SEGMENT_HEADER_SIZE;
+            final JournalIndex index = JournalIndex.load(segments[i]);
+            if (index != null) {
+                position = index.getPosition(time);
+                if (position < 0) {
+                    continue;
+                }
+            }
+            openSegment(i, position);
+            while (readRecordHeader()) {
+                if (receiptTime >= time) {
+                    // Rewind so that next() returns this record.
+                    segment.position(recordPosition);
+                    recordPosition -= JournalFormat.RECORD_HEADER_SIZE;
+                    length = 0;
+                    return;
+                }
+                segment.position(recordPosition + JournalFormat.RECORD_HEADER_SIZE + length);
+            }
+        }
+        close();
+    }
+
+    /**
+     * Positions the reader so that the next call to {@link #next()} returns the
+     * record at the given offset of the given segment.
+     *
+     * @param index    the index of the segment in {@link #getSegments()}
+     * @param position the offset of a record in that segment, as returned by
+     *                 {@link #getRecordPosition()}
+     * @throws IOException if the segment cannot be read
+     */
+    public void seek(int index, int position) throws IOException {
+        openSegment(index, position);
+    }
+
+    private void openSegment(int index, int position) throws IOException {
+        segment = null;
+        segmentIndex = index;
+        length = 0;
+        final File file = segments[index];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            if (channel.size() < JournalFormat.SEGMENT_HEADER_SIZE) {
+                throw new IOException("Journal segment " + file + " is too short");
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != JournalFormat.MAGIC) {
+                throw new IOException(file + " is not a journal segment");
+            }
+            final short version = buffer.getShort();
+            if (version != JournalFormat.VERSION) {
+                throw new IOException("Unsupported journal version " + version + " in " + file);
+            }
+            buffer.getShort();
+            segmentCreated = buffer.getLong();
+            buffer.position(Math.max(position, JournalFormat.SEGMENT_HEADER_SIZE));
+            segment = buffer;
+            recordPosition = buffer.position() - JournalFormat.RECORD_HEADER_SIZE;
+        }
+        finally {
+            // The mapping stays valid after the channel is closed.
+            raf.close();
+        }
+    }
+
+    private boolean readRecordHeader() {
+        if (segment.remaining() < JournalFormat.RECORD_HEADER_SIZE) {
+            return false;
+        }
+        final int position = segment.position();
+        final long time = segment.getLong();
+        segment.get(senderAddress);
+        final int port = segment.getShort() & 0xffff;
+        final int len = segment.getShort() & 0xffff;
+        if (len == 0 || segment.remaining() < len) {
+            // End of the written part, or a record still being written.
+            segment.position(position);
+            return false;
+        }
+        recordPosition = position;
+        receiptTime = time;
+        senderPort = port;
+        length = len;
+        return true;
+    }
+
+    /**
+     * @return the index of the current segment in {@link #getSegments()}
+     */
+    public int getSegmentIndex() {
+        return segmentIndex;
+    }
+
+    /**
+     * @return the offset of the current record in its segment
+     */
+    public int getRecordPosition() {
+        return recordPosition;
+    }
+
+    public long getReceiptTime() {
+        return receiptTime;
+    }
+
+    /**
+     * @return the sender address of the current record in network order; the
+     *         array is reused for every record
+     */
+    public byte[] getSenderAddress() {
+        return senderAddress;
+    }
+
+    public InetAddress getSenderInetAddress() {
+        try {
+            return InetAddress.getByAddress(senderAddress.clone());
+        }
+        catch (UnknownHostException e) {
+            throw new IllegalStateException("4 byte address rejected", e);
+        }
+    }
+
+    public int getSenderPort() {
+        return senderPort;
+    }
+
+    /**
+     * @return the length of the serialized event in the current record
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the serialized event of the current record without copying it.
+     * The buffer is a read-only view of the mapped segment, positioned at the
+     * start of the event and limited to its end, and stays valid after the
+     * reader moves on.
+     *
+     * @return a view of the serialized event
+     */
+    public ByteBuffer getEventBuffer() {
+        final ByteBuffer view = segment.asReadOnlyBuffer();
+        view.limit(recordPosition + JournalFormat.RECORD_HEADER_SIZE + length);
+        view.position(recordPosition + JournalFormat.RECORD_HEADER_SIZE);
+        return view.slice();
+    }
+
+    /**
+     * Copies the serialized event of the current record into the given event,
+     * replacing its contents.  This is a single bulk copy out of the mapping;
+     * <tt>event.wrap(getEventBuffer())</tt> reads the record without copying.
+     *
+     * @param event the event to fill
+     */
+    public void readEvent(ArrayEvent event) {
+        segment.position(recordPosition + JournalFormat.RECORD_HEADER_SIZE);
+        event.deserialize(segment, length);
+    }
+
+    /**
+     * Copies the event name of the current record, preceded by its length
+     * byte as in the serialized event, into a byte array.
+     *
+     * @param bytes  the destination, with room for 1 + {@link org.lwes.Event#MAX_EVENT_NAME_SIZE} bytes
+     * @param offset where to write the name in <tt>bytes</tt>
+     * @return the number of bytes copied
+     */
+    public int readEventName(byte[] bytes, int offset) {
+        final int start = recordPosition + JournalFormat.RECORD_HEADER_SIZE;
+        final int nameLength = Math.min(segment.get(start) & 0xff, length - 1);
+        bytes[offset] = (byte) nameLength;
+        segment.position(start + 1);
+        segment.get(bytes, offset + 1, nameLength);
+        return 1 + nameLength;
+    }
+
+    /**
+     * Copies the serialized event of the current record into a byte array.
+     *
+     * @param bytes  the destination
+     * @param offset where to write the event in <tt>bytes</tt>
+     * @return the number of bytes copied
+     */
+    public int readBytes(byte[] bytes, int offset) {
+        segment.position(recordPosition + JournalFormat.RECORD_HEADER_SIZE);
+        segment.get(bytes, offset, length);
+        return length;
+    }
+
+    /**
+     * Releases the current segment.  The reader returns no more records.
+     */
+    public void close() {
+        segment = null;
+        segmentIndex = segments.length;
+    }
+}
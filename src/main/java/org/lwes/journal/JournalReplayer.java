@@ -0,0 +1,264 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.journal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.lwes.ArrayEvent;
+import org.lwes.Event;
+import org.lwes.emitter.EmitterGroup;
+import org.lwes.emitter.EmitterGroupBuilder;
+import org.lwes.listener.EventHandler;
+import org.lwes.listener.EventPrintingHandler;
+
+/**
+ * <p>Replays a journal into {@link EventHandler}s and {@link EmitterGroup}s.</p>
+ * <p>Events are delivered in journal order, either with their original
+ * spacing ({@link #setSpeed(double) speed} 1), N times faster (speed N) or as
+ * fast as possible (speed 0).  Progress and throughput are logged every
+ * {@link #setReportIntervalMillis(long) report interval}.</p>
+ * <p>One {@link ArrayEvent} is reused for all records, so handlers that keep
+ * an event beyond <tt>handleEvent()</tt> must {@link Event#copy()} it.  By
+ * default the receipt time and sender from the journal are set on each event
+ * as {@link Event#RECEIPT_TIME}, {@link Event#SENDER_IP} and
+ * {@link Event#SENDER_PORT}, as the listener would have done.</p>
+ */
+public class JournalReplayer {
+
+    private static transient Log log = LogFactory.getLog(JournalReplayer.class);
+
+    @Option(name = "-j", aliases = "--journal", required = true,
+            usage = "The journal directory or segment file to replay")
+    protected File journal;
+
+    @Option(name = "-p", aliases = "--prefix", usage = "Only replay segments with this prefix")
+    protected String prefix;
+
+    @Option(name = "-s", aliases = "--speed",
+            usage = "1 replays with the original timing, N replays N times faster, 0 as fast as possible")
+    protected double speed = 1;
+
+    @Option(name = "-c", aliases = "--emitters",
+            usage = "Properties file describing the emitter groups to replay into; events are printed if omitted")
+    protected File emitterConfig;
+
+    @Option(name = "-n", aliases = "--no-metadata", usage = "Do not add receipt time and sender fields")
+    protected boolean noMetadata = false;
+
+    private final List<EventHandler> handlers = new ArrayList<EventHandler>();
+    private final List<EmitterGroup> groups = new ArrayList<EmitterGroup>();
+    private long reportIntervalMillis = 10000;
+
+    private volatile boolean running;
+    private volatile long eventsReplayed;
+    private volatile long bytesReplayed;
+    private volatile long elapsedMillis;
+
+    public JournalReplayer() {
+    }
+
+    public void addHandler(EventHandler handler) {
+        handlers.add(handler);
+    }
+
+    public void addEmitterGroup(EmitterGroup group) {
+        groups.add(group);
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @param speed the replay speed relative to the original timing; 0 or less
+     *              replays as fast as possible
+     */
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    public boolean isAddMetadata() {
+        return !noMetadata;
+    }
+
+    public void setAddMetadata(boolean addMetadata) {
+        this.noMetadata = !addMetadata;
+    }
+
+    public long getReportIntervalMillis() {
+        return reportIntervalMillis;
+    }
+
+    /**
+     * @param reportIntervalMillis how often to log progress, or 0 to disable
+     */
+    public void setReportIntervalMillis(long reportIntervalMillis) {
+        this.reportIntervalMillis = reportIntervalMillis;
+    }
+
+    public long getEventsReplayed() {
+        return eventsReplayed;
+    }
+
+    public long getBytesReplayed() {
+        return bytesReplayed;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return the average number of events replayed per second so far
+     */
+    public double getEventsPerSecond() {
+        return elapsedMillis == 0 ? 0 : eventsReplayed * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * Stops a replay running in another thread after the current event.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Replays every record of the reader, then closes it.
+     *
+     * @param reader the journal to replay
+     * @return the number of events replayed
+     * @throws IOException          if the journal cannot be read
+     * @throws InterruptedException if interrupted while waiting for the next event
+     */
+    public long replay(JournalReader reader) throws IOException, InterruptedException {
+        final ArrayEvent event = new ArrayEvent();
+        final long start = System.currentTimeMillis();
+        long firstReceipt = 0;
+        long lastReport = start;
+        long events = 0, bytes = 0;
+        running = true;
+        eventsReplayed = 0;
+        bytesReplayed = 0;
+        try {
+            while (running && reader.next()) {
+                if (speed > 0) {
+                    if (events == 0) {
+                        firstReceipt = reader.getReceiptTime();
+                    }
+                    final long due = start + (long) ((reader.getReceiptTime() - firstReceipt) / speed);
+                    final long wait = due - System.currentTimeMillis();
+                    if (wait > 0) {
+                        Thread.sleep(wait);
+                    }
+                }
+
+                reader.readEvent(event);
+                if (!noMetadata) {
+                    event.setInt64(Event.RECEIPT_TIME, reader.getReceiptTime());
+                    event.setIPAddress(Event.SENDER_IP, reader.getSenderAddress());
+                    event.setUInt16(Event.SENDER_PORT, reader.getSenderPort());
+                }
+                for (EventHandler handler : handlers) {
+                    handler.handleEvent(event);
+                }
+                for (EmitterGroup group : groups) {
+                    group.emitToGroup(event);
+                }
+
+                ++events;
+                bytes += reader.getLength();
+                eventsReplayed = events;
+                bytesReplayed = bytes;
+                if (reportIntervalMillis > 0) {
+                    final long now = System.currentTimeMillis();
+                    elapsedMillis = now - start;
+                    if (now - lastReport >= reportIntervalMillis) {
+                        lastReport = now;
+                        report();
+                    }
+                }
+            }
+        }
+        finally {
+            reader.close();
+            elapsedMillis = System.currentTimeMillis() - start;
+        }
+        if (reportIntervalMillis > 0) {
+            report();
+        }
+        return events;
+    }
+
+    private void report() {
+        if (log.isInfoEnabled()) {
+            final double seconds = Math.max(elapsedMillis, 1) / 1000.0;
+            log.info(String.format("Replayed %d events (%d bytes) in %.1fs: %.0f events/s, %.2f MB/s",
+                                   eventsReplayed, bytesReplayed, seconds, eventsReplayed / seconds,
+                                   bytesReplayed / seconds / (1024 * 1024)));
+        }
+    }
+
+    public void run(String[] args) {
+        CmdLineParser parser = new CmdLineParser(this);
+        try {
+            parser.parseArgument(args);
+        }
+        catch (CmdLineException e) {
+            System.err.println("Usage: ");
+            parser.printUsage(System.err);
+            System.exit(1);
+        }
+
+        try {
+            if (emitterConfig == null) {
+                addHandler(new EventPrintingHandler());
+            }
+            else {
+                final Properties props = new Properties();
+                final InputStream in = new FileInputStream(emitterConfig);
+                try {
+                    props.load(in);
+                }
+                finally {
+                    in.close();
+                }
+                for (EmitterGroup group : EmitterGroupBuilder.createGroups(props)) {
+                    addEmitterGroup(group);
+                }
+            }
+
+            replay(prefix == null ? new JournalReader(journal) : new JournalReader(journal, prefix));
+
+            for (EmitterGroup group : groups) {
+                group.shutdown();
+            }
+        }
+        catch (Exception e) {
+            log.error("Replay of " + journal + " failed", e);
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    public static void main(String[] args) {
+        new JournalReplayer().run(args);
+    }
+}
@@ -0,0 +1,396 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.lwes.ArrayEvent;
+import org.lwes.Event;
+import org.lwes.listener.FilterListener;
+import org.lwes.util.EncodedString;
+
+/**
+ * <p>Runs a query over the segments of a journal in parallel.</p>
+ * <p>The segments are split into fork/join tasks; a large segment with an
+ * index is further split at time bucket boundaries.  Each task reads its
+ * records into its own {@link ArrayEvent}.  Records outside the time range or
+ * with another event name are skipped on their header and name bytes alone,
+ * without being copied out of the mapping.</p>
+ * <p>Attribute filters use the <tt>field=value,field2=value2</tt> syntax of
+ * {@link FilterListener}.  Matching events are counted, counted per value of a
+ * group-by field, or printed one per line as the tasks find them.  Tasks run
+ * in parallel, so printed events are not in journal order.</p>
+ *
+ * Count Test::Event events with eid=1234
+ * java org.lwes.journal.JournalScanner -j /var/lwes/journal -e "Test::Event" -a "eid=1234"
+ *
+ * Count events per sender between two times
+ * java org.lwes.journal.JournalScanner -j /var/lwes/journal -g SenderIP -f 1335459871000 -t 1335463471000
+ */
+public class JournalScanner {
+
+    public static final int DEFAULT_SPLIT_BYTES = 4 * 1024 * 1024;
+
+    @Option(name = "-j", aliases = "--journal", required = true,
+            usage = "The journal directory or segment file to scan")
+    protected File journal;
+
+    @Option(name = "-p", aliases = "--prefix", usage = "Only scan segments with this prefix")
+    protected String prefix;
+
+    @Option(name = "-e", aliases = "--event-names", usage = "Comma separated list of event names")
+    protected String eventNamesList;
+
+    @Option(name = "-a", aliases = "--eventAttrs", usage = "field=value,field2=value2 to filter on")
+    protected String attrList;
+
+    @Option(name = "-f", aliases = "--from", usage = "Earliest receipt time to include, in ms")
+    protected long from = Long.MIN_VALUE;
+
+    @Option(name = "-t", aliases = "--to", usage = "Latest receipt time to include, in ms")
+    protected long to = Long.MAX_VALUE;
+
+    @Option(name = "-g", aliases = "--group-by", usage = "Count matching events per value of this field")
+    protected String groupBy;
+
+    @Option(name = "-P", aliases = "--print", usage = "Print matching events instead of counting them")
+    protected boolean print = false;
+
+    @Option(name = "-T", aliases = "--threads", usage = "Number of scanning threads")
+    protected int threads = Runtime.getRuntime().availableProcessors();
+
+    private int splitBytes = DEFAULT_SPLIT_BYTES;
+    private PrintStream output;
+    private final FilterListener filter = new FilterListener();
+    private byte[][] eventNameBytes;
+
+    public JournalScanner() {
+    }
+
+    public void setEventNames(List<String> eventNames) {
+        filter.setEventNames(eventNames);
+        if (eventNames == null) {
+            eventNameBytes = null;
+        }
+        else {
+            eventNameBytes = new byte[eventNames.size()][];
+            for (int i = 0; i < eventNameBytes.length; ++i) {
+                eventNameBytes[i] =
+                        EncodedString.getBytes(eventNames.get(i), Event.ENCODING_STRINGS[Event.DEFAULT_ENCODING]);
+            }
+        }
+    }
+
+    public void setEventAttrs(Map<String, String> eventAttrs) {
+        filter.setEventAttrs(eventAttrs);
+    }
+
+    /**
+     * @param from the earliest receipt time to include
+     * @param to   the latest receipt time to include
+     */
+    public void setTimeRange(long from, long to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * @param groupBy count matching events per value of this field, or null
+     */
+    public void setGroupBy(String groupBy) {
+        this.groupBy = groupBy;
+    }
+
+    /**
+     * @param output print the one-line form of every matching event to this
+     *               stream as soon as it is found, or null to only count
+     */
+    public void setOutput(PrintStream output) {
+        this.output = output;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @param splitBytes indexed segment ranges larger than this are split
+     *                   between tasks at time bucket boundaries
+     */
+    public void setSplitBytes(int splitBytes) {
+        this.splitBytes = splitBytes;
+    }
+
+    /**
+     * Scans the given segments.
+     *
+     * @param segments journal segments, in order
+     * @return the combined result
+     * @throws IOException if a segment cannot be read
+     */
+    public ScanResult scan(File[] segments) throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool(Math.max(threads, 1));
+        try {
+            return pool.invoke(new ScanTask(segments, 0, segments.length, -1, -1, null));
+        }
+        catch (ScanException e) {
+            throw e.getCause();
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The outcome of a scan.  Results of the tasks are merged in journal order.
+     */
+    public static class ScanResult {
+        private long scanned;
+        private long matched;
+        private final Map<String, Long> groups = new HashMap<String, Long>();
+
+        /**
+         * @return the number of records read
+         */
+        public long getScanned() {
+            return scanned;
+        }
+
+        /**
+         * @return the number of events that matched every filter
+         */
+        public long getMatched() {
+            return matched;
+        }
+
+        /**
+         * @return the number of matching events per value of the group-by
+         *         field; events without the field are counted under "null"
+         */
+        public Map<String, Long> getGroups() {
+            return groups;
+        }
+
+        private void add(ScanResult other) {
+            scanned += other.scanned;
+            matched += other.matched;
+            for (Map.Entry<String, Long> entry : other.groups.entrySet()) {
+                addGroup(entry.getKey(), entry.getValue());
+            }
+        }
+
+        private void addGroup(String key, long count) {
+            final Long current = groups.get(key);
+            groups.put(key, current == null ? count : current + count);
+        }
+    }
+
+    private static final class ScanException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ScanException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    /**
+     * Scans segments [lo, hi), or the records of segment lo between positions
+     * start and end when start is not negative.
+     */
+    private final class ScanTask extends RecursiveTask<ScanResult> {
+        private static final long serialVersionUID = 1L;
+
+        private final File[] segments;
+        private final int lo, hi;
+        private final int start, end;
+        private final int[] boundaries;
+
+        ScanTask(File[] segments, int lo, int hi, int start, int end, int[] boundaries) {
+            this.segments = segments;
+            this.lo = lo;
+            this.hi = hi;
+            this.start = start;
+            this.end = end;
+            this.boundaries = boundaries;
+        }
+
+        @Override
+        protected ScanResult compute() {
+            try {
+                if (hi - lo > 1) {
+                    final int mid = (lo + hi) >>> 1;
+                    final ScanTask first = new ScanTask(segments, lo, mid, -1, -1, null);
+                    first.fork();
+                    final ScanResult second = new ScanTask(segments, mid, hi, -1, -1, null).compute();
+                    final ScanResult result = first.join();
+                    result.add(second);
+                    return result;
+                }
+                if (hi == lo) {
+                    return new ScanResult();
+                }
+                if (start < 0) {
+                    return splitSegment();
+                }
+                return splitRange();
+            }
+            catch (IOException e) {
+                throw new ScanException(e);
+            }
+        }
+
+        private ScanResult splitSegment() throws IOException {
+            final JournalIndex index = JournalIndex.load(segments[lo]);
+            if (index == null) {
+                return scanRange(JournalFormat.SEGMENT_HEADER_SIZE, Integer.MAX_VALUE);
+            }
+            if (!index.overlaps(from, to)
+                || (eventNameBytes != null && !index.mightContainAny(filter.getEventNames()))) {
+                return new ScanResult();
+            }
+            final int first = Math.max(index.getPosition(from), JournalFormat.SEGMENT_HEADER_SIZE);
+            return new ScanTask(segments, lo, hi, first, (int) segments[lo].length(),
+                                index.getBucketPositions()).splitRange();
+        }
+
+        private ScanResult splitRange() throws IOException {
+            if (end - start > splitBytes) {
+                int mid = Arrays.binarySearch(boundaries, start + (end - start) / 2);
+                mid = mid < 0 ? -mid - 1 : mid;
+                if (mid < boundaries.length && boundaries[mid] > start && boundaries[mid] < end) {
+                    final ScanTask first = new ScanTask(segments, lo, hi, start, boundaries[mid], boundaries);
+                    first.fork();
+                    final ScanResult second =
+                            new ScanTask(segments, lo, hi, boundaries[mid], end, boundaries).splitRange();
+                    final ScanResult result = first.join();
+                    result.add(second);
+                    return result;
+                }
+            }
+            return scanRange(start, end);
+        }
+
+        private ScanResult scanRange(int start, int end) throws IOException {
+            final ScanResult result = new ScanResult();
+            final JournalReader reader = new JournalReader(new File[]{segments[lo]});
+            final ArrayEvent event = new ArrayEvent();
+            final byte[] name = new byte[1 + Event.MAX_EVENT_NAME_SIZE];
+            reader.seek(0, start);
+            while (reader.next() && reader.getRecordPosition() < end) {
+                ++result.scanned;
+                if (reader.getReceiptTime() < from || reader.getReceiptTime() > to) {
+                    continue;
+                }
+                if (eventNameBytes != null) {
+                    final int nameLength = reader.readEventName(name, 0);
+                    if (!matchesName(name, nameLength)) {
+                        continue;
+                    }
+                }
+                event.wrap(reader.getEventBuffer());
+                if (filter.match(event) == null) {
+                    continue;
+                }
+                ++result.matched;
+                if (groupBy != null) {
+                    result.addGroup(String.valueOf(event.get(groupBy)), 1);
+                }
+                if (output != null) {
+                    output.println(event.toOneLineString());
+                }
+            }
+            reader.close();
+            return result;
+        }
+
+        private boolean matchesName(byte[] name, int length) {
+            for (byte[] wanted : eventNameBytes) {
+                if (wanted.length == length - 1) {
+                    int i = 0;
+                    while (i < wanted.length && wanted[i] == name[i + 1]) {
+                        ++i;
+                    }
+                    if (i == wanted.length) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    public void run(String[] args) {
+        CmdLineParser parser = new CmdLineParser(this);
+        try {
+            parser.parseArgument(args);
+        }
+        catch (CmdLineException e) {
+            System.err.println("Usage: ");
+            parser.printUsage(System.err);
+            System.exit(1);
+        }
+
+        setEventNames(FilterListener.parseEventNames(eventNamesList));
+        setEventAttrs(FilterListener.parseEventAttrs(attrList));
+        if (print) {
+            setOutput(System.out);
+        }
+
+        final File[] segments = journal.isDirectory()
+                                ? JournalFormat.listSegments(journal, prefix) : new File[]{journal};
+        final ScanResult result;
+        try {
+            result = scan(segments);
+        }
+        catch (IOException e) {
+            System.err.println("Unable to scan " + journal + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        if (groupBy != null) {
+            final List<Map.Entry<String, Long>> groups =
+                    new ArrayList<Map.Entry<String, Long>>(result.getGroups().entrySet());
+            Collections.sort(groups, new Comparator<Map.Entry<String, Long>>() {
+                public int compare(Map.Entry<String, Long> e1, Map.Entry<String, Long> e2) {
+                    return e2.getValue().compareTo(e1.getValue());
+                }
+            });
+            for (Map.Entry<String, Long> group : groups) {
+                System.out.println(group.getValue() + "\t" + group.getKey());
+            }
+        }
+        System.out.println("Matched " + result.getMatched() + " of " + result.getScanned() + " events");
+        System.exit(0);
+    }
+
+    public static void main(String[] args) {
+        new JournalScanner().run(args);
+    }
+}
@@ -0,0 +1,355 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.lwes.Event;
+import org.lwes.listener.EventHandler;
+
+/**
+ * <p>Appends serialized events to a memory-mapped, segmented journal on disk.
+ * See {@link JournalFormat} for the layout.</p>
+ * <p>Each segment is mapped in full when it is created and records are copied
+ * straight into the mapping.  A new segment is started when the next record
+ * does not fit, or when the current one is older than the rotation interval.
+ * Closed segments are forced and truncated to their written length.</p>
+ * <p>Durability is controlled with a group commit policy: the mapping is
+ * forced after every <tt>forceEveryRecords</tt> records and/or once
+ * <tt>forceIntervalMillis</tt> have passed since the last force.  With both
+ * at zero (the default) data reaches the disk whenever the OS writes back the
+ * page cache, and on rotation and close.</p>
+ * <p>Unless disabled with {@link #setIndexBucketMillis(long)}, a
+ * {@link JournalIndex} is built for each segment and written next to it when
+ * the segment is closed.</p>
+ * <p>The writer can be registered as an {@link EventHandler}, in which case
+ * each event is serialized into the journal.  {@link JournalDequeuer} feeds it
+ * the raw datagrams instead, without deserializing them.</p>
+ */
+public class JournalWriter implements EventHandler {
+
+    private static transient Log log = LogFactory.getLog(JournalWriter.class);
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+    public static final long MIN_SEGMENT_SIZE =
+            JournalFormat.SEGMENT_HEADER_SIZE + JournalFormat.RECORD_HEADER_SIZE + Event.MAX_MESSAGE_SIZE;
+
+    private static final byte[] NO_ADDRESS = new byte[4];
+
+    private final File directory;
+    private final String prefix;
+    private long segmentSize = DEFAULT_SEGMENT_SIZE;
+    private long rotationIntervalMillis = 0;
+    private int forceEveryRecords = 0;
+    private long forceIntervalMillis = 0;
+    private long indexBucketMillis = JournalIndex.DEFAULT_BUCKET_MILLIS;
+
+    private long nextSequence = -1;
+    private File segmentFile;
+    private RandomAccessFile segmentRaf;
+    private MappedByteBuffer segment;
+    private JournalIndex index;
+    private long segmentCreated;
+    private int unforcedRecords;
+    private long lastForce;
+    private boolean closed = false;
+
+    private long recordsWritten;
+    private long bytesWritten;
+    private byte[] scratch;
+
+    public JournalWriter(File directory) {
+        this(directory, JournalFormat.DEFAULT_PREFIX);
+    }
+
+    public JournalWriter(File directory, String prefix) {
+        this.directory = directory;
+        this.prefix = prefix;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public synchronized long getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * @param segmentSize the size in bytes each segment is mapped with; must be
+     *                    large enough for a maximum size event
+     */
+    public synchronized void setSegmentSize(long segmentSize) {
+        if (segmentSize < MIN_SEGMENT_SIZE || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must be between " + MIN_SEGMENT_SIZE +
+                                               " and " + Integer.MAX_VALUE + ": " + segmentSize);
+        }
+        this.segmentSize = segmentSize;
+    }
+
+    public synchronized long getRotationIntervalMillis() {
+        return rotationIntervalMillis;
+    }
+
+    /**
+     * @param rotationIntervalMillis the age after which a segment is closed and
+     *                               a new one started, or 0 to rotate on size only
+     */
+    public synchronized void setRotationIntervalMillis(long rotationIntervalMillis) {
+        this.rotationIntervalMillis = rotationIntervalMillis;
+    }
+
+    public synchronized int getForceEveryRecords() {
+        return forceEveryRecords;
+    }
+
+    /**
+     * @param forceEveryRecords force the segment to disk after this many
+     *                          records, or 0 to disable.  1 forces every record.
+     */
+    public synchronized void setForceEveryRecords(int forceEveryRecords) {
+        this.forceEveryRecords = forceEveryRecords;
+    }
+
+    public synchronized long getForceIntervalMillis() {
+        return forceIntervalMillis;
+    }
+
+    /**
+     * @param forceIntervalMillis force the segment to disk when a record is
+     *                            written this long after the last force, or 0
+     *                            to disable
+     */
+    public synchronized void setForceIntervalMillis(long forceIntervalMillis) {
+        this.forceIntervalMillis = forceIntervalMillis;
+    }
+
+    public synchronized long getIndexBucketMillis() {
+        return indexBucketMillis;
+    }
+
+    /**
+     * @param indexBucketMillis the time bucket width of the segment indexes, or
+     *                          0 to write no indexes
+     */
+    public synchronized void setIndexBucketMillis(long indexBucketMillis) {
+        this.indexBucketMillis = indexBucketMillis;
+    }
+
+    public synchronized long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return the segment currently being written, or null if none is open
+     */
+    public synchronized File getCurrentSegment() {
+        return segmentFile;
+    }
+
+    /**
+     * Appends one serialized event to the journal.
+     *
+     * @param receiptTime   the time the event was received, in ms
+     * @param senderAddress the 4 byte IPv4 address of the sender in network
+     *                      order, or null if unknown
+     * @param senderPort    the port of the sender, or 0 if unknown
+     * @param bytes         the buffer holding the serialized event
+     * @param offset        the start of the event in <tt>bytes</tt>
+     * @param length        the length of the serialized event
+     * @throws IOException if a segment cannot be created or written
+     */
+    public synchronized void append(long receiptTime, byte[] senderAddress, int senderPort,
+                                    byte[] bytes, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Journal " + new File(directory, prefix) + " is closed");
+        }
+        if (length <= 0 || length > Event.MAX_MESSAGE_SIZE) {
+            throw new IllegalArgumentException("Invalid event length: " + length);
+        }
+        final long now = System.currentTimeMillis();
+        if (segment == null
+            || segment.remaining() < JournalFormat.RECORD_HEADER_SIZE + length
+            || (rotationIntervalMillis > 0 && now - segmentCreated >= rotationIntervalMillis)) {
+            rotate(now);
+        }
+
+        if (senderAddress == null || senderAddress.length != 4) {
+            senderAddress = NO_ADDRESS;
+        }
+        if (index != null) {
+            index.add(receiptTime, segment.position(), bytes, offset, length);
+        }
+        segment.putLong(receiptTime);
+        segment.put(senderAddress);
+        segment.putShort((short) senderPort);
+        segment.putShort((short) length);
+        segment.put(bytes, offset, length);
+
+        ++recordsWritten;
+        bytesWritten += length;
+        ++unforcedRecords;
+        if ((forceEveryRecords > 0 && unforcedRecords >= forceEveryRecords)
+            || (forceIntervalMillis > 0 && now - lastForce >= forceIntervalMillis)) {
+            force(now);
+        }
+    }
+
+    /**
+     * Serializes the event into the journal.  The receipt time and sender are
+     * taken from the {@link Event#RECEIPT_TIME}, {@link Event#SENDER_IP} and
+     * {@link Event#SENDER_PORT} fields when present.
+     *
+     * @param event the event to write
+     * @throws IOException if a segment cannot be created or written
+     */
+    public synchronized void append(Event event) throws IOException {
+        if (scratch == null) {
+            scratch = new byte[Event.MAX_MESSAGE_SIZE];
+        }
+        final int length = event.serialize(scratch, 0);
+        final Long receiptTime = event.isSet(Event.RECEIPT_TIME) ? event.getInt64(Event.RECEIPT_TIME) : null;
+        final byte[] address = event.isSet(Event.SENDER_IP) ? event.getIPAddress(Event.SENDER_IP) : null;
+        final Integer port = event.isSet(Event.SENDER_PORT) ? event.getUInt16(Event.SENDER_PORT) : null;
+        append(receiptTime == null ? System.currentTimeMillis() : receiptTime,
+               address, port == null ? 0 : port, scratch, 0, length);
+    }
+
+    /**
+     * Forces everything written so far to disk.
+     *
+     * @throws IOException if the journal is closed
+     */
+    public synchronized void flush() throws IOException {
+        if (closed) {
+            throw new IOException("Journal " + new File(directory, prefix) + " is closed");
+        }
+        force(System.currentTimeMillis());
+    }
+
+    /**
+     * Closes the current segment.  The writer cannot be used afterwards.
+     *
+     * @throws IOException if the segment could not be truncated or closed
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeSegment();
+    }
+
+    public void handleEvent(Event event) {
+        try {
+            append(event);
+        }
+        catch (IOException e) {
+            log.error("Unable to journal event " + event.getEventName(), e);
+        }
+    }
+
+    public void destroy() {
+        try {
+            close();
+        }
+        catch (IOException e) {
+            log.error("Unable to close journal " + new File(directory, prefix), e);
+        }
+    }
+
+    private void force(long now) {
+        if (segment != null) {
+            segment.force();
+        }
+        unforcedRecords = 0;
+        lastForce = now;
+    }
+
+    private void rotate(long now) throws IOException {
+        closeSegment();
+
+        if (nextSequence < 0) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Unable to create journal directory " + directory);
+            }
+            // Never reopen an existing segment; continue after the newest one.
+            final File[] existing = JournalFormat.listSegments(directory, prefix);
+            nextSequence = existing.length == 0
+                           ? 0 : JournalFormat.getSegmentSequence(existing[existing.length - 1]) + 1;
+        }
+
+        final File file = new File(directory, JournalFormat.getSegmentName(prefix, nextSequence++));
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        segmentFile = file;
+        segmentRaf = raf;
+        index = indexBucketMillis > 0 ? new JournalIndex(indexBucketMillis) : null;
+        segmentCreated = now;
+        lastForce = now;
+        unforcedRecords = 0;
+
+        segment.putInt(JournalFormat.MAGIC);
+        segment.putShort(JournalFormat.VERSION);
+        segment.putShort((short) JournalFormat.RECORD_HEADER_SIZE);
+        segment.putLong(now);
+        if (log.isDebugEnabled()) {
+            log.debug("Started journal segment " + file);
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment == null) {
+            return;
+        }
+        final int written = segment.position();
+        try {
+            segment.force();
+            segment = null;
+            segmentRaf.getChannel().truncate(written);
+        }
+        finally {
+            segmentRaf.close();
+            if (log.isDebugEnabled()) {
+                log.debug("Closed journal segment " + segmentFile + " at " + written + " bytes");
+            }
+            segmentRaf = null;
+        }
+        try {
+            if (index != null) {
+                index.write(JournalIndex.getIndexFile(segmentFile));
+            }
+        }
+        finally {
+            index = null;
+            segmentFile = null;
+        }
+    }
+}
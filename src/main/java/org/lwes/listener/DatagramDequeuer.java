@@ -14,12 +14,17 @@ package org.lwes.listener;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.lwes.ArrayEvent;
+import org.lwes.ArrayEventPool;
 import org.lwes.Event;
 import org.lwes.EventFactory;
+import org.lwes.FrozenEvent;
+import org.lwes.serializer.CompressedEnvelope;
 import org.lwes.util.IPAddress;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
+import java.util.List;
 
 public class DatagramDequeuer extends ThreadedDequeuer {
 
@@ -30,9 +35,49 @@ public class DatagramDequeuer extends ThreadedDequeuer {
     /* an event factory */
     private EventFactory factory = new EventFactory();
 
+    /* if set, events are read into pooled ArrayEvents */
+    private ArrayEventPool eventPool = null;
+
+    /* if set, handlers are given FrozenEvents */
+    private boolean freezeEvents = false;
+
+    /* unpacks compressed datagrams and bundles; locked so shutdown can end it */
+    private final CompressedEnvelope envelope = new CompressedEnvelope();
+
     public DatagramDequeuer() {
     }
 
+    public ArrayEventPool getEventPool() {
+        return eventPool;
+    }
+
+    /**
+     * Reads incoming events into ArrayEvents from the pool, which go back to
+     * the pool after every handler has returned.  Handlers must then copy any
+     * event they keep.  By default each datagram becomes a new event.
+     *
+     * @param eventPool the pool, or null to stop pooling
+     */
+    public void setEventPool(ArrayEventPool eventPool) {
+        this.eventPool = eventPool;
+    }
+
+    public boolean isFreezeEvents() {
+        return freezeEvents;
+    }
+
+    /**
+     * Hands every handler an immutable {@link FrozenEvent}, which
+     * the handlers can share and keep, and must copy to modify.  With an
+     * event pool, the pooled event goes back to the pool as soon as it is
+     * frozen.  By default handlers are given mutable events.
+     *
+     * @param freezeEvents true to dispatch frozen events
+     */
+    public void setFreezeEvents(boolean freezeEvents) {
+        this.freezeEvents = freezeEvents;
+    }
+
     @Override
     public void initialize() throws IOException {
         super.initialize();
@@ -41,6 +86,9 @@ public class DatagramDequeuer extends ThreadedDequeuer {
     @Override
     public synchronized void shutdown() {
         running = false;
+        synchronized (envelope) {
+            envelope.end();
+        }
     }
 
     @Override
@@ -92,13 +140,62 @@ public class DatagramDequeuer extends ThreadedDequeuer {
         IPAddress address = new IPAddress(packet.getAddress());
         int port = packet.getPort();
 
+        if (CompressedEnvelope.isEnvelope(packet.getData(), packet.getOffset(), packet.getLength())) {
+            final List<byte[]> events;
+            try {
+                events = openEnvelope(packet.getData(), packet.getOffset(), packet.getLength());
+            }
+            catch (Exception e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Unable to open compressed datagram in handleElement()", e);
+                }
+                return;
+            }
+            for (byte[] bytes : events) {
+                handleEvent(bytes, 0, bytes.length, timestamp, address, port);
+            }
+        }
+        else {
+            handleEvent(packet.getData(), packet.getOffset(), packet.getLength(), timestamp, address, port);
+        }
+    }
+
+    /**
+     * Unpacks a compressed datagram or bundle, as recognised by
+     * {@link CompressedEnvelope#isEnvelope(byte[], int, int)}.
+     *
+     * @return the serialized events in the envelope, each in an array of its own
+     * @throws org.lwes.EventSystemException if the envelope is malformed
+     */
+    protected List<byte[]> openEnvelope(byte[] bytes, int offset, int length) {
+        synchronized (envelope) {
+            return envelope.open(bytes, offset, length);
+        }
+    }
+
+    /**
+     * Pooled events are read from <tt>offset</tt> for <tt>length</tt> bytes.
+     * Otherwise the whole array goes to the event factory without a copy, as
+     * datagrams always have; events unpacked from an envelope come in arrays
+     * of their own.
+     */
+    private void handleEvent(byte[] bytes, int offset, int length, long timestamp, IPAddress address, int port) {
+        final ArrayEventPool pool = eventPool;
+        if (pool != null) {
+            handlePooled(bytes, offset, length, pool, timestamp, address, port);
+            return;
+        }
+
         /* now try to deserialize the packet */
         try {
             /* don't validate the event for now to save time */
-            Event event = factory.createEvent(packet.getData(), false);
+            Event event = factory.createEvent(bytes, false);
             event.setInt64(Event.RECEIPT_TIME, timestamp);
             event.setIPAddress(Event.SENDER_IP, address);
             event.setUInt16(Event.SENDER_PORT, port);
+            if (freezeEvents) {
+                event = event.freeze();
+            }
             if (log.isTraceEnabled()) {
                 log.trace("Dispatching event " + event.toString());
             }
@@ -110,4 +207,34 @@ public class DatagramDequeuer extends ThreadedDequeuer {
             }
         }
     }
+
+    private void handlePooled(byte[] bytes, int offset, int length, ArrayEventPool pool, long timestamp,
+                              IPAddress address, int port) {
+        final ArrayEvent event = pool.acquire();
+        final FrozenEvent frozen;
+        try {
+            event.deserialize(bytes, offset, length);
+            event.setInt64(Event.RECEIPT_TIME, timestamp);
+            event.setIPAddress(Event.SENDER_IP, address);
+            event.setUInt16(Event.SENDER_PORT, port);
+            if (log.isTraceEnabled()) {
+                log.trace("Dispatching event " + event.toString());
+            }
+            frozen = freezeEvents ? event.freeze() : null;
+        }
+        catch (Exception e) {
+            pool.release(event);
+            if (log.isWarnEnabled()) {
+                log.warn("Unable to deserialize event in handleElement()", e);
+            }
+            return;
+        }
+        if (frozen != null) {
+            pool.release(event);
+            dispatchEvent(frozen);
+        }
+        else {
+            dispatchEvent(event, pool);
+        }
+    }
 }
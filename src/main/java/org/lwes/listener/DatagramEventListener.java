@@ -168,6 +168,25 @@ public class DatagramEventListener extends ThreadedEventListener<DatagramEnqueue
         }
     }
 
+    /**
+     * @return true if handlers are given immutable, shareable events
+     */
+    public boolean isFreezeEvents() {
+        return dequeuer != null && dequeuer.isFreezeEvents();
+    }
+
+    /**
+     * Sets whether handlers are given immutable {@link org.lwes.FrozenEvent}s,
+     * which they can share between threads and keep without copying.
+     *
+     * @param freezeEvents true to dispatch frozen events
+     */
+    public void setFreezeEvents(boolean freezeEvents) {
+        if (dequeuer != null) {
+            dequeuer.setFreezeEvents(freezeEvents);
+        }
+    }
+
     /**
      * Adds an event handler to this listener. This has a callback that will be invoked for every event coming through
      * the system.
@@ -71,24 +71,44 @@ public class FilterListener implements EventHandler {
             parser.printUsage(System.err);
             throw new RuntimeException(e.getMessage(), e);
         }
-        if (attrList != null && !attrList.isEmpty()) {
-            eventAttrs = new HashMap<String, String>();
-            String[] kvList = attrList.split(",");
-            for (String kv : kvList) {
-                String[] pairs = kv.trim().split("=");
-                if (pairs.length == 2) {
-                    eventAttrs.put(pairs[0].trim(), pairs[1].trim());
-                }
-                else {
-                    log.warn(kv + " not a valid k=v pair");
-                }
+        eventAttrs = parseEventAttrs(attrList);
+        eventNames = parseEventNames(eventNamesList);
+    }
+
+    /**
+     * @param attrList field=value,field2=value2
+     * @return the field/value pairs, or null if the list is null or empty
+     */
+    public static Map<String, String> parseEventAttrs(String attrList) {
+        if (attrList == null || attrList.isEmpty()) {
+            return null;
+        }
+        Map<String, String> eventAttrs = new HashMap<String, String>();
+        String[] kvList = attrList.split(",");
+        for (String kv : kvList) {
+            String[] pairs = kv.trim().split("=");
+            if (pairs.length == 2) {
+                eventAttrs.put(pairs[0].trim(), pairs[1].trim());
+            }
+            else {
+                log.warn(kv + " not a valid k=v pair");
             }
         }
-        if (eventNamesList != null && !eventNamesList.isEmpty()) {
-            eventNames = new LinkedList<String>();
-            String[] eList = eventNamesList.split(",");
-            Collections.addAll(eventNames, eList);
+        return eventAttrs;
+    }
+
+    /**
+     * @param eventNamesList comma separated list of event names
+     * @return the event names, or null if the list is null or empty
+     */
+    public static List<String> parseEventNames(String eventNamesList) {
+        if (eventNamesList == null || eventNamesList.isEmpty()) {
+            return null;
         }
+        List<String> eventNames = new LinkedList<String>();
+        String[] eList = eventNamesList.split(",");
+        Collections.addAll(eventNames, eList);
+        return eventNames;
     }
 
     public void run(String[] args) throws UnknownHostException,
@@ -0,0 +1,40 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.listener;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.lwes.ArrayEvent;
+import org.lwes.ArrayEventPool;
+
+/**
+ * Counts down the handlers still working on a pooled event, and returns the
+ * event to its pool when the last one finishes.
+ */
+final class PooledEventRelease {
+    private final ArrayEvent event;
+    private final ArrayEventPool pool;
+    private final AtomicInteger pending;
+
+    PooledEventRelease(ArrayEvent event, ArrayEventPool pool, int handlers) {
+        this.event = event;
+        this.pool = pool;
+        this.pending = new AtomicInteger(handlers);
+    }
+
+    /**
+     * Called once by each handler's dispatcher when the handler is done.
+     */
+    void handled() {
+        if (pending.decrementAndGet() == 0) {
+            pool.release(event);
+        }
+    }
+}
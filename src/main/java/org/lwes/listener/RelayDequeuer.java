@@ -0,0 +1,153 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.listener;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.lwes.ArrayEvent;
+import org.lwes.Event;
+import org.lwes.emitter.EmitterGroup;
+import org.lwes.serializer.CompressedEnvelope;
+
+/**
+ * <p>A dequeuer that forwards the raw datagrams it receives to a set of
+ * {@link EmitterGroup}s.  Events are not deserialized: the groups read only
+ * the event name, and only when they filter on it.</p>
+ * <p>Optionally the receipt time and sender are added to each event as
+ * {@link Event#RECEIPT_TIME}, {@link Event#SENDER_IP} and
+ * {@link Event#SENDER_PORT}.  They are written into a copy of the datagram
+ * with room for them, and overwritten in place if the event already has
+ * them.</p>
+ * <p>Compressed datagrams and bundles are opened, and each event in them is
+ * relayed on its own, so that metadata and group filters apply to it.</p>
+ * <p>If handlers are registered as well, each datagram is also deserialized
+ * and dispatched to them as usual.</p>
+ * <pre>
+ *   DatagramEventListener listener =
+ *       new DatagramEventListener(new DatagramEnqueuer(), new RelayDequeuer(groups));
+ * </pre>
+ */
+public class RelayDequeuer extends DatagramDequeuer {
+
+    private static transient Log log = LogFactory.getLog(RelayDequeuer.class);
+
+    /**
+     * Bytes needed to append the three metadata fields: name length, name,
+     * type token and value for each.
+     */
+    private static final int METADATA_SIZE =
+            (2 + Event.RECEIPT_TIME.length() + 8) +
+            (2 + Event.SENDER_IP.length() + 4) +
+            (2 + Event.SENDER_PORT.length() + 2);
+
+    private final EmitterGroup[] groups;
+    private boolean addMetadata = false;
+
+    public RelayDequeuer(EmitterGroup[] groups) {
+        this.groups = groups;
+    }
+
+    public EmitterGroup[] getGroups() {
+        return groups;
+    }
+
+    public boolean isAddMetadata() {
+        return addMetadata;
+    }
+
+    /**
+     * @param addMetadata whether to add the receipt time and sender fields to
+     *                    the relayed events
+     */
+    public void setAddMetadata(boolean addMetadata) {
+        this.addMetadata = addMetadata;
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        super.shutdown();
+        for (EmitterGroup group : groups) {
+            try {
+                group.shutdown();
+            }
+            catch (IOException e) {
+                log.error("Unable to shut down " + group, e);
+            }
+        }
+    }
+
+    @Override
+    protected void handleElement(DatagramQueueElement element) {
+        if (element == null || element.getPacket() == null) {
+            return;
+        }
+
+        final DatagramPacket packet = element.getPacket();
+        if (CompressedEnvelope.isEnvelope(packet.getData(), packet.getOffset(), packet.getLength())) {
+            final List<byte[]> events;
+            try {
+                events = openEnvelope(packet.getData(), packet.getOffset(), packet.getLength());
+            }
+            catch (Exception e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Unable to open compressed datagram in handleElement()", e);
+                }
+                return;
+            }
+            for (byte[] bytes : events) {
+                relay(bytes, 0, bytes.length, element);
+            }
+        }
+        else {
+            relay(packet.getData(), packet.getOffset(), packet.getLength(), element);
+        }
+
+        if (hasHandlers()) {
+            super.handleElement(element);
+        }
+    }
+
+    private void relay(byte[] data, int offset, int length, DatagramQueueElement element) {
+        final DatagramPacket packet = element.getPacket();
+        try {
+            byte[] bytes;
+            if (addMetadata) {
+                // Leave room for the fields, so the event can usually add them in place.
+                final byte[] buffer = new byte[length + METADATA_SIZE];
+                System.arraycopy(data, offset, buffer, 0, length);
+                final ArrayEvent event = new ArrayEvent(buffer, length, false);
+                event.setInt64(Event.RECEIPT_TIME, element.getTimestamp());
+                event.setIPAddress(Event.SENDER_IP, packet.getAddress());
+                event.setUInt16(Event.SENDER_PORT, packet.getPort());
+                // The event may have moved to a buffer of its own, so take the result from it.
+                bytes = event.serialize();
+            }
+            else if (offset == 0 && length == data.length) {
+                bytes = data;
+            }
+            else {
+                bytes = Arrays.copyOfRange(data, offset, offset + length);
+            }
+            for (EmitterGroup group : groups) {
+                group.emitToGroup(bytes);
+            }
+        }
+        catch (Exception e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Unable to relay datagram in handleElement()", e);
+            }
+        }
+    }
+}
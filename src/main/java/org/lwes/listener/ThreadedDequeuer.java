@@ -12,9 +12,12 @@
 
 package org.lwes.listener;
 
+import org.lwes.ArrayEvent;
+import org.lwes.ArrayEventPool;
 import org.lwes.Event;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -133,6 +136,13 @@ public abstract class ThreadedDequeuer implements Runnable {
         return handlers.values();
     }
 
+	/**
+	 * @return true if at least one handler is registered
+	 */
+	public boolean hasHandlers() {
+		return handlers != null && !handlers.isEmpty();
+	}
+
 	/**
 	 * Removes a handler so it no longer is processing events
 	 *
@@ -198,6 +208,26 @@ public abstract class ThreadedDequeuer implements Runnable {
 		}
 	}
 
+	/**
+	 * Dispatches a pooled event, and releases it to the pool once every
+	 * handler has returned.  Handlers must copy the event if they keep it.
+	 * @param event the Event to dispatch to the EventHandlers
+	 * @param pool the pool the event goes back to
+	 */
+	protected void dispatchEvent(ArrayEvent event, ArrayEventPool pool) {
+		if(handlers == null || handlers.isEmpty()) {
+			pool.release(event);
+			return;
+		}
+
+		List<EventHandler> targets = new ArrayList<EventHandler>(handlers.values());
+		PooledEventRelease release = new PooledEventRelease(event, pool, targets.size());
+		for(EventHandler handler : targets) {
+			ThreadedEventDispatcher d = getIdleProcessor();
+			d.setTask(handler, event, release);
+		}
+	}
+
 	/**
 	 * Gets an idle processor from the list
 	 * @return a ThreadedEventDispatcher
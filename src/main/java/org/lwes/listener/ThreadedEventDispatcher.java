@@ -29,6 +29,7 @@ public class ThreadedEventDispatcher extends Thread {
 	private ThreadedDequeuer dequeuer;
 	private EventHandler eventHandler;
 	private Event event;
+	private PooledEventRelease release;
 
 	protected ThreadedEventDispatcher(ThreadedDequeuer aDequeuer) {
 		this.dequeuer = aDequeuer;
@@ -37,10 +38,16 @@ public class ThreadedEventDispatcher extends Thread {
 	}
 
 	public void setTask(EventHandler aHandler, Event anEvent) throws IllegalStateException {
+		setTask(aHandler, anEvent, null);
+	}
+
+	void setTask(EventHandler aHandler, Event anEvent, PooledEventRelease aRelease)
+			throws IllegalStateException {
 		if(isIdle()) {
 			synchronized(this) {
 				eventHandler = aHandler;
 				event = anEvent;
+				release = aRelease;
 			}
 			synchronized(this) { notifyAll(); }
 		} else {
@@ -68,6 +75,10 @@ public class ThreadedEventDispatcher extends Thread {
 						eventHandler.handleEvent(event);
 					} catch(Exception e) {
 						log.warn("Caught exception handling event", e);
+					} finally {
+						if(release != null) {
+							release.handled();
+						}
 					}
 					clearTask();
 				} else {
@@ -83,6 +94,7 @@ public class ThreadedEventDispatcher extends Thread {
 		synchronized(this) {
 			eventHandler = null;
 			event = null;
+			release = null;
 		}
 
 		dequeuer.makeAvailable(this);
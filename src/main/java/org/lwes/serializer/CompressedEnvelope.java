@@ -0,0 +1,251 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+
+package org.lwes.serializer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.lwes.Event;
+import org.lwes.EventSystemException;
+import org.lwes.util.NumberCodec;
+
+/**
+ * <p>Packs one event, or a bundle of events, into a single datagram, usually
+ * compressed.  The envelope is</p>
+ * <pre>
+ * MAGIC (0xff), CODEC, FLAGS, INT32 payload length, payload
+ * </pre>
+ * <p>where the payload, once inflated, is either one serialized event or,
+ * when FLAGS has {@link #FLAG_BUNDLE}, a sequence of UINT16 length and
+ * serialized event pairs.  A serialized event starts with the length of its
+ * name, which is never more than {@link Event#MAX_EVENT_NAME_SIZE}, so the
+ * magic byte tells an envelope from a plain event and plain datagrams keep
+ * working unchanged.</p>
+ * <p>An instance keeps its Deflater and Inflater for reuse, so it must not
+ * be used by more than one thread at a time.  Call {@link #end()} to free
+ * them.</p>
+ */
+public class CompressedEnvelope {
+
+    public static final byte MAGIC = (byte) 0xff;
+    /** the payload is stored as it is */
+    public static final byte CODEC_NONE = 0;
+    /** the payload is compressed with java.util.zip.Deflater */
+    public static final byte CODEC_DEFLATE = 1;
+    /** the payload is a bundle of events rather than a single event */
+    public static final byte FLAG_BUNDLE = 1;
+    public static final int HEADER_SIZE = 7;
+    /** the largest payload that will be inflated */
+    public static final int MAX_PAYLOAD_SIZE = 16 * Event.MAX_MESSAGE_SIZE;
+
+    private final int level;
+    private Deflater deflater = null;
+    private Inflater inflater = null;
+
+    /**
+     * Compresses with Deflater.BEST_SPEED.
+     */
+    public CompressedEnvelope() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param level the Deflater compression level, 0-9
+     */
+    public CompressedEnvelope(int level) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be 0-9, not " + level);
+        }
+        this.level = level;
+    }
+
+    /**
+     * @return true if the datagram is an envelope rather than a plain event
+     */
+    public static boolean isEnvelope(byte[] bytes, int offset, int length) {
+        return length >= HEADER_SIZE && bytes[offset] == MAGIC;
+    }
+
+    /**
+     * Compresses one serialized event.
+     *
+     * @return the envelope, or null if it would not be smaller than the event
+     */
+    public byte[] compress(byte[] bytes, int offset, int length) {
+        return deflate(bytes, offset, length, (byte) 0, length);
+    }
+
+    /**
+     * Packs serialized events into one envelope, compressed if that makes it
+     * smaller.
+     *
+     * @param events the serialized events, none longer than MAX_MESSAGE_SIZE
+     * @return the envelope
+     */
+    public byte[] bundle(List<byte[]> events) {
+        int length = 0;
+        for (byte[] event : events) {
+            if (event.length > Event.MAX_MESSAGE_SIZE) {
+                throw new EventSystemException("Event size limit is " + Event.MAX_MESSAGE_SIZE + " bytes.");
+            }
+            length += 2 + event.length;
+        }
+        if (length > MAX_PAYLOAD_SIZE) {
+            throw new EventSystemException("Bundle size limit is " + MAX_PAYLOAD_SIZE + " bytes.");
+        }
+        final byte[] payload = new byte[length];
+        int index = 0;
+        for (byte[] event : events) {
+            index += Serializer.serializeUINT16(event.length, payload, index);
+            System.arraycopy(event, 0, payload, index, event.length);
+            index += event.length;
+        }
+        final byte[] compressed = deflate(payload, 0, length, FLAG_BUNDLE, length);
+        if (compressed != null) {
+            return compressed;
+        }
+        final byte[] stored = new byte[HEADER_SIZE + length];
+        writeHeader(stored, CODEC_NONE, FLAG_BUNDLE, length);
+        System.arraycopy(payload, 0, stored, HEADER_SIZE, length);
+        return stored;
+    }
+
+    /**
+     * @return the envelope, or null if it would be <tt>limit</tt> bytes or more
+     */
+    private byte[] deflate(byte[] bytes, int offset, int length, byte flags, int limit) {
+        if (deflater == null) {
+            deflater = new Deflater(level);
+        }
+        deflater.reset();
+        deflater.setInput(bytes, offset, length);
+        deflater.finish();
+        final byte[] output = new byte[limit];
+        int index = HEADER_SIZE;
+        while (!deflater.finished() && index < limit) {
+            index += deflater.deflate(output, index, limit - index);
+        }
+        if (!deflater.finished()) {
+            return null;
+        }
+        writeHeader(output, CODEC_DEFLATE, flags, length);
+        return Arrays.copyOf(output, index);
+    }
+
+    private static void writeHeader(byte[] bytes, byte codec, byte flags, int length) {
+        bytes[0] = MAGIC;
+        bytes[1] = codec;
+        bytes[2] = flags;
+        NumberCodec.encodeIntUnchecked(length, bytes, 3);
+    }
+
+    /**
+     * Unpacks an envelope.
+     *
+     * @return the serialized events in the envelope
+     * @throws EventSystemException if the envelope is malformed
+     */
+    public List<byte[]> open(byte[] bytes, int offset, int length) {
+        if (!isEnvelope(bytes, offset, length)) {
+            throw new EventSystemException("Not a compressed envelope");
+        }
+        final byte codec = bytes[offset + 1];
+        final byte flags = bytes[offset + 2];
+        final int payloadLength = NumberCodec.decodeIntUnchecked(bytes, offset + 3);
+        if (payloadLength < 0 || payloadLength > MAX_PAYLOAD_SIZE) {
+            throw new EventSystemException("Invalid payload length " + payloadLength);
+        }
+        final byte[] payload;
+        switch (codec) {
+            case CODEC_NONE:
+                if (payloadLength != length - HEADER_SIZE) {
+                    throw new EventSystemException("Expected a payload of " + payloadLength + " bytes, but found " +
+                                                   (length - HEADER_SIZE));
+                }
+                payload = Arrays.copyOfRange(bytes, offset + HEADER_SIZE, offset + length);
+                break;
+            case CODEC_DEFLATE:
+                payload = inflate(bytes, offset + HEADER_SIZE, length - HEADER_SIZE, payloadLength);
+                break;
+            default:
+                throw new EventSystemException("Unknown compression codec " + codec);
+        }
+
+        final List<byte[]> events = new ArrayList<byte[]>();
+        if ((flags & FLAG_BUNDLE) == 0) {
+            events.add(payload.length == payloadLength ? payload : Arrays.copyOf(payload, payloadLength));
+            return events;
+        }
+        for (int index = 0; index < payloadLength; ) {
+            if (index + 2 > payloadLength) {
+                throw new EventSystemException("Truncated bundle");
+            }
+            final int eventLength = NumberCodec.decodeShortUnchecked(payload, index) & 0xffff;
+            index += 2;
+            if (index + eventLength > payloadLength) {
+                throw new EventSystemException("Truncated bundle");
+            }
+            events.add(Arrays.copyOfRange(payload, index, index + eventLength));
+            index += eventLength;
+        }
+        return events;
+    }
+
+    /**
+     * @return the inflated payload, in a buffer with a spare byte at the end
+     *         so that a stream longer than promised is noticed
+     */
+    private byte[] inflate(byte[] bytes, int offset, int length, int payloadLength) {
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        inflater.reset();
+        inflater.setInput(bytes, offset, length);
+        final byte[] payload = new byte[payloadLength + 1];
+        int index = 0;
+        try {
+            while (!inflater.finished() && index < payload.length) {
+                final int inflated = inflater.inflate(payload, index, payload.length - index);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                index += inflated;
+            }
+        }
+        catch (DataFormatException e) {
+            throw new EventSystemException("Corrupt compressed payload", e);
+        }
+        if (!inflater.finished() || index != payloadLength) {
+            throw new EventSystemException("Expected to inflate " + payloadLength + " bytes, but inflated " +
+                                           (inflater.finished() ? "" : "at least ") + index);
+        }
+        return payload;
+    }
+
+    /**
+     * Frees the Deflater and Inflater.  The envelope can still be used, and
+     * makes new ones when next needed.
+     */
+    public void end() {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.serializer;
+
+import org.lwes.Event;
+import org.lwes.FieldType;
+import org.lwes.util.EncodedString;
+
+/**
+ * An {@link EventVisitor} that ignores everything and visits every attribute.
+ * Subclasses override the callbacks they need.
+ * <pre>
+ *   private static final byte[] USER = DefaultEventVisitor.getBytes("user");
+ *
+ *   public boolean onString(byte[] bytes, int nameOffset, int nameLength,
+ *                           int valueOffset, int valueLength, short encoding) {
+ *       if (matches(bytes, nameOffset, nameLength, USER)) {
+ *           ...
+ *           return false;
+ *       }
+ *       return true;
+ *   }
+ * </pre>
+ */
+public class DefaultEventVisitor implements EventVisitor {
+
+    public boolean onEventName(byte[] bytes, int nameOffset, int nameLength) {
+        return true;
+    }
+
+    public boolean onUInt16(byte[] bytes, int nameOffset, int nameLength, int value) {
+        return true;
+    }
+
+    public boolean onInt16(byte[] bytes, int nameOffset, int nameLength, short value) {
+        return true;
+    }
+
+    public boolean onUInt32(byte[] bytes, int nameOffset, int nameLength, long value) {
+        return true;
+    }
+
+    public boolean onInt32(byte[] bytes, int nameOffset, int nameLength, int value) {
+        return true;
+    }
+
+    public boolean onUInt64(byte[] bytes, int nameOffset, int nameLength, long value) {
+        return true;
+    }
+
+    public boolean onInt64(byte[] bytes, int nameOffset, int nameLength, long value) {
+        return true;
+    }
+
+    public boolean onBoolean(byte[] bytes, int nameOffset, int nameLength, boolean value) {
+        return true;
+    }
+
+    public boolean onByte(byte[] bytes, int nameOffset, int nameLength, byte value) {
+        return true;
+    }
+
+    public boolean onFloat(byte[] bytes, int nameOffset, int nameLength, float value) {
+        return true;
+    }
+
+    public boolean onDouble(byte[] bytes, int nameOffset, int nameLength, double value) {
+        return true;
+    }
+
+    public boolean onIPAddress(byte[] bytes, int nameOffset, int nameLength, int address) {
+        return true;
+    }
+
+    public boolean onString(byte[] bytes, int nameOffset, int nameLength, int valueOffset, int valueLength,
+                            short encoding) {
+        return true;
+    }
+
+    public boolean onArray(byte[] bytes, int nameOffset, int nameLength, FieldType type, int valueOffset,
+                           int valueLength, short encoding) {
+        return true;
+    }
+
+    /**
+     * @param name an event or attribute name
+     * @return the name as it is serialized, to compare with {@link #matches}
+     */
+    public static byte[] getBytes(String name) {
+        return EncodedString.getBytes(name, Event.ENCODING_STRINGS[Event.DEFAULT_ENCODING]);
+    }
+
+    /**
+     * @return true if the bytes from <tt>offset</tt> equal <tt>name</tt>
+     */
+    public static boolean matches(byte[] bytes, int offset, int length, byte[] name) {
+        if (length != name.length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (bytes[offset + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a name or string value.
+     */
+    public static String toString(byte[] bytes, int offset, int length, short encoding) {
+        return EncodedString.bytesToString(bytes, offset, length, Event.ENCODING_STRINGS[encoding]);
+    }
+}
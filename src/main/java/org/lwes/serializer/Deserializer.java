@@ -16,6 +16,8 @@ import java.math.BigInteger;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.BitSet;
 
 import org.apache.commons.logging.Log;
@@ -25,6 +27,7 @@ import org.lwes.EventSystemException;
 import org.lwes.FieldType;
 import org.lwes.util.EncodedString;
 import org.lwes.util.IPAddress;
+import org.lwes.util.NameCache;
 import org.lwes.util.NumberCodec;
 
 /**
@@ -38,6 +41,8 @@ import org.lwes.util.NumberCodec;
 public class Deserializer {
 
     private static final BigInteger UINT64_MASK = new BigInteger("ffffffffffffffff", 16);
+    private static final byte[] ENCODING_BYTES =
+            EncodedString.getBytes(Event.ENCODING, Event.ENCODING_STRINGS[Event.DEFAULT_ENCODING]);
     private static transient Log log = LogFactory.getLog(Deserializer.class);
 
     /**
@@ -461,8 +466,13 @@ public class Deserializer {
 //                log.trace("State: " + myState);
 //            }
 
-            aString = EncodedString.bytesToString(bytes, myState.currentIndex(), len,
-                                                  Event.ENCODING_STRINGS[encoding]);
+            if (encoding == Event.DEFAULT_ENCODING) {
+                aString = NameCache.getInstance().get(bytes, myState.currentIndex(), len);
+            }
+            else {
+                aString = EncodedString.bytesToString(bytes, myState.currentIndex(), len,
+                                                      Event.ENCODING_STRINGS[encoding]);
+            }
             myState.incr(len);
         }
         catch (ArrayIndexOutOfBoundsException aioobe) {
@@ -534,182 +544,484 @@ public class Deserializer {
                                                    byte[] bytes,
                                                    short encoding) {
         int length = deserializeUINT16(state, bytes);
-        BitSet bs = deserializeBitSet(state, bytes);
-
+        final int bitSetIndex = skipBitSet(state, bytes);
         String[] rtn = new String[length];
         for (int i = 0; i < length; i++) {
-            if (bs.get(i)) {
+            if (isPresent(bytes, bitSetIndex, i)) {
                 rtn[i] = deserializeSTRING(state, bytes, encoding);
             }
-            else {
-                rtn[i] = null;
-            }
         }
         return rtn;
     }
 
     public static Float[] deserializeNFloatArray(DeserializerState state, byte[] bytes) {
-        // get the number of items in the array
-        int length = deserializeUINT16(state, bytes);    // 2 bytes
-        BitSet bs = deserializeBitSet(state, bytes);    // 2 bytes * length worst case
+        int length = deserializeUINT16(state, bytes);
+        final int bitSetIndex = skipBitSet(state, bytes);
         Float[] rtn = new Float[length];
         for (int i = 0; i < length; i++) {
-            if (bs.get(i)) {
+            if (isPresent(bytes, bitSetIndex, i)) {
                 rtn[i] = deserializeFLOAT(state, bytes);
             }
-            else {
-                rtn[i] = null;
-            }
         }
         return rtn;
     }
 
     public static Double[] deserializeNDoubleArray(DeserializerState state, byte[] bytes) {
-        // get the number of items in the array
-        int length = deserializeUINT16(state, bytes);    // 2 bytes
-        BitSet bs = deserializeBitSet(state, bytes);    // 2 bytes * length worst case
+        int length = deserializeUINT16(state, bytes);
+        final int bitSetIndex = skipBitSet(state, bytes);
         Double[] rtn = new Double[length];
         for (int i = 0; i < length; i++) {
-            if (bs.get(i)) {
+            if (isPresent(bytes, bitSetIndex, i)) {
                 rtn[i] = deserializeDOUBLE(state, bytes);
             }
-            else {
-                rtn[i] = null;
-            }
         }
         return rtn;
     }
 
     public static Integer[] deserializeNUInt16Array(DeserializerState state, byte[] bytes) {
-        // get the number of items in the array
-        int length = deserializeUINT16(state, bytes);    // 2 bytes
-        BitSet bs = deserializeBitSet(state, bytes);    // 2 bytes * length worst case
+        int length = deserializeUINT16(state, bytes);
+        final int bitSetIndex = skipBitSet(state, bytes);
         Integer[] rtn = new Integer[length];
         for (int i = 0; i < length; i++) {
-            if (bs.get(i)) {
+            if (isPresent(bytes, bitSetIndex, i)) {
                 rtn[i] = deserializeUINT16(state, bytes);
             }
-            else {
-                rtn[i] = null;
-            }
         }
         return rtn;
     }
 
     public static Short[] deserializeNInt16Array(DeserializerState state, byte[] bytes) {
-        // get the number of items in the array
-        int length = deserializeUINT16(state, bytes);    // 2 bytes
-        BitSet bs = deserializeBitSet(state, bytes);    // 2 bytes * length worst case
+        int length = deserializeUINT16(state, bytes);
+        final int bitSetIndex = skipBitSet(state, bytes);
         Short[] rtn = new Short[length];
         for (int i = 0; i < length; i++) {
-            if (bs.get(i)) {
+            if (isPresent(bytes, bitSetIndex, i)) {
                 rtn[i] = deserializeINT16(state, bytes);
             }
-            else {
-                rtn[i] = null;
-            }
         }
         return rtn;
     }
 
     public static Long[] deserializeNUInt32Array(DeserializerState state, byte[] bytes) {
-        // get the number of items in the array
-        int length = deserializeUINT16(state, bytes);    // 2 bytes
-        BitSet bs = deserializeBitSet(state, bytes);    // 2 bytes * length worst case
+        int length = deserializeUINT16(state, bytes);
+        final int bitSetIndex = skipBitSet(state, bytes);
         Long[] rtn = new Long[length];
         for (int i = 0; i < length; i++) {
-            if (bs.get(i)) {
+            if (isPresent(bytes, bitSetIndex, i)) {
                 rtn[i] = deserializeUINT32(state, bytes);
             }
-            else {
-                rtn[i] = null;
-            }
         }
         return rtn;
     }
 
     public static Integer[] deserializeNInt32Array(DeserializerState state, byte[] bytes) {
-        // get the number of items in the array
-        int length = deserializeUINT16(state, bytes);    // 2 bytes
-        BitSet bs = deserializeBitSet(state, bytes);    // 2 bytes * length worst case
+        int length = deserializeUINT16(state, bytes);
+        final int bitSetIndex = skipBitSet(state, bytes);
         Integer[] rtn = new Integer[length];
         for (int i = 0; i < length; i++) {
-            if (bs.get(i)) {
+            if (isPresent(bytes, bitSetIndex, i)) {
                 rtn[i] = deserializeINT32(state, bytes);
             }
-            else {
-                rtn[i] = null;
-            }
         }
         return rtn;
     }
 
-    public static BigInteger[] deserializeNUInt64Array(DeserializerState state,
-                                                       byte[] bytes) {
+    public static BigInteger[] deserializeNUInt64Array(DeserializerState state, byte[] bytes) {
         int length = deserializeUINT16(state, bytes);
-        BitSet bs = deserializeBitSet(state, bytes);
-
+        final int bitSetIndex = skipBitSet(state, bytes);
         BigInteger[] rtn = new BigInteger[length];
         for (int i = 0; i < length; i++) {
-            if (bs.get(i)) {
+            if (isPresent(bytes, bitSetIndex, i)) {
                 rtn[i] = deserializeUInt64ToBigInteger(state, bytes);
             }
-            else {
-                rtn[i] = null;
-            }
         }
         return rtn;
     }
 
     public static Long[] deserializeNInt64Array(DeserializerState state, byte[] bytes) {
-        // get the number of items in the array
-        int length = deserializeUINT16(state, bytes);    // 2 bytes
-        BitSet bs = deserializeBitSet(state, bytes);    // 2 bytes * length worst case
+        int length = deserializeUINT16(state, bytes);
+        final int bitSetIndex = skipBitSet(state, bytes);
         Long[] rtn = new Long[length];
         for (int i = 0; i < length; i++) {
-            if (bs.get(i)) {
+            if (isPresent(bytes, bitSetIndex, i)) {
                 rtn[i] = deserializeINT64(state, bytes);
             }
-            else {
-                rtn[i] = null;
-            }
         }
         return rtn;
     }
 
     public static Boolean[] deserializeNBooleanArray(DeserializerState state, byte[] bytes) {
-        // get the number of items in the array
-        int length = deserializeUINT16(state, bytes);    // 2 bytes
-        BitSet bs = deserializeBitSet(state, bytes);    // 2 bytes * length worst case
+        int length = deserializeUINT16(state, bytes);
+        final int bitSetIndex = skipBitSet(state, bytes);
         Boolean[] rtn = new Boolean[length];
         for (int i = 0; i < length; i++) {
-            if (bs.get(i)) {
+            if (isPresent(bytes, bitSetIndex, i)) {
                 rtn[i] = deserializeBOOLEAN(state, bytes);
             }
-            else {
-                rtn[i] = null;
-            }
         }
         return rtn;
     }
 
-    public static Byte[] deserializeNByteArray(DeserializerState state,
-                                               byte[] bytes) {
+    public static Byte[] deserializeNByteArray(DeserializerState state, byte[] bytes) {
         int length = deserializeUINT16(state, bytes);
-        BitSet bs = deserializeBitSet(state, bytes);
-
+        final int bitSetIndex = skipBitSet(state, bytes);
         Byte[] rtn = new Byte[length];
         for (int i = 0; i < length; i++) {
-            if (bs.get(i)) {
+            if (isPresent(bytes, bitSetIndex, i)) {
                 rtn[i] = deserializeBYTE(state, bytes);
             }
-            else {
-                rtn[i] = null;
+        }
+        return rtn;
+    }
+
+    /**
+     * Reads a nullable array into a primitive array, without boxing.  Null
+     * elements are left zero (or false), and their bits are clear in
+     * <tt>present</tt>, which is cleared first so that it can be reused.
+     */
+    public static float[] deserializeNFloatArray(DeserializerState state, byte[] bytes, BitSet present) {
+        int length = deserializeUINT16(state, bytes);
+        final int bitSetIndex = skipBitSet(state, bytes);
+        present.clear();
+        float[] rtn = new float[length];
+        for (int i = 0; i < length; i++) {
+            if (isPresent(bytes, bitSetIndex, i)) {
+                present.set(i);
+                rtn[i] = deserializeFLOAT(state, bytes);
+            }
+        }
+        return rtn;
+    }
+
+    /**
+     * Reads a nullable double array without boxing; see
+     * {@link #deserializeNFloatArray(DeserializerState, byte[], BitSet)}.
+     */
+    public static double[] deserializeNDoubleArray(DeserializerState state, byte[] bytes, BitSet present) {
+        int length = deserializeUINT16(state, bytes);
+        final int bitSetIndex = skipBitSet(state, bytes);
+        present.clear();
+        double[] rtn = new double[length];
+        for (int i = 0; i < length; i++) {
+            if (isPresent(bytes, bitSetIndex, i)) {
+                present.set(i);
+                rtn[i] = deserializeDOUBLE(state, bytes);
+            }
+        }
+        return rtn;
+    }
+
+    /**
+     * Reads a nullable uint16 array into ints without boxing; see
+     * {@link #deserializeNFloatArray(DeserializerState, byte[], BitSet)}.
+     */
+    public static int[] deserializeNUInt16Array(DeserializerState state, byte[] bytes, BitSet present) {
+        int length = deserializeUINT16(state, bytes);
+        final int bitSetIndex = skipBitSet(state, bytes);
+        present.clear();
+        int[] rtn = new int[length];
+        for (int i = 0; i < length; i++) {
+            if (isPresent(bytes, bitSetIndex, i)) {
+                present.set(i);
+                rtn[i] = deserializeUINT16(state, bytes);
+            }
+        }
+        return rtn;
+    }
+
+    /**
+     * Reads a nullable int16 array without boxing; see
+     * {@link #deserializeNFloatArray(DeserializerState, byte[], BitSet)}.
+     */
+    public static short[] deserializeNInt16Array(DeserializerState state, byte[] bytes, BitSet present) {
+        int length = deserializeUINT16(state, bytes);
+        final int bitSetIndex = skipBitSet(state, bytes);
+        present.clear();
+        short[] rtn = new short[length];
+        for (int i = 0; i < length; i++) {
+            if (isPresent(bytes, bitSetIndex, i)) {
+                present.set(i);
+                rtn[i] = deserializeINT16(state, bytes);
+            }
+        }
+        return rtn;
+    }
+
+    /**
+     * Reads a nullable uint32 array into longs without boxing; see
+     * {@link #deserializeNFloatArray(DeserializerState, byte[], BitSet)}.
+     */
+    public static long[] deserializeNUInt32Array(DeserializerState state, byte[] bytes, BitSet present) {
+        int length = deserializeUINT16(state, bytes);
+        final int bitSetIndex = skipBitSet(state, bytes);
+        present.clear();
+        long[] rtn = new long[length];
+        for (int i = 0; i < length; i++) {
+            if (isPresent(bytes, bitSetIndex, i)) {
+                present.set(i);
+                rtn[i] = deserializeUINT32(state, bytes);
+            }
+        }
+        return rtn;
+    }
+
+    /**
+     * Reads a nullable int32 array without boxing; see
+     * {@link #deserializeNFloatArray(DeserializerState, byte[], BitSet)}.
+     */
+    public static int[] deserializeNInt32Array(DeserializerState state, byte[] bytes, BitSet present) {
+        int length = deserializeUINT16(state, bytes);
+        final int bitSetIndex = skipBitSet(state, bytes);
+        present.clear();
+        int[] rtn = new int[length];
+        for (int i = 0; i < length; i++) {
+            if (isPresent(bytes, bitSetIndex, i)) {
+                present.set(i);
+                rtn[i] = deserializeINT32(state, bytes);
+            }
+        }
+        return rtn;
+    }
+
+    /**
+     * Reads a nullable uint64 array into longs, holding the unsigned bits,
+     * without boxing; see {@link #deserializeNFloatArray(DeserializerState, byte[], BitSet)}.
+     */
+    public static long[] deserializeNUInt64Array(DeserializerState state, byte[] bytes, BitSet present) {
+        int length = deserializeUINT16(state, bytes);
+        final int bitSetIndex = skipBitSet(state, bytes);
+        present.clear();
+        long[] rtn = new long[length];
+        for (int i = 0; i < length; i++) {
+            if (isPresent(bytes, bitSetIndex, i)) {
+                present.set(i);
+                rtn[i] = deserializeUINT64(state, bytes);
+            }
+        }
+        return rtn;
+    }
+
+    /**
+     * Reads a nullable int64 array without boxing; see
+     * {@link #deserializeNFloatArray(DeserializerState, byte[], BitSet)}.
+     */
+    public static long[] deserializeNInt64Array(DeserializerState state, byte[] bytes, BitSet present) {
+        int length = deserializeUINT16(state, bytes);
+        final int bitSetIndex = skipBitSet(state, bytes);
+        present.clear();
+        long[] rtn = new long[length];
+        for (int i = 0; i < length; i++) {
+            if (isPresent(bytes, bitSetIndex, i)) {
+                present.set(i);
+                rtn[i] = deserializeINT64(state, bytes);
+            }
+        }
+        return rtn;
+    }
+
+    /**
+     * Reads a nullable boolean array without boxing; see
+     * {@link #deserializeNFloatArray(DeserializerState, byte[], BitSet)}.
+     */
+    public static boolean[] deserializeNBooleanArray(DeserializerState state, byte[] bytes, BitSet present) {
+        int length = deserializeUINT16(state, bytes);
+        final int bitSetIndex = skipBitSet(state, bytes);
+        present.clear();
+        boolean[] rtn = new boolean[length];
+        for (int i = 0; i < length; i++) {
+            if (isPresent(bytes, bitSetIndex, i)) {
+                present.set(i);
+                rtn[i] = deserializeBOOLEAN(state, bytes);
             }
         }
         return rtn;
     }
 
+    /**
+     * Reads a nullable byte array without boxing; see
+     * {@link #deserializeNFloatArray(DeserializerState, byte[], BitSet)}.
+     */
+    public static byte[] deserializeNByteArray(DeserializerState state, byte[] bytes, BitSet present) {
+        int length = deserializeUINT16(state, bytes);
+        final int bitSetIndex = skipBitSet(state, bytes);
+        present.clear();
+        byte[] rtn = new byte[length];
+        for (int i = 0; i < length; i++) {
+            if (isPresent(bytes, bitSetIndex, i)) {
+                present.set(i);
+                rtn[i] = deserializeBYTE(state, bytes);
+            }
+        }
+        return rtn;
+    }
+
+    /**
+     * Moves past the bit set of a nullable array, leaving it in the buffer.
+     *
+     * @return the index of the first byte of the bit set
+     */
+    private static int skipBitSet(DeserializerState state, byte[] bytes) {
+        final int size = deserializeUINT16(state, bytes);
+        final int bitSetIndex = state.currentIndex();
+        state.incr((size + 7) >>> 3);
+        return bitSetIndex;
+    }
+
+    private static boolean isPresent(byte[] bytes, int bitSetIndex, int index) {
+        return (bytes[bitSetIndex + (index >>> 3)] & (1 << (index & 7))) != 0;
+    }
+
+    /**
+     * Determines the size of a serialized value without deserializing it.
+     *
+     * @param type       the type of the value
+     * @param bytes      the serialized event
+     * @param valueIndex the start of the value
+     * @return the number of bytes in the value
+     */
+    public static int getValueByteSize(FieldType type, byte[] bytes, int valueIndex) {
+        if (type.isConstantSize()) {
+            return type.getConstantSize();
+        }
+        if (type == FieldType.STRING) {
+            return 2 + (NumberCodec.decodeShortUnchecked(bytes, valueIndex) & 0xffff);
+        }
+        if (type.isArray()) {
+            final FieldType componentType = type.getComponentType();
+            final int count = NumberCodec.decodeShortUnchecked(bytes, valueIndex) & 0xffff;
+            int index = valueIndex + 2;
+            int present = count;
+            if (type.isNullableArray()) {
+                // array_len + bitset_len + bitset + present elements
+                final int bits = NumberCodec.decodeShortUnchecked(bytes, index) & 0xffff;
+                final int bitSetBytes = (bits + 7) / 8;
+                index += 2;
+                present = 0;
+                for (int i = 0; i < bitSetBytes; ++i) {
+                    present += Integer.bitCount(bytes[index + i] & 0xff);
+                }
+                index += bitSetBytes;
+            }
+            if (componentType.isConstantSize()) {
+                return index - valueIndex + present * componentType.getConstantSize();
+            }
+            // If the component is not constant-width, we must walk the elements.
+            for (int i = 0; i < present; ++i) {
+                index += getValueByteSize(componentType, bytes, index);
+            }
+            return index - valueIndex;
+        }
+        throw new IllegalStateException("Unrecognized type: " + type);
+    }
+
+    /**
+     * Walks a serialized event once, passing its name and each attribute to
+     * a visitor.  No event, and no objects for the attributes, are created.
+     *
+     * @param bytes   the serialized event
+     * @param offset  the start of the event
+     * @param length  the length of the event
+     * @param visitor the callbacks
+     * @return true if every attribute was visited, false if the visitor
+     *         stopped the walk
+     * @throws EventSystemException if the event is malformed
+     */
+    public static boolean visit(byte[] bytes, int offset, int length, EventVisitor visitor)
+            throws EventSystemException {
+        final int end = offset + length;
+        int pos = offset;
+        final int eventNameLength = bytes[pos] & 0xff;
+        if (!visitor.onEventName(bytes, pos + 1, eventNameLength)) {
+            return false;
+        }
+        pos += 1 + eventNameLength;
+        final int count = NumberCodec.decodeShortUnchecked(bytes, pos) & 0xffff;
+        pos += 2;
+        short encoding = Event.DEFAULT_ENCODING;
+        for (int i = 0; i < count; ++i) {
+            if (pos >= end) {
+                throw new EventSystemException("Expected " + count + " attributes, but found " + i);
+            }
+            final int nameOffset = pos + 1;
+            final int nameLength = bytes[pos] & 0xff;
+            pos = nameOffset + nameLength;
+            final FieldType type = FieldType.byToken(bytes[pos++]);
+            final boolean more;
+            switch (type) {
+                case UINT16:
+                    more = visitor.onUInt16(bytes, nameOffset, nameLength,
+                                            (NumberCodec.decodeShortUnchecked(bytes, pos) & 0xffff));
+                    break;
+                case INT16: {
+                    final short value = NumberCodec.decodeShortUnchecked(bytes, pos);
+                    if (nameLength == ENCODING_BYTES.length && isEncoding(bytes, nameOffset)) {
+                        encoding = value;
+                    }
+                    more = visitor.onInt16(bytes, nameOffset, nameLength, value);
+                    break;
+                }
+                case UINT32:
+                    more = visitor.onUInt32(bytes, nameOffset, nameLength,
+                                            NumberCodec.decodeIntUnchecked(bytes, pos) & 0xffffffffL);
+                    break;
+                case INT32:
+                    more = visitor.onInt32(bytes, nameOffset, nameLength, NumberCodec.decodeIntUnchecked(bytes, pos));
+                    break;
+                case UINT64:
+                    more = visitor.onUInt64(bytes, nameOffset, nameLength, NumberCodec.decodeLongUnchecked(bytes, pos));
+                    break;
+                case INT64:
+                    more = visitor.onInt64(bytes, nameOffset, nameLength, NumberCodec.decodeLongUnchecked(bytes, pos));
+                    break;
+                case BOOLEAN:
+                    more = visitor.onBoolean(bytes, nameOffset, nameLength, bytes[pos] != 0);
+                    break;
+                case BYTE:
+                    more = visitor.onByte(bytes, nameOffset, nameLength, bytes[pos]);
+                    break;
+                case FLOAT:
+                    more = visitor.onFloat(bytes, nameOffset, nameLength,
+                                           Float.intBitsToFloat(NumberCodec.decodeIntUnchecked(bytes, pos)));
+                    break;
+                case DOUBLE:
+                    more = visitor.onDouble(bytes, nameOffset, nameLength,
+                                            Double.longBitsToDouble(NumberCodec.decodeLongUnchecked(bytes, pos)));
+                    break;
+                case IPADDR:
+                    // Serialized with the last octet first
+                    more = visitor.onIPAddress(bytes, nameOffset, nameLength,
+                                               ((bytes[pos + 3] & 0xff) << 24) | ((bytes[pos + 2] & 0xff) << 16) |
+                                               ((bytes[pos + 1] & 0xff) << 8) | (bytes[pos] & 0xff));
+                    break;
+                case STRING:
+                    more = visitor.onString(bytes, nameOffset, nameLength, pos + 2,
+                                            (NumberCodec.decodeShortUnchecked(bytes, pos) & 0xffff), encoding);
+                    break;
+                default:
+                    more = visitor.onArray(bytes, nameOffset, nameLength, type, pos,
+                                           getValueByteSize(type, bytes, pos), encoding);
+            }
+            if (!more) {
+                return false;
+            }
+            pos += getValueByteSize(type, bytes, pos);
+        }
+        if (pos != end) {
+            throw new EventSystemException("Expected to visit " + length + " bytes, but actually read " +
+                                           (pos - offset));
+        }
+        return true;
+    }
+
+    private static boolean isEncoding(byte[] bytes, int offset) {
+        for (int i = 0; i < ENCODING_BYTES.length; ++i) {
+            if (bytes[offset + i] != ENCODING_BYTES[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static Object deserializeValue(DeserializerState state,
                                           byte[] bytes,
                                           FieldType type,
@@ -788,4 +1100,316 @@ public class Deserializer {
         }
         throw new EventSystemException("Unrecognized type: " + type);
     }
+
+    /*
+     * ByteBuffer variants.  These read at state.currentIndex() with absolute
+     * gets, so the buffer's position is left alone and a slice of a direct
+     * buffer can be decoded in place.  The buffer must be in big-endian order,
+     * which is the ByteBuffer default.
+     */
+
+    /**
+     * Scratch space for decoding strings out of buffers without a backing
+     * array; a string or name is never longer than 65535 bytes.
+     */
+    private static final ThreadLocal<byte[]> STRING_SCRATCH = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[65535];
+        }
+    };
+
+    public static byte deserializeBYTE(DeserializerState state, ByteBuffer buffer) {
+        final byte aByte = buffer.get(state.currentIndex());
+        state.incr(1);
+        return aByte;
+    }
+
+    public static short deserializeUBYTE(DeserializerState state, ByteBuffer buffer) {
+        return (short) (deserializeBYTE(state, buffer) & 0xff);
+    }
+
+    public static boolean deserializeBOOLEAN(DeserializerState state, ByteBuffer buffer) {
+        return deserializeBYTE(state, buffer) != (byte) 0x00;
+    }
+
+    public static short deserializeINT16(DeserializerState state, ByteBuffer buffer) {
+        final short aShort = buffer.getShort(state.currentIndex());
+        state.incr(2);
+        return aShort;
+    }
+
+    public static int deserializeUINT16(DeserializerState state, ByteBuffer buffer) {
+        return deserializeINT16(state, buffer) & 0xffff;
+    }
+
+    public static int deserializeINT32(DeserializerState state, ByteBuffer buffer) {
+        final int anInt = buffer.getInt(state.currentIndex());
+        state.incr(4);
+        return anInt;
+    }
+
+    public static long deserializeUINT32(DeserializerState state, ByteBuffer buffer) {
+        return deserializeINT32(state, buffer) & 0xffffffffL;
+    }
+
+    public static long deserializeINT64(DeserializerState state, ByteBuffer buffer) {
+        final long aLong = buffer.getLong(state.currentIndex());
+        state.incr(8);
+        return aLong;
+    }
+
+    public static long deserializeUINT64(DeserializerState state, ByteBuffer buffer) {
+        return deserializeINT64(state, buffer);
+    }
+
+    public static BigInteger deserializeUInt64ToBigInteger(DeserializerState state,
+                                                           ByteBuffer buffer) {
+        return BigInteger.valueOf(deserializeINT64(state, buffer)).and(UINT64_MASK);
+    }
+
+    public static Double deserializeDOUBLE(DeserializerState state, ByteBuffer buffer) {
+        return Double.longBitsToDouble(deserializeINT64(state, buffer));
+    }
+
+    public static Float deserializeFLOAT(DeserializerState state, ByteBuffer buffer) {
+        return Float.intBitsToFloat(deserializeINT32(state, buffer));
+    }
+
+    /**
+     * Deserialize an ip_addr, which is stored in reverse network order.
+     *
+     * @return the address with byte order 1234.
+     */
+    public static IPAddress deserializeIPADDR(DeserializerState state, ByteBuffer buffer) {
+        final int off = state.currentIndex();
+        final byte[] inetaddr = new byte[4];
+        inetaddr[0] = buffer.get(off + 3);
+        inetaddr[1] = buffer.get(off + 2);
+        inetaddr[2] = buffer.get(off + 1);
+        inetaddr[3] = buffer.get(off);
+        state.incr(4);
+        return new IPAddress(inetaddr);
+    }
+
+    public static String deserializeSTRING(DeserializerState state, ByteBuffer buffer,
+                                           short encoding) {
+        final int len = deserializeUINT16(state, buffer);
+        final String aString = decodeString(buffer, state.currentIndex(), len, encoding, false);
+        state.incr(len);
+        return aString;
+    }
+
+    public static String deserializeEVENTWORD(DeserializerState state, ByteBuffer buffer) {
+        return deserializeEVENTWORD(state, buffer, Event.DEFAULT_ENCODING);
+    }
+
+    public static String deserializeEVENTWORD(DeserializerState state, ByteBuffer buffer,
+                                              short encoding) {
+        final int len = deserializeUBYTE(state, buffer);
+        final String aString = decodeString(buffer, state.currentIndex(), len, encoding, true);
+        state.incr(len);
+        return aString;
+    }
+
+    public static String deserializeATTRIBUTEWORD(DeserializerState state, ByteBuffer buffer) {
+        return deserializeEVENTWORD(state, buffer, Event.DEFAULT_ENCODING);
+    }
+
+    /**
+     * Decodes a string or, when <tt>name</tt> is set, an event or attribute
+     * name, which goes through the {@link NameCache}.  Heap buffers are
+     * decoded from their backing array; other buffers are copied into a
+     * per-thread scratch array first.
+     */
+    private static String decodeString(ByteBuffer buffer, int index, int length,
+                                       short encoding, boolean name) {
+        final byte[] bytes;
+        final int offset;
+        if (buffer.hasArray()) {
+            bytes = buffer.array();
+            offset = buffer.arrayOffset() + index;
+        }
+        else {
+            bytes = STRING_SCRATCH.get();
+            offset = 0;
+            final ByteBuffer view = buffer.duplicate();
+            view.limit(index + length).position(index);
+            view.get(bytes, 0, length);
+        }
+        if (name && encoding == Event.DEFAULT_ENCODING) {
+            return NameCache.getInstance().get(bytes, offset, length);
+        }
+        return EncodedString.bytesToString(bytes, offset, length, Event.ENCODING_STRINGS[encoding]);
+    }
+
+    /**
+     * Determines the size of a serialized value without deserializing it.
+     *
+     * @param type       the type of the value
+     * @param buffer     the serialized event
+     * @param valueIndex the start of the value
+     * @return the number of bytes in the value
+     */
+    public static int getValueByteSize(FieldType type, ByteBuffer buffer, int valueIndex) {
+        if (type.isConstantSize()) {
+            return type.getConstantSize();
+        }
+        if (type == FieldType.STRING) {
+            return 2 + (buffer.getShort(valueIndex) & 0xffff);
+        }
+        if (type.isArray()) {
+            final FieldType componentType = type.getComponentType();
+            final int count = buffer.getShort(valueIndex) & 0xffff;
+            int index = valueIndex + 2;
+            int present = count;
+            if (type.isNullableArray()) {
+                final int bitSetBytes = ((buffer.getShort(index) & 0xffff) + 7) / 8;
+                index += 2;
+                present = 0;
+                for (int i = 0; i < bitSetBytes; ++i) {
+                    present += Integer.bitCount(buffer.get(index + i) & 0xff);
+                }
+                index += bitSetBytes;
+            }
+            if (componentType.isConstantSize()) {
+                return index - valueIndex + present * componentType.getConstantSize();
+            }
+            for (int i = 0; i < present; ++i) {
+                index += getValueByteSize(componentType, buffer, index);
+            }
+            return index - valueIndex;
+        }
+        throw new IllegalStateException("Unrecognized type: " + type);
+    }
+
+    public static Object deserializeValue(DeserializerState state,
+                                          ByteBuffer buffer,
+                                          FieldType type,
+                                          short encoding) throws EventSystemException {
+        switch (type) {
+            case BOOLEAN:
+                return deserializeBOOLEAN(state, buffer);
+            case BYTE:
+                return deserializeBYTE(state, buffer);
+            case UINT16:
+                return deserializeUINT16(state, buffer);
+            case INT16:
+                return deserializeINT16(state, buffer);
+            case UINT32:
+                return deserializeUINT32(state, buffer);
+            case INT32:
+                return deserializeINT32(state, buffer);
+            case FLOAT:
+                return deserializeFLOAT(state, buffer);
+            case UINT64:
+                return deserializeUInt64ToBigInteger(state, buffer);
+            case INT64:
+                return deserializeINT64(state, buffer);
+            case DOUBLE:
+                return deserializeDOUBLE(state, buffer);
+            case STRING:
+                return deserializeSTRING(state, buffer, encoding);
+            case IPADDR:
+                return deserializeIPADDR(state, buffer);
+        }
+        if (type.isArray()) {
+            return deserializeArray(state, buffer, type, encoding);
+        }
+        throw new EventSystemException("Unrecognized type: " + type);
+    }
+
+    /**
+     * Deserializes any array type.  Primitive arrays are filled element by
+     * element; object arrays, nullable or not, get the boxed values that
+     * deserializeValue returns for their component type.
+     */
+    private static Object deserializeArray(DeserializerState state, ByteBuffer buffer,
+                                           FieldType type, short encoding)
+            throws EventSystemException {
+        final int length = deserializeUINT16(state, buffer);
+        switch (type) {
+            case INT16_ARRAY: {
+                final short[] rtn = new short[length];
+                for (int i = 0; i < length; i++) {
+                    rtn[i] = deserializeINT16(state, buffer);
+                }
+                return rtn;
+            }
+            case UINT16_ARRAY: {
+                final int[] rtn = new int[length];
+                for (int i = 0; i < length; i++) {
+                    rtn[i] = deserializeUINT16(state, buffer);
+                }
+                return rtn;
+            }
+            case INT32_ARRAY: {
+                final int[] rtn = new int[length];
+                for (int i = 0; i < length; i++) {
+                    rtn[i] = deserializeINT32(state, buffer);
+                }
+                return rtn;
+            }
+            case UINT32_ARRAY: {
+                final long[] rtn = new long[length];
+                for (int i = 0; i < length; i++) {
+                    rtn[i] = deserializeUINT32(state, buffer);
+                }
+                return rtn;
+            }
+            case INT64_ARRAY: {
+                final long[] rtn = new long[length];
+                for (int i = 0; i < length; i++) {
+                    rtn[i] = deserializeINT64(state, buffer);
+                }
+                return rtn;
+            }
+            case BOOLEAN_ARRAY: {
+                final boolean[] rtn = new boolean[length];
+                for (int i = 0; i < length; i++) {
+                    rtn[i] = deserializeBOOLEAN(state, buffer);
+                }
+                return rtn;
+            }
+            case BYTE_ARRAY: {
+                final byte[] rtn = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    rtn[i] = deserializeBYTE(state, buffer);
+                }
+                return rtn;
+            }
+            case DOUBLE_ARRAY: {
+                final double[] rtn = new double[length];
+                for (int i = 0; i < length; i++) {
+                    rtn[i] = deserializeDOUBLE(state, buffer);
+                }
+                return rtn;
+            }
+            case FLOAT_ARRAY: {
+                final float[] rtn = new float[length];
+                for (int i = 0; i < length; i++) {
+                    rtn[i] = deserializeFLOAT(state, buffer);
+                }
+                return rtn;
+            }
+        }
+        final FieldType componentType = type.getComponentType();
+        final Object[] rtn = Arrays.copyOf((Object[]) type.getDefaultValue(), length);
+        if (type.isNullableArray()) {
+            final int size = deserializeUINT16(state, buffer);
+            final int bitSetIndex = state.currentIndex();
+            state.incr((size + 7) >>> 3);
+            for (int i = 0; i < length; i++) {
+                if ((buffer.get(bitSetIndex + (i >>> 3)) & (1 << (i & 7))) != 0) {
+                    rtn[i] = deserializeValue(state, buffer, componentType, encoding);
+                }
+            }
+        }
+        else {
+            for (int i = 0; i < length; i++) {
+                rtn[i] = deserializeValue(state, buffer, componentType, encoding);
+            }
+        }
+        return rtn;
+    }
 }
@@ -0,0 +1,85 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.serializer;
+
+import org.lwes.FieldType;
+
+/**
+ * <p>Callbacks for {@link Deserializer#visit(byte[], int, int, EventVisitor)},
+ * which walks a serialized event once without creating an event or any
+ * objects for its attributes.</p>
+ * <p>Names and variable length values are passed as ranges of the serialized
+ * buffer: the attribute name is <tt>bytes[nameOffset]</tt> to
+ * <tt>bytes[nameOffset + nameLength - 1]</tt>, in the default encoding.  Use
+ * {@link DefaultEventVisitor#matches} to compare it with a name, and
+ * {@link DefaultEventVisitor#toString(byte[], int, int, short)} to decode it
+ * only when needed.  The buffer must not be kept after the callback.</p>
+ * <p>Every callback returns true to go on to the next attribute, or false to
+ * stop the walk.</p>
+ */
+public interface EventVisitor {
+
+    /**
+     * Called first, with the event name.
+     */
+    boolean onEventName(byte[] bytes, int nameOffset, int nameLength);
+
+    boolean onUInt16(byte[] bytes, int nameOffset, int nameLength, int value);
+
+    /**
+     * Also called for the encoding attribute, which then applies to the
+     * strings that follow.
+     */
+    boolean onInt16(byte[] bytes, int nameOffset, int nameLength, short value);
+
+    boolean onUInt32(byte[] bytes, int nameOffset, int nameLength, long value);
+
+    boolean onInt32(byte[] bytes, int nameOffset, int nameLength, int value);
+
+    /**
+     * @param value the unsigned value, as the bits of a long
+     */
+    boolean onUInt64(byte[] bytes, int nameOffset, int nameLength, long value);
+
+    boolean onInt64(byte[] bytes, int nameOffset, int nameLength, long value);
+
+    boolean onBoolean(byte[] bytes, int nameOffset, int nameLength, boolean value);
+
+    boolean onByte(byte[] bytes, int nameOffset, int nameLength, byte value);
+
+    boolean onFloat(byte[] bytes, int nameOffset, int nameLength, float value);
+
+    boolean onDouble(byte[] bytes, int nameOffset, int nameLength, double value);
+
+    /**
+     * @param address the address with its first octet in the high byte
+     */
+    boolean onIPAddress(byte[] bytes, int nameOffset, int nameLength, int address);
+
+    /**
+     * @param valueOffset the start of the string bytes, after its length
+     * @param valueLength the number of string bytes
+     * @param encoding    the encoding of the string bytes
+     */
+    boolean onString(byte[] bytes, int nameOffset, int nameLength, int valueOffset, int valueLength,
+                     short encoding);
+
+    /**
+     * Called for every array type.  The value can be read with
+     * {@link Deserializer#deserializeValue} from <tt>valueOffset</tt>.
+     *
+     * @param type        the array type
+     * @param valueOffset the start of the serialized array, at its length
+     * @param valueLength the size of the serialized array in bytes
+     * @param encoding    the encoding of any strings in the array
+     */
+    boolean onArray(byte[] bytes, int nameOffset, int nameLength, FieldType type, int valueOffset,
+                    int valueLength, short encoding);
+}
@@ -15,12 +15,13 @@ package org.lwes.serializer;
 import java.math.BigInteger;
 import java.net.Inet4Address;
 import java.net.InetAddress;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.List;
 
 import org.lwes.Event;
 import org.lwes.FieldType;
+import org.lwes.util.CharacterEncoding;
 import org.lwes.util.EncodedString;
 import org.lwes.util.IPAddress;
 import org.lwes.util.NumberCodec;
@@ -141,15 +142,14 @@ public class Serializer {
 
     public static int serializeSTRING(String aString, byte[] bytes, int offset,
                                       short encoding) {
-        byte[] stringBytes =
-                EncodedString.getBytes(aString, Event.ENCODING_STRINGS[encoding]);
-        int length = stringBytes.length;
-        if (length < 65535 && length >= 0) {
-            offset += serializeUINT16(length, bytes, offset);
-            System.arraycopy(stringBytes, 0, bytes, offset, length);
-            return (length + 2);
+        final CharacterEncoding enc = Event.ENCODING_STRINGS[encoding];
+        // A char takes at most three bytes, so only long strings need measuring.
+        if (aString.length() * 3 >= 65535 && EncodedString.getByteLength(aString, enc) >= 65535) {
+            return 0;
         }
-        return 0;
+        final int length = EncodedString.encode(aString, enc, bytes, offset + 2);
+        serializeUINT16(length, bytes, offset);
+        return (length + 2);
 
     }
 
@@ -338,15 +338,13 @@ public class Serializer {
                                           byte[] bytes,
                                           int offset,
                                           short encoding) {
-        byte[] stringBytes =
-                EncodedString.getBytes(aString, Event.ENCODING_STRINGS[encoding]);
-        int length = stringBytes.length;
-        if (0 <= length && length <= 255) {
-            offset += serializeUBYTE((short) length, bytes, offset);
-            System.arraycopy(stringBytes, 0, bytes, offset, length);
-            return (length + 1);
+        final CharacterEncoding enc = Event.ENCODING_STRINGS[encoding];
+        if (aString.length() * 3 > 255 && EncodedString.getByteLength(aString, enc) > 255) {
+            return 0;
         }
-        return 0;
+        final int length = EncodedString.encode(aString, enc, bytes, offset + 1);
+        serializeUBYTE((short) length, bytes, offset);
+        return (length + 1);
 
     }
 
@@ -525,8 +523,9 @@ public class Serializer {
     }
 
     /**
-     * For serializing arrays that can contain nulls. For strings, we need to figure out how long each string is
-     * in order to create the temporary array to write into
+     * Nullable arrays are serialized as the array length, a bit set marking the
+     * elements which are not null, and then those elements.  Each of these
+     * methods writes all three straight into <tt>bytes</tt> in a single pass.
      *
      * @param data array to serialize
      * @param bytes byte array to write to
@@ -535,382 +534,425 @@ public class Serializer {
      * @return number of bytes written
      */
     public static int serializeNStringArray(String[] data, byte[] bytes, int offset, short encoding) {
-        int numbytes = 0;
-        int offsetStart = offset;
-
-        // Number of items in the array
-        numbytes = serializeUINT16((short) data.length, bytes, offset);
-        offset += numbytes;
-
-        List<byte[]> tmp = new ArrayList<byte[]>(data.length);
-
-        // use a bitset to determine which indexes have values and which are null.
-        // serialize the actual values into a temporary byte array
-        BitSet bitSet = new BitSet(data.length);
-        int i = 0;
-        for (String s : data) {
-            if (s != null) {
-                byte[] stringBytes = EncodedString.getBytes(s, Event.ENCODING_STRINGS[encoding]);
-                byte[] tmpArr = new byte[stringBytes.length + 2];
-                serializeUINT16(stringBytes.length, tmpArr, 0);
-                System.arraycopy(stringBytes, 0, tmpArr, 2, stringBytes.length);
-                tmp.add(i, tmpArr);
-                bitSet.set(i);
-            }
-            else {
-                tmp.add(i, null);
+        final int offsetStart = offset;
+        final int bitSetIndex = offset + 4;
+        offset = serializeNullableArrayHeader(data.length, bytes, offset);
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != null) {
+                setPresent(bytes, bitSetIndex, i);
+                offset += serializeSTRING(data[i], bytes, offset, encoding);
             }
-            i++;
         }
-
-        // Write the bitset first to ease with deserialization
-        offset += serializeBitSet(bitSet, data.length, bytes, offset);
-        // Now write the values
-        for (byte[] a : tmp) {
-            if (a != null) {
-                System.arraycopy(a, 0, bytes, offset, a.length);
-                offset += a.length;
-            }
-        }
-
         return (offset - offsetStart);
     }
 
-    /**
-     * For serializing arrays that can contain nulls, blahblah
-     *
-     * @param data array to serialize
-     * @param bytes byte array to write to
-     * @param offset index in byte array to start at
-     * @return number of bytes written
-     */
     public static int serializeNFloatArray(Float[] data, byte[] bytes, int offset) {
-        int numbytes = 0;
-        int offsetStart = offset;
-
-        // Number of items in the array
-        numbytes = serializeUINT16((short) data.length, bytes, offset);
-        offset += numbytes;
-
-        byte[] tmp = new byte[4 * data.length];
-        int tmpOffset = 0;
-
-        // use a bitset to determine which indexes have values and which are null.
-        // serialize the actual values into a temporary byte array
-        BitSet bitSet = new BitSet(data.length);
-        int i = 0;
-        for (Float s : data) {
-            if (s != null) {
-                numbytes = serializeFLOAT(s, tmp, tmpOffset);
-                tmpOffset += numbytes;
-                bitSet.set(i);
+        final int offsetStart = offset;
+        final int bitSetIndex = offset + 4;
+        offset = serializeNullableArrayHeader(data.length, bytes, offset);
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != null) {
+                setPresent(bytes, bitSetIndex, i);
+                offset += serializeFLOAT(data[i], bytes, offset);
             }
-            i++;
         }
-
-        // Write the bitset first to ease with deserialization
-        offset += serializeBitSet(bitSet, data.length, bytes, offset);
-        // Now write the float values
-        System.arraycopy(tmp, 0, bytes, offset, tmpOffset);
-        offset += tmpOffset;
-
         return (offset - offsetStart);
     }
 
     public static int serializeNByteArray(Byte[] data, byte[] bytes, int offset) {
-        int numbytes = 0;
-        int offsetStart = offset;
-
-        // Number of items in the array
-        numbytes = serializeUINT16((short) data.length, bytes, offset);
-        offset += numbytes;
-
-        byte[] tmp = new byte[data.length];
-        int tmpOffset = 0;
-
-        // use a bitset to determine which indexes have values and which are null.
-        // serialize the actual values into a temporary byte array
-        BitSet bitSet = new BitSet(data.length);
-        int i = 0;
-        for (Byte s : data) {
-            if (s != null) {
-                numbytes = serializeBYTE(s, tmp, tmpOffset);
-                tmpOffset += numbytes;
-                bitSet.set(i);
+        final int offsetStart = offset;
+        final int bitSetIndex = offset + 4;
+        offset = serializeNullableArrayHeader(data.length, bytes, offset);
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != null) {
+                setPresent(bytes, bitSetIndex, i);
+                offset += serializeBYTE(data[i], bytes, offset);
             }
-            i++;
         }
-
-        // Write the bitset first to ease with deserialization
-        offset += serializeBitSet(bitSet, data.length, bytes, offset);
-        // Now write the float values
-        System.arraycopy(tmp, 0, bytes, offset, tmpOffset);
-        offset += tmpOffset;
-
         return (offset - offsetStart);
     }
 
     public static int serializeNBooleanArray(Boolean[] data, byte[] bytes, int offset) {
-        int numbytes = 0;
-        int offsetStart = offset;
-
-        // Number of items in the array
-        numbytes = serializeUINT16((short) data.length, bytes, offset);
-        offset += numbytes;
-
-        byte[] tmp = new byte[data.length];
-        int tmpOffset = 0;
-
-        // use a bitset to determine which indexes have values and which are null.
-        // serialize the actual values into a temporary byte array
-        BitSet bitSet = new BitSet(data.length);
-        int i = 0;
-        for (Boolean s : data) {
-            if (s != null) {
-                numbytes = serializeBOOLEAN(s, tmp, tmpOffset);
-                tmpOffset += numbytes;
-                bitSet.set(i);
+        final int offsetStart = offset;
+        final int bitSetIndex = offset + 4;
+        offset = serializeNullableArrayHeader(data.length, bytes, offset);
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != null) {
+                setPresent(bytes, bitSetIndex, i);
+                offset += serializeBOOLEAN(data[i], bytes, offset);
             }
-            i++;
         }
-
-        // Write the bitset first to ease with deserialization
-        offset += serializeBitSet(bitSet, data.length, bytes, offset);
-        // Now write the float values
-        System.arraycopy(tmp, 0, bytes, offset, tmpOffset);
-        offset += tmpOffset;
-
         return (offset - offsetStart);
     }
 
     public static int serializeNDoubleArray(Double[] data, byte[] bytes, int offset) {
-        int numbytes = 0;
-        int offsetStart = offset;
-
-        // Number of items in the array
-        numbytes = serializeUINT16((short) data.length, bytes, offset);
-        offset += numbytes;
-
-        byte[] tmp = new byte[8 * data.length];
-        int tmpOffset = 0;
-
-        // use a bitset to determine which indexes have values and which are null.
-        // serialize the actual values into a temporary byte array
-        BitSet bitSet = new BitSet(data.length);
-        int i = 0;
-        for (Double s : data) {
-            if (s != null) {
-                numbytes = serializeDOUBLE(s, tmp, tmpOffset);
-                tmpOffset += numbytes;
-                bitSet.set(i);
+        final int offsetStart = offset;
+        final int bitSetIndex = offset + 4;
+        offset = serializeNullableArrayHeader(data.length, bytes, offset);
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != null) {
+                setPresent(bytes, bitSetIndex, i);
+                offset += serializeDOUBLE(data[i], bytes, offset);
             }
-            i++;
         }
-
-        // Write the bitset first to ease with deserialization
-        offset += serializeBitSet(bitSet, data.length, bytes, offset);
-        // Now write the float values
-        System.arraycopy(tmp, 0, bytes, offset, tmpOffset);
-        offset += tmpOffset;
-
         return (offset - offsetStart);
     }
 
     public static int serializeNInt16Array(Short[] data, byte[] bytes, int offset) {
-        int numbytes = 0;
-        int offsetStart = offset;
-
-        // Number of items in the array
-        numbytes = serializeUINT16((short) data.length, bytes, offset);
-        offset += numbytes;
-
-        byte[] tmp = new byte[2 * data.length];
-        int tmpOffset = 0;
-
-        // use a bitset to determine which indexes have values and which are null.
-        // serialize the actual values into a temporary byte array
-        BitSet bitSet = new BitSet(data.length);
-        int i = 0;
-        for (Short s : data) {
-            if (s != null) {
-                numbytes = serializeINT16(s, tmp, tmpOffset);
-                tmpOffset += numbytes;
-                bitSet.set(i);
+        final int offsetStart = offset;
+        final int bitSetIndex = offset + 4;
+        offset = serializeNullableArrayHeader(data.length, bytes, offset);
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != null) {
+                setPresent(bytes, bitSetIndex, i);
+                offset += serializeINT16(data[i], bytes, offset);
             }
-            i++;
         }
-
-        // Write the bitset first to ease with deserialization
-        offset += serializeBitSet(bitSet, data.length, bytes, offset);
-        // Now write the float values
-        System.arraycopy(tmp, 0, bytes, offset, tmpOffset);
-        offset += tmpOffset;
-
         return (offset - offsetStart);
     }
 
     public static int serializeNUInt16Array(Integer[] data, byte[] bytes, int offset) {
-        int numbytes = 0;
-        int offsetStart = offset;
+        final int offsetStart = offset;
+        final int bitSetIndex = offset + 4;
+        offset = serializeNullableArrayHeader(data.length, bytes, offset);
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != null) {
+                setPresent(bytes, bitSetIndex, i);
+                offset += serializeUINT16(data[i], bytes, offset);
+            }
+        }
+        return (offset - offsetStart);
+    }
 
-        // Number of items in the array
-        numbytes = serializeUINT16((short) data.length, bytes, offset);
-        offset += numbytes;
+    public static int serializeNInt32Array(Integer[] data, byte[] bytes, int offset) {
+        final int offsetStart = offset;
+        final int bitSetIndex = offset + 4;
+        offset = serializeNullableArrayHeader(data.length, bytes, offset);
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != null) {
+                setPresent(bytes, bitSetIndex, i);
+                offset += serializeINT32(data[i], bytes, offset);
+            }
+        }
+        return (offset - offsetStart);
+    }
 
-        byte[] tmp = new byte[2 * data.length];
-        int tmpOffset = 0;
-
-        // use a bitset to determine which indexes have values and which are null.
-        // serialize the actual values into a temporary byte array
-        BitSet bitSet = new BitSet(data.length);
-        int i = 0;
-        for (Integer s : data) {
-            if (s != null) {
-                numbytes = serializeUINT16(s, tmp, tmpOffset);
-                tmpOffset += numbytes;
-                bitSet.set(i);
+    public static int serializeNUInt32Array(Long[] data, byte[] bytes, int offset) {
+        final int offsetStart = offset;
+        final int bitSetIndex = offset + 4;
+        offset = serializeNullableArrayHeader(data.length, bytes, offset);
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != null) {
+                setPresent(bytes, bitSetIndex, i);
+                offset += serializeUINT32(data[i], bytes, offset);
             }
-            i++;
         }
+        return (offset - offsetStart);
+    }
 
-        // Write the bitset first to ease with deserialization
-        offset += serializeBitSet(bitSet, data.length, bytes, offset);
-        // Now write the float values
-        System.arraycopy(tmp, 0, bytes, offset, tmpOffset);
-        offset += tmpOffset;
+    public static int serializeNInt64Array(Long[] data, byte[] bytes, int offset) {
+        final int offsetStart = offset;
+        final int bitSetIndex = offset + 4;
+        offset = serializeNullableArrayHeader(data.length, bytes, offset);
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != null) {
+                setPresent(bytes, bitSetIndex, i);
+                offset += serializeINT64(data[i], bytes, offset);
+            }
+        }
+        return (offset - offsetStart);
+    }
 
+    public static int serializeNUInt64Array(BigInteger[] data, byte[] bytes, int offset) {
+        final int offsetStart = offset;
+        final int bitSetIndex = offset + 4;
+        offset = serializeNullableArrayHeader(data.length, bytes, offset);
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != null) {
+                setPresent(bytes, bitSetIndex, i);
+                offset += serializeUINT64(data[i], bytes, offset);
+            }
+        }
         return (offset - offsetStart);
     }
 
-    public static int serializeNInt32Array(Integer[] data, byte[] bytes, int offset) {
-        int numbytes = 0;
-        int offsetStart = offset;
+    /**
+     * Writes the array length and the length of the bit set, and clears the
+     * bit set that follows them.
+     *
+     * @return the index after the bit set, where the elements start
+     */
+    private static int serializeNullableArrayHeader(int arrayLength, byte[] bytes, int offset) {
+        offset += serializeUINT16(arrayLength, bytes, offset);
+        offset += serializeUINT16(arrayLength, bytes, offset);
+        final int bitSetLength = (arrayLength + 7) >>> 3;
+        Arrays.fill(bytes, offset, offset + bitSetLength, (byte) 0);
+        return offset + bitSetLength;
+    }
 
-        // Number of items in the array
-        numbytes = serializeUINT16((short) data.length, bytes, offset);
-        offset += numbytes;
+    private static void setPresent(byte[] bytes, int bitSetIndex, int index) {
+        bytes[bitSetIndex + (index >>> 3)] |= 1 << (index & 7);
+    }
 
-        byte[] tmp = new byte[4 * data.length];
-        int tmpOffset = 0;
-
-        // use a bitset to determine which indexes have values and which are null.
-        // serialize the actual values into a temporary byte array
-        BitSet bitSet = new BitSet(data.length);
-        int i = 0;
-        for (Integer s : data) {
-            if (s != null) {
-                numbytes = serializeINT32(s, tmp, tmpOffset);
-                tmpOffset += numbytes;
-                bitSet.set(i);
-            }
-            i++;
+    /*
+     * ByteBuffer variants.  These write at an absolute offset, leaving the
+     * buffer's position alone, and return the number of bytes written, like
+     * the byte[] methods.  The buffer must be in big-endian order, which is
+     * the ByteBuffer default.
+     */
+
+    /**
+     * Scratch space for encoding strings into buffers without a backing
+     * array; an encoded string and its length never exceed 65537 bytes.
+     */
+    private static final ThreadLocal<byte[]> STRING_SCRATCH = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[65537];
         }
+    };
 
-        // Write the bitset first to ease with deserialization
-        offset += serializeBitSet(bitSet, data.length, bytes, offset);
-        // Now write the float values
-        System.arraycopy(tmp, 0, bytes, offset, tmpOffset);
-        offset += tmpOffset;
+    public static int serializeBYTE(byte value, ByteBuffer buffer, int offset) {
+        buffer.put(offset, value);
+        return 1;
+    }
 
-        return (offset - offsetStart);
+    public static int serializeUBYTE(short value, ByteBuffer buffer, int offset)
+            throws IllegalArgumentException {
+        if (value < 0 || value > 255) {
+            throw new IllegalArgumentException("Unsigned byte " + value + " out of range 0..255");
+        }
+        buffer.put(offset, (byte) value);
+        return 1;
     }
 
-    public static int serializeNUInt32Array(Long[] data, byte[] bytes, int offset) {
-        int numbytes = 0;
-        int offsetStart = offset;
+    public static int serializeBOOLEAN(boolean value, ByteBuffer buffer, int offset) {
+        buffer.put(offset, (byte) (value ? 1 : 0));
+        return 1;
+    }
 
-        // Number of items in the array
-        numbytes = serializeUINT16((short) data.length, bytes, offset);
-        offset += numbytes;
+    public static int serializeINT16(short value, ByteBuffer buffer, int offset) {
+        buffer.putShort(offset, value);
+        return 2;
+    }
 
-        byte[] tmp = new byte[4 * data.length];
-        int tmpOffset = 0;
-
-        // use a bitset to determine which indexes have values and which are null.
-        // serialize the actual values into a temporary byte array
-        BitSet bitSet = new BitSet(data.length);
-        int i = 0;
-        for (Long s : data) {
-            if (s != null) {
-                numbytes = serializeUINT32(s, tmp, tmpOffset);
-                tmpOffset += numbytes;
-                bitSet.set(i);
-            }
-            i++;
-        }
+    public static int serializeUINT16(int value, ByteBuffer buffer, int offset) {
+        buffer.putShort(offset, (short) value);
+        return 2;
+    }
 
-        // Write the bitset first to ease with deserialization
-        offset += serializeBitSet(bitSet, data.length, bytes, offset);
-        // Now write the float values
-        System.arraycopy(tmp, 0, bytes, offset, tmpOffset);
-        offset += tmpOffset;
+    public static int serializeINT32(int value, ByteBuffer buffer, int offset) {
+        buffer.putInt(offset, value);
+        return 4;
+    }
 
-        return (offset - offsetStart);
+    public static int serializeUINT32(long value, ByteBuffer buffer, int offset) {
+        buffer.putInt(offset, (int) value);
+        return 4;
     }
 
-    public static int serializeNInt64Array(Long[] data, byte[] bytes, int offset) {
-        int numbytes = 0;
-        int offsetStart = offset;
+    public static int serializeINT64(long value, ByteBuffer buffer, int offset) {
+        buffer.putLong(offset, value);
+        return 8;
+    }
 
-        // Number of items in the array
-        numbytes = serializeUINT16((short) data.length, bytes, offset);
-        offset += numbytes;
+    public static int serializeUINT64(long value, ByteBuffer buffer, int offset) {
+        buffer.putLong(offset, value);
+        return 8;
+    }
 
-        byte[] tmp = new byte[8 * data.length];
-        int tmpOffset = 0;
-
-        // use a bitset to determine which indexes have values and which are null.
-        // serialize the actual values into a temporary byte array
-        BitSet bitSet = new BitSet(data.length);
-        int i = 0;
-        for (Long s : data) {
-            if (s != null) {
-                numbytes = serializeINT64(s, tmp, tmpOffset);
-                tmpOffset += numbytes;
-                bitSet.set(i);
-            }
-            i++;
-        }
+    public static int serializeUINT64(BigInteger value, ByteBuffer buffer, int offset) {
+        buffer.putLong(offset, value.longValue());
+        return 8;
+    }
 
-        // Write the bitset first to ease with deserialization
-        offset += serializeBitSet(bitSet, data.length, bytes, offset);
-        // Now write the float values
-        System.arraycopy(tmp, 0, bytes, offset, tmpOffset);
-        offset += tmpOffset;
+    public static int serializeDOUBLE(Double value, ByteBuffer buffer, int offset) {
+        buffer.putLong(offset, Double.doubleToLongBits(value));
+        return 8;
+    }
 
-        return (offset - offsetStart);
+    public static int serializeFLOAT(Float value, ByteBuffer buffer, int offset) {
+        buffer.putInt(offset, Float.floatToIntBits(value));
+        return 4;
     }
 
-    public static int serializeNUInt64Array(BigInteger[] data, byte[] bytes, int offset) {
-        int numbytes = 0;
-        int offsetStart = offset;
+    /**
+     * Serialize IPAddress in *reverse* network order, as the event format
+     * requires.
+     */
+    public static int serializeIPADDR(IPAddress value, ByteBuffer buffer, int offset) {
+        final byte[] inetaddr = value.getInetAddressAsBytes();
+        buffer.put(offset + 3, inetaddr[0]);
+        buffer.put(offset + 2, inetaddr[1]);
+        buffer.put(offset + 1, inetaddr[2]);
+        buffer.put(offset, inetaddr[3]);
+        return 4;
+    }
 
-        // Number of items in the array
-        numbytes = serializeUINT16((short) data.length, bytes, offset);
-        offset += numbytes;
+    public static int serializeSTRING(String value, ByteBuffer buffer, int offset,
+                                      short encoding) {
+        if (buffer.hasArray()) {
+            return serializeSTRING(value, buffer.array(), buffer.arrayOffset() + offset, encoding);
+        }
+        final byte[] scratch = STRING_SCRATCH.get();
+        return put(scratch, serializeSTRING(value, scratch, 0, encoding), buffer, offset);
+    }
 
-        byte[] tmp = new byte[8 * data.length];
-        int tmpOffset = 0;
-
-        // use a bitset to determine which indexes have values and which are null.
-        // serialize the actual values into a temporary byte array
-        BitSet bitSet = new BitSet(data.length);
-        int i = 0;
-        for (BigInteger s : data) {
-            if (s != null) {
-                numbytes = serializeUINT64(s, tmp, tmpOffset);
-                tmpOffset += numbytes;
-                bitSet.set(i);
-            }
-            i++;
+    public static int serializeEVENTWORD(String value, ByteBuffer buffer, int offset) {
+        if (buffer.hasArray()) {
+            return serializeEVENTWORD(value, buffer.array(), buffer.arrayOffset() + offset);
         }
+        final byte[] scratch = STRING_SCRATCH.get();
+        return put(scratch, serializeEVENTWORD(value, scratch, 0), buffer, offset);
+    }
 
-        // Write the bitset first to ease with deserialization
-        offset += serializeBitSet(bitSet, data.length, bytes, offset);
-        // Now write the float values
-        System.arraycopy(tmp, 0, bytes, offset, tmpOffset);
-        offset += tmpOffset;
+    public static int serializeATTRIBUTEWORD(String value, ByteBuffer buffer, int offset) {
+        return serializeEVENTWORD(value, buffer, offset);
+    }
 
-        return (offset - offsetStart);
+    private static int put(byte[] bytes, int length, ByteBuffer buffer, int offset) {
+        final ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.put(bytes, 0, length);
+        return length;
+    }
+
+    public static int serializeValue(FieldType type,
+                                     Object data,
+                                     short encoding,
+                                     ByteBuffer buffer,
+                                     int offset) {
+        switch (type) {
+            case BYTE:
+                return serializeBYTE((Byte) data, buffer, offset);
+            case BOOLEAN:
+                return serializeBOOLEAN((Boolean) data, buffer, offset);
+            case UINT16:
+                return serializeUINT16((Integer) data, buffer, offset);
+            case INT16:
+                return serializeINT16((Short) data, buffer, offset);
+            case UINT32:
+                return serializeUINT32((Long) data, buffer, offset);
+            case INT32:
+                return serializeINT32((Integer) data, buffer, offset);
+            case UINT64:
+                return serializeUINT64((BigInteger) data, buffer, offset);
+            case INT64:
+                return serializeINT64((Long) data, buffer, offset);
+            case STRING:
+                return serializeSTRING((String) data, buffer, offset, encoding);
+            case DOUBLE:
+                return serializeDOUBLE((Double) data, buffer, offset);
+            case FLOAT:
+                return serializeFLOAT((Float) data, buffer, offset);
+            case IPADDR:
+                return serializeIPADDR((IPAddress) data, buffer, offset);
+        }
+        if (type.isArray()) {
+            return serializeArray(type, data, encoding, buffer, offset);
+        }
+        throw new IllegalArgumentException("Unknown BaseType token: " + type);
+    }
+
+    /**
+     * Serializes any array type.  Primitive arrays are written element by
+     * element; object arrays, nullable or not, write each element with
+     * serializeValue for their component type.
+     */
+    private static int serializeArray(FieldType type, Object data, short encoding,
+                                      ByteBuffer buffer, final int offset) {
+        int index = offset;
+        switch (type) {
+            case INT16_ARRAY: {
+                final short[] value = (short[]) data;
+                index += serializeUINT16(value.length, buffer, index);
+                for (short v : value) {
+                    index += serializeINT16(v, buffer, index);
+                }
+                return index - offset;
+            }
+            case UINT16_ARRAY: {
+                final int[] value = (int[]) data;
+                index += serializeUINT16(value.length, buffer, index);
+                for (int v : value) {
+                    index += serializeUINT16(v, buffer, index);
+                }
+                return index - offset;
+            }
+            case INT32_ARRAY: {
+                final int[] value = (int[]) data;
+                index += serializeUINT16(value.length, buffer, index);
+                for (int v : value) {
+                    index += serializeINT32(v, buffer, index);
+                }
+                return index - offset;
+            }
+            case UINT32_ARRAY: {
+                final long[] value = (long[]) data;
+                index += serializeUINT16(value.length, buffer, index);
+                for (long v : value) {
+                    index += serializeUINT32(v, buffer, index);
+                }
+                return index - offset;
+            }
+            case INT64_ARRAY: {
+                final long[] value = (long[]) data;
+                index += serializeUINT16(value.length, buffer, index);
+                for (long v : value) {
+                    index += serializeINT64(v, buffer, index);
+                }
+                return index - offset;
+            }
+            case BOOLEAN_ARRAY: {
+                final boolean[] value = (boolean[]) data;
+                index += serializeUINT16(value.length, buffer, index);
+                for (boolean v : value) {
+                    index += serializeBOOLEAN(v, buffer, index);
+                }
+                return index - offset;
+            }
+            case BYTE_ARRAY: {
+                final byte[] value = (byte[]) data;
+                index += serializeUINT16(value.length, buffer, index);
+                return index - offset + put(value, value.length, buffer, index);
+            }
+            case DOUBLE_ARRAY: {
+                final double[] value = (double[]) data;
+                index += serializeUINT16(value.length, buffer, index);
+                for (double v : value) {
+                    index += serializeINT64(Double.doubleToLongBits(v), buffer, index);
+                }
+                return index - offset;
+            }
+            case FLOAT_ARRAY: {
+                final float[] value = (float[]) data;
+                index += serializeUINT16(value.length, buffer, index);
+                for (float v : value) {
+                    index += serializeINT32(Float.floatToIntBits(v), buffer, index);
+                }
+                return index - offset;
+            }
+        }
+        final FieldType componentType = type.getComponentType();
+        final Object[] value = (Object[]) data;
+        index += serializeUINT16(value.length, buffer, index);
+        if (type.isNullableArray()) {
+            index += serializeUINT16(value.length, buffer, index);
+            for (int i = 0; i < value.length; i += 8) {
+                int bits = 0;
+                for (int j = 0; j < 8 && i + j < value.length; j++) {
+                    if (value[i + j] != null) {
+                        bits |= 1 << j;
+                    }
+                }
+                index += serializeBYTE((byte) bits, buffer, index);
+            }
+        }
+        for (Object v : value) {
+            if (v != null) {
+                index += serializeValue(componentType, v, encoding, buffer, index);
+            }
+        }
+        return index - offset;
     }
 }
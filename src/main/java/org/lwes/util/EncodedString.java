@@ -64,6 +64,136 @@ public class EncodedString {
 		}
 	}
 
+	/**
+	 * Returns the number of bytes {@link #getBytes(String, CharacterEncoding)}
+	 * would return, without encoding the string.  Unmappable characters count
+	 * as the one byte '?' they are replaced with.
+	 */
+	public static int getByteLength(String string, CharacterEncoding enc) {
+		if (singleByteLimit(enc) > 0) {
+			// Each char is a byte, except that a surrogate pair becomes one '?'.
+			return string.length() - countSurrogatePairs(string);
+		}
+		if (!CharacterEncoding.UTF_8.equals(enc)) {
+			return getBytes(string, enc).length;
+		}
+		final int length = string.length();
+		int count = length;
+		for (int i = 0; i < length; ++i) {
+			final char c = string.charAt(i);
+			if (c < 0x80) {
+				continue;
+			}
+			if (c < 0x800) {
+				count += 1;
+			}
+			else if (isSurrogatePair(string, i)) {
+				// Two chars become four bytes.
+				count += 2;
+				++i;
+			}
+			else if (!isSurrogate(c)) {
+				count += 2;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Encodes a string straight into <tt>bytes</tt>, which must have room for
+	 * {@link #getByteLength(String, CharacterEncoding)} bytes from
+	 * <tt>offset</tt>.  The bytes are the same as those from
+	 * {@link #getBytes(String, CharacterEncoding)}.
+	 *
+	 * @return the number of bytes written
+	 */
+	public static int encode(String string, CharacterEncoding enc, byte[] bytes, int offset) {
+		final int length = string.length();
+		int index = offset;
+		final int limit = singleByteLimit(enc);
+		if (limit > 0) {
+			for (int i = 0; i < length; ++i) {
+				final char c = string.charAt(i);
+				if (c < limit) {
+					bytes[index++] = (byte) c;
+				}
+				else {
+					if (isSurrogatePair(string, i)) {
+						++i;
+					}
+					bytes[index++] = '?';
+				}
+			}
+			return index - offset;
+		}
+		if (!CharacterEncoding.UTF_8.equals(enc)) {
+			final byte[] encoded = getBytes(string, enc);
+			System.arraycopy(encoded, 0, bytes, offset, encoded.length);
+			return encoded.length;
+		}
+		for (int i = 0; i < length; ++i) {
+			final char c = string.charAt(i);
+			if (c < 0x80) {
+				bytes[index++] = (byte) c;
+			}
+			else if (c < 0x800) {
+				bytes[index++] = (byte) (0xc0 | (c >> 6));
+				bytes[index++] = (byte) (0x80 | (c & 0x3f));
+			}
+			else if (isSurrogatePair(string, i)) {
+				final int codePoint = Character.toCodePoint(c, string.charAt(++i));
+				bytes[index++] = (byte) (0xf0 | (codePoint >> 18));
+				bytes[index++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+				bytes[index++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+				bytes[index++] = (byte) (0x80 | (codePoint & 0x3f));
+			}
+			else if (isSurrogate(c)) {
+				bytes[index++] = '?';
+			}
+			else {
+				bytes[index++] = (byte) (0xe0 | (c >> 12));
+				bytes[index++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				bytes[index++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+		return index - offset;
+	}
+
+	/**
+	 * @return the first char that a single byte encoding cannot map, or 0 if
+	 *         the encoding is not one of them
+	 */
+	private static int singleByteLimit(CharacterEncoding enc) {
+		if (CharacterEncoding.ISO_8859_1.equals(enc)) {
+			return 0x100;
+		}
+		if (CharacterEncoding.ASCII.equals(enc)) {
+			return 0x80;
+		}
+		return 0;
+	}
+
+	private static boolean isSurrogatePair(String string, int index) {
+		return Character.isHighSurrogate(string.charAt(index)) &&
+		       index + 1 < string.length() &&
+		       Character.isLowSurrogate(string.charAt(index + 1));
+	}
+
+	private static boolean isSurrogate(char c) {
+		return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+	}
+
+	private static int countSurrogatePairs(String string) {
+		int count = 0;
+		for (int i = 0; i < string.length(); ++i) {
+			if (string.charAt(i) >= Character.MIN_SURROGATE && isSurrogatePair(string, i)) {
+				++count;
+				++i;
+			}
+		}
+		return count;
+	}
+
 	public EncodedString(String string, CharacterEncoding enc) {
 		myString = string;
 		myEncoding = enc;
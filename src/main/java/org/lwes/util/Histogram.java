@@ -0,0 +1,78 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>A histogram of non-negative ints in power-of-two buckets: bucket 0
+ * counts zeros, and bucket <i>i</i> counts values from 2<sup>i-1</sup> to
+ * 2<sup>i</sup>-1.  The last bucket also counts every larger value.</p>
+ * <p>Like {@link StripedCounter}, each thread records into its own row of
+ * buckets, so recording is cheap from many threads at once.</p>
+ */
+public final class Histogram {
+
+    private final int buckets;
+    private final int rowLength;
+    private final AtomicLongArray cells;
+
+    /**
+     * @param buckets the number of buckets, from 1 to 33
+     */
+    public Histogram(int buckets) {
+        if (buckets < 1 || buckets > 33) {
+            throw new IllegalArgumentException("A histogram has from 1 to 33 buckets, not " + buckets);
+        }
+        this.buckets = buckets;
+        // Round rows up to whole cache lines.
+        this.rowLength = (buckets + StripedCounter.PADDING - 1) / StripedCounter.PADDING * StripedCounter.PADDING;
+        this.cells = new AtomicLongArray(StripedCounter.STRIPES * rowLength);
+    }
+
+    public void record(int value) {
+        final int bucket = value <= 0 ? 0 : Math.min(32 - Integer.numberOfLeadingZeros(value), buckets - 1);
+        cells.getAndIncrement(StripedCounter.stripe() * rowLength + bucket);
+    }
+
+    /**
+     * @return the count in each bucket
+     */
+    public long[] getCounts() {
+        final long[] counts = new long[buckets];
+        for (int stripe = 0; stripe < StripedCounter.STRIPES; ++stripe) {
+            for (int i = 0; i < buckets; ++i) {
+                counts[i] += cells.get(stripe * rowLength + i);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return the smallest value counted by each bucket
+     */
+    public long[] getLowerBounds() {
+        final long[] bounds = new long[buckets];
+        for (int i = 1; i < buckets; ++i) {
+            bounds[i] = 1L << (i - 1);
+        }
+        return bounds;
+    }
+
+    public int getBucketCount() {
+        return buckets;
+    }
+
+    public void reset() {
+        for (int i = 0; i < cells.length(); ++i) {
+            cells.set(i, 0);
+        }
+    }
+}
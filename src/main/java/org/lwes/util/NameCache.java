@@ -0,0 +1,163 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.lwes.Event;
+
+/**
+ * <p>A bounded cache from serialized event and attribute names to Strings,
+ * so that the names of incoming events are decoded once rather than once per
+ * event.  Names are in the default encoding.</p>
+ * <p>The cache is seeded with the names in every {@link org.lwes.db.EventTemplateDB}
+ * and learns other names as they are seen, until it holds its maximum number
+ * of names.  After that, unknown names are decoded each time.  Lookups take
+ * no locks and create no objects when the name is cached.</p>
+ */
+public class NameCache {
+
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    /** How many slots are tried for a name before giving up. */
+    private static final int MAX_PROBES = 8;
+
+    private static final NameCache INSTANCE = new NameCache(DEFAULT_MAX_SIZE);
+
+    private final Entry[] table;
+    private final int mask;
+    private final int maxSize;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @param maxSize the maximum number of names to hold
+     */
+    public NameCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        // Keep the table at most half full, so probe sequences stay short.
+        int capacity = 16;
+        while (capacity < 2 * maxSize) {
+            capacity <<= 1;
+        }
+        this.table = new Entry[capacity];
+        this.mask = capacity - 1;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the cache used when deserializing events
+     */
+    public static NameCache getInstance() {
+        return INSTANCE;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the String for a serialized name, adding it to the cache if it
+     * is not there yet and there is room.
+     *
+     * @param bytes  the buffer holding the name
+     * @param offset the start of the name
+     * @param length the number of bytes in the name
+     * @return the name
+     */
+    public String get(byte[] bytes, int offset, int length) {
+        final int hash = hash(bytes, offset, length);
+        int free = -1;
+        for (int i = 0; i < MAX_PROBES; ++i) {
+            final int slot = (hash + i) & mask;
+            final Entry entry = table[slot];
+            if (entry == null) {
+                free = slot;
+                break;
+            }
+            if (entry.hash == hash && entry.matches(bytes, offset, length)) {
+                return entry.name;
+            }
+        }
+        final String name = EncodedString.bytesToString(bytes, offset, length,
+                                                         Event.ENCODING_STRINGS[Event.DEFAULT_ENCODING]);
+        if (free >= 0 && size.get() < maxSize) {
+            // Racing threads may both store a name; one of the entries is kept.
+            final byte[] copy = new byte[length];
+            System.arraycopy(bytes, offset, copy, 0, length);
+            table[free] = new Entry(copy, name, hash);
+            size.incrementAndGet();
+        }
+        return name;
+    }
+
+    /**
+     * Adds a name to the cache, if there is room.
+     *
+     * @param name an event or attribute name
+     * @return the cached instance of the name
+     */
+    public String add(String name) {
+        final byte[] bytes = EncodedString.getBytes(name, Event.ENCODING_STRINGS[Event.DEFAULT_ENCODING]);
+        return get(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Empties the cache.
+     */
+    public void clear() {
+        for (int i = 0; i < table.length; ++i) {
+            table[i] = null;
+        }
+        size.set(0);
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = length;
+        for (int i = offset; i < offset + length; ++i) {
+            hash = 31 * hash + bytes[i];
+        }
+        // Spread the low bits, which select the slot.
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Entries are immutable, so they can be shared between threads without
+     * locking.
+     */
+    private static final class Entry {
+        private final byte[] bytes;
+        private final String name;
+        private final int hash;
+
+        Entry(byte[] bytes, String name, int hash) {
+            this.bytes = bytes;
+            this.name = name;
+            this.hash = hash;
+        }
+
+        boolean matches(byte[] other, int offset, int length) {
+            if (length != bytes.length) {
+                return false;
+            }
+            for (int i = 0; i < length; ++i) {
+                if (bytes[i] != other[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.util;
+
+import org.lwes.Event;
+
+/**
+ * <p>A string value read in place from a serialized buffer.  Comparing,
+ * hashing and prefix checks work on the encoded bytes; the bytes are only
+ * decoded into a String by {@link #toString()}, which keeps the result.</p>
+ * <p>{@link #hashCode()} is the same as the hash code of the decoded String,
+ * so views and Strings can be grouped together, but {@link #equals(Object)}
+ * only matches other views; use {@link #contentEquals(String)} to compare
+ * with a String.</p>
+ * <p>A view refers to the buffer it was read from, so it is only valid until
+ * that buffer changes.  Views are not thread safe.</p>
+ */
+public class StringView implements CharSequence {
+
+    private static final int MALFORMED = -2;
+
+    private byte[] bytes;
+    private int offset;
+    private int length;
+    private short encoding;
+    private String string;
+
+    public StringView() {
+        this(new byte[0], 0, 0, Event.DEFAULT_ENCODING);
+    }
+
+    /**
+     * @param bytes    the buffer holding the string
+     * @param offset   the start of the string bytes
+     * @param length   the number of string bytes
+     * @param encoding {@link Event#ISO_8859_1} or {@link Event#UTF_8}
+     */
+    public StringView(byte[] bytes, int offset, int length, short encoding) {
+        set(bytes, offset, length, encoding);
+    }
+
+    /**
+     * Points this view at another string, so that a view can be reused.
+     *
+     * @return this view
+     */
+    public StringView set(byte[] bytes, int offset, int length, short encoding) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + length +
+                                                " is outside a buffer of " + bytes.length + " bytes");
+        }
+        if (encoding != Event.ISO_8859_1 && encoding != Event.UTF_8) {
+            throw new IllegalArgumentException("Unknown encoding " + encoding);
+        }
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.encoding = encoding;
+        this.string = null;
+        return this;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of encoded bytes, rather than characters
+     */
+    public int getByteLength() {
+        return length;
+    }
+
+    public short getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @return true if this view holds the same characters as <tt>s</tt>
+     */
+    public boolean contentEquals(String s) {
+        if (string != null) {
+            return string.equals(s);
+        }
+        if (s == null) {
+            return false;
+        }
+        final int matched = matchPrefix(s);
+        return matched == MALFORMED ? toString().equals(s) : matched == length;
+    }
+
+    /**
+     * @return true if the characters of this view start with <tt>prefix</tt>
+     */
+    public boolean startsWith(String prefix) {
+        if (string != null) {
+            return string.startsWith(prefix);
+        }
+        final int matched = matchPrefix(prefix);
+        return matched == MALFORMED ? toString().startsWith(prefix) : matched >= 0;
+    }
+
+    /**
+     * @param prefix a prefix in the encoding of this view
+     * @return true if the bytes of this view start with <tt>prefix</tt>
+     */
+    public boolean startsWith(byte[] prefix) {
+        if (prefix.length > length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; ++i) {
+            if (bytes[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Matches the characters of <tt>s</tt> against the start of this view.
+     *
+     * @return the number of bytes matched, -1 if <tt>s</tt> is not a prefix,
+     *         or {@link #MALFORMED} if the bytes could not be decoded
+     */
+    private int matchPrefix(String s) {
+        final int end = offset + length;
+        int i = offset;
+        int j = 0;
+        while (j < s.length()) {
+            if (i >= end) {
+                return -1;
+            }
+            final int b = bytes[i];
+            if (b >= 0 || encoding == Event.ISO_8859_1) {
+                if (s.charAt(j) != (char) (b & 0xff)) {
+                    return -1;
+                }
+                ++i;
+                ++j;
+                continue;
+            }
+            final int size = utf8Size(b);
+            final int codePoint = decodeUtf8(bytes, i, size, end);
+            if (codePoint < 0) {
+                return MALFORMED;
+            }
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                if (s.charAt(j) != codePoint) {
+                    return -1;
+                }
+                ++j;
+            }
+            else {
+                if (j + 1 >= s.length() ||
+                    s.charAt(j) != highSurrogate(codePoint) ||
+                    s.charAt(j + 1) != lowSurrogate(codePoint)) {
+                    return -1;
+                }
+                j += 2;
+            }
+            i += size;
+        }
+        return i - offset;
+    }
+
+    @Override
+    public int hashCode() {
+        if (string != null) {
+            return string.hashCode();
+        }
+        final int end = offset + length;
+        int hash = 0;
+        int i = offset;
+        while (i < end) {
+            final int b = bytes[i];
+            if (b >= 0 || encoding == Event.ISO_8859_1) {
+                hash = 31 * hash + (b & 0xff);
+                ++i;
+                continue;
+            }
+            final int size = utf8Size(b);
+            final int codePoint = decodeUtf8(bytes, i, size, end);
+            if (codePoint < 0) {
+                // Malformed input is left to the decoder.
+                return toString().hashCode();
+            }
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                hash = 31 * hash + codePoint;
+            }
+            else {
+                hash = 31 * hash + highSurrogate(codePoint);
+                hash = 31 * hash + lowSurrogate(codePoint);
+            }
+            i += size;
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StringView)) {
+            return false;
+        }
+        final StringView other = (StringView) o;
+        if (encoding != other.encoding) {
+            return toString().equals(other.toString());
+        }
+        if (length != other.length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (bytes[offset + i] != other.bytes[other.offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int length() {
+        if (encoding == Event.ISO_8859_1) {
+            return length;
+        }
+        return toString().length();
+    }
+
+    public char charAt(int index) {
+        if (encoding == Event.ISO_8859_1) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index " + index + " is outside " + length + " characters");
+            }
+            return (char) (bytes[offset + index] & 0xff);
+        }
+        return toString().charAt(index);
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (string == null) {
+            string = EncodedString.bytesToString(bytes, offset, length, Event.ENCODING_STRINGS[encoding]);
+        }
+        return string;
+    }
+
+    /**
+     * @return the length of the UTF-8 sequence starting with <tt>lead</tt>,
+     *         or -1 if it cannot start a sequence
+     */
+    private static int utf8Size(int lead) {
+        if ((lead & 0xe0) == 0xc0) {
+            return 2;
+        }
+        if ((lead & 0xf0) == 0xe0) {
+            return 3;
+        }
+        if ((lead & 0xf8) == 0xf0) {
+            return 4;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the code point of a multibyte UTF-8 sequence, or -1 if it is
+     *         malformed
+     */
+    private static int decodeUtf8(byte[] bytes, int index, int size, int end) {
+        if (size < 0 || index + size > end) {
+            return -1;
+        }
+        int codePoint = bytes[index] & (0x7f >> size);
+        for (int i = 1; i < size; ++i) {
+            final int b = bytes[index + i];
+            if ((b & 0xc0) != 0x80) {
+                return -1;
+            }
+            codePoint = (codePoint << 6) | (b & 0x3f);
+        }
+        // Reject overlong forms, surrogates and values past the last code point.
+        if ((size == 2 && codePoint < 0x80) ||
+            (size == 3 && (codePoint < 0x800 ||
+                           (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE))) ||
+            (size == 4 && (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT ||
+                           codePoint > Character.MAX_CODE_POINT))) {
+            return -1;
+        }
+        return codePoint;
+    }
+
+    private static char highSurrogate(int codePoint) {
+        return (char) (((codePoint - Character.MIN_SUPPLEMENTARY_CODE_POINT) >>> 10) + Character.MIN_HIGH_SURROGATE);
+    }
+
+    private static char lowSurrogate(int codePoint) {
+        return (char) (((codePoint - Character.MIN_SUPPLEMENTARY_CODE_POINT) & 0x3ff) + Character.MIN_LOW_SURROGATE);
+    }
+}
@@ -0,0 +1,77 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>A counter for statistics that many threads update often and few read.
+ * Each thread adds to one of several cells, picked by its thread id, and
+ * the cells sit on separate cache lines, so threads seldom contend for a
+ * cell or share a cache line.  Reading the counter sums the cells.</p>
+ * <p>Counts are exact, but a sum taken while other threads add to the
+ * counter may miss some of their additions.</p>
+ */
+public final class StripedCounter {
+
+    /** Cells are this many longs apart: a 64-byte cache line. */
+    static final int PADDING = 8;
+
+    /** The number of cells, a power of two. */
+    static final int STRIPES = stripes();
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void increment() {
+        cells.getAndIncrement(stripe() * PADDING);
+    }
+
+    public void add(long n) {
+        cells.getAndAdd(stripe() * PADDING, n);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; ++i) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i < STRIPES; ++i) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+
+    /**
+     * @return the stripe of the current thread
+     */
+    static int stripe() {
+        final long id = Thread.currentThread().getId();
+        // Spread sequential thread ids over the stripes.
+        final int hash = (int) (id ^ (id >>> 32)) * 0x9e3779b9;
+        return (hash >>> 16) & (STRIPES - 1);
+    }
+
+    private static int stripes() {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < processors && stripes < 64) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
@@ -0,0 +1,105 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import org.lwes.ArrayEvent.ArrayEventStats;
+
+public class ArrayEventInstrumentationTest {
+
+    @Test
+    public void testConcurrentCounts() throws InterruptedException {
+        ArrayEvent.resetStats();
+        final int threads = 8;
+        final int events = 2000;
+        final Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < events; ++i) {
+                        final ArrayEvent event = new ArrayEvent("Test::Event");
+                        event.setInt32("count", i);
+                        event.copy();
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(2L * threads * events, ArrayEvent.getStats().get(ArrayEventStats.CREATIONS).longValue());
+        assertEquals((long) threads * events, ArrayEvent.getStats().get(ArrayEventStats.COPIES).longValue());
+    }
+
+    @Test
+    public void testHistograms() {
+        ArrayEvent.resetStats();
+        final ArrayEventInstrumentation stats = ArrayEventInstrumentation.getInstance();
+        final ArrayEvent event = new ArrayEvent("Test::Event");
+        event.setInt32("a", 1);
+        event.setInt32("b", 2);
+        event.setInt32("c", 3);
+        ArrayEvent.resetStats();
+
+        // Finding "c" scans four fields, after "enc", in the bucket for 4-7.
+        event.getInt32("c");
+        long[] scanned = stats.getFieldsScannedHistogram();
+        assertEquals(1, scanned[3]);
+        assertEquals(1, stats.getFinds());
+        assertEquals(4, stats.getParses());
+
+        final byte[] bytes = event.serialize();
+        new ArrayEvent().deserialize(bytes, 0, bytes.length);
+        final long[] sizes = stats.getEventSizeHistogram();
+        final long[] bounds = stats.getHistogramLowerBounds();
+        long total = 0;
+        for (int i = 0; i < sizes.length; ++i) {
+            total += sizes[i];
+            if (sizes[i] > 0) {
+                assertTrue(bytes.length >= bounds[i]);
+                assertTrue(bytes.length < 2 * bounds[i]);
+            }
+        }
+        assertEquals(2, total);
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(ArrayEventInstrumentation.OBJECT_NAME);
+        new ArrayEvent("Test::Event");
+        assertTrue(server.isRegistered(name));
+        assertEquals(Boolean.TRUE, server.getAttribute(name, "Enabled"));
+
+        server.invoke(name, "reset", new Object[0], new String[0]);
+        new ArrayEvent("Test::Event");
+        assertEquals(1L, server.getAttribute(name, "Creations"));
+        // Only events acquired from a pool count as in use.
+        assertEquals(0L, server.getAttribute(name, "Highwater"));
+        final ArrayEventPool pool = new ArrayEventPool(2);
+        final ArrayEvent event = pool.acquire();
+        pool.release(pool.acquire());
+        pool.release(event);
+        pool.release(new ArrayEvent());
+        pool.release(pool.acquire());
+        assertEquals(2L, server.getAttribute(name, "Highwater"));
+        assertEquals(4L, server.getAttribute(name, "Creations"));
+    }
+}
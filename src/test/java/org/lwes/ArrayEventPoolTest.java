@@ -0,0 +1,112 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+import org.lwes.ArrayEvent.ArrayEventStats;
+
+public class ArrayEventPoolTest {
+
+    @Test
+    public void testReuse() {
+        final ArrayEventPool pool = new ArrayEventPool(2);
+        final ArrayEvent event = pool.acquire();
+        event.setEventName("Test::Event");
+        event.setInt32("count", 3);
+        pool.release(event);
+        assertEquals(1, pool.size());
+
+        final ArrayEvent reused = pool.acquire();
+        assertSame(event, reused);
+        assertEquals(0, pool.size());
+        assertEquals("", reused.getEventName());
+        assertFalse(reused.isSet("count"));
+    }
+
+    @Test
+    public void testBounded() {
+        final ArrayEventPool pool = new ArrayEventPool(1);
+        final ArrayEvent first = pool.acquire();
+        final ArrayEvent second = pool.acquire();
+        assertNotSame(first, second);
+        pool.release(first);
+        pool.release(second);
+        assertEquals(1, pool.size());
+        assertSame(first, pool.acquire());
+        assertNotSame(second, pool.acquire());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDoubleRelease() {
+        final ArrayEventPool pool = new ArrayEventPool(2);
+        final ArrayEvent event = pool.acquire();
+        pool.release(event);
+        pool.release(event);
+    }
+
+    @Test
+    public void testWrappedNotPooled() {
+        final ArrayEventPool pool = new ArrayEventPool(2);
+        final byte[] bytes = new ArrayEvent("Test::Event").serialize();
+        pool.release(new ArrayEvent(bytes, bytes.length, false));
+        assertEquals(0, pool.size());
+        pool.release(new ArrayEvent(bytes));
+        assertEquals(1, pool.size());
+
+        // Once it has its own buffer, a wrapping event can be pooled.
+        final ArrayEvent grown = new ArrayEvent(bytes.clone(), bytes.length, false);
+        grown.setString("value", "grows past the wrapped array");
+        pool.release(grown);
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void testStats() {
+        final ArrayEventPool pool = new ArrayEventPool(4);
+        ArrayEvent.resetStats();
+        final ArrayEvent a = pool.acquire();
+        final ArrayEvent b = pool.acquire();
+        pool.release(a);
+        pool.release(b);
+        pool.acquire();
+        final Map<ArrayEventStats, Integer> stats = ArrayEvent.getStatsSnapshot();
+        assertEquals(2, stats.get(ArrayEventStats.CREATIONS).intValue());
+        assertEquals(2, stats.get(ArrayEventStats.DELETIONS).intValue());
+        assertEquals(1, stats.get(ArrayEventStats.REUSES).intValue());
+        assertEquals(2, stats.get(ArrayEventStats.HIGHWATER).intValue());
+    }
+
+    @Test
+    public void testLeakDetection() {
+        final ArrayEventPool pool = new ArrayEventPool(2, true);
+        final ArrayEvent kept = pool.acquire();
+        pool.release(pool.acquire());
+        assertEquals(1, pool.getAcquiredCount());
+
+        // Enqueue the reference as the garbage collector would for an event
+        // dropped without a release.
+        final ArrayEvent leaked = pool.acquire();
+        assertEquals(2, pool.getAcquiredCount());
+        assertTrue(leaked.acquiredReference.enqueue());
+        assertEquals(1, pool.getLeakCount());
+        assertEquals(1, pool.getAcquiredCount());
+        pool.release(kept);
+        assertEquals(0, pool.getAcquiredCount());
+        assertTrue(pool.isDebug());
+    }
+}
@@ -10,17 +10,23 @@
 package org.lwes;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.List;
 
 import org.junit.Test;
 import org.lwes.ArrayEvent.ArrayEventStats;
+import org.lwes.util.IPAddress;
 
 import junit.framework.Assert;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public final class ArrayEventTest extends EventTest {
 
@@ -100,7 +106,7 @@ public final class ArrayEventTest extends EventTest {
         ArrayEvent.resetStats();
         final ArrayEvent e1 = new ArrayEvent(testBytes); // copy
         assertEquals(testBytes.length, e1.getBytesSize());
-        assertEquals(Event.MAX_MESSAGE_SIZE, e1.getCapacity());
+        assertTrue(e1.getCapacity() < Event.MAX_MESSAGE_SIZE);
         final ArrayEvent e2 = new ArrayEvent(testBytes, false); // no copy
         assertEquals(e1, e2);
         assertEquals(testBytes.length, e2.getBytesSize());
@@ -111,7 +117,7 @@ public final class ArrayEventTest extends EventTest {
         final ArrayEvent e4 = new ArrayEvent(testBytes, true); // copy
         assertEquals(e2, e4);
         assertEquals(testBytes.length, e4.getBytesSize());
-        assertEquals(Event.MAX_MESSAGE_SIZE, e4.getCapacity());
+        assertTrue(e4.getCapacity() < Event.MAX_MESSAGE_SIZE);
         
         final int bigSize = testBytes.length * 3;
         byte[] big = new byte[bigSize];
@@ -381,6 +387,256 @@ public final class ArrayEventTest extends EventTest {
         evt.serialize();
     }
 
+    @Test
+    public void testReplaceInPlace() {
+        final ArrayEvent evt = new ArrayEvent("Event");
+        evt.setString("first", "abc");
+        evt.setInt32("middle", 7);
+        evt.setString("last", "z");
+        final MapEvent expected = new MapEvent(evt);
+
+        ArrayEvent.resetStats();
+        evt.setString("first", "xyz");
+        expected.setString("first", "xyz");
+        assertEquals(0, ArrayEvent.getStats().get(ArrayEventStats.SHIFTS).intValue());
+        assertEquals(new MapEvent(evt), expected);
+
+        // Longer and shorter values, and a change of type, keep the field order.
+        evt.setString("first", "a much longer value");
+        evt.set("middle", FieldType.INT64_ARRAY, new long[]{1, 2, 3});
+        evt.setString("first", "");
+        assertEquals(3, ArrayEvent.getStats().get(ArrayEventStats.SHIFTS).intValue());
+        assertEquals(Arrays.asList(Event.ENCODING, "first", "middle", "last"), fieldOrder(evt));
+        assertEquals("", evt.getString("first"));
+        assertEquals(3, evt.getInt64Array("middle").length);
+        assertEquals("z", evt.getString("last"));
+        assertEquals(evt, new ArrayEvent(evt.serialize()));
+    }
+
+    @Test
+    public void testCapacity() {
+        final ArrayEvent event = new ArrayEvent("Test::Event");
+        final int initial = event.getCapacity();
+        assertTrue(initial < 1024);
+
+        // The buffer grows to fit fields, keeping what was written.
+        event.setString("small", "value");
+        event.setByteArray("large", new byte[10000]);
+        assertTrue(event.getCapacity() >= event.getBytesSize());
+        assertTrue(event.getCapacity() < Event.MAX_MESSAGE_SIZE);
+        assertEquals("value", event.getString("small"));
+        assertEquals(10000, event.getByteArray("large").length);
+
+        final byte[] serialized = event.serialize();
+        event.trimToSize();
+        assertEquals(serialized.length, event.getCapacity());
+        assertTrue(Arrays.equals(serialized, event.serialize()));
+        event.setInt32("more", 1);
+        assertEquals(1, event.getInt32("more").intValue());
+
+        // Reading a larger event grows the buffer as well.
+        final ArrayEvent reader = new ArrayEvent();
+        reader.deserialize(serialized, 0, serialized.length);
+        assertEquals("value", reader.getString("small"));
+        reader.reset();
+        assertEquals("", reader.getEventName());
+        assertEquals(0, reader.getNumEventAttributes());
+
+        // A wrapped array is copied rather than overrun.
+        final byte[] wrapped = new ArrayEvent("Test::Event").serialize();
+        final ArrayEvent wrapper = new ArrayEvent(wrapped, wrapped.length, false);
+        wrapper.setString("name", "a string longer than the wrapped array");
+        assertEquals("a string longer than the wrapped array", wrapper.getString("name"));
+        assertTrue(Arrays.equals(new ArrayEvent("Test::Event").serialize(), wrapped));
+    }
+
+    @Test
+    public void testReserve() {
+        final ArrayEvent evt = new ArrayEvent("Event");
+        evt.setString("name", "value");
+        final int time = evt.reserve("ReceiptTime", FieldType.INT64);
+        final int port = evt.reserve("port", FieldType.UINT16);
+        assertEquals(0L, evt.getInt64("ReceiptTime").longValue());
+        assertEquals(time, evt.reserve("ReceiptTime", FieldType.INT64));
+
+        ArrayEvent.resetStats();
+        evt.setInt64At(time, 1234567890123L);
+        evt.setUInt16At(port, 65535);
+        assertEquals(0, ArrayEvent.getStats().get(ArrayEventStats.FINDS).intValue());
+        assertEquals(1234567890123L, evt.getInt64("ReceiptTime").longValue());
+        assertEquals(65535, evt.getUInt16("port").intValue());
+        // The string also set the encoding.
+        assertEquals(4, evt.getNumEventAttributes());
+
+        // A field of another type is replaced.
+        evt.setString("ip", "not an address");
+        final int ip = evt.reserve("ip", FieldType.IPADDR);
+        evt.setIPAddressAt(ip, new IPAddress("10.0.0.1"));
+        assertEquals(new IPAddress("10.0.0.1"), evt.get("ip"));
+
+        try {
+            evt.setInt32At(time, 1);
+            fail("Wrote an int32 into an int64 slot");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            evt.reserve("name", FieldType.STRING);
+            fail("Reserved a variable-width field");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testContentHashFollowsChanges() {
+        final ArrayEvent evt = new ArrayEvent("Event");
+        evt.setInt32("count", 1);
+        final int slot = evt.reserve("time", FieldType.INT64);
+        final long hash = evt.contentHash();
+        assertEquals(hash, evt.contentHash());
+        assertEquals(hash, evt.copy().contentHash());
+
+        evt.setInt32("count", 2);
+        assertFalse(hash == evt.contentHash());
+        evt.setInt32("count", 1);
+        assertEquals(hash, evt.contentHash());
+
+        evt.setInt64At(slot, 99);
+        assertFalse(hash == evt.contentHash());
+        evt.setInt64At(slot, 0);
+        assertEquals(hash, evt.contentHash());
+
+        final ArrayEvent other = new ArrayEvent("Other");
+        final long otherHash = other.contentHash();
+        evt.swap(other);
+        assertEquals(otherHash, evt.contentHash());
+        assertEquals(hash, other.contentHash());
+        evt.deserialize(other.serialize());
+        assertEquals(hash, evt.contentHash());
+    }
+
+    @Test
+    public void testCopyOnWrite() {
+        final ArrayEvent evt = new ArrayEvent("Event");
+        evt.setInt32("count", 1);
+        evt.setString("str", "value");
+        final int slot = evt.reserve("time", FieldType.INT64);
+        final byte[] bytes = evt.serialize();
+
+        // An unmodified copy shares the buffer.
+        final ArrayEvent copy = (ArrayEvent) evt.copy();
+        assertTrue(evt.getSerializedBytes() == copy.getSerializedBytes());
+        assertEquals(evt, copy);
+
+        // Each kind of change, to either event, leaves the other as it was.
+        copy.setInt32("count", 2);
+        assertFalse(evt.getSerializedBytes() == copy.getSerializedBytes());
+        assertEquals(1, evt.getInt32("count", 0));
+        assertTrue(Arrays.equals(bytes, evt.serialize()));
+
+        final List<ArrayEvent> copies = new ArrayList<ArrayEvent>();
+        for (int i = 0; i < 8; ++i) {
+            copies.add((ArrayEvent) evt.copy());
+        }
+        copies.get(0).setInt64At(slot, 5);
+        copies.get(1).clear("str");
+        copies.get(2).setEventName("Renamed");
+        copies.get(3).setEncoding(Event.ISO_8859_1);
+        copies.get(4).setString("str", "longer value");
+        copies.get(5).reset();
+        copies.get(6).deserialize(copy.serialize());
+        evt.setInt32("count", 3);
+        assertTrue(Arrays.equals(bytes, copies.get(7).serialize()));
+        evt.swap(copies.get(7));
+        evt.setString("other", "value");
+        assertEquals(3, copies.get(7).getInt32("count", 0));
+        for (ArrayEvent other : copies.subList(0, 7)) {
+            assertFalse(Arrays.equals(bytes, other.serialize()));
+        }
+        assertEquals(5, copies.get(0).getInt64("time", 0));
+        assertEquals(1, copies.get(1).getInt32("count", 0));
+        assertEquals(0, copies.get(1).getInt64("time", -1));
+        assertEquals(2, copies.get(6).getInt32("count", 0));
+
+        // An event wrapping the caller's buffer is copied at once.
+        final byte[] wrapped = evt.serialize();
+        final ArrayEvent wrapper = new ArrayEvent(wrapped, false);
+        final Event wrapperCopy = wrapper.copy();
+        wrapped[wrapped.length - 1] ^= 1;
+        assertFalse(wrapper.equals(wrapperCopy));
+    }
+
+    @Test
+    public void testWrapByteBuffer() {
+        final ArrayEvent evt = new ArrayEvent("Test::Wrap");
+        evt.setString("str", "caf\u00e9");
+        evt.setInt64("time", 42);
+        evt.setIPAddress("ip", new IPAddress("10.1.2.3"));
+        evt.setInt32Array("ints", new int[]{1, -2, 3});
+        evt.setStringObjArray("strs", new String[]{"a", null, "c"});
+        final byte[] bytes = evt.serialize();
+
+        for (ByteBuffer buffer : new ByteBuffer[]{
+                ByteBuffer.allocate(bytes.length + 10),
+                ByteBuffer.allocateDirect(bytes.length + 10),
+                ByteBuffer.allocateDirect(bytes.length + 10).order(ByteOrder.LITTLE_ENDIAN)}) {
+            buffer.position(4);
+            buffer.put(bytes);
+            buffer.limit(4 + bytes.length);
+            buffer.position(4);
+
+            final ArrayEvent wrapped = new ArrayEvent(buffer);
+            assertTrue(wrapped.isBufferBacked());
+            assertEquals(4, buffer.position());
+            assertEquals(evt, wrapped);
+            assertEquals(evt.toString(), wrapped.toString());
+            assertEquals(42, wrapped.getInt64("time", 0));
+            assertEquals("caf\u00e9", wrapped.getStringView("str").toString());
+            assertEquals("[a, null, c]", Arrays.toString(wrapped.getStringObjArray("strs")));
+            assertEquals(evt.contentHash(), wrapped.contentHash());
+
+            // A copy gets its own bytes.
+            final Event copy = wrapped.copy();
+            assertFalse(((ArrayEvent) copy).isBufferBacked());
+            assertEquals(evt, copy);
+
+            final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+            assertEquals(bytes.length, wrapped.serialize(direct));
+            direct.flip();
+            assertEquals(ByteBuffer.wrap(bytes), direct);
+
+            // The first write copies the event out; the buffer is left alone.
+            wrapped.setInt64("time", 43);
+            assertFalse(wrapped.isBufferBacked());
+            assertEquals(43, wrapped.getInt64("time", 0));
+            assertEquals(evt.getString("str"), wrapped.getString("str"));
+            final byte[] after = new byte[bytes.length];
+            buffer.duplicate().get(after);
+            assertTrue(Arrays.equals(bytes, after));
+        }
+
+        // A pooled event lets go of the buffer when it is released.
+        final ArrayEventPool pool = new ArrayEventPool(1, false);
+        final ArrayEvent pooled = pool.acquire();
+        pooled.wrap(ByteBuffer.wrap(bytes));
+        assertEquals(evt, pooled);
+        pool.release(pooled);
+        assertEquals(1, pool.size());
+        assertFalse(pooled.isBufferBacked());
+        assertEquals(0, pool.acquire().getNumEventAttributes());
+    }
+
+    private static List<String> fieldOrder(ArrayEvent evt) {
+        final List<String> names = new ArrayList<String>();
+        for (FieldAccessor field : evt) {
+            names.add(field.getName());
+        }
+        return names;
+    }
+
     @Override
     protected ArrayEvent createEvent() {
         return new ArrayEvent();
@@ -0,0 +1,183 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.lwes.util.StringView;
+
+public class EventProjectionTest {
+
+    private static ArrayEvent createEvent() {
+        final ArrayEvent event = new ArrayEvent("Test::Projection");
+        event.setString("url", "/index.html");
+        event.setUInt16("status", 0xffff);
+        event.setInt32("int", -5);
+        event.setUInt32("uint", 0xffffffffL);
+        event.setInt64("long", Long.MIN_VALUE);
+        event.setUInt64("ulong", Long.MAX_VALUE);
+        event.setBoolean("bool", true);
+        event.setByte("byte", (byte) -3);
+        event.setFloat("float", 1.5F);
+        event.setDouble("double", -2.25);
+        event.setInt16Array("shorts", new short[] { 1, -1 });
+        return event;
+    }
+
+    @Test
+    public void testProject() {
+        final ArrayEvent event = createEvent();
+        final EventProjection projection =
+            new EventProjection("double", "status", "url", "missing", "int", "uint", "long", "ulong", "bool",
+                                "byte", "float", "shorts");
+        final EventProjection.Record record = projection.newRecord();
+        assertEquals(11, projection.project(event, record));
+
+        assertEquals(-2.25, record.getDouble(0, 0), 0);
+        assertEquals(0xffff, record.getUInt16(1, 0));
+        assertEquals("/index.html", record.getString(2));
+        assertFalse(record.isSet(3));
+        assertNull(record.getType(3));
+        assertEquals(-1, record.getValueOffset(3));
+        assertEquals(7, record.getInt32(3, 7));
+        assertNull(record.getString(3));
+        assertEquals(-5, record.getInt32(4, 0));
+        assertEquals(0xffffffffL, record.getUInt32(5, 0));
+        assertEquals(Long.MIN_VALUE, record.getInt64(6, 0));
+        assertEquals(Long.MAX_VALUE, record.getUInt64(7, 0));
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE), record.getUInt64(7));
+        assertTrue(record.getBoolean(8, false));
+        assertEquals((byte) -3, record.getByte(9, (byte) 0));
+        assertEquals(1.5F, record.getFloat(10, 0), 0);
+        assertEquals(FieldType.INT16_ARRAY, record.getType(11));
+        assertArrayEquals(new short[] { 1, -1 }, (short[]) record.get(11));
+
+        // Each value matches what the event returns.
+        for (int i = 0; i < projection.size(); ++i) {
+            final Object expected = event.get(projection.getName(i));
+            if (expected instanceof short[]) {
+                assertArrayEquals((short[]) expected, (short[]) record.get(i));
+            }
+            else {
+                assertEquals(expected, record.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testRawBytes() {
+        final ArrayEvent event = createEvent();
+        final byte[] serialized = event.serialize();
+        final byte[] buffer = new byte[serialized.length + 10];
+        System.arraycopy(serialized, 0, buffer, 7, serialized.length);
+
+        final EventProjection projection = new EventProjection(Arrays.asList("int", "url"));
+        final EventProjection.Record record = projection.newRecord();
+        assertEquals(2, projection.project(buffer, 7, serialized.length, record));
+        assertTrue(buffer == record.getBytes());
+        assertEquals(-5, record.getInt32(0, 0));
+        assertEquals("/index.html", record.getString(1));
+        assertEquals(2 + "/index.html".length(), record.getValueLength(1));
+    }
+
+    @Test
+    public void testReuse() {
+        final EventProjection projection = new EventProjection("url", "int");
+        final EventProjection.Record record = projection.newRecord();
+        assertEquals(2, projection.project(createEvent(), record));
+
+        final ArrayEvent other = new ArrayEvent("Test::Other");
+        other.setString("url", "/other");
+        assertEquals(1, projection.project(other, record));
+        assertEquals("/other", record.getString(0));
+        assertFalse(record.isSet(1));
+
+        record.clear();
+        assertFalse(record.isSet(0));
+        assertNull(record.getBytes());
+    }
+
+    @Test
+    public void testWrongType() {
+        final EventProjection projection = new EventProjection("url", "status");
+        final EventProjection.Record record = projection.newRecord();
+        projection.project(createEvent(), record);
+        try {
+            record.getInt32(0, 0);
+            fail("Read a string as an int32");
+        }
+        catch (NoSuchAttributeTypeException e) { }
+        try {
+            record.getInt16(1, (short) 0);
+            fail("Read a uint16 as an int16");
+        }
+        catch (NoSuchAttributeTypeException e) { }
+        try {
+            new EventProjection("url").project(createEvent(), record);
+            fail("Filled a record of another projection");
+        }
+        catch (IllegalArgumentException e) { }
+    }
+
+    @Test
+    public void testInvalidProjection() {
+        try {
+            new EventProjection("a", "b", "a");
+            fail("Projected a field twice");
+        }
+        catch (IllegalArgumentException e) { }
+        try {
+            new EventProjection();
+            fail("Projected no fields");
+        }
+        catch (IllegalArgumentException e) { }
+        final EventProjection projection = new EventProjection("a", "b");
+        assertEquals(1, projection.indexOf("b"));
+        assertEquals(-1, projection.indexOf("c"));
+    }
+
+    @Test
+    public void testManyFields() {
+        final ArrayEvent event = new ArrayEvent("Test::Many");
+        final String[] names = new String[40];
+        for (int i = 0; i < names.length; ++i) {
+            names[i] = "field" + i;
+            event.setInt32(names[i], i * 3);
+        }
+        final EventProjection projection = new EventProjection(names);
+        final EventProjection.Record record = projection.newRecord();
+        assertEquals(names.length, projection.project(event, record));
+        for (int i = 0; i < names.length; ++i) {
+            assertEquals(i * 3, record.getInt32(i, -1));
+        }
+    }
+
+    @Test
+    public void testEncoding() {
+        final ArrayEvent event = new ArrayEvent("Test::Encoding");
+        event.setEncoding(Event.ISO_8859_1);
+        event.setString("str", "caf\u00e9");
+        final EventProjection projection = new EventProjection("str");
+        final EventProjection.Record record = projection.newRecord();
+        projection.project(event, record);
+        assertEquals(Event.ISO_8859_1, record.getEncoding());
+        assertEquals("caf\u00e9", record.getString(0));
+        assertEquals("caf\u00e9", record.getStringView(0, new StringView()).toString());
+    }
+}
@@ -19,9 +19,14 @@ import java.io.File;
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.TreeSet;
 
 import org.apache.commons.codec.binary.Base64;
@@ -467,9 +472,145 @@ public abstract class EventTest {
         assertArrayEquals(new BigInteger[] { BigInteger.ZERO, BigInteger.ONE, BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE) }, evt.getUInt64Array("uint64[] prim"));
     }
     
+    @Test
+    public void testPrimitiveGetters() {
+        final Event evt = createEvent();
+        evt.setEventName("Test");
+        evt.setByte("byte", (byte) -3);
+        evt.setBoolean("boolean", true);
+        evt.setInt16("int16", Short.MIN_VALUE);
+        evt.setUInt16("uint16", 0xffff);
+        evt.setInt32("int32", Integer.MIN_VALUE);
+        evt.setUInt32("uint32", 0xffffffffL);
+        evt.setInt64("int64", Long.MIN_VALUE);
+        evt.setUInt64("uint64", -1L);
+        evt.setFloat("float", 1.5f);
+        evt.setDouble("double", -2.25);
+        evt.setString("string", "value");
+
+        final Event evt2 = createEvent();
+        evt2.deserialize(evt.serialize());
+        for (Event e : new Event[] { evt, evt2 }) {
+            assertEquals((byte) -3, e.getByte("byte", (byte) 0));
+            assertEquals(true, e.getBoolean("boolean", false));
+            assertEquals(Short.MIN_VALUE, e.getInt16("int16", (short) 0));
+            assertEquals(0xffff, e.getUInt16("uint16", 0));
+            assertEquals(Integer.MIN_VALUE, e.getInt32("int32", 0));
+            assertEquals(0xffffffffL, e.getUInt32("uint32", 0));
+            assertEquals(Long.MIN_VALUE, e.getInt64("int64", 0));
+            assertEquals(-1L, e.getUInt64("uint64", 0));
+            assertEquals(1.5f, e.getFloat("float", 0), 0);
+            assertEquals(-2.25, e.getDouble("double", 0), 0);
+
+            assertEquals(7, e.getInt32("missing", 7));
+            assertEquals(false, e.getBoolean("missing", false));
+            try {
+                e.getInt32("int64", 0);
+                fail("Read an int64 as an int32");
+            }
+            catch (NoSuchAttributeTypeException nsate) { }
+            try {
+                e.getDouble("string", 0);
+                fail("Read a string as a double");
+            }
+            catch (NoSuchAttributeTypeException nsate) { }
+        }
+
+        // Overwriting a value of the same type keeps the event the same size.
+        final int size = evt.getBytesSize();
+        evt.setInt32("int32", 17);
+        evt.setDouble("double", 0.5);
+        evt.setUInt16("uint16", 12);
+        assertEquals(size, evt.getBytesSize());
+        assertEquals(17, evt.getInt32("int32", 0));
+        assertEquals(0.5, evt.getDouble("double", 0), 0);
+        assertEquals(12, evt.getUInt16("uint16").intValue());
+    }
+
     @Test
     public void testMetaFields() {
         assertEquals(new TreeSet<String>(Arrays.asList("SenderIP,SenderPort,ReceiptTime,enc,SiteID".split(","))),
                 new TreeSet<String>(eventTemplate.getMetaFields().keySet()));
     }
+
+    @Test
+    public void testEqualityIgnoresFieldOrder() {
+        final Event evt1 = createEvent();
+        evt1.setEventName("Test::Equality");
+        evt1.setString("str", "value");
+        evt1.setInt32("int", -5);
+        evt1.setInt64Array("longs", new long[] { 1, 2 });
+
+        final Event evt2 = createEvent();
+        evt2.setEventName("Test::Equality");
+        evt2.setInt64Array("longs", new long[] { 1, 2 });
+        evt2.setInt32("int", -5);
+        evt2.setString("str", "value");
+
+        assertEquals(evt1, evt2);
+        assertEquals(evt2, evt1);
+        assertEquals(evt1.hashCode(), evt2.hashCode());
+        assertEquals(evt1.contentHash(), evt2.contentHash());
+        assertEquals(evt1, new MapEvent(evt1.serialize(), false, null));
+        assertEquals(evt1, new ArrayEvent(evt2.serialize()));
+
+        final Set<Event> events = new HashSet<Event>();
+        events.add(evt1);
+        assertTrue(events.contains(evt2));
+
+        evt2.setInt32("int", 6);
+        assertFalse(evt1.equals(evt2));
+        assertFalse(evt1.contentHash() == evt2.contentHash());
+        evt2.setInt32("int", -5);
+        assertEquals(evt1.contentHash(), evt2.contentHash());
+
+        evt2.setInt16("int", (short) -5);
+        assertFalse(evt1.equals(evt2));
+        evt2.clear("int");
+        evt2.setInt32("other", -5);
+        assertFalse(evt1.equals(evt2));
+        evt2.clear("other");
+        assertFalse(evt1.equals(evt2));
+        assertFalse(evt2.equals(evt1));
+    }
+
+    @Test
+    public void testByteBuffer() {
+        final Event evt = createEvent();
+        evt.setEventName("Test::Buffer");
+        evt.setString("str", "value");
+        evt.setInt32("int", -5);
+        evt.setInt64Array("longs", new long[]{1, 2});
+        evt.setDouble("double", 1.5);
+        evt.setStringObjArray("strings", new String[]{null, "x\u00e9"});
+        final byte[] expected = evt.serialize();
+
+        for (ByteBuffer buffer : new ByteBuffer[]{
+                ByteBuffer.wrap(new byte[expected.length + 20], 5, expected.length + 10).slice(),
+                ByteBuffer.allocateDirect(expected.length + 10),
+                ByteBuffer.allocateDirect(expected.length + 10).order(ByteOrder.LITTLE_ENDIAN)}) {
+            buffer.position(3);
+            assertEquals(expected.length, evt.serialize(buffer));
+            assertEquals(3 + expected.length, buffer.position());
+            final byte[] written = new byte[expected.length];
+            buffer.position(3);
+            buffer.get(written);
+            assertArrayEquals(expected, written);
+
+            buffer.position(3);
+            final Event copy = createEvent();
+            copy.deserialize(buffer, expected.length);
+            assertEquals(3 + expected.length, buffer.position());
+            assertEquals(evt, copy);
+
+            buffer.position(buffer.limit() - 1);
+            try {
+                evt.serialize(buffer);
+                fail("Serialized past the limit");
+            }
+            catch (BufferOverflowException e) {
+                assertEquals(buffer.limit() - 1, buffer.position());
+            }
+        }
+    }
 }
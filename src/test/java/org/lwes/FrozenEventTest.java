@@ -0,0 +1,154 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class FrozenEventTest {
+
+    private static Event createEvent(Event event) {
+        event.setEventName("Test::Frozen");
+        event.setString("str", "value");
+        event.setInt32("int", -5);
+        event.setUInt64("uint64", Long.MAX_VALUE);
+        event.setInt64Array("longs", new long[] { 1, 2 });
+        event.setStringArray("strs", new String[] { "a", "b" });
+        return event;
+    }
+
+    @Test
+    public void testFreeze() {
+        for (Event event : new Event[] { new ArrayEvent(), new MapEvent(), new SchemaEvent(null) }) {
+            createEvent(event);
+            final FrozenEvent frozen = event.freeze();
+            assertEquals(event, frozen);
+            assertEquals(event.getNumEventAttributes(), frozen.getNumEventAttributes());
+            assertEquals(event.getEventAttributes(), frozen.getEventAttributes());
+            assertArrayEquals(event.serialize(), frozen.serialize());
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(frozen.getBytesSize());
+            assertEquals(frozen.getBytesSize(), frozen.serialize(buffer));
+            final byte[] written = new byte[frozen.getBytesSize()];
+            ((ByteBuffer) buffer.flip()).get(written);
+            assertArrayEquals(event.serialize(), written);
+            assertEquals("value", frozen.getString("str"));
+            assertEquals(-5, frozen.getInt32("int", 0));
+            assertEquals(Long.MAX_VALUE, frozen.getUInt64("uint64", 0));
+            assertEquals(FieldType.INT64_ARRAY, frozen.getType("longs"));
+            assertNull(frozen.get("missing"));
+            assertSame(frozen, frozen.freeze());
+
+            // Later changes do not reach the frozen event.
+            event.setInt32("int", 7);
+            assertEquals(-5, frozen.getInt32("int", 0));
+        }
+    }
+
+    @Test
+    public void testImmutable() {
+        final FrozenEvent frozen = createEvent(new ArrayEvent()).freeze();
+        final List<Runnable> mutations = new ArrayList<Runnable>();
+        mutations.add(new Runnable() {
+            public void run() {
+                frozen.setInt32("int", 1);
+            }
+        });
+        mutations.add(new Runnable() {
+            public void run() {
+                frozen.clear("str");
+            }
+        });
+        mutations.add(new Runnable() {
+            public void run() {
+                frozen.setEventName("Other");
+            }
+        });
+        mutations.add(new Runnable() {
+            public void run() {
+                frozen.reset();
+            }
+        });
+        mutations.add(new Runnable() {
+            public void run() {
+                frozen.deserialize(frozen.serialize());
+            }
+        });
+        for (Runnable mutation : mutations) {
+            try {
+                mutation.run();
+                fail("Modified a frozen event");
+            }
+            catch (UnsupportedOperationException e) { }
+        }
+
+        // Arrays are copied on the way out.
+        frozen.getInt64Array("longs")[0] = 99;
+        frozen.getStringArray("strs")[0] = "z";
+        assertArrayEquals(new long[] { 1, 2 }, frozen.getInt64Array("longs"));
+        assertArrayEquals(new String[] { "a", "b" }, frozen.getStringArray("strs"));
+    }
+
+    @Test
+    public void testCopy() {
+        final FrozenEvent frozen = createEvent(new MapEvent()).freeze();
+        final Event copy = frozen.copy();
+        assertEquals(frozen, copy);
+        copy.setInt32("int", 12);
+        assertEquals(12, copy.getInt32("int", 0));
+        assertEquals(-5, frozen.getInt32("int", 0));
+    }
+
+    @Test
+    public void testConcurrentReads() throws InterruptedException {
+        final FrozenEvent frozen = createEvent(new ArrayEvent()).freeze();
+        final AtomicInteger failures = new AtomicInteger();
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; ++j) {
+                        if (frozen.getInt32("int", 0) != -5 || !"value".equals(frozen.getString("str"))) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, failures.get());
+    }
+
+    @Test
+    public void testEncoding() {
+        final Event event = new ArrayEvent();
+        event.setEventName("Test::Encoding");
+        event.setEncoding(Event.ISO_8859_1);
+        event.setString("str", "caf\u00e9");
+        final FrozenEvent frozen = event.freeze();
+        assertEquals(Event.ISO_8859_1, frozen.getEncoding());
+        assertEquals("caf\u00e9", frozen.getString("str"));
+        assertTrue(frozen.toString().contains("caf\u00e9"));
+    }
+}
@@ -5,6 +5,7 @@ package org.lwes;
  */
 
 import java.math.BigInteger;
+import java.util.Arrays;
 
 import org.junit.Test;
 
@@ -134,6 +135,70 @@ public class MapEventTest extends EventTest {
         Assert.assertEquals(10, evt.getInt64Array("int64[]")[0]);
     }
 
+    @Test
+    public void testSerializedCache() {
+        final MapEvent evt = new MapEvent("Test::Event");
+        evt.setInt32("value", 1);
+        evt.setString("label", "cached");
+        final byte[] first = evt.serialize();
+        Assert.assertTrue(Arrays.equals(first, evt.serialize()));
+
+        // Serializing at an offset writes the same bytes there.
+        final byte[] buffer = new byte[first.length + 5];
+        Assert.assertEquals(first.length, evt.serialize(buffer, 5));
+        Assert.assertTrue(Arrays.equals(first, Arrays.copyOfRange(buffer, 5, buffer.length)));
+
+        // Every kind of modification is seen by the next serialization.
+        evt.setInt32("value", 2);
+        Assert.assertEquals(2, new MapEvent(evt.serialize(), false, null).getInt32("value").intValue());
+        evt.clear("label");
+        Assert.assertNull(new MapEvent(evt.serialize(), false, null).getString("label"));
+        evt.setEventName("Test::Renamed");
+        Assert.assertEquals("Test::Renamed", new MapEvent(evt.serialize(), false, null).getEventName());
+        evt.setEncoding(Event.ISO_8859_1);
+        Assert.assertEquals(Event.ISO_8859_1, new MapEvent(evt.serialize(), false, null).getEncoding());
+        Assert.assertEquals(evt.getBytesSize(), evt.serialize().length);
+
+        final Event copy = evt.copy();
+        Assert.assertTrue(Arrays.equals(evt.serialize(), copy.serialize()));
+        copy.setInt32("value", 3);
+        Assert.assertEquals(2, new MapEvent(evt.serialize(), false, null).getInt32("value").intValue());
+        Assert.assertEquals(3, new MapEvent(copy.serialize(), false, null).getInt32("value").intValue());
+    }
+
+    @Test
+    public void testCopyOnWrite() {
+        final MapEvent evt = new MapEvent("Event");
+        evt.setInt32("count", 1);
+        evt.setString("str", "value");
+        final byte[] bytes = evt.serialize();
+
+        // An unmodified copy shares the serialized form.
+        final MapEvent copy = (MapEvent) evt.copy();
+        Assert.assertTrue(evt.getSerializedBytes() == copy.getSerializedBytes());
+        Assert.assertEquals(evt, copy);
+
+        copy.setInt32("count", 2);
+        copy.clear("str");
+        Assert.assertEquals(1, evt.getInt32("count", 0));
+        Assert.assertEquals("value", evt.getString("str"));
+        Assert.assertTrue(Arrays.equals(bytes, evt.serialize()));
+
+        final MapEvent copy2 = (MapEvent) evt.copy();
+        evt.setString("str", "changed");
+        evt.setInt32("other", 5);
+        Assert.assertEquals("value", copy2.getString("str"));
+        Assert.assertFalse(copy2.isSet("other"));
+        Assert.assertTrue(Arrays.equals(bytes, copy2.serialize()));
+
+        final MapEvent copy3 = (MapEvent) copy2.copy();
+        copy2.reset();
+        Assert.assertEquals(0, copy2.getNumEventAttributes());
+        Assert.assertTrue(Arrays.equals(bytes, copy3.serialize()));
+        copy3.deserialize(evt.serialize());
+        Assert.assertEquals(evt, copy3);
+    }
+
     @Override
     protected MapEvent createEvent() {
         return new MapEvent();
@@ -0,0 +1,232 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.lwes.db.EventSchema;
+import org.lwes.db.EventTemplateDB;
+import org.lwes.util.IPAddress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SchemaEventTest extends EventTest {
+
+    private final EventTemplateDB db = createTemplateDB();
+
+    private EventTemplateDB createTemplateDB() {
+        final EventTemplateDB template = new EventTemplateDB();
+        template.setESFFile(new File(getClass().getResource("EventTest.esf").getPath()));
+        template.initialize();
+        return template;
+    }
+
+    @Override
+    protected SchemaEvent createEvent() {
+        return new SchemaEvent(db);
+    }
+
+    private SchemaEvent createEverything() {
+        final SchemaEvent evt = new SchemaEvent("Everything", false, db, Event.DEFAULT_ENCODING);
+        evt.setUInt16("field1", 0xffff);
+        evt.setInt16("field2", Short.MIN_VALUE);
+        evt.setUInt32("field3", 0xffffffffL);
+        evt.setInt32("field4", -4);
+        evt.setString("field5", "five");
+        evt.setIPAddress("field6", new IPAddress("6.6.6.6"));
+        evt.setInt64("field7", Long.MIN_VALUE);
+        evt.setUInt64("field8", -1L);
+        evt.setBoolean("field9", true);
+        evt.setByte("field10", (byte) -10);
+        evt.setFloat("field11", 11.5F);
+        evt.setDouble("field12", -12.25);
+        evt.setInt32Array("field16", new int[] { 16, -16 });
+        return evt;
+    }
+
+    @Test
+    public void testSchema() {
+        final EventSchema schema = db.getSchema("Everything");
+        assertNotNull(schema);
+        assertSame(schema, db.getSchema("Everything"));
+        assertNull(db.getSchema("Unknown"));
+        assertTrue(schema.getOrdinal("field1") >= 0);
+        assertTrue(schema.getOrdinal(Event.ENCODING) >= 0);
+        assertEquals(-1, schema.getOrdinal("unknown"));
+        assertEquals(FieldType.UINT16, schema.getType(schema.getOrdinal("field1")));
+        assertEquals("field1", schema.getName(schema.getOrdinal("field1")));
+
+        assertSame(schema, createEverything().getSchema());
+        assertNull(new SchemaEvent("Unknown", false, db, Event.DEFAULT_ENCODING).getSchema());
+    }
+
+    @Test
+    public void testSchemaInvalidation() {
+        final EventSchema schema = db.getSchema("Test");
+        db.addEventAttribute("Test", "field3", FieldType.INT32, -1, false, null);
+        final EventSchema updated = db.getSchema("Test");
+        assertTrue(schema != updated);
+        assertEquals(-1, schema.getOrdinal("field3"));
+        assertTrue(updated.getOrdinal("field3") >= 0);
+    }
+
+    @Test
+    public void testDirectBuffer() {
+        final SchemaEvent evt = createEverything();
+        evt.setString("extra", "overflow");
+        final byte[] bytes = evt.serialize();
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        assertEquals(bytes.length, evt.serialize(buffer));
+        buffer.flip();
+        assertEquals(ByteBuffer.wrap(bytes), buffer);
+
+        final SchemaEvent evt2 = createEvent();
+        evt2.deserialize(buffer, bytes.length);
+        assertEquals(bytes.length, buffer.position());
+        assertEquals(evt, evt2);
+        assertEquals(-1L, evt2.getUInt64("field8", 0));
+        assertEquals("overflow", evt2.getString("extra"));
+    }
+
+    @Test
+    public void testCompatibleWithMapEvent() {
+        final SchemaEvent evt = createEverything();
+        evt.setString("extra", "overflow");
+        final byte[] bytes = evt.serialize();
+        assertEquals(bytes.length, evt.getBytesSize());
+
+        final MapEvent map = new MapEvent(bytes, false, db);
+        assertEquals(evt.getNumEventAttributes(), map.getNumEventAttributes());
+        for (FieldAccessor field : evt) {
+            assertEquals(field.getName(), field.getType(), map.getType(field.getName()));
+        }
+        assertEquals(0xffff, map.getUInt16("field1").intValue());
+        assertEquals(BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE), map.getUInt64("field8"));
+        assertEquals(-12.25, map.getDouble("field12"), 0);
+        assertEquals("overflow", map.getString("extra"));
+        assertEquals(map, evt);
+
+        final SchemaEvent evt2 = new SchemaEvent(map.serialize(), false, db);
+        assertEquals(evt, evt2);
+        assertEquals((byte) -10, evt2.getByte("field10", (byte) 0));
+        assertEquals(11.5F, evt2.getFloat("field11", 0), 0);
+        assertEquals(-1L, evt2.getUInt64("field8", 0));
+        assertEquals("overflow", evt2.getString("extra"));
+        assertEquals(bytes.length, evt2.getBytesSize());
+    }
+
+    @Test
+    public void testOverflow() {
+        final SchemaEvent evt = new SchemaEvent(db);
+        evt.setEventName("Test");
+        evt.setString("field1", "known");
+        evt.setInt32("unknown", 5);
+        assertEquals(3, evt.getNumEventAttributes());
+        assertEquals(FieldType.INT32, evt.getType("unknown"));
+        assertEquals(5, evt.getInt32("unknown", 0));
+
+        evt.clear("unknown");
+        evt.clear("field1");
+        assertEquals(1, evt.getNumEventAttributes());
+        assertEquals(evt.serialize().length, evt.getBytesSize());
+    }
+
+    @Test
+    public void testRename() {
+        final SchemaEvent evt = new SchemaEvent(db);
+        evt.setEventName("Unknown");
+        evt.setString("field1", "one");
+        evt.setInt16("field2", (short) 2);
+        evt.setUInt16("field13", 13);
+        assertNull(evt.getSchema());
+
+        evt.setEventName("Test");
+        assertSame(db.getSchema("Test"), evt.getSchema());
+        assertEquals("one", evt.getString("field1"));
+        assertEquals((short) 2, evt.getInt16("field2", (short) 0));
+        assertEquals(13, evt.getUInt16("field13", 0));
+        assertEquals(evt.serialize().length, evt.getBytesSize());
+
+        final Event evt2 = new SchemaEvent(db);
+        evt2.deserialize(evt.serialize());
+        assertEquals(evt, evt2);
+    }
+
+    @Test
+    public void testValidation() {
+        final SchemaEvent evt = new SchemaEvent("Everything", db);
+        try {
+            evt.setInt32("field1", 1);
+            fail("Stored an int32 in a uint16 field");
+        }
+        catch (EventSystemException e) { }
+        try {
+            evt.setInt32("unknown", 1);
+            fail("Stored a field that is not in the schema");
+        }
+        catch (EventSystemException e) { }
+        assertFalse(evt.isSet("field1"));
+        assertFalse(evt.isSet("unknown"));
+    }
+
+    @Test
+    public void testEncoding() {
+        final SchemaEvent evt = createEverything();
+        evt.setString("field5", "\u00e9t\u00e9");
+        evt.setEncoding(Event.UTF_8);
+        assertEquals(Event.UTF_8, evt.getEncoding());
+        assertEquals(Event.UTF_8, evt.getInt16(Event.ENCODING).shortValue());
+        final byte[] bytes = evt.serialize();
+        assertEquals(bytes.length, evt.getBytesSize());
+
+        final SchemaEvent evt2 = new SchemaEvent(bytes, false, db);
+        assertEquals("\u00e9t\u00e9", evt2.getString("field5"));
+    }
+
+    @Test
+    public void testCopy() {
+        final SchemaEvent evt = createEverything();
+        evt.setString("extra", "overflow");
+        final Event copy = evt.copy();
+        assertEquals(evt, copy);
+
+        copy.setInt32("field4", 44);
+        copy.setString("extra", "changed");
+        assertEquals(-4, evt.getInt32("field4", 0));
+        assertEquals("overflow", evt.getString("extra"));
+    }
+
+    @Test
+    public void testEventFactory() {
+        final EventFactory factory = new EventFactory();
+        factory.setESFFilePath(getClass().getResource("EventFactoryTest.esf").getPath());
+        factory.setEventImplementation(EventFactory.EventImplementation.SCHEMA);
+        factory.initialize();
+
+        final Event evt = factory.createEvent("TestEvent");
+        assertTrue(evt instanceof SchemaEvent);
+        assertEquals("yeah", evt.get("field1"));
+        assertEquals(10, evt.getInt32("field3", 0));
+
+        final Event evt2 = factory.createEvent(evt.serialize());
+        assertTrue(evt2 instanceof SchemaEvent);
+        assertEquals(evt, evt2);
+    }
+}
@@ -0,0 +1,190 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.lwes.ArrayEvent;
+import org.lwes.AttributeRequiredException;
+import org.lwes.Event;
+import org.lwes.MapEvent;
+import org.lwes.util.IPAddress;
+
+public class EventClassGeneratorTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("generator", "test");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Unable to create temporary directory " + dir);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        deleteDir(dir);
+    }
+
+    private static void deleteDir(File dir) {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    deleteDir(file);
+                }
+                else {
+                    file.delete();
+                }
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testClassName() {
+        assertEquals("TestEvent", EventClassGenerator.getClassName("Test::Event"));
+        assertEquals("SearchResultClick", EventClassGenerator.getClassName("Search::result_click"));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final Class<?> type = compile("org/lwes/EventTest.esf", "Everything");
+        final Object generated = type.newInstance();
+        invoke(generated, "setField1", 65535);
+        invoke(generated, "setField3", 4294967295L);
+        invoke(generated, "setField5", "h\u00e9llo");
+        invoke(generated, "setField6", new IPAddress("10.1.2.3"));
+        invoke(generated, "setField8", -1L);
+        invoke(generated, "setField11", 1.5f);
+        invoke(generated, "setField12", -2.25);
+        invoke(generated, "setField16", (Object) new int[]{1, -2});
+        invoke(generated, "setField17", (Object) new String[]{"a", "bc"});
+        invoke(generated, "setSenderPort", 1234);
+
+        final byte[] bytes = (byte[]) invoke(generated, "serialize");
+        assertEquals(bytes.length, invoke(generated, "getBytesSize"));
+        final Event event = new ArrayEvent(bytes);
+        assertEquals("Everything", event.getEventName());
+        assertEquals(11, event.getNumEventAttributes());
+        assertEquals(65535, event.getUInt16("field1").intValue());
+        assertEquals(4294967295L, event.getUInt32("field3").longValue());
+        assertEquals("h\u00e9llo", event.getString("field5"));
+        assertEquals(new IPAddress("10.1.2.3"), event.get("field6"));
+        assertEquals(new BigInteger("18446744073709551615"), event.getUInt64("field8"));
+        assertEquals(1.5f, event.getFloat("field11"), 0);
+        assertEquals(-2.25, event.getDouble("field12"), 0);
+        assertArrayEquals(new int[]{1, -2}, event.getInt32Array("field16"));
+        assertArrayEquals(new String[]{"a", "bc"}, event.getStringArray("field17"));
+        assertEquals(1234, event.getUInt16(Event.SENDER_PORT).intValue());
+        assertFalse(event.isSet("field2"));
+
+        // And back, through the generated deserializer, with an attribute the ESF lacks.
+        event.setInt16("field2", (short) -7);
+        event.setString("unknown", "skipped");
+        event.setInt32("field5", 5);
+        invoke(generated, "deserialize", (Object) event.serialize());
+        assertEquals((short) -7, invoke(generated, "getField2"));
+        assertEquals(true, invoke(generated, "hasField2"));
+        assertEquals(65535, invoke(generated, "getField1"));
+        assertEquals(-1L, invoke(generated, "getField8"));
+        // field5 changed type, so it is skipped.
+        assertEquals(false, invoke(generated, "hasField5"));
+        assertEquals(new IPAddress("10.1.2.3"), invoke(generated, "getField6"));
+        assertArrayEquals(new String[]{"a", "bc"}, (String[]) invoke(generated, "getField17"));
+        assertEquals(false, invoke(generated, "hasField4"));
+
+        try {
+            invoke(generated, "deserialize", (Object) new ArrayEvent("Test").serialize());
+            fail("Deserialized another event");
+        }
+        catch (InvocationTargetException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDefaultValues() throws Exception {
+        final Class<?> type = compile("org/lwes/db/DefaultValueTest.esf", "DefaultValueEvent");
+        final EventTemplateDB template = load("org/lwes/db/DefaultValueTest.esf");
+        final Event expected = new MapEvent("DefaultValueEvent", true, template);
+
+        final Object generated = type.newInstance();
+        final Event event = new MapEvent((byte[]) invoke(generated, "serialize"), false, null);
+        assertEquals(expected.getEventAttributes(), event.getEventAttributes());
+        for (String name : expected.getEventAttributes()) {
+            assertEquals(name, expected.get(name), event.get(name));
+        }
+
+        invoke(generated, "clearVersion");
+        try {
+            invoke(generated, "serialize");
+            fail("Serialized without a required attribute");
+        }
+        catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof AttributeRequiredException);
+        }
+    }
+
+    private Class<?> compile(String esf, String eventName) throws Exception {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeTrue(compiler != null);
+
+        final EventClassGenerator generator = new EventClassGenerator();
+        generator.setPackageName("org.lwes.generated");
+        final File source = generator.write(load(esf), eventName, dir);
+        final String classpath =
+                new File(Event.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        final ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        assertEquals(0, compiler.run(null, null, messages, "-Xlint:deprecation", "-classpath", classpath,
+                                     "-d", dir.getPath(), source.getPath()));
+        // The generated code sticks to the current serializer API.
+        assertFalse(messages.toString(), messages.toString().contains("deprecat"));
+        final ClassLoader loader = new URLClassLoader(new URL[]{dir.toURI().toURL()}, getClass().getClassLoader());
+        return loader.loadClass("org.lwes.generated." + EventClassGenerator.getClassName(eventName));
+    }
+
+    private static EventTemplateDB load(String esf) {
+        final EventTemplateDB db = new EventTemplateDB();
+        db.setESFInputStream(EventClassGeneratorTest.class.getClassLoader().getResourceAsStream(esf));
+        assertTrue(db.initialize());
+        return db;
+    }
+
+    private static Object invoke(Object target, String name, Object... args) throws Exception {
+        for (Method method : target.getClass().getMethods()) {
+            if (method.getName().equals(name) && method.getParameterTypes().length == args.length) {
+                return method.invoke(target, args);
+            }
+        }
+        throw new NoSuchMethodException(name);
+    }
+}
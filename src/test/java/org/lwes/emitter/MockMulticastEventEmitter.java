@@ -20,15 +20,26 @@ import java.util.List;
 
 import org.lwes.Event;
 import org.lwes.EventSystemException;
+import org.lwes.serializer.CompressedEnvelope;
 
 public class MockMulticastEventEmitter extends MulticastEventEmitter {
 
     private LinkedList<Event> events = new LinkedList<Event>();
+    private LinkedList<byte[]> datagrams = new LinkedList<byte[]>();
+    private final CompressedEnvelope envelope = new CompressedEnvelope();
 
     @Override
     protected int emit(byte[] bytes) {
+        datagrams.add(bytes);
         try {
-            events.add(getFactory().createEvent(bytes, false));
+            if (CompressedEnvelope.isEnvelope(bytes, 0, bytes.length)) {
+                for (byte[] event : envelope.open(bytes, 0, bytes.length)) {
+                    events.add(getFactory().createEvent(event, false));
+                }
+            }
+            else {
+                events.add(getFactory().createEvent(bytes, false));
+            }
         }
         catch (EventSystemException e) {
             e.printStackTrace();
@@ -36,6 +47,10 @@ public class MockMulticastEventEmitter extends MulticastEventEmitter {
         return (bytes == null ? 0 : bytes.length);
     }
 
+    public List<byte[]> getDatagrams() {
+        return new LinkedList<byte[]>(datagrams);
+    }
+
     public List<Event> getEvents() {
         List<Event> l = new LinkedList<Event>();
         l.addAll(events);
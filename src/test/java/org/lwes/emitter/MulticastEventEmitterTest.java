@@ -17,14 +17,17 @@ package org.lwes.emitter;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 import org.lwes.Event;
 import org.lwes.EventSystemException;
 import org.lwes.MapEvent;
 import org.lwes.db.EventTemplateDB;
+import org.lwes.serializer.CompressedEnvelope;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.List;
 
 public class MulticastEventEmitterTest {
@@ -80,6 +83,58 @@ public class MulticastEventEmitterTest {
 
     }
 
+    @Test
+    public void testCompression() throws Exception {
+        MockMulticastEventEmitter emitter = new MockMulticastEventEmitter();
+        emitter.setMulticastAddress(InetAddress.getByName("224.0.0.69"));
+        emitter.setMulticastPort(9191);
+        emitter.setCompressionThreshold(100);
+        emitter.initialize();
+
+        Event small = createTestEvent();
+        Event large = createTestEvent();
+        large.setString("url", "/some/long/path/some/long/path/some/long/path/some/long/path?query=string");
+        emitter.emit(small);
+        emitter.emit(large);
+        emitter.shutdown();
+
+        List<byte[]> datagrams = emitter.getDatagrams();
+        assertEquals(2, datagrams.size());
+        assertEquals(small.getBytesSize(), datagrams.get(0).length);
+        assertEquals(CompressedEnvelope.MAGIC, datagrams.get(1)[0]);
+        assertTrue(datagrams.get(1).length < large.getBytesSize());
+        assertEquals(small, emitter.getEvents().get(0));
+        assertEquals(large, emitter.getEvents().get(1));
+    }
+
+    @Test
+    public void testBundles() throws Exception {
+        MockMulticastEventEmitter emitter = new MockMulticastEventEmitter();
+        emitter.setMulticastAddress(InetAddress.getByName("224.0.0.69"));
+        emitter.setMulticastPort(9191);
+        emitter.setBundleSize(1000);
+        emitter.initialize();
+
+        List<Event> sent = new ArrayList<Event>();
+        for (int i = 0; i < 50; ++i) {
+            Event evt = createTestEvent();
+            evt.setInt32("intField1", i);
+            sent.add(evt);
+        }
+        assertTrue(emitter.emit(sent) > 0);
+        emitter.shutdown();
+
+        // Each bundle holds up to 1000 bytes of events, before compression.
+        int perBundle = 1000 / (2 + sent.get(0).getBytesSize());
+        List<byte[]> datagrams = emitter.getDatagrams();
+        assertEquals((sent.size() + perBundle - 1) / perBundle, datagrams.size());
+        for (byte[] datagram : datagrams) {
+            assertEquals(CompressedEnvelope.MAGIC, datagram[0]);
+        }
+        assertEquals(sent, emitter.getEvents());
+        assertEquals(sent.size(), emitter.getTotalEventCount());
+    }
+
     public Event createTestEvent()
             throws EventSystemException,
                    UnknownHostException {
@@ -0,0 +1,96 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lwes.ArrayEvent;
+import org.lwes.Event;
+import org.lwes.listener.DatagramQueueElement;
+import org.lwes.serializer.CompressedEnvelope;
+
+public class JournalDequeuerTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = JournalWriterTest.createTempDir();
+    }
+
+    @After
+    public void tearDown() {
+        JournalWriterTest.deleteDir(dir);
+    }
+
+    @Test
+    public void testJournalEnvelopes() throws Exception {
+        final JournalWriter writer = new JournalWriter(dir);
+        writer.setIndexBucketMillis(10);
+        final JournalDequeuer dequeuer = new JournalDequeuer(writer);
+        final CompressedEnvelope envelope = new CompressedEnvelope();
+
+        final byte[] plain = JournalWriterTest.createEvent("Test::Plain", 1).serialize();
+        final Event event = JournalWriterTest.createEvent("Test::Compressed", 2);
+        // Enough repetition for the event to compress.
+        event.setString("padding", StringUtils.repeat("journal", 50));
+        final byte[] compressed = event.serialize();
+        final byte[] first = JournalWriterTest.createEvent("Test::Bundled", 3).serialize();
+        final byte[] second = JournalWriterTest.createEvent("Test::Bundled", 4).serialize();
+        dequeuer.handleElement(createElement(plain, 1000L));
+        dequeuer.handleElement(createElement(envelope.compress(compressed, 0, compressed.length), 1001L));
+        dequeuer.handleElement(createElement(envelope.bundle(Arrays.asList(first, second)), 1002L));
+        envelope.end();
+        writer.close();
+
+        // Each event of an envelope is a record of its own.
+        final JournalReader reader = new JournalReader(dir);
+        final ArrayEvent read = new ArrayEvent();
+        final String[] names = {"Test::Plain", "Test::Compressed", "Test::Bundled", "Test::Bundled"};
+        final long[] times = {1000L, 1001L, 1002L, 1002L};
+        for (int i = 0; i < names.length; ++i) {
+            assertTrue(reader.next());
+            assertEquals(times[i], reader.getReceiptTime());
+            assertEquals(1234, reader.getSenderPort());
+            reader.readEvent(read);
+            assertEquals(names[i], read.getEventName());
+            assertEquals(i + 1, read.getInt32("value").intValue());
+        }
+        assertFalse(reader.next());
+
+        // The index holds the names of the events, not of the envelopes.
+        final JournalIndex index = JournalIndex.load(reader.getSegments()[0]);
+        assertNotNull(index);
+        assertEquals(4, index.getRecordCount());
+        assertTrue(index.mightContainAny(Collections.singleton("Test::Compressed")));
+        assertTrue(index.mightContainAny(Collections.singleton("Test::Bundled")));
+    }
+
+    private static DatagramQueueElement createElement(byte[] bytes, long timestamp) throws Exception {
+        final DatagramQueueElement element = new DatagramQueueElement();
+        element.setPacket(new DatagramPacket(bytes, bytes.length, InetAddress.getByName("127.0.0.1"), 1234));
+        element.setTimestamp(timestamp);
+        return element;
+    }
+}
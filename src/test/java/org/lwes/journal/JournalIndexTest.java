@@ -0,0 +1,120 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lwes.ArrayEvent;
+
+public class JournalIndexTest {
+
+    private static final int EVENTS = 6000;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = JournalWriterTest.createTempDir();
+        final JournalWriter writer = new JournalWriter(dir);
+        writer.setSegmentSize(JournalWriter.MIN_SEGMENT_SIZE);
+        writer.setIndexBucketMillis(10);
+        for (int i = 0; i < EVENTS; ++i) {
+            // The first half of the journal only holds Early events.
+            final String name = i < EVENTS / 2 ? "Test::Early" : "Test::Late";
+            final byte[] bytes = JournalWriterTest.createEvent(name, i).serialize();
+            writer.append(100000L + i, null, 0, bytes, 0, bytes.length);
+        }
+        writer.close();
+    }
+
+    @After
+    public void tearDown() {
+        JournalWriterTest.deleteDir(dir);
+    }
+
+    @Test
+    public void testIndexWritten() throws IOException {
+        final File[] segments = JournalFormat.listSegments(dir, null);
+        assertTrue(segments.length > 2);
+        int records = 0;
+        for (File segment : segments) {
+            final JournalIndex index = JournalIndex.load(segment);
+            assertNotNull(index);
+            assertEquals(10, index.getBucketMillis());
+            assertTrue(index.getMinTime() <= index.getMaxTime());
+            records += index.getRecordCount();
+
+            final JournalIndex rebuilt = JournalIndex.build(segment, 10);
+            assertEquals(index.getRecordCount(), rebuilt.getRecordCount());
+            assertEquals(index.getMinTime(), rebuilt.getMinTime());
+            assertEquals(index.getMaxTime(), rebuilt.getMaxTime());
+            assertEquals(index.getPosition(index.getMaxTime()), rebuilt.getPosition(index.getMaxTime()));
+        }
+        assertEquals(EVENTS, records);
+
+        final JournalIndex first = JournalIndex.load(segments[0]);
+        final JournalIndex last = JournalIndex.load(segments[segments.length - 1]);
+        assertTrue(first.mightContain("Test::Early"));
+        assertFalse(first.mightContain("Test::Late"));
+        assertFalse(last.mightContain("Test::Early"));
+        assertTrue(last.mightContain("Test::Late"));
+        assertFalse(first.overlaps(last.getMinTime(), last.getMaxTime()));
+        assertEquals(JournalFormat.SEGMENT_HEADER_SIZE, first.getPosition(0));
+        assertEquals(-1, first.getPosition(last.getMinTime()));
+    }
+
+    @Test
+    public void testSeekTime() throws IOException {
+        final ArrayEvent event = new ArrayEvent();
+        for (int i : Arrays.asList(0, 1, 9, 10, 11, 2500, 4321, EVENTS - 1)) {
+            final JournalReader reader = new JournalReader(dir);
+            reader.seek(100000L + i);
+            assertTrue(reader.next());
+            assertEquals(100000L + i, reader.getReceiptTime());
+            reader.readEvent(event);
+            assertEquals(i, event.getInt32("value").intValue());
+        }
+
+        final JournalReader reader = new JournalReader(dir);
+        reader.seek(100000L + EVENTS);
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void testSkipSegmentsByName() throws IOException {
+        final JournalReader reader = new JournalReader(dir);
+        reader.setEventNames(Collections.singleton("Test::Late"));
+        final ArrayEvent event = new ArrayEvent();
+        int early = 0, late = 0;
+        while (reader.next()) {
+            reader.readEvent(event);
+            if ("Test::Late".equals(event.getEventName())) {
+                ++late;
+            }
+            else {
+                ++early;
+            }
+        }
+        assertEquals(EVENTS / 2, late);
+        // Only the segment shared by both halves has Early events left.
+        assertTrue(early < EVENTS / 4);
+    }
+}
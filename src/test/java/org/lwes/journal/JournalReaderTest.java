@@ -0,0 +1,144 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lwes.ArrayEvent;
+import org.lwes.Event;
+import org.lwes.listener.EventHandler;
+
+public class JournalReaderTest {
+
+    private static final int EVENTS = 5000;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = JournalWriterTest.createTempDir();
+        final JournalWriter writer = new JournalWriter(dir);
+        writer.setSegmentSize(JournalWriter.MIN_SEGMENT_SIZE);
+        for (int i = 0; i < EVENTS; ++i) {
+            final byte[] bytes = JournalWriterTest.createEvent("Test::Event" + (i % 3), i).serialize();
+            writer.append(10000L + i / 10, new byte[]{(byte) 192, (byte) 168, 0, 1}, i % 100,
+                          bytes, 0, bytes.length);
+        }
+        writer.close();
+    }
+
+    @After
+    public void tearDown() {
+        JournalWriterTest.deleteDir(dir);
+    }
+
+    @Test
+    public void testReadAll() throws IOException {
+        final JournalReader reader = new JournalReader(dir);
+        assertTrue(reader.getSegments().length > 1);
+        final ArrayEvent event = new ArrayEvent();
+        int count = 0;
+        while (reader.next()) {
+            assertEquals(10000L + count / 10, reader.getReceiptTime());
+            assertEquals(count % 100, reader.getSenderPort());
+            assertEquals("192.168.0.1", reader.getSenderInetAddress().getHostAddress());
+            reader.readEvent(event);
+            assertEquals("Test::Event" + (count % 3), event.getEventName());
+            assertEquals(count, event.getInt32("value").intValue());
+            ++count;
+        }
+        assertEquals(EVENTS, count);
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void testEventBuffer() throws IOException {
+        final JournalReader reader = new JournalReader(dir);
+        final byte[] bytes = new byte[ArrayEvent.MAX_MESSAGE_SIZE];
+        int count = 0;
+        while (reader.next()) {
+            final ByteBuffer view = reader.getEventBuffer();
+            assertTrue(view.isReadOnly());
+            assertTrue(view.isDirect());
+            assertEquals(0, view.position());
+            assertEquals(reader.getLength(), view.remaining());
+            final int length = reader.readBytes(bytes, 0);
+            assertEquals(ByteBuffer.wrap(bytes, 0, length), view);
+            ++count;
+        }
+        assertEquals(EVENTS, count);
+    }
+
+    @Test
+    public void testSeek() throws IOException {
+        final JournalReader reader = new JournalReader(dir);
+        for (int i = 0; i < 1234; ++i) {
+            assertTrue(reader.next());
+        }
+        final int segment = reader.getSegmentIndex();
+        final int position = reader.getRecordPosition();
+        reader.next();
+
+        final JournalReader other = new JournalReader(dir);
+        other.seek(segment, position);
+        final byte[] bytes = new byte[Event.MAX_MESSAGE_SIZE];
+        assertTrue(other.next());
+        other.readBytes(bytes, 0);
+        assertEquals(1233, new ArrayEvent(bytes).getInt32("value").intValue());
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        final List<Integer> values = new ArrayList<Integer>();
+        final JournalReplayer replayer = new JournalReplayer();
+        replayer.setSpeed(0);
+        replayer.setReportIntervalMillis(0);
+        replayer.addHandler(new EventHandler() {
+            public void handleEvent(Event event) {
+                final int value = event.getInt32("value");
+                values.add(value);
+                assertEquals(10000L + value / 10, event.getInt64(Event.RECEIPT_TIME).longValue());
+                assertEquals(value % 100, event.getUInt16(Event.SENDER_PORT).intValue());
+                assertEquals("192.168.0.1", event.getInetAddress(Event.SENDER_IP).getHostAddress());
+            }
+
+            public void destroy() {
+            }
+        });
+        assertEquals(EVENTS, replayer.replay(new JournalReader(dir)));
+        assertEquals(EVENTS, values.size());
+        assertEquals(EVENTS - 1, values.get(EVENTS - 1).intValue());
+        assertEquals(EVENTS, replayer.getEventsReplayed());
+    }
+
+    @Test
+    public void testReplaySpeed() throws Exception {
+        // The journal spans 500ms of receipt time, so 5x speed takes ~100ms.
+        final JournalReplayer replayer = new JournalReplayer();
+        replayer.setSpeed(5);
+        replayer.setReportIntervalMillis(0);
+        replayer.setAddMetadata(false);
+        final long start = System.currentTimeMillis();
+        replayer.replay(new JournalReader(dir));
+        final long elapsed = System.currentTimeMillis() - start;
+        assertTrue("Replay took " + elapsed + "ms", elapsed >= 90);
+    }
+}
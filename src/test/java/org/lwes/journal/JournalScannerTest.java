@@ -0,0 +1,91 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.journal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalScannerTest {
+
+    private static final int EVENTS = 20000;
+
+    private File dir;
+    private File[] segments;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = JournalWriterTest.createTempDir();
+        final JournalWriter writer = new JournalWriter(dir);
+        writer.setSegmentSize(4 * JournalWriter.MIN_SEGMENT_SIZE);
+        writer.setIndexBucketMillis(5);
+        for (int i = 0; i < EVENTS; ++i) {
+            final byte[] bytes = JournalWriterTest.createEvent("Test::Event" + (i % 4), i % 10).serialize();
+            writer.append(1000L + i, null, 0, bytes, 0, bytes.length);
+        }
+        writer.close();
+        segments = JournalFormat.listSegments(dir, null);
+    }
+
+    @After
+    public void tearDown() {
+        JournalWriterTest.deleteDir(dir);
+    }
+
+    @Test
+    public void testCountAll() throws IOException {
+        final JournalScanner scanner = new JournalScanner();
+        final JournalScanner.ScanResult result = scanner.scan(segments);
+        assertEquals(EVENTS, result.getScanned());
+        assertEquals(EVENTS, result.getMatched());
+    }
+
+    @Test
+    public void testFilterAndGroup() throws IOException {
+        final JournalScanner scanner = new JournalScanner();
+        scanner.setThreads(4);
+        scanner.setSplitBytes(16 * 1024);
+        scanner.setEventNames(Arrays.asList("Test::Event1", "Test::Event3"));
+        scanner.setEventAttrs(Collections.singletonMap("value", "3"));
+        scanner.setGroupBy("enc");
+        final JournalScanner.ScanResult result = scanner.scan(segments);
+        // value == 3 only occurs for odd event numbers: i % 10 == 3 means i % 4 is 1 or 3.
+        assertEquals(EVENTS / 10, result.getMatched());
+        assertEquals(Long.valueOf(EVENTS / 10), result.getGroups().get("1"));
+    }
+
+    @Test
+    public void testTimeRangeAndPrint() throws IOException {
+        final JournalScanner scanner = new JournalScanner();
+        scanner.setSplitBytes(16 * 1024);
+        scanner.setTimeRange(1000L + 5000, 1000L + 5999);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        scanner.setOutput(new PrintStream(output, true, "UTF-8"));
+        final JournalScanner.ScanResult result = scanner.scan(segments);
+        assertEquals(1000, result.getMatched());
+        // Lines are printed as the tasks find them, so only their number per event is fixed.
+        final String[] lines = output.toString("UTF-8").split("\n");
+        assertEquals(1000, lines.length);
+        final int[] counts = new int[4];
+        for (String line : lines) {
+            ++counts[line.charAt("Test::Event".length()) - '0'];
+        }
+        assertEquals("[250, 250, 250, 250]", Arrays.toString(counts));
+    }
+}
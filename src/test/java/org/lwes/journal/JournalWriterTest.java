@@ -0,0 +1,158 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.journal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lwes.ArrayEvent;
+import org.lwes.Event;
+import org.lwes.listener.DatagramQueueElement;
+
+public class JournalWriterTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = createTempDir();
+    }
+
+    @After
+    public void tearDown() {
+        deleteDir(dir);
+    }
+
+    @Test
+    public void testAppendAndRotate() throws IOException {
+        final JournalWriter writer = new JournalWriter(dir, "test");
+        writer.setSegmentSize(JournalWriter.MIN_SEGMENT_SIZE);
+        writer.setForceEveryRecords(10);
+
+        final byte[] bytes = createEvent("Test::Event", 1000).serialize();
+        final int perSegment = (int) ((JournalWriter.MIN_SEGMENT_SIZE - JournalFormat.SEGMENT_HEADER_SIZE) /
+                                      (JournalFormat.RECORD_HEADER_SIZE + bytes.length));
+        final int total = perSegment * 2 + 1;
+        for (int i = 0; i < total; ++i) {
+            writer.append(1000L + i, new byte[]{10, 0, 0, 1}, 6969, bytes, 0, bytes.length);
+        }
+        writer.close();
+
+        assertEquals(total, writer.getRecordsWritten());
+        final File[] segments = JournalFormat.listSegments(dir, "test");
+        assertEquals(3, segments.length);
+        assertEquals(0, JournalFormat.getSegmentSequence(segments[0]));
+        assertEquals(2, JournalFormat.getSegmentSequence(segments[2]));
+
+        int count = 0;
+        for (File segment : segments) {
+            final DataInputStream in = new DataInputStream(new FileInputStream(segment));
+            try {
+                assertEquals(JournalFormat.MAGIC, in.readInt());
+                assertEquals(JournalFormat.VERSION, in.readShort());
+                assertEquals(JournalFormat.RECORD_HEADER_SIZE, in.readShort());
+                in.readLong();
+                long remaining = segment.length() - JournalFormat.SEGMENT_HEADER_SIZE;
+                while (remaining > 0) {
+                    assertEquals(1000L + count, in.readLong());
+                    assertEquals(10, in.readByte());
+                    in.skipBytes(3);
+                    assertEquals(6969, in.readUnsignedShort());
+                    final byte[] record = new byte[in.readUnsignedShort()];
+                    in.readFully(record);
+                    assertArrayEquals(bytes, record);
+                    remaining -= JournalFormat.RECORD_HEADER_SIZE + record.length;
+                    ++count;
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        assertEquals(total, count);
+    }
+
+    @Test
+    public void testNewWriterContinuesSequence() throws IOException {
+        final byte[] bytes = createEvent("Test::Event", 1).serialize();
+        JournalWriter writer = new JournalWriter(dir);
+        writer.append(1, null, 0, bytes, 0, bytes.length);
+        writer.close();
+        writer = new JournalWriter(dir);
+        writer.append(2, null, 0, bytes, 0, bytes.length);
+        writer.close();
+
+        final File[] segments = JournalFormat.listSegments(dir, JournalFormat.DEFAULT_PREFIX);
+        assertEquals(2, segments.length);
+        assertEquals(1, JournalFormat.getSegmentSequence(segments[1]));
+        assertEquals(JournalFormat.SEGMENT_HEADER_SIZE + JournalFormat.RECORD_HEADER_SIZE + bytes.length,
+                     segments[1].length());
+    }
+
+    @Test
+    public void testDequeuerWritesRawDatagrams() throws IOException {
+        final JournalWriter writer = new JournalWriter(dir);
+        final JournalDequeuer dequeuer = new JournalDequeuer(writer);
+        final byte[] bytes = createEvent("Test::Event", 5).serialize();
+
+        final DatagramQueueElement element = new DatagramQueueElement();
+        element.setPacket(new DatagramPacket(bytes, bytes.length, InetAddress.getByName("127.0.0.1"), 1234));
+        element.setTimestamp(1335459871L);
+        dequeuer.handleElement(element);
+        dequeuer.handleElement(new DatagramQueueElement());
+        dequeuer.shutdown();
+
+        assertEquals(1, writer.getRecordsWritten());
+        final File[] segments = JournalFormat.listSegments(dir, null);
+        assertEquals(1, segments.length);
+        assertTrue(segments[0].length() > bytes.length);
+    }
+
+    static Event createEvent(String name, int value) {
+        final Event event = new ArrayEvent(name);
+        event.setInt32("value", value);
+        event.setString("label", "journal");
+        return event;
+    }
+
+    static File createTempDir() throws IOException {
+        final File file = File.createTempFile("journal", "test");
+        if (!file.delete() || !file.mkdir()) {
+            throw new IOException("Unable to create temporary directory " + file);
+        }
+        return file;
+    }
+
+    static void deleteDir(File dir) {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    deleteDir(file);
+                }
+                else {
+                    file.delete();
+                }
+            }
+        }
+        dir.delete();
+    }
+}
@@ -8,14 +8,24 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.junit.Assert;
 import org.junit.Test;
+import org.lwes.ArrayEvent;
+import org.lwes.ArrayEventPool;
 import org.lwes.Event;
 import org.lwes.FieldType;
+import org.lwes.FrozenEvent;
+import org.lwes.serializer.CompressedEnvelope;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 public class DatagramDequeuerTest {
 
@@ -56,6 +66,136 @@ public class DatagramDequeuerTest {
         dequeuer.shutdown();
     }
 
+    @Test
+    public void testPooledEventsReleasedAfterHandlers() throws Exception {
+        DatagramDequeuer dequeuer = new DatagramDequeuer();
+        dequeuer.setQueue(new LinkedBlockingQueue<QueueElement>(10));
+        dequeuer.initialize();
+        final ArrayEventPool pool = new ArrayEventPool(4);
+        dequeuer.setEventPool(pool);
+
+        final CountDownLatch handled = new CountDownLatch(3);
+        final String[] names = new String[3];
+        for (int i = 0; i < names.length; ++i) {
+            final int index = i;
+            dequeuer.addHandler("handler" + i, new EventHandler() {
+                public void handleEvent(Event event) {
+                    Assert.assertTrue(event instanceof ArrayEvent);
+                    names[index] = event.getEventName();
+                    Assert.assertEquals(-10 * 256 + 12, event.getInt16("ab").intValue());
+                    handled.countDown();
+                }
+
+                public void destroy() {
+                }
+            });
+        }
+
+        DatagramQueueElement element = createDatagramQueueElement();
+        element.getPacket().setAddress(InetAddress.getByAddress(new byte[]{127, 0, 0, 1}));
+        dequeuer.handleElement(element);
+        Assert.assertTrue(handled.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 100 && pool.size() == 0; ++i) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, pool.size());
+        for (String name : names) {
+            Assert.assertEquals("Test", name);
+        }
+
+        // A bad datagram goes straight back to the pool.
+        DatagramQueueElement bad = createDatagramQueueElement();
+        bad.getPacket().setAddress(InetAddress.getByAddress(new byte[]{127, 0, 0, 1}));
+        bad.getPacket().setData(new byte[]{4, 'T', 'e', 's', 't', 0, 1, 2, 'a', 'b', FieldType.INT16.token});
+        dequeuer.handleElement(bad);
+        Assert.assertEquals(1, pool.size());
+
+        dequeuer.shutdown();
+    }
+
+    @Test
+    public void testFrozenEvents() throws Exception {
+        DatagramDequeuer dequeuer = new DatagramDequeuer();
+        dequeuer.setQueue(new LinkedBlockingQueue<QueueElement>(10));
+        dequeuer.initialize();
+        final ArrayEventPool pool = new ArrayEventPool(4);
+        dequeuer.setEventPool(pool);
+        dequeuer.setFreezeEvents(true);
+
+        final CountDownLatch handled = new CountDownLatch(2);
+        final Event[] events = new Event[2];
+        for (int i = 0; i < events.length; ++i) {
+            final int index = i;
+            dequeuer.addHandler("handler" + i, new EventHandler() {
+                public void handleEvent(Event event) {
+                    events[index] = event;
+                    handled.countDown();
+                }
+
+                public void destroy() {
+                }
+            });
+        }
+
+        DatagramQueueElement element = createDatagramQueueElement();
+        element.getPacket().setAddress(InetAddress.getByAddress(new byte[]{127, 0, 0, 1}));
+        dequeuer.handleElement(element);
+        // The pooled event is released before the handlers run.
+        Assert.assertEquals(1, pool.size());
+        Assert.assertTrue(handled.await(10, TimeUnit.SECONDS));
+
+        Assert.assertTrue(events[0] instanceof FrozenEvent);
+        Assert.assertSame(events[0], events[1]);
+        Assert.assertEquals("Test", events[0].getEventName());
+        Assert.assertEquals(-10 * 256 + 12, events[0].getInt16("ab").intValue());
+        Assert.assertEquals(1234, events[0].getUInt16(Event.SENDER_PORT).intValue());
+
+        dequeuer.shutdown();
+    }
+
+    @Test
+    public void testCompressedBundles() throws Exception {
+        final List<byte[]> sent = new ArrayList<byte[]>();
+        for (int i = 0; i < 3; ++i) {
+            final ArrayEvent event = new ArrayEvent("Test::Bundled");
+            event.setInt32("index", i);
+            event.setString("url", "/some/long/path/some/long/path/some/long/path");
+            sent.add(event.serialize());
+        }
+        final byte[] bundle = new CompressedEnvelope().bundle(sent);
+
+        for (ArrayEventPool pool : new ArrayEventPool[] { null, new ArrayEventPool(4) }) {
+            DatagramDequeuer dequeuer = new DatagramDequeuer();
+            dequeuer.setQueue(new LinkedBlockingQueue<QueueElement>(10));
+            dequeuer.initialize();
+            dequeuer.setEventPool(pool);
+
+            final CountDownLatch handled = new CountDownLatch(sent.size());
+            final List<Integer> indexes = Collections.synchronizedList(new ArrayList<Integer>());
+            dequeuer.addHandler(new EventHandler() {
+                public void handleEvent(Event event) {
+                    Assert.assertEquals("Test::Bundled", event.getEventName());
+                    Assert.assertEquals(1234, event.getUInt16(Event.SENDER_PORT).intValue());
+                    indexes.add(event.getInt32("index"));
+                    handled.countDown();
+                }
+
+                public void destroy() {
+                }
+            });
+
+            DatagramQueueElement element = createDatagramQueueElement();
+            element.getPacket().setAddress(InetAddress.getByAddress(new byte[]{127, 0, 0, 1}));
+            element.getPacket().setData(bundle);
+            dequeuer.handleElement(element);
+            Assert.assertTrue(handled.await(10, TimeUnit.SECONDS));
+            Collections.sort(indexes);
+            Assert.assertEquals(Arrays.asList(0, 1, 2), indexes);
+
+            dequeuer.shutdown();
+        }
+    }
+
     private DatagramQueueElement createBadDatagramQueueElement() {
         DatagramQueueElement dqe = new DatagramQueueElement();
         return dqe;
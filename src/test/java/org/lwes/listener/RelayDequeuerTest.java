@@ -0,0 +1,148 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.listener;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+import org.lwes.ArrayEvent;
+import org.lwes.Event;
+import org.lwes.emitter.EmitterGroup;
+import org.lwes.emitter.EmitterGroupFilter;
+import org.lwes.serializer.CompressedEnvelope;
+
+public class RelayDequeuerTest {
+
+    @Test
+    public void testRelayRawBytes() throws Exception {
+        final CapturingGroup all = new CapturingGroup(null);
+        final CapturingGroup filtered = new CapturingGroup(
+                new EmitterGroupFilter(EmitterGroupFilter.FilterType.Inclusion, Collections.singleton("Test::Other")));
+        final RelayDequeuer dequeuer = new RelayDequeuer(new EmitterGroup[]{all, filtered});
+
+        final byte[] bytes = createEvent().serialize();
+        dequeuer.handleElement(createElement(bytes));
+        dequeuer.handleElement(new DatagramQueueElement());
+
+        assertEquals(1, all.emitted.size());
+        // Without metadata the datagram is passed on untouched.
+        assertSame(bytes, all.emitted.get(0));
+        assertEquals(0, filtered.emitted.size());
+    }
+
+    @Test
+    public void testRelayWithMetadata() throws Exception {
+        final CapturingGroup group = new CapturingGroup(null);
+        final RelayDequeuer dequeuer = new RelayDequeuer(new EmitterGroup[]{group});
+        dequeuer.setAddMetadata(true);
+
+        final byte[] bytes = createEvent().serialize();
+        dequeuer.handleElement(createElement(bytes));
+
+        final Event event = new ArrayEvent(group.emitted.get(0));
+        assertEquals(group.emitted.get(0).length, event.getBytesSize());
+        assertEquals("Test::Event", event.getEventName());
+        assertEquals(42, event.getInt32("value").intValue());
+        assertEquals(1335459871L, event.getInt64(Event.RECEIPT_TIME).longValue());
+        assertEquals("127.0.0.1", event.getInetAddress(Event.SENDER_IP).getHostAddress());
+        assertEquals(1234, event.getUInt16(Event.SENDER_PORT).intValue());
+
+        // Relaying the relayed event again overwrites the fields in place.
+        final byte[] again = group.emitted.get(0);
+        dequeuer.handleElement(createElement(again));
+        assertArrayEquals(again, group.emitted.get(1));
+    }
+
+    @Test
+    public void testRelayCompressedWithMetadata() throws Exception {
+        final CapturingGroup group = new CapturingGroup(null);
+        final RelayDequeuer dequeuer = new RelayDequeuer(new EmitterGroup[]{group});
+        dequeuer.setAddMetadata(true);
+
+        final Event original = createEvent();
+        // Enough repetition for the event to compress.
+        original.setString("padding", StringUtils.repeat("relay", 50));
+        final byte[] bytes = original.serialize();
+        dequeuer.handleElement(createElement(new CompressedEnvelope().compress(bytes, 0, bytes.length)));
+
+        assertEquals(1, group.emitted.size());
+        final Event event = new ArrayEvent(group.emitted.get(0));
+        assertEquals("Test::Event", event.getEventName());
+        assertEquals(42, event.getInt32("value").intValue());
+        assertEquals(1335459871L, event.getInt64(Event.RECEIPT_TIME).longValue());
+        assertEquals(1234, event.getUInt16(Event.SENDER_PORT).intValue());
+    }
+
+    @Test
+    public void testRelayBundleToFilteredGroup() throws Exception {
+        final CapturingGroup all = new CapturingGroup(null);
+        final CapturingGroup filtered = new CapturingGroup(
+                new EmitterGroupFilter(EmitterGroupFilter.FilterType.Inclusion, Collections.singleton("Test::Other")));
+        final RelayDequeuer dequeuer = new RelayDequeuer(new EmitterGroup[]{all, filtered});
+
+        final byte[] event = createEvent().serialize();
+        final byte[] other = new ArrayEvent("Test::Other").serialize();
+        dequeuer.handleElement(createElement(new CompressedEnvelope().bundle(Arrays.asList(event, other))));
+
+        // Each event of the bundle is relayed on its own and filtered by its name.
+        assertEquals(2, all.emitted.size());
+        assertArrayEquals(event, all.emitted.get(0));
+        assertArrayEquals(other, all.emitted.get(1));
+        assertEquals(1, filtered.emitted.size());
+        assertArrayEquals(other, filtered.emitted.get(0));
+    }
+
+    private static Event createEvent() {
+        final Event event = new ArrayEvent("Test::Event");
+        event.setInt32("value", 42);
+        event.setString("label", "relay");
+        return event;
+    }
+
+    private static DatagramQueueElement createElement(byte[] bytes) throws Exception {
+        final DatagramQueueElement element = new DatagramQueueElement();
+        element.setPacket(new DatagramPacket(bytes, bytes.length, InetAddress.getByName("127.0.0.1"), 1234));
+        element.setTimestamp(1335459871L);
+        return element;
+    }
+
+    private static class CapturingGroup extends EmitterGroup {
+        private final List<byte[]> emitted = new ArrayList<byte[]>();
+
+        CapturingGroup(EmitterGroupFilter filter) {
+            super(filter);
+        }
+
+        @Override
+        protected int emit(Event e) {
+            return emit(e.serialize());
+        }
+
+        @Override
+        protected int emit(byte[] bytes) {
+            emitted.add(bytes);
+            return bytes.length;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+
+package org.lwes.serializer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.lwes.ArrayEvent;
+import org.lwes.EventSystemException;
+
+public class CompressedEnvelopeTest {
+
+    private static byte[] createEvent(int i) {
+        final ArrayEvent event = new ArrayEvent("Test::Compressed");
+        event.setString("url", "/some/long/path/some/long/path/some/long/path?query=" + i);
+        event.setString("agent", "Mozilla/5.0 (X11; Linux x86_64) Gecko/20100101 Firefox/115.0");
+        event.setInt32("index", i);
+        return event.serialize();
+    }
+
+    @Test
+    public void testCompress() {
+        final CompressedEnvelope envelope = new CompressedEnvelope();
+        final byte[] event = createEvent(1);
+        assertFalse(CompressedEnvelope.isEnvelope(event, 0, event.length));
+
+        final byte[] compressed = envelope.compress(event, 0, event.length);
+        assertTrue(compressed.length < event.length);
+        assertTrue(CompressedEnvelope.isEnvelope(compressed, 0, compressed.length));
+        assertEquals(CompressedEnvelope.CODEC_DEFLATE, compressed[1]);
+
+        final List<byte[]> events = envelope.open(compressed, 0, compressed.length);
+        assertEquals(1, events.size());
+        assertArrayEquals(event, events.get(0));
+
+        // An envelope inside a larger buffer
+        final byte[] buffer = new byte[compressed.length + 5];
+        System.arraycopy(compressed, 0, buffer, 3, compressed.length);
+        assertArrayEquals(event, envelope.open(buffer, 3, compressed.length).get(0));
+        envelope.end();
+    }
+
+    @Test
+    public void testIncompressible() {
+        final CompressedEnvelope envelope = new CompressedEnvelope();
+        final Random random = new Random(7);
+        final List<byte[]> events = new ArrayList<byte[]>();
+        for (int i = 0; i < 2; ++i) {
+            final byte[] value = new byte[200];
+            random.nextBytes(value);
+            final ArrayEvent event = new ArrayEvent("Event");
+            event.setByteArray("r", value);
+            events.add(event.serialize());
+        }
+        final byte[] bytes = events.get(0);
+        assertNull(envelope.compress(bytes, 0, bytes.length));
+
+        // A bundle that does not compress is stored.
+        final byte[] stored = envelope.bundle(events);
+        assertEquals(CompressedEnvelope.CODEC_NONE, stored[1]);
+        assertEquals(CompressedEnvelope.HEADER_SIZE + 2 * (2 + bytes.length), stored.length);
+        final List<byte[]> opened = envelope.open(stored, 0, stored.length);
+        assertEquals(2, opened.size());
+        assertArrayEquals(events.get(0), opened.get(0));
+        assertArrayEquals(events.get(1), opened.get(1));
+    }
+
+    @Test
+    public void testBundle() {
+        final CompressedEnvelope envelope = new CompressedEnvelope();
+        final List<byte[]> events = new ArrayList<byte[]>();
+        int length = 0;
+        for (int i = 0; i < 100; ++i) {
+            events.add(createEvent(i));
+            length += events.get(i).length;
+        }
+        final byte[] bundle = envelope.bundle(events);
+        assertEquals(CompressedEnvelope.CODEC_DEFLATE, bundle[1]);
+        assertEquals(CompressedEnvelope.FLAG_BUNDLE, bundle[2]);
+        assertTrue(bundle.length * 5 < length);
+
+        final List<byte[]> opened = envelope.open(bundle, 0, bundle.length);
+        assertEquals(events.size(), opened.size());
+        for (int i = 0; i < events.size(); ++i) {
+            assertArrayEquals(events.get(i), opened.get(i));
+        }
+    }
+
+    @Test
+    public void testMalformed() {
+        final CompressedEnvelope envelope = new CompressedEnvelope();
+        final byte[] event = createEvent(1);
+        final byte[] compressed = envelope.compress(event, 0, event.length);
+
+        final List<byte[]> malformed = new ArrayList<byte[]>();
+        malformed.add(event);
+        malformed.add(Arrays.copyOf(compressed, compressed.length - 4));
+        byte[] bytes = compressed.clone();
+        bytes[1] = 9;
+        malformed.add(bytes);
+        bytes = compressed.clone();
+        bytes[6] += 1;
+        malformed.add(bytes);
+        bytes = compressed.clone();
+        bytes[3] = (byte) 0x80;
+        malformed.add(bytes);
+        bytes = compressed.clone();
+        bytes[CompressedEnvelope.HEADER_SIZE + 2] ^= 0x55;
+        malformed.add(bytes);
+        for (byte[] datagram : malformed) {
+            try {
+                envelope.open(datagram, 0, datagram.length);
+                fail("Opened a malformed envelope");
+            }
+            catch (EventSystemException e) {
+                // expected
+            }
+        }
+    }
+}
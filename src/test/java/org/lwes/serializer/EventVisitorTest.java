@@ -0,0 +1,178 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.serializer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+
+import org.junit.Test;
+import org.lwes.ArrayEvent;
+import org.lwes.Event;
+import org.lwes.FieldType;
+import org.lwes.MapEvent;
+import org.lwes.RandomEventGenerator;
+import org.lwes.util.IPAddress;
+
+public class EventVisitorTest {
+
+    @Test
+    public void testVisitRandomEvents() {
+        final RandomEventGenerator generator = new RandomEventGenerator(1234);
+        for (int i = 0; i < 500; ++i) {
+            final Event expected = new ArrayEvent();
+            generator.fillRandomEvent(expected);
+            final byte[] bytes = new byte[expected.getBytesSize() + 10];
+            final int length = expected.serialize(bytes, 5);
+
+            final RebuildingVisitor visitor = new RebuildingVisitor();
+            assertTrue(Deserializer.visit(bytes, 5, length, visitor));
+            assertEquals(expected, visitor.event);
+        }
+    }
+
+    @Test
+    public void testStopEarly() {
+        final Event event = new ArrayEvent("Test::Event");
+        event.setString("first", "a");
+        event.setInt32("count", 3);
+        event.setString("last", "z");
+        final byte[] bytes = event.serialize();
+        final byte[] count = DefaultEventVisitor.getBytes("count");
+
+        final int[] found = new int[1];
+        final int[] visited = new int[1];
+        assertFalse(Deserializer.visit(bytes, 0, bytes.length, new DefaultEventVisitor() {
+            @Override
+            public boolean onInt32(byte[] bytes, int nameOffset, int nameLength, int value) {
+                if (matches(bytes, nameOffset, nameLength, count)) {
+                    found[0] = value;
+                    return false;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean onString(byte[] bytes, int nameOffset, int nameLength, int valueOffset,
+                                    int valueLength, short encoding) {
+                ++visited[0];
+                return true;
+            }
+        }));
+        assertEquals(3, found[0]);
+        assertEquals(1, visited[0]);
+
+        // Skipping the event by its name visits no attributes.
+        assertFalse(Deserializer.visit(bytes, 0, bytes.length, new DefaultEventVisitor() {
+            @Override
+            public boolean onEventName(byte[] bytes, int nameOffset, int nameLength) {
+                return !"Test::Event".equals(toString(bytes, nameOffset, nameLength, Event.DEFAULT_ENCODING));
+            }
+
+            @Override
+            public boolean onInt16(byte[] bytes, int nameOffset, int nameLength, short value) {
+                throw new AssertionError();
+            }
+        }));
+    }
+
+    /**
+     * Rebuilds the visited event, to compare it with the original.
+     */
+    private static class RebuildingVisitor implements EventVisitor {
+        final MapEvent event = new MapEvent();
+
+        private String name(byte[] bytes, int offset, int length) {
+            return DefaultEventVisitor.toString(bytes, offset, length, Event.DEFAULT_ENCODING);
+        }
+
+        public boolean onEventName(byte[] bytes, int nameOffset, int nameLength) {
+            event.setEventName(name(bytes, nameOffset, nameLength));
+            return true;
+        }
+
+        public boolean onUInt16(byte[] bytes, int nameOffset, int nameLength, int value) {
+            event.setUInt16(name(bytes, nameOffset, nameLength), value);
+            return true;
+        }
+
+        public boolean onInt16(byte[] bytes, int nameOffset, int nameLength, short value) {
+            event.setInt16(name(bytes, nameOffset, nameLength), value);
+            return true;
+        }
+
+        public boolean onUInt32(byte[] bytes, int nameOffset, int nameLength, long value) {
+            event.setUInt32(name(bytes, nameOffset, nameLength), value);
+            return true;
+        }
+
+        public boolean onInt32(byte[] bytes, int nameOffset, int nameLength, int value) {
+            event.setInt32(name(bytes, nameOffset, nameLength), value);
+            return true;
+        }
+
+        public boolean onUInt64(byte[] bytes, int nameOffset, int nameLength, long value) {
+            event.setUInt64(name(bytes, nameOffset, nameLength),
+                            BigInteger.valueOf(value).and(new BigInteger("ffffffffffffffff", 16)));
+            return true;
+        }
+
+        public boolean onInt64(byte[] bytes, int nameOffset, int nameLength, long value) {
+            event.setInt64(name(bytes, nameOffset, nameLength), value);
+            return true;
+        }
+
+        public boolean onBoolean(byte[] bytes, int nameOffset, int nameLength, boolean value) {
+            event.setBoolean(name(bytes, nameOffset, nameLength), value);
+            return true;
+        }
+
+        public boolean onByte(byte[] bytes, int nameOffset, int nameLength, byte value) {
+            event.setByte(name(bytes, nameOffset, nameLength), value);
+            return true;
+        }
+
+        public boolean onFloat(byte[] bytes, int nameOffset, int nameLength, float value) {
+            event.setFloat(name(bytes, nameOffset, nameLength), value);
+            return true;
+        }
+
+        public boolean onDouble(byte[] bytes, int nameOffset, int nameLength, double value) {
+            event.setDouble(name(bytes, nameOffset, nameLength), value);
+            return true;
+        }
+
+        public boolean onIPAddress(byte[] bytes, int nameOffset, int nameLength, int address) {
+            event.setIPAddress(name(bytes, nameOffset, nameLength),
+                               new IPAddress(address >>> 24, (address >>> 16) & 0xff, (address >>> 8) & 0xff,
+                                             address & 0xff));
+            return true;
+        }
+
+        public boolean onString(byte[] bytes, int nameOffset, int nameLength, int valueOffset, int valueLength,
+                                short encoding) {
+            event.setString(name(bytes, nameOffset, nameLength),
+                            DefaultEventVisitor.toString(bytes, valueOffset, valueLength, encoding));
+            return true;
+        }
+
+        public boolean onArray(byte[] bytes, int nameOffset, int nameLength, FieldType type, int valueOffset,
+                               int valueLength, short encoding) {
+            final DeserializerState state = new DeserializerState();
+            state.set(valueOffset);
+            event.set(name(bytes, nameOffset, nameLength), type,
+                      Deserializer.deserializeValue(state, bytes, type, encoding));
+            assertEquals(valueOffset + valueLength, state.currentIndex());
+            return true;
+        }
+    }
+}
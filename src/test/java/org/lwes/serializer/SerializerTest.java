@@ -13,11 +13,15 @@
 package org.lwes.serializer;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Random;
 
 import org.junit.Test;
+import org.lwes.Event;
 import org.lwes.FieldType;
+import org.lwes.RandomEventGenerator;
 
 import junit.framework.Assert;
 
@@ -447,4 +451,93 @@ public class SerializerTest {
         Serializer.serializeUINT64(x, bytes, 0);
         assertEquals(x, Deserializer.deserializeUINT64(state, bytes));
     }
+
+    @Test
+    public void testSerializeNArrayIntoDirtyBuffer() {
+        final Random random = new Random(3);
+        for (int n = 0; n < 40; ++n) {
+            final Long[] array = new Long[n];
+            final BitSet expected = new BitSet();
+            for (int i = 0; i < n; ++i) {
+                if (random.nextBoolean()) {
+                    array[i] = random.nextLong();
+                    expected.set(i);
+                }
+            }
+            // Leftover bytes must not leak into the bit set.
+            final byte[] bytes = new byte[4 + n + 8 * n];
+            Arrays.fill(bytes, (byte) -1);
+            final int length = Serializer.serializeNInt64Array(array, bytes, 0);
+            assertEquals(4 + (n + 7) / 8 + 8 * expected.cardinality(), length);
+
+            final DeserializerState state = new DeserializerState();
+            assertEquals(n, Deserializer.deserializeUINT16(state, bytes));
+            assertEquals(expected, Deserializer.deserializeBitSet(state, bytes));
+
+            state.reset();
+            final BitSet present = new BitSet();
+            present.set(100);
+            final long[] values = Deserializer.deserializeNInt64Array(state, bytes, present);
+            assertEquals(length, state.currentIndex());
+            assertEquals(expected, present);
+            for (int i = 0; i < n; ++i) {
+                assertEquals(array[i] == null ? 0L : array[i].longValue(), values[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testDeserializeNPrimitiveArrays() {
+        final byte[] bytes = new byte[100];
+        final BitSet present = new BitSet();
+        final DeserializerState state = new DeserializerState();
+
+        Serializer.serializeNDoubleArray(new Double[]{null, 1.5, null}, bytes, 0);
+        final double[] doubles = Deserializer.deserializeNDoubleArray(state, bytes, present);
+        assertEquals(3, doubles.length);
+        assertEquals(1.5, doubles[1], 0);
+        assertEquals("{1}", present.toString());
+
+        state.reset();
+        Serializer.serializeNBooleanArray(new Boolean[]{true, null, false}, bytes, 0);
+        final boolean[] booleans = Deserializer.deserializeNBooleanArray(state, bytes, present);
+        Assert.assertTrue(booleans[0]);
+        Assert.assertFalse(booleans[2]);
+        assertEquals("{0, 2}", present.toString());
+
+        state.reset();
+        Serializer.serializeNUInt64Array(new BigInteger[]{new BigInteger("18446744073709551615")}, bytes, 0);
+        assertEquals(-1L, Deserializer.deserializeNUInt64Array(state, bytes, present)[0]);
+    }
+    @Test
+    public void testByteBufferMatchesByteArray() {
+        final RandomEventGenerator generator = new RandomEventGenerator(7);
+        final byte[] bytes = new byte[65536];
+        for (FieldType type : FieldType.values()) {
+            for (int n = 0; n < N; ++n) {
+                final Object value = generator.createRandomValue(type);
+                final int length = Serializer.serializeValue(type, value, Event.UTF_8, bytes, 3);
+                final Object expected = Deserializer.deserializeValue(
+                        new DeserializerState(3), bytes, type, Event.UTF_8);
+
+                for (ByteBuffer buffer : new ByteBuffer[]{
+                        ByteBuffer.wrap(new byte[length + 10], 2, length + 5).slice(),
+                        ByteBuffer.allocateDirect(length + 3)}) {
+                    assertEquals(type.toString(), length,
+                                 Serializer.serializeValue(type, value, Event.UTF_8, buffer, 3));
+                    assertEquals(0, buffer.position());
+                    for (int i = 0; i < length; ++i) {
+                        assertEquals(type.toString(), bytes[3 + i], buffer.get(3 + i));
+                    }
+                    assertEquals(length, Deserializer.getValueByteSize(type, buffer, 3));
+
+                    final DeserializerState state = new DeserializerState(3);
+                    final Object actual = Deserializer.deserializeValue(state, buffer, type, Event.UTF_8);
+                    assertEquals(3 + length, state.currentIndex());
+                    Assert.assertTrue(type + ": " + expected + " != " + actual,
+                                      Arrays.deepEquals(new Object[]{expected}, new Object[]{actual}));
+                }
+            }
+        }
+    }
 }
@@ -15,10 +15,14 @@ package org.lwes.util;
  * @author fmaritato
  */
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
+import java.util.Arrays;
+import java.util.Random;
+
 import org.junit.Test;
 
 public class EncodedStringTest {
@@ -56,4 +60,30 @@ public class EncodedStringTest {
         bytes = EncodedString.getBytes(null, CharacterEncoding.UTF_8);
         assertNull("Byte array was non-null", bytes);
     }
+
+    @Test
+    public void testEncode() {
+        final CharacterEncoding[] encodings = {
+                CharacterEncoding.UTF_8, CharacterEncoding.ISO_8859_1, CharacterEncoding.ASCII
+        };
+        // Lone surrogates and unmappable chars must match the JDK's replacements.
+        final char[] chars = {'a', 'Z', '\u00e9', '\u00ff', '\u0100', '\u07ff', '\u0800', '\u65e5', '\uffff',
+                              '\ud83d', '\ude00', '\udbff', '\udfff'};
+        final Random random = new Random(42);
+        for (int i = 0; i < 2000; ++i) {
+            final StringBuilder sb = new StringBuilder();
+            final int length = random.nextInt(12);
+            for (int j = 0; j < length; ++j) {
+                sb.append(chars[random.nextInt(chars.length)]);
+            }
+            final String s = sb.toString();
+            for (CharacterEncoding enc : encodings) {
+                final byte[] expected = EncodedString.getBytes(s, enc);
+                assertEquals(s, expected.length, EncodedString.getByteLength(s, enc));
+                final byte[] actual = new byte[expected.length + 3];
+                assertEquals(expected.length, EncodedString.encode(s, enc, actual, 3));
+                assertArrayEquals(expected, Arrays.copyOfRange(actual, 3, actual.length));
+            }
+        }
+    }
 }
@@ -0,0 +1,54 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void testBuckets() {
+        final Histogram histogram = new Histogram(5);
+        for (int value : new int[]{0, 1, 2, 3, 4, 7, 8, 1000, -5}) {
+            histogram.record(value);
+        }
+        assertArrayEquals(new long[]{0, 1, 2, 4, 8}, histogram.getLowerBounds());
+        assertArrayEquals(new long[]{2, 1, 2, 2, 2}, histogram.getCounts());
+        histogram.reset();
+        assertArrayEquals(new long[5], histogram.getCounts());
+    }
+
+    @Test
+    public void testStripedCounter() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; ++i) {
+                        counter.increment();
+                    }
+                    counter.add(5);
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4 * 10005, counter.sum());
+        counter.reset();
+        assertEquals(0, counter.sum());
+    }
+}
@@ -0,0 +1,83 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+import org.lwes.BaseType;
+import org.lwes.Event;
+import org.lwes.MapEvent;
+import org.lwes.db.EventTemplateDB;
+
+public class NameCacheTest {
+
+    @Test
+    public void testGet() {
+        final NameCache cache = new NameCache(10);
+        final byte[] bytes = "xxuserxx".getBytes();
+        final String name = cache.get(bytes, 2, 4);
+        assertEquals("user", name);
+        assertEquals(1, cache.size());
+        assertSame(name, cache.get("user".getBytes(), 0, 4));
+        assertSame(name, cache.add(new String("user")));
+        assertEquals(1, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNotSame(name, cache.get(bytes, 2, 4));
+    }
+
+    @Test
+    public void testMaxSize() {
+        final NameCache cache = new NameCache(4);
+        for (int i = 0; i < 100; ++i) {
+            assertEquals("name" + i, cache.add("name" + i));
+        }
+        assertEquals(4, cache.size());
+        // Names after the first four are decoded, but not kept.
+        assertNotSame(cache.add("name50"), cache.add("name50"));
+    }
+
+    @Test
+    public void testSeededFromTemplate() {
+        NameCache.getInstance().clear();
+        final EventTemplateDB template = new EventTemplateDB();
+        template.setESFInputStream(getClass().getClassLoader().getResourceAsStream("org/lwes/EventTest.esf"));
+        template.initialize();
+        for (Map.Entry<String, Map<String, BaseType>> event : template.getEvents().entrySet()) {
+            assertSame(event.getKey(), NameCache.getInstance().add(new String(event.getKey())));
+            for (String attributeName : event.getValue().keySet()) {
+                assertSame(attributeName, NameCache.getInstance().add(new String(attributeName)));
+            }
+        }
+    }
+
+    @Test
+    public void testDeserializedNamesShared() {
+        // Other tests may have filled the shared cache with random names.
+        NameCache.getInstance().clear();
+        final Event event = new MapEvent("Test::Cache");
+        event.setString("attributeName", "value");
+        final byte[] bytes = event.serialize();
+        final MapEvent first = new MapEvent(bytes, false, null);
+        final MapEvent second = new MapEvent(bytes, false, null);
+        assertSame(first.getEventName(), second.getEventName());
+        final Iterator<String> names = second.getEventAttributes().iterator();
+        for (String name : first.getEventAttributes()) {
+            assertSame(name, names.next());
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*======================================================================*
+ * Licensed under the New BSD License (the "License"); you may not use  *
+ * this file except in compliance with the License.  Unless required    *
+ * by applicable law or agreed to in writing, software distributed      *
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT        *
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.     *
+ * See the License for the specific language governing permissions and  *
+ * limitations under the License. See accompanying LICENSE file.        *
+ *======================================================================*/
+package org.lwes.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.lwes.ArrayEvent;
+import org.lwes.Event;
+import org.lwes.NoSuchAttributeTypeException;
+
+public class StringViewTest {
+
+    private static final String[] STRINGS = {
+            "", "a", "hello", "h\u00e9llo", "\u65e5\u672c\u8a9e", "x\ud83d\ude00y", "\u00ff\u0100"
+    };
+
+    @Test
+    public void testUtf8() {
+        for (String s : STRINGS) {
+            final StringView view = view(s, Event.UTF_8);
+            assertTrue(s, view.contentEquals(s));
+            assertEquals(s, s.hashCode(), view.hashCode());
+            assertEquals(s, s.length(), view.length());
+            assertFalse(s, view.contentEquals(s + "z"));
+            assertFalse(s, view.contentEquals(null));
+            for (int i = 0; i <= s.length(); ++i) {
+                assertTrue(s, view.startsWith(s.substring(0, i)));
+            }
+            assertFalse(s, view.startsWith(s + "z"));
+            assertEquals(s, view.toString());
+        }
+        assertFalse(view("hello", Event.UTF_8).contentEquals("hellp"));
+    }
+
+    @Test
+    public void testLatin1() {
+        final String s = "caf\u00e9";
+        final StringView view = view(s, Event.ISO_8859_1);
+        assertEquals(4, view.getByteLength());
+        assertTrue(view.contentEquals(s));
+        assertEquals(s.hashCode(), view.hashCode());
+        assertEquals('\u00e9', view.charAt(3));
+        assertEquals(view, view(s, Event.UTF_8));
+    }
+
+    @Test
+    public void testMalformed() {
+        final byte[] bytes = {'a', (byte) 0xc3, 'b'};
+        final StringView view = new StringView(bytes, 0, bytes.length, Event.UTF_8);
+        final String s = EncodedString.bytesToString(bytes, Event.ENCODING_STRINGS[Event.UTF_8]);
+        assertTrue(view.contentEquals(s));
+        assertEquals(s.hashCode(), view.hashCode());
+    }
+
+    @Test
+    public void testEquality() {
+        assertEquals(view("h\u00e9llo", Event.UTF_8), view("h\u00e9llo", Event.UTF_8));
+        assertFalse(view("hello", Event.UTF_8).equals(view("hellO", Event.UTF_8)));
+        assertFalse(view("hello", Event.UTF_8).equals("hello"));
+        assertTrue(view("prefix.rest", Event.UTF_8).startsWith("prefix.".getBytes()));
+    }
+
+    @Test
+    public void testArrayEvent() {
+        final ArrayEvent event = new ArrayEvent("Test::View");
+        event.setString("url", "http://example.com/\u00e9");
+        event.setInt32("count", 1);
+
+        final StringView view = event.getStringView("url");
+        assertTrue(view.startsWith("http://"));
+        assertTrue(view.contentEquals("http://example.com/\u00e9"));
+        assertNull(event.getStringView("missing"));
+        assertSame(view, event.getStringView("url", view));
+        try {
+            event.getStringView("count");
+        }
+        catch (NoSuchAttributeTypeException e) {
+            return;
+        }
+        throw new AssertionError("Read an int as a string");
+    }
+
+    private static StringView view(String s, short encoding) {
+        final byte[] encoded = EncodedString.getBytes(s, Event.ENCODING_STRINGS[encoding]);
+        // Surround the string, so that offsets are exercised.
+        final byte[] bytes = new byte[encoded.length + 4];
+        System.arraycopy(encoded, 0, bytes, 2, encoded.length);
+        bytes[0] = bytes[bytes.length - 1] = 'q';
+        return new StringView(bytes, 2, encoded.length, encoding);
+    }
+}